@@ -0,0 +1,190 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.EntryIDSet.EntryIDSetCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the operations performed on entry ID sets while evaluating
+ * indexed search filters: unions, intersections, lookups and the encoding of
+ * index records. This class is in the same package as {@link EntryIDSet} in
+ * order to use its package private factory methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryIDSetBenchmark
+{
+  /** The number of entry IDs of each set. */
+  @Param({ "100", "10000" })
+  public int size;
+
+  /** Whether the sets are backed by a sorted array or by a compressed bitmap. */
+  @Param({ "false", "true" })
+  public boolean bitmap;
+
+  private long[] ids1;
+  private long[] ids2;
+  private EntryIDSet set1;
+  private EntryIDSet set2;
+  private List<EntryIDSet> sets;
+  private EntryIDSetCodec codec;
+  private ByteString key;
+  private ByteString encodedSet;
+  private EntryID[] lookups;
+  private int next;
+
+  /** Generates two overlapping sets of entry IDs spread over ten times their size. */
+  @Setup
+  public void setUp()
+  {
+    final Random random = new Random(0);
+    ids1 = randomIDs(random);
+    ids2 = randomIDs(random);
+    set1 = newSet(ids1);
+    set2 = newSet(ids2);
+    sets = Arrays.asList(set1, set2);
+    codec = bitmap ? EntryIDSet.CODEC_V3 : EntryIDSet.CODEC_V2;
+    key = ByteString.valueOfUtf8("key");
+    encodedSet = codec.encode(set1);
+    lookups = new EntryID[1024];
+    for (int i = 0; i < lookups.length; i++)
+    {
+      lookups[i] = new EntryID(random.nextInt(size * 10));
+    }
+  }
+
+  private long[] randomIDs(Random random)
+  {
+    final long[] ids = new long[size];
+    long id = 0;
+    for (int i = 0; i < size; i++)
+    {
+      id += 1 + random.nextInt(19);
+      ids[i] = id;
+    }
+    return ids;
+  }
+
+  private EntryIDSet newSet(long[] ids)
+  {
+    return bitmap ? EntryIDSet.newBitmapSet(ids) : EntryIDSet.newDefinedSet(ids.clone());
+  }
+
+  /**
+   * Computes the union of the two sets, as done for OR filters.
+   *
+   * @return The union of the two sets.
+   */
+  @Benchmark
+  public EntryIDSet union()
+  {
+    return EntryIDSet.newSetFromUnion(sets);
+  }
+
+  /**
+   * Computes the intersection of the two sets, as done for AND filters. The
+   * measured time includes copying the first set.
+   *
+   * @return The intersection of the two sets.
+   */
+  @Benchmark
+  public EntryIDSet intersection()
+  {
+    final EntryIDSet result = newSet(ids1);
+    result.retainAll(set2);
+    return result;
+  }
+
+  /**
+   * Adds all the IDs of the second set to a copy of the first one, as done
+   * when updating an index record. The measured time includes copying the first
+   * set.
+   *
+   * @return The resulting set.
+   */
+  @Benchmark
+  public EntryIDSet addAll()
+  {
+    final EntryIDSet result = newSet(ids1);
+    result.addAll(set2);
+    return result;
+  }
+
+  /**
+   * Checks whether a set contains an entry ID.
+   *
+   * @return Whether the set contains the entry ID.
+   */
+  @Benchmark
+  public boolean contains()
+  {
+    next = (next + 1) & (lookups.length - 1);
+    return set1.contains(lookups[next]);
+  }
+
+  /**
+   * Encodes a set as an index record.
+   *
+   * @return The encoded set.
+   */
+  @Benchmark
+  public ByteString encode()
+  {
+    return codec.encode(set1);
+  }
+
+  /**
+   * Decodes an index record.
+   *
+   * @return The decoded set.
+   */
+  @Benchmark
+  public EntryIDSet decode()
+  {
+    return codec.decode(key, encodedSet);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.api.CompressedSchema;
+import org.opends.server.benchmarks.BenchmarkEnvironment;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the encoding of entries stored in the id2entry tree of the
+ * pluggable backends, and their decoding. This class is in the same package as
+ * {@link ID2Entry} in order to call its package private codec methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ID2EntryBenchmark
+{
+  private static final int NUMBER_OF_ENTRIES = 1000;
+
+  /** Whether entries are compressed, like with the entries-compressed backend property. */
+  @Param({ "false", "true" })
+  public boolean compressed;
+
+  /** Whether the object classes and attribute descriptions are encoded using the compressed schema. */
+  @Param({ "true", "false" })
+  public boolean compactEncoding;
+
+  private CompressedSchema compressedSchema;
+  private DataConfig dataConfig;
+  private Entry[] entries;
+  private ByteString[] encodedEntries;
+  private int next;
+
+  /**
+   * Starts the server, generates the entries and encodes them.
+   *
+   * @throws Exception
+   *           If the fixtures could not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    BenchmarkEnvironment.startServer();
+    compressedSchema = DirectoryServer.getDefaultCompressedSchema();
+    dataConfig = new DataConfig(compressed, compactEncoding, compressedSchema);
+    final List<Entry> users = BenchmarkEnvironment.generateUsers(NUMBER_OF_ENTRIES);
+    entries = users.toArray(new Entry[users.size()]);
+    encodedEntries = new ByteString[entries.length];
+    for (int i = 0; i < entries.length; i++)
+    {
+      encodedEntries[i] = ID2Entry.entryToDatabase(entries[i], dataConfig);
+    }
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @throws Exception
+   *           If the server could not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    BenchmarkEnvironment.stopServer();
+  }
+
+  private int nextIndex()
+  {
+    next = next + 1 < entries.length ? next + 1 : 0;
+    return next;
+  }
+
+  /**
+   * Encodes an entry.
+   *
+   * @return The encoded entry.
+   * @throws Exception
+   *           If the entry could not be encoded.
+   */
+  @Benchmark
+  public ByteString encode() throws Exception
+  {
+    return ID2Entry.entryToDatabase(entries[nextIndex()], dataConfig);
+  }
+
+  /**
+   * Decodes an entry.
+   *
+   * @return The decoded entry.
+   * @throws Exception
+   *           If the entry could not be decoded.
+   */
+  @Benchmark
+  public Entry decode() throws Exception
+  {
+    return ID2Entry.entryFromDatabase(encodedEntries[nextIndex()], compressedSchema);
+  }
+}
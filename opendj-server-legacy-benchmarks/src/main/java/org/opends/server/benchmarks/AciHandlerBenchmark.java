@@ -0,0 +1,150 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+import static org.opends.server.protocols.internal.Requests.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.api.AccessControlHandler;
+import org.opends.server.core.AccessControlConfigManager;
+import org.opends.server.protocols.internal.InternalClientConnection;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.types.AuthenticationInfo;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchResultEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the access control evaluation performed for each entry returned
+ * by a search, using the global ACIs of the default configuration. The search
+ * is performed by an authenticated user, or anonymously.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AciHandlerBenchmark
+{
+  private static final int NUMBER_OF_ENTRIES = 1000;
+
+  /** Whether the search is performed by an authenticated user. */
+  @Param({ "true", "false" })
+  public boolean authenticated;
+
+  private AccessControlHandler<?> handler;
+  private InternalSearchOperation operation;
+  private SearchResultEntry[] entries;
+  private int next;
+
+  /**
+   * Starts the server, generates the entries and creates the search operation.
+   *
+   * @throws Exception
+   *           If the fixtures could not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    BenchmarkEnvironment.startServer();
+    handler = AccessControlConfigManager.getInstance().getAccessControlHandler();
+
+    final List<Entry> users = BenchmarkEnvironment.generateUsers(NUMBER_OF_ENTRIES);
+    entries = new SearchResultEntry[users.size()];
+    for (int i = 0; i < entries.length; i++)
+    {
+      entries[i] = new SearchResultEntry(users.get(i));
+    }
+
+    final AuthenticationInfo authInfo =
+        authenticated ? new AuthenticationInfo(users.get(0), false) : new AuthenticationInfo();
+    final InternalClientConnection connection = new InternalClientConnection(authInfo);
+    operation = new InternalSearchOperation(connection, nextOperationID(), nextMessageID(),
+        newSearchRequest(DN.valueOf("ou=People," + BenchmarkEnvironment.SUFFIX), SearchScope.WHOLE_SUBTREE,
+            "(&(objectClass=person)(mail=*))"));
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @throws Exception
+   *           If the server could not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    BenchmarkEnvironment.stopServer();
+  }
+
+  private SearchResultEntry nextEntry()
+  {
+    next = next + 1 < entries.length ? next + 1 : 0;
+    return entries[next];
+  }
+
+  /**
+   * Checks whether an entry may be returned to the client.
+   *
+   * @return Whether the entry may be returned.
+   */
+  @Benchmark
+  public boolean maySend()
+  {
+    return handler.maySend(operation, nextEntry());
+  }
+
+  /**
+   * Removes from a copy of an entry the attributes which may not be returned to
+   * the client. The measured time includes copying the entry.
+   *
+   * @return The filtered entry.
+   */
+  @Benchmark
+  public SearchResultEntry filterEntry()
+  {
+    final SearchResultEntry entry = nextEntry();
+    final SearchResultEntry filteredEntry = new SearchResultEntry(entry.duplicate(false));
+    handler.filterEntry(operation, entry, filteredEntry);
+    return filteredEntry;
+  }
+}
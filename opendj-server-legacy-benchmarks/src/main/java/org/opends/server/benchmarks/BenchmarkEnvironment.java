@@ -0,0 +1,269 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.opends.server.extensions.ConfigFileHandler;
+import org.opends.server.tools.makeldif.MakeLDIFInputStream;
+import org.opends.server.tools.makeldif.TemplateFile;
+import org.opends.server.types.DirectoryEnvironmentConfig;
+import org.opends.server.types.Entry;
+import org.opends.server.types.LDIFImportConfig;
+import org.opends.server.util.BuildVersion;
+import org.opends.server.util.EmbeddedUtils;
+import org.opends.server.util.LDIFReader;
+
+/**
+ * Starts the Directory Server used by the benchmarks and generates their
+ * fixtures.
+ * <p>
+ * The server is started once per JVM, in a temporary instance built from the
+ * configuration and schema of the opendj-server-legacy module, whose location
+ * is provided by the {@value #PROPERTY_BUILD_ROOT} system property. Connection
+ * handlers are disabled and no user backend is configured: the benchmarks call
+ * the server code directly. Fixtures are generated with the MakeLDIF example
+ * template and a fixed random seed, so that every run uses the same data.
+ * Each call to {@link #startServer()} must be followed by a call to
+ * {@link #stopServer()}, the last one stopping the server and deleting its
+ * temporary instance.
+ */
+public final class BenchmarkEnvironment
+{
+  /** The name of the system property providing the location of the opendj-server-legacy module. */
+  public static final String PROPERTY_BUILD_ROOT = "org.opends.server.BuildRoot";
+
+  /** The base DN of the generated entries. */
+  public static final String SUFFIX = "dc=example,dc=com";
+
+  /** The seed of the random number generator used by MakeLDIF. */
+  private static final int RANDOM_SEED = 0;
+
+  private static File instanceRoot;
+  /** The number of benchmark states using the server. */
+  private static int nbUsers;
+
+  private BenchmarkEnvironment()
+  {
+    // Utility class.
+  }
+
+  /**
+   * Starts the Directory Server if it is not already running.
+   *
+   * @throws Exception
+   *           If the server could not be started.
+   */
+  public static synchronized void startServer() throws Exception
+  {
+    if (instanceRoot != null)
+    {
+      nbUsers++;
+      return;
+    }
+
+    final File resourceDir = new File(getBuildRoot(), "resource");
+    final File root = Files.createTempDirectory("opendj-benchmarks").toFile();
+    final File configDir = new File(root, "config");
+    for (String dir : new String[] { "bak", "changelogDb", "classes", "db", "import-tmp", "ldif", "locks", "logs" })
+    {
+      new File(root, dir).mkdirs();
+    }
+    copyDirectory(new File(resourceDir, "config"), configDir);
+    copyDirectory(new File(resourceDir, "schema"), new File(configDir, "schema"));
+    copyDirectory(new File(resourceDir, "MakeLDIF"), new File(configDir, "MakeLDIF"));
+    Files.write(new File(configDir, "buildinfo").toPath(),
+        BuildVersion.binaryVersion().toString().getBytes(StandardCharsets.UTF_8));
+
+    final DirectoryEnvironmentConfig config = new DirectoryEnvironmentConfig();
+    config.setServerRoot(root);
+    config.setInstanceRoot(root);
+    config.setForceDaemonThreads(true);
+    config.setDisableConnectionHandlers(true);
+    config.setConfigClass(ConfigFileHandler.class);
+    config.setConfigFile(new File(configDir, "config.ldif"));
+    try
+    {
+      EmbeddedUtils.startServer(config);
+    }
+    catch (Exception e)
+    {
+      deleteDirectory(root);
+      throw e;
+    }
+    instanceRoot = root;
+    nbUsers = 1;
+  }
+
+  /**
+   * Stops the Directory Server and deletes its temporary instance if this is
+   * the last call matching a call to {@link #startServer()}.
+   *
+   * @throws IOException
+   *           If the temporary instance could not be deleted.
+   */
+  public static synchronized void stopServer() throws IOException
+  {
+    if (instanceRoot == null || --nbUsers > 0)
+    {
+      return;
+    }
+    EmbeddedUtils.stopServer(BenchmarkEnvironment.class.getName(), LocalizableMessage.raw("The benchmarks are over"));
+    deleteDirectory(instanceRoot);
+    instanceRoot = null;
+  }
+
+  /**
+   * Generates entries using the MakeLDIF example template. The first two
+   * entries are the suffix entry and the {@code ou=People} entry, followed by
+   * the requested number of user entries. The server must have been started.
+   *
+   * @param numberOfUsers
+   *          The number of user entries to generate.
+   * @return The generated entries.
+   * @throws Exception
+   *           If the entries could not be generated.
+   */
+  public static List<Entry> generateEntries(int numberOfUsers) throws Exception
+  {
+    final File makeLDIFDir = new File(new File(instanceRoot, "config"), "MakeLDIF");
+    final List<String> lines =
+        Files.readAllLines(new File(makeLDIFDir, "example.template").toPath(), StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++)
+    {
+      if (lines.get(i).startsWith("define numusers="))
+      {
+        lines.set(i, "define numusers=" + numberOfUsers);
+      }
+      else if (lines.get(i).startsWith("define suffix="))
+      {
+        lines.set(i, "define suffix=" + SUFFIX);
+      }
+    }
+
+    final TemplateFile templateFile = new TemplateFile(makeLDIFDir.getAbsolutePath(), new Random(RANDOM_SEED));
+    templateFile.parse(lines.toArray(new String[lines.size()]), new ArrayList<LocalizableMessage>());
+    final List<Entry> entries = new ArrayList<>(numberOfUsers + 2);
+    try (LDIFReader reader = new LDIFReader(new LDIFImportConfig(new MakeLDIFInputStream(templateFile))))
+    {
+      Entry entry;
+      while ((entry = reader.readEntry(false)) != null)
+      {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Generates user entries using the MakeLDIF example template, and returns
+   * them in a random, but reproducible, order so that consecutive invocations
+   * of a benchmark do not access related data.
+   *
+   * @param numberOfUsers
+   *          The number of user entries to generate.
+   * @return The generated user entries.
+   * @throws Exception
+   *           If the entries could not be generated.
+   */
+  public static List<Entry> generateUsers(int numberOfUsers) throws Exception
+  {
+    final List<Entry> entries = generateEntries(numberOfUsers);
+    final List<Entry> users = new ArrayList<>(entries.subList(2, entries.size()));
+    Collections.shuffle(users, new Random(RANDOM_SEED));
+    return users;
+  }
+
+  private static File getBuildRoot()
+  {
+    final String buildRoot = System.getProperty(PROPERTY_BUILD_ROOT);
+    if (buildRoot == null)
+    {
+      throw new IllegalStateException("The " + PROPERTY_BUILD_ROOT
+          + " system property must provide the location of the opendj-server-legacy module");
+    }
+    return new File(buildRoot);
+  }
+
+  private static void deleteDirectory(File directory) throws IOException
+  {
+    Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+      {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException
+      {
+        if (e != null)
+        {
+          throw e;
+        }
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static void copyDirectory(File source, File target) throws IOException
+  {
+    final Path sourcePath = source.toPath();
+    final Path targetPath = target.toPath();
+    Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>()
+    {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+      {
+        Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+      {
+        Files.copy(file, targetPath.resolve(sourcePath.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the results of two benchmark runs, written by JMH in CSV format
+ * with {@code -rf csv}, and reports the benchmarks whose score got worse by
+ * more than a threshold, along with the benchmarks of the baseline missing
+ * from the current run. The exit code is 0 if there is no regression, 1 if
+ * there are regressions, which allows to fail a build, and 2 if the arguments
+ * or the result files are invalid. Usage:
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.opends.server.benchmarks.CompareResults baseline.csv current.csv [thresholdPercent]
+ * </pre>
+ */
+public final class CompareResults
+{
+  /** The default threshold, in percents, above which a score change is reported as a regression. */
+  private static final double DEFAULT_THRESHOLD = 10;
+  /** The exit code when some benchmarks regressed. */
+  private static final int EXIT_REGRESSIONS = 1;
+  /** The exit code when the arguments or the result files are invalid. */
+  private static final int EXIT_ERROR = 2;
+
+  /** A benchmark result: one line of a JMH CSV result file. */
+  private static final class Result
+  {
+    private final String mode;
+    private final double score;
+    private final double error;
+    private final String unit;
+
+    private Result(String mode, double score, double error, String unit)
+    {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+
+    /** Throughput modes report operations per unit of time, the other ones report times. */
+    private boolean isHigherBetter()
+    {
+      return "thrpt".equals(mode);
+    }
+  }
+
+  private CompareResults()
+  {
+    // Command line tool.
+  }
+
+  /**
+   * Compares two result files.
+   *
+   * @param args
+   *          The baseline result file, the current result file, and optionally
+   *          the regression threshold in percents.
+   */
+  public static void main(String[] args)
+  {
+    if (args.length < 2 || args.length > 3)
+    {
+      System.err.println("Usage: CompareResults baseline.csv current.csv [thresholdPercent]");
+      System.exit(EXIT_ERROR);
+    }
+    final Map<String, Result> baseline;
+    final Map<String, Result> current;
+    final double threshold;
+    try
+    {
+      baseline = readResults(args[0]);
+      current = readResults(args[1]);
+      threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+    }
+    catch (IOException | NumberFormatException e)
+    {
+      System.err.println("CompareResults: " + e);
+      System.exit(EXIT_ERROR);
+      return;
+    }
+
+    int regressions = 0;
+    for (Map.Entry<String, Result> entry : current.entrySet())
+    {
+      final Result after = entry.getValue();
+      final Result before = baseline.get(entry.getKey());
+      if (before == null || !before.unit.equals(after.unit) || before.score == 0)
+      {
+        System.out.println(String.format("%-100s %12.3f %s (new)", entry.getKey(), after.score, after.unit));
+        continue;
+      }
+
+      double change = (after.score - before.score) * 100 / before.score;
+      if (after.isHigherBetter())
+      {
+        change = -change;
+      }
+      // Changes within the error margins of both runs are noise.
+      final boolean significant = Math.abs(after.score - before.score) > before.error + after.error;
+      final boolean regression = significant && change > threshold;
+      if (regression)
+      {
+        regressions++;
+      }
+      System.out.println(String.format("%-100s %12.3f -> %12.3f %s %+7.1f%%%s", entry.getKey(), before.score,
+          after.score, after.unit, change, regression ? " REGRESSION" : ""));
+    }
+    for (Map.Entry<String, Result> entry : baseline.entrySet())
+    {
+      if (!current.containsKey(entry.getKey()))
+      {
+        final Result before = entry.getValue();
+        System.out.println(String.format("%-100s %12.3f %s (missing)", entry.getKey(), before.score, before.unit));
+      }
+    }
+    System.out.println(regressions + " regression(s)");
+    System.exit(regressions > 0 ? EXIT_REGRESSIONS : 0);
+  }
+
+  private static Map<String, Result> readResults(String fileName) throws IOException
+  {
+    final List<String> lines = Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+    final Map<String, Result> results = new LinkedHashMap<>();
+    if (lines.isEmpty())
+    {
+      return results;
+    }
+
+    // "Benchmark","Mode","Threads","Samples","Score","Score Error (99.9%)","Unit","Param: name",...
+    final List<String> header = parseLine(lines.get(0));
+    final int benchmark = header.indexOf("Benchmark");
+    final int mode = header.indexOf("Mode");
+    final int score = header.indexOf("Score");
+    final int error = header.indexOf("Score Error (99.9%)");
+    final int unit = header.indexOf("Unit");
+    for (String line : lines.subList(1, lines.size()))
+    {
+      final List<String> fields = parseLine(line);
+      if (fields.size() != header.size())
+      {
+        continue;
+      }
+      final StringBuilder key = new StringBuilder(fields.get(benchmark));
+      for (int i = 0; i < header.size(); i++)
+      {
+        if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty())
+        {
+          key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+        }
+      }
+      key.append(" (").append(fields.get(mode)).append(')');
+      results.put(key.toString(), new Result(fields.get(mode), parseNumber(fields.get(score)),
+          error >= 0 ? parseNumber(fields.get(error)) : 0, fields.get(unit)));
+    }
+    return results;
+  }
+
+  private static double parseNumber(String value)
+  {
+    if (value.isEmpty() || "NaN".equals(value))
+    {
+      return 0;
+    }
+    // JMH formats numbers using the default locale.
+    return Double.parseDouble(value.replace(',', '.'));
+  }
+
+  private static List<String> parseLine(String line)
+  {
+    final List<String> fields = new ArrayList<>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++)
+    {
+      final char c = line.charAt(i);
+      if (c == '"')
+      {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"')
+        {
+          field.append(c);
+          i++;
+        }
+        else
+        {
+          quoted = !quoted;
+        }
+      }
+      else if (c == ',' && !quoted)
+      {
+        fields.add(field.toString());
+        field.setLength(0);
+      }
+      else
+      {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks the decoding and normalization of DNs. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DNBenchmark
+{
+  private static final int NUMBER_OF_DNS = 1000;
+
+  private String[] dnStrings;
+  private DN[] dns;
+  private DN baseDN;
+  private int next;
+
+  /**
+   * Starts the server and generates the DNs.
+   *
+   * @throws Exception
+   *           If the fixtures could not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    BenchmarkEnvironment.startServer();
+    final List<Entry> users = BenchmarkEnvironment.generateUsers(NUMBER_OF_DNS);
+    dnStrings = new String[users.size()];
+    dns = new DN[users.size()];
+    for (int i = 0; i < users.size(); i++)
+    {
+      dns[i] = users.get(i).getName();
+      // Use a different case to exercise the normalization.
+      dnStrings[i] = dns[i].toString().toUpperCase();
+    }
+    baseDN = DN.valueOf("ou=People," + BenchmarkEnvironment.SUFFIX);
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @throws Exception
+   *           If the server could not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    BenchmarkEnvironment.stopServer();
+  }
+
+  private int nextIndex()
+  {
+    next = next + 1 < dns.length ? next + 1 : 0;
+    return next;
+  }
+
+  /**
+   * Decodes a DN string.
+   *
+   * @return The decoded DN.
+   * @throws DirectoryException
+   *           If the DN could not be decoded.
+   */
+  @Benchmark
+  public DN valueOf() throws DirectoryException
+  {
+    return DN.valueOf(dnStrings[nextIndex()]);
+  }
+
+  /**
+   * Decodes a DN string and normalizes the resulting DN, as done when using a
+   * DN received from a client as a key.
+   *
+   * @return The normalized DN.
+   * @throws DirectoryException
+   *           If the DN could not be decoded.
+   */
+  @Benchmark
+  public ByteString valueOfAndNormalize() throws DirectoryException
+  {
+    return DN.valueOf(dnStrings[nextIndex()]).toNormalizedByteString();
+  }
+
+  /**
+   * Checks whether a DN is subordinate to a base DN, as done when evaluating
+   * the scope of a search.
+   *
+   * @return Whether the DN is subordinate to the base DN.
+   */
+  @Benchmark
+  public boolean isDescendantOf()
+  {
+    return dns[nextIndex()].isDescendantOf(baseDN);
+  }
+}
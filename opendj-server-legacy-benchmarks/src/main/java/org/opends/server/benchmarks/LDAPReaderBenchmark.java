@@ -0,0 +1,149 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.io.ASN1;
+import org.forgerock.opendj.io.ASN1Writer;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.DereferenceAliasesPolicy;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.protocols.ldap.LDAPMessage;
+import org.opends.server.protocols.ldap.LDAPReader;
+import org.opends.server.protocols.ldap.ProtocolOp;
+import org.opends.server.protocols.ldap.SearchRequestProtocolOp;
+import org.opends.server.protocols.ldap.SearchResultEntryProtocolOp;
+import org.opends.server.types.Entry;
+import org.opends.server.types.LDAPException;
+import org.opends.server.types.RawFilter;
+import org.opends.server.types.SearchResultEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks the decoding of LDAP messages received from the network. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LDAPReaderBenchmark
+{
+  private static final int NUMBER_OF_ENTRIES = 1000;
+
+  private ByteString searchRequest;
+  private ByteString[] searchResultEntries;
+  private int next;
+
+  /**
+   * Starts the server, generates the entries and encodes the messages.
+   *
+   * @throws Exception
+   *           If the fixtures could not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    BenchmarkEnvironment.startServer();
+
+    final LinkedHashSet<String> attributes = new LinkedHashSet<>();
+    attributes.add("cn");
+    attributes.add("mail");
+    attributes.add("telephoneNumber");
+    searchRequest = encode(new SearchRequestProtocolOp(ByteString.valueOfUtf8(BenchmarkEnvironment.SUFFIX),
+        SearchScope.WHOLE_SUBTREE, DereferenceAliasesPolicy.NEVER, 0, 0, false,
+        RawFilter.create("(&(objectClass=person)(uid=user.500))"), attributes));
+
+    final List<Entry> users = BenchmarkEnvironment.generateUsers(NUMBER_OF_ENTRIES);
+    searchResultEntries = new ByteString[users.size()];
+    for (int i = 0; i < searchResultEntries.length; i++)
+    {
+      searchResultEntries[i] = encode(new SearchResultEntryProtocolOp(new SearchResultEntry(users.get(i))));
+    }
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @throws Exception
+   *           If the server could not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    BenchmarkEnvironment.stopServer();
+  }
+
+  private static ByteString encode(ProtocolOp protocolOp) throws IOException
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder();
+    final ASN1Writer writer = ASN1.getWriter(builder);
+    new LDAPMessage(1, protocolOp).write(writer);
+    writer.flush();
+    return builder.toByteString();
+  }
+
+  /**
+   * Decodes a search request.
+   *
+   * @return The decoded message.
+   * @throws LDAPException
+   *           If the message could not be decoded.
+   */
+  @Benchmark
+  public LDAPMessage readSearchRequest() throws LDAPException
+  {
+    return LDAPReader.readMessage(ASN1.getReader(searchRequest));
+  }
+
+  /**
+   * Decodes a search result entry, as done by the command line tools.
+   *
+   * @return The decoded message.
+   * @throws LDAPException
+   *           If the message could not be decoded.
+   */
+  @Benchmark
+  public LDAPMessage readSearchResultEntry() throws LDAPException
+  {
+    next = next + 1 < searchResultEntries.length ? next + 1 : 0;
+    return LDAPReader.readMessage(ASN1.getReader(searchResultEntries[next]));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks the decoding of search filters and their evaluation against entries. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchFilterBenchmark
+{
+  private static final int NUMBER_OF_ENTRIES = 1000;
+
+  /** The filter to evaluate. */
+  @Param({
+    "(uid=user.500)",
+    "(objectClass=*)",
+    "(cn=*smith*)",
+    "(&(objectClass=person)(|(givenName=a*)(sn=a*)))",
+    "(&(employeeNumber>=100)(employeeNumber<=200))",
+  })
+  public String filterString;
+
+  private Entry[] entries;
+  private SearchFilter filter;
+  private int next;
+
+  /**
+   * Starts the server, generates the entries and decodes the filter.
+   *
+   * @throws Exception
+   *           If the fixtures could not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception
+  {
+    BenchmarkEnvironment.startServer();
+    final List<Entry> users = BenchmarkEnvironment.generateUsers(NUMBER_OF_ENTRIES);
+    entries = users.toArray(new Entry[users.size()]);
+    filter = SearchFilter.createFilterFromString(filterString);
+  }
+
+  /**
+   * Stops the server.
+   *
+   * @throws Exception
+   *           If the server could not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    BenchmarkEnvironment.stopServer();
+  }
+
+  /**
+   * Decodes the filter string.
+   *
+   * @return The decoded filter.
+   * @throws DirectoryException
+   *           If the filter could not be decoded.
+   */
+  @Benchmark
+  public SearchFilter createFilterFromString() throws DirectoryException
+  {
+    return SearchFilter.createFilterFromString(filterString);
+  }
+
+  /**
+   * Evaluates the filter against an entry.
+   *
+   * @return Whether the entry matches the filter.
+   * @throws DirectoryException
+   *           If the filter could not be evaluated.
+   */
+  @Benchmark
+  public boolean matchesEntry() throws DirectoryException
+  {
+    next = next + 1 < entries.length ? next + 1 : 0;
+    return filter.matchesEntry(entries[next]);
+  }
+}
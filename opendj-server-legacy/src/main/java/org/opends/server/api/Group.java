@@ -40,6 +40,7 @@ import org.opends.server.types.DN;
 import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
 import org.opends.server.types.MemberList;
+import org.opends.server.types.Modification;
 import org.opends.server.types.SearchFilter;
 import org.forgerock.opendj.ldap.SearchScope;
 
@@ -500,6 +501,78 @@ public abstract class Group<T extends GroupImplementationCfg>
 
 
 
+  /**
+   * Indicates whether the members of this group are explicitly
+   * listed, so that the member list returned by {@link #getMembers()}
+   * may be indexed by member DN. Groups returning {@code true} must
+   * report every change to their member list to the group manager.
+   * The default implementation returns {@code false}.
+   *
+   * @return  {@code true} if the member list of this group may be
+   *          indexed, or {@code false} if the membership must be
+   *          checked for each entry.
+   */
+  public boolean isMemberListIndexable()
+  {
+    return false;
+  }
+
+
+
+  /**
+   * Indicates whether this group instance must be notified of the
+   * changes made to the entries of the server, for example because it
+   * keeps state derived from these entries. The default
+   * implementation returns {@code false}.
+   *
+   * @return  {@code true} if {@link #entryChanged(Entry, Entry)} must
+   *          be invoked for each change made to an entry, or
+   *          {@code false} if not.
+   */
+  public boolean requiresEntryChanges()
+  {
+    return false;
+  }
+
+
+
+  /**
+   * Notifies this group instance of a change made to an entry of the
+   * server. It is only invoked if {@link #requiresEntryChanges()}
+   * returns {@code true}. The default implementation does nothing.
+   *
+   * @param  oldEntry  The entry before the change, or {@code null} if
+   *                   the entry has been added.
+   * @param  newEntry  The entry after the change, or {@code null} if
+   *                   the entry has been deleted.
+   */
+  public void entryChanged(Entry oldEntry, Entry newEntry)
+  {
+    // No implementation is required by default.
+  }
+
+
+
+  /**
+   * Attempts to apply the provided modifications of the group entry
+   * to this group instance in place, so that the group manager does
+   * not need to recreate the group instance from the modified entry.
+   * The default implementation does not support it.
+   *
+   * @param  modifications  The modifications which have been applied
+   *                        to the group entry.
+   *
+   * @return  {@code true} if the modifications have been applied to
+   *          this group instance, or {@code false} if the group
+   *          instance must be recreated from the modified entry.
+   */
+  public boolean applyModifications(List<Modification> modifications)
+  {
+    return false;
+  }
+
+
+
   /**
    * Retrieves a string representation of this group.
    *
@@ -510,22 +510,26 @@ public class Aci implements Comparable<Aci>
      * Evaluate this ACI using the evaluation context provided. Re-direct
      * that calls the body's evaluate method.
      * @param evalCtx The evaluation context to evaluate with.
+     * @param decisionCache The cache of the bind rule results which only
+     *                      depend on the client.
      * @return EnumEvalResult that contains the evaluation result of this
      * aci evaluation.
      */
-    private EnumEvalResult evaluate(AciEvalContext evalCtx) {
-        return body.evaluate(evalCtx);
+    private EnumEvalResult evaluate(AciEvalContext evalCtx, AciDecisionCache decisionCache) {
+        return body.evaluate(evalCtx, decisionCache);
     }
 
     /**
      * Static class used to evaluate an ACI and evaluation context.
      * @param evalCtx  The context to evaluate with.
      * @param aci The ACI to evaluate.
+     * @param decisionCache The cache of the bind rule results which only
+     *                      depend on the client.
      * @return EnumEvalResult that contains the evaluation result of the aci
      * evaluation.
      */
-    public static EnumEvalResult evaluate(AciEvalContext evalCtx, Aci aci) {
-        return aci.evaluate(evalCtx);
+    public static EnumEvalResult evaluate(AciEvalContext evalCtx, Aci aci, AciDecisionCache decisionCache) {
+        return aci.evaluate(evalCtx, decisionCache);
     }
 
     /**
@@ -287,9 +287,11 @@ public class AciBody {
      *     below in the code.
      *
      * @param evalCtx The evaluation context to evaluate against.
+     * @param decisionCache The cache of the bind rule results which only
+     *                      depend on the client.
      * @return An enumeration result of the evaluation.
      */
-    public  EnumEvalResult evaluate(AciEvalContext evalCtx) {
+    public  EnumEvalResult evaluate(AciEvalContext evalCtx, AciDecisionCache decisionCache) {
         EnumEvalResult res = FALSE;
         List<PermBindRulePair>pairs=getPermBindRulePairs();
         for(PermBindRulePair p : pairs) {
@@ -299,7 +301,7 @@ public class AciBody {
             if(!p.hasRights(getEvalRights(evalCtx))) {
                 continue;
             }
-            res=p.getBindRule().evaluate(evalCtx);
+            res=decisionCache.evaluate(p.getBindRule(), evalCtx);
             // The evaluation result could be FAIL. Stop processing and return
             //FAIL. Maybe an internal search failed.
             if(res != TRUE && res != FALSE) {
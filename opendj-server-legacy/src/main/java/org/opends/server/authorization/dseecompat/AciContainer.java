@@ -216,6 +216,9 @@ implements AciTargetMatchContext, AciEvalContext {
      */
     private AuthenticationInfo authInfo;
 
+    /** The key identifying the client in the ACI decision cache, lazily created. */
+    private AciDecisionCache.ClientKey decisionCacheClientKey;
+
   /**
      * This constructor is used by all currently supported LDAP operations
      * except the generic access control check that can be used by
@@ -888,6 +891,22 @@ implements AciTargetMatchContext, AciEvalContext {
       return clientConnection.getSSF();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public AciDecisionCache.ClientKey getDecisionCacheClientKey() {
+      // Only cache when evaluating for the authenticated client itself,
+      // not for a proxied or a geteffectiverights authorization identity.
+      if (useAuthzid || authInfo == null
+          || authorizationEntry != authInfo.getAuthorizationEntry()) {
+          return null;
+      }
+      if (decisionCacheClientKey == null) {
+          decisionCacheClientKey =
+              new AciDecisionCache.ClientKey(clientConnection, authInfo, getCurrentSSF());
+      }
+      return decisionCacheClientKey;
+  }
+
   /** {@inheritDoc} */
   @Override
   public String toString()
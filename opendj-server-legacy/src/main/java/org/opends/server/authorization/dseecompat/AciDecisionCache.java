@@ -0,0 +1,288 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.authorization.dseecompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.AuthenticationInfo;
+
+/**
+ * Caches the results of the bind rules which only depend on the client (ip,
+ * dns, ssf, authmethod, groupdn and most userdn bind rules), so that searches
+ * returning many entries to the same client do not evaluate the same bind
+ * rules again and again for every entry and attribute.
+ * <p>
+ * Results are cached per client connection and authentication state, and per
+ * bind rule instance. Bind rules are recreated whenever ACIs change, so stale
+ * ACIs can never be hit, but the cache is cleared anyway by the
+ * {@link AciListenerManager} to release them. Since groupdn results depend on
+ * group membership, each result records the group manager membership token it
+ * was computed with, and is ignored once group memberships have changed.
+ * <p>
+ * The cache is bounded: it is cleared when it reaches its maximum size.
+ */
+final class AciDecisionCache
+{
+  /** The default maximum number of cached bind rule results. */
+  static final int DEFAULT_MAX_SIZE = 10000;
+
+  /**
+   * Identifies a client: its connection and its authentication state. The
+   * connection and the authentication information are compared by identity,
+   * since a bind replaces the authentication information of the connection.
+   */
+  static final class ClientKey
+  {
+    private final ClientConnection connection;
+    private final AuthenticationInfo authInfo;
+    private final int ssf;
+
+    ClientKey(ClientConnection connection, AuthenticationInfo authInfo, int ssf)
+    {
+      this.connection = connection;
+      this.authInfo = authInfo;
+      this.ssf = ssf;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+      {
+        return true;
+      }
+      if (!(obj instanceof ClientKey))
+      {
+        return false;
+      }
+      final ClientKey other = (ClientKey) obj;
+      return connection == other.connection && authInfo == other.authInfo && ssf == other.ssf;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * (31 * System.identityHashCode(connection) + System.identityHashCode(authInfo)) + ssf;
+    }
+  }
+
+  /** Key of a cached result: a client and a bind rule instance. */
+  private static final class Key
+  {
+    private final ClientKey client;
+    private final BindRule bindRule;
+
+    private Key(ClientKey client, BindRule bindRule)
+    {
+      this.client = client;
+      this.bindRule = bindRule;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+      {
+        return true;
+      }
+      if (!(obj instanceof Key))
+      {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return bindRule == other.bindRule && client.equals(other.client);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * client.hashCode() + System.identityHashCode(bindRule);
+    }
+  }
+
+  /** A cached result, along with the group membership token it was computed with. */
+  private static final class Decision
+  {
+    private final EnumEvalResult result;
+    private final long membershipToken;
+
+    private Decision(EnumEvalResult result, long membershipToken)
+    {
+      this.result = result;
+      this.membershipToken = membershipToken;
+    }
+  }
+
+  /** Exposes the cache statistics under cn=monitor. */
+  private final class Monitor extends MonitorProvider<MonitorProviderCfg>
+  {
+    @Override
+    public String getMonitorInstanceName()
+    {
+      return "Access Control Decision Cache";
+    }
+
+    @Override
+    public List<Attribute> getMonitorData()
+    {
+      final long nbHits = hits.get();
+      final long nbMisses = misses.get();
+      final long total = nbHits + nbMisses;
+      final List<Attribute> attrs = new ArrayList<>();
+      attrs.add(Attributes.create("cacheHits", String.valueOf(nbHits)));
+      attrs.add(Attributes.create("cacheMisses", String.valueOf(nbMisses)));
+      attrs.add(Attributes.create("cacheHitRatio", String.valueOf(total != 0 ? nbHits * 100 / total : 0)));
+      attrs.add(Attributes.create("cacheInvalidations", String.valueOf(invalidations.get())));
+      attrs.add(Attributes.create("currentCacheEntries", String.valueOf(results.size())));
+      attrs.add(Attributes.create("maxCacheEntries", String.valueOf(maxSize)));
+      return attrs;
+    }
+  }
+
+  private final ConcurrentMap<Key, Decision> results = new ConcurrentHashMap<>();
+  private final int maxSize;
+  /** The group manager membership token when this cache was last cleared. */
+  private volatile long membershipToken;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final Monitor monitor = new Monitor();
+
+  /**
+   * Creates a new decision cache.
+   *
+   * @param maxSize
+   *          The maximum number of cached bind rule results.
+   */
+  AciDecisionCache(int maxSize)
+  {
+    this.maxSize = maxSize;
+    this.membershipToken = DirectoryServer.getGroupManager().membershipToken();
+  }
+
+  /** Registers the monitor of this cache with the server. */
+  void registerMonitor()
+  {
+    DirectoryServer.registerMonitorProvider(monitor);
+  }
+
+  /** Deregisters the monitor of this cache from the server. */
+  void deregisterMonitor()
+  {
+    DirectoryServer.deregisterMonitorProvider(monitor);
+  }
+
+  /**
+   * Evaluates the provided bind rule, returning the cached result if the
+   * bind rule only depends on the client and has already been evaluated for
+   * this client.
+   *
+   * @param bindRule
+   *          The bind rule to evaluate.
+   * @param evalCtx
+   *          The evaluation context.
+   * @return The result of the evaluation.
+   */
+  EnumEvalResult evaluate(BindRule bindRule, AciEvalContext evalCtx)
+  {
+    final ClientKey client = bindRule.isClientScoped() ? evalCtx.getDecisionCacheClientKey() : null;
+    if (client == null)
+    {
+      return bindRule.evaluate(evalCtx);
+    }
+
+    final long token = DirectoryServer.getGroupManager().membershipToken();
+    if (token != membershipToken)
+    {
+      // release the results computed with the previous group memberships
+      membershipToken = token;
+      clear();
+    }
+
+    final Key key = new Key(client, bindRule);
+    final Decision decision = results.get(key);
+    if (decision != null && decision.membershipToken == token)
+    {
+      hits.incrementAndGet();
+      return decision.result;
+    }
+
+    misses.incrementAndGet();
+    final EnumEvalResult result = bindRule.evaluate(evalCtx);
+    // Do not cache failures, e.g. an internal search which failed.
+    // If group memberships change during the evaluation, the stored token
+    // is already outdated and the result will never be returned.
+    if (result == EnumEvalResult.TRUE || result == EnumEvalResult.FALSE)
+    {
+      if (results.size() >= maxSize)
+      {
+        results.clear();
+      }
+      results.put(key, new Decision(result, token));
+    }
+    return result;
+  }
+
+  /** Clears this cache, for example because ACIs have changed. */
+  void clear()
+  {
+    results.clear();
+    invalidations.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of evaluations answered from this cache.
+   *
+   * @return The number of evaluations answered from this cache.
+   */
+  long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of evaluations of client scoped bind rules which were
+   * not found in this cache.
+   *
+   * @return The number of cache misses.
+   */
+  long getMisses()
+  {
+    return misses.get();
+  }
+}
@@ -306,4 +306,14 @@ public interface AciEvalContext
      * @return The current SSF of the connection.
      */
     int getCurrentSSF();
+
+    /**
+     * Return the key identifying the client in the cache of the bind rule
+     * results which only depend on the client.
+     *
+     * @return The key identifying the client, or {@code null} if bind rule
+     *         results must not be cached for this evaluation, for example
+     *         because proxied authorization is in use.
+     */
+    AciDecisionCache.ClientKey getDecisionCacheClientKey();
 }
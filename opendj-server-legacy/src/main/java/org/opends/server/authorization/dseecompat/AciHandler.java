@@ -147,6 +147,9 @@ public final class AciHandler extends
    */
   private AciListenerManager aciListenerMgr;
 
+  /** The cache of the bind rule results which only depend on the client. */
+  private AciDecisionCache decisionCache;
+
   /** Creates a new DSEE-compatible access control handler. */
   public AciHandler()
   {
@@ -185,6 +188,7 @@ public final class AciHandler extends
   public void finalizeAccessControlHandler()
   {
     aciListenerMgr.finalizeListenerManager();
+    decisionCache.deregisterMonitor();
     AciEffectiveRights.finalizeOnShutdown();
     DirectoryServer.deregisterSupportedControl(OID_GET_EFFECTIVE_RIGHTS);
   }
@@ -198,9 +202,11 @@ public final class AciHandler extends
     initStatics();
     DN configurationDN = configuration.dn();
     aciList = new AciList(configurationDN);
-    aciListenerMgr = new AciListenerManager(aciList, configurationDN);
+    decisionCache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    aciListenerMgr = new AciListenerManager(aciList, decisionCache, configurationDN);
     processGlobalAcis(configuration);
     processConfigAcis();
+    decisionCache.registerMonitor();
     DirectoryServer.registerSupportedControl(OID_GET_EFFECTIVE_RIGHTS);
   }
 
@@ -1176,7 +1182,7 @@ public final class AciHandler extends
 
     for (Aci denyAci : evalCtx.getDenyList())
     {
-      final EnumEvalResult res = Aci.evaluate(evalCtx, denyAci);
+      final EnumEvalResult res = Aci.evaluate(evalCtx, denyAci, decisionCache);
       // Failure could be returned if a system limit is hit or
       // search fails
       if (res.equals(EnumEvalResult.FAIL))
@@ -1197,7 +1203,7 @@ public final class AciHandler extends
 
     for (Aci allowAci : evalCtx.getAllowList())
     {
-      final EnumEvalResult res = Aci.evaluate(evalCtx, allowAci);
+      final EnumEvalResult res = Aci.evaluate(evalCtx, allowAci, decisionCache);
       if (res.equals(EnumEvalResult.TRUE))
       {
         if (testAndSetTargAttrOperationMatches(evalCtx, allowAci, false))
@@ -30,7 +30,7 @@ import static org.opends.messages.AccessControlMessages.*;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import static org.opends.server.authorization.dseecompat.AciHandler.*;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.opends.server.api.Backend;
@@ -41,23 +41,125 @@ import org.forgerock.opendj.ldap.ByteString;
 /**
  * The AciList class performs caching of the ACI attribute values
  * using the entry DN as the key.
+ * <p>
+ * Readers never lock: every change to the ACIs publishes a new immutable
+ * {@link AciIndex}, a DN trie whose nodes hold the precomputed list of the
+ * ACIs inherited from the entry and its parents. Looking up the candidate
+ * ACIs for an entry is then a walk down the trie following the RDNs of the
+ * entry DN, without allocating anything unless global ACIs apply.
  */
 public class AciList {
 
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * An immutable index of the ACIs, used by readers. It is a trie of the DNs
+   * holding ACIs, keyed by RDN, starting from the root DN.
+   */
+  private static final class AciIndex
+  {
+    /** A node of the trie. */
+    private static final class Node
+    {
+      private final Map<RDN, Node> children = new HashMap<>();
+      /** The ACIs held by the entry of this node. */
+      private List<Aci> acis = Collections.emptyList();
+      /** The ACIs held by the entry of this node and by its parents, closest first. */
+      private List<Aci> inheritedAcis = Collections.emptyList();
+    }
+
+    private final Node root = new Node();
+    /** The global ACIs, held by the root DN. */
+    private final List<Aci> globalAcis;
+
+    /**
+     * Builds the index of the provided ACIs.
+     *
+     * @param aciList
+     *          the ACIs keyed by the DN of the entry holding them
+     */
+    private AciIndex(DITCacheMap<List<Aci>> aciList)
+    {
+      List<Aci> globals = Collections.emptyList();
+      for (Map.Entry<DN, List<Aci>> mapEntry : aciList.entrySet())
+      {
+        final DN dn = mapEntry.getKey();
+        final List<Aci> acis = mapEntry.getValue();
+        if (dn.isRootDN())
+        {
+          globals = Collections.unmodifiableList(new ArrayList<>(acis));
+          continue;
+        }
+        Node node = root;
+        for (int i = dn.size() - 1; i >= 0; i--)
+        {
+          final RDN rdn = dn.getRDN(i);
+          Node child = node.children.get(rdn);
+          if (child == null)
+          {
+            child = new Node();
+            node.children.put(rdn, child);
+          }
+          node = child;
+        }
+        node.acis = acis;
+      }
+      this.globalAcis = globals;
+      computeInheritedAcis(root, Collections.<Aci> emptyList());
+    }
+
+    private static void computeInheritedAcis(Node node, List<Aci> parentAcis)
+    {
+      if (node.acis.isEmpty())
+      {
+        node.inheritedAcis = parentAcis;
+      }
+      else
+      {
+        final List<Aci> inherited = new ArrayList<>(node.acis.size() + parentAcis.size());
+        inherited.addAll(node.acis);
+        inherited.addAll(parentAcis);
+        node.inheritedAcis = Collections.unmodifiableList(inherited);
+      }
+      for (Node child : node.children.values())
+      {
+        computeInheritedAcis(child, node.inheritedAcis);
+      }
+    }
+
+    /**
+     * Returns the ACIs held by the provided DN and its parents, closest first,
+     * excluding the global ACIs.
+     */
+    private List<Aci> getInheritedAcis(DN dn)
+    {
+      Node node = root;
+      for (int i = dn.size() - 1; i >= 0; i--)
+      {
+        final Node child = node.children.get(dn.getRDN(i));
+        if (child == null)
+        {
+          break;
+        }
+        node = child;
+      }
+      return node.inheritedAcis;
+    }
+  }
 
   /**
-   * A map containing all the ACIs.
-   * We use the copy-on-write technique to avoid locking when reading.
+   * A map containing all the ACIs, only used by writers and guarded by
+   * {@link #lock}.
    */
-  private volatile DITCacheMap<List<Aci>> aciList = new DITCacheMap<>();
+  private final DITCacheMap<List<Aci>> aciList = new DITCacheMap<>();
+
+  /** The index of the ACIs used by readers, replaced after each change. */
+  private volatile AciIndex index = new AciIndex(aciList);
 
   /**
-   * Lock to protect internal data structures.
+   * Lock serializing the changes to the ACIs. Readers do not need it.
    */
-  private final ReentrantReadWriteLock lock =
-          new ReentrantReadWriteLock();
+  private final ReentrantLock lock = new ReentrantLock();
 
   /** The configuration DN used to compare against the global ACI entry DN. */
   private DN configDN;
@@ -77,58 +179,42 @@ public class AciList {
    * and are included in the candidate set only if they have no
    * "target" keyword rules, or if the target keyword rule matches for
    * the specified base DN.
+   * <p>
+   * The returned list must not be modified.
    *
    * @param baseDN  The DN to check.
    * @return A list of candidate ACIs that might be applicable.
    */
   public List<Aci> getCandidateAcis(DN baseDN) {
-    List<Aci> candidates = new LinkedList<>();
     if(baseDN == null)
     {
-      return candidates;
+      return Collections.emptyList();
     }
 
-    lock.readLock().lock();
-    try
-    {
-      //Save the baseDN in case we need to evaluate a global ACI.
-      DN entryDN=baseDN;
-      while (baseDN != null) {
-        List<Aci> acis = aciList.get(baseDN);
-        if (acis != null) {
-          //Check if there are global ACIs. Global ACI has a NULL DN.
-          if (baseDN.isRootDN()) {
-            for (Aci aci : acis) {
-              AciTargets targets = aci.getTargets();
-              //If there is a target, evaluate it to see if this ACI should
-              //be included in the candidate set.
-              if (targets != null
-                  && AciTargets.isTargetApplicable(aci, targets, entryDN))
-              {
-                  candidates.add(aci);  //Add this ACI to the candidates.
-              }
-            }
-          } else {
-            candidates.addAll(acis);
-          }
-        }
-        if(baseDN.isRootDN()) {
-          break;
-        }
-        DN parentDN=baseDN.parent();
-        if(parentDN == null) {
-          baseDN=DN.rootDN();
-        } else {
-          baseDN=parentDN;
+    final AciIndex currentIndex = index;
+    final List<Aci> inheritedAcis = currentIndex.getInheritedAcis(baseDN);
+    List<Aci> candidates = null;
+    for (Aci aci : currentIndex.globalAcis) {
+      AciTargets targets = aci.getTargets();
+      //If there is a target, evaluate it to see if this ACI should
+      //be included in the candidate set.
+      if (targets != null
+          && AciTargets.isTargetApplicable(aci, targets, baseDN))
+      {
+        if (candidates == null) {
+          candidates = new ArrayList<>(inheritedAcis.size() + currentIndex.globalAcis.size());
+          candidates.addAll(inheritedAcis);
         }
+        candidates.add(aci);  //Add this ACI to the candidates.
       }
     }
-    finally
-    {
-      lock.readLock().unlock();
-    }
+    return candidates != null ? candidates : inheritedAcis;
+  }
 
-    return candidates;
+  /** Publishes a new index of the ACIs to readers. Must be called with the lock held. */
+  private void publishIndex()
+  {
+    index = new AciIndex(aciList);
   }
 
   /**
@@ -145,7 +231,7 @@ public class AciList {
   {
     int validAcis=0;
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       for (Entry entry : entries) {
@@ -158,7 +244,8 @@ public class AciList {
     }
     finally
     {
-      lock.writeLock().unlock();
+      publishIndex();
+      lock.unlock();
     }
 
     return validAcis;
@@ -174,14 +261,15 @@ public class AciList {
    *
    */
   public void addAci(DN dn, SortedSet<Aci> acis) {
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       aciList.put(dn, new LinkedList<>(acis));
     }
     finally
     {
-      lock.writeLock().unlock();
+      publishIndex();
+      lock.unlock();
     }
   }
 
@@ -201,7 +289,7 @@ public class AciList {
                                  List<LocalizableMessage> failedACIMsgs) {
     int validAcis=0;
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       //Process global "ds-cfg-global-aci" attribute type. The oldentry
@@ -221,7 +309,8 @@ public class AciList {
     }
     finally
     {
-      lock.writeLock().unlock();
+      publishIndex();
+      lock.unlock();
     }
 
     return validAcis;
@@ -289,7 +378,7 @@ public class AciList {
                                              boolean hasAci,
                                              boolean hasGlobalAci) {
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       List<LocalizableMessage> failedACIMsgs=new LinkedList<>();
@@ -314,7 +403,8 @@ public class AciList {
     }
     finally
     {
-      lock.writeLock().unlock();
+      publishIndex();
+      lock.unlock();
     }
   }
 
@@ -353,22 +443,35 @@ public class AciList {
                                                       boolean hasGlobalAci) {
     DN entryDN = entry.getName();
 
-    lock.writeLock().lock();
+    // Most deleted entries do not hold nor contain any ACI: only rebuild the
+    // index when some were removed.
+    boolean changed = false;
+    lock.lock();
     try
     {
-      if (hasGlobalAci && entryDN.equals(configDN) &&
-          aciList.remove(DN.rootDN()) == null)
+      if (hasGlobalAci && entryDN.equals(configDN))
       {
-        return false;
+        if (aciList.remove(DN.rootDN()) == null)
+        {
+          return false;
+        }
+        changed = true;
       }
       if (hasAci || !hasGlobalAci)
       {
-        return aciList.removeSubtree(entryDN, null);
+        List<List<Aci>> removedAcis = new ArrayList<>();
+        boolean removed = aciList.removeSubtree(entryDN, removedAcis);
+        changed |= !removedAcis.isEmpty();
+        return removed;
       }
     }
     finally
     {
-      lock.writeLock().unlock();
+      if (changed)
+      {
+        publishIndex();
+      }
+      lock.unlock();
     }
 
     return true;
@@ -381,7 +484,7 @@ public class AciList {
    */
   public void removeAci(Backend<?> backend) {
 
-    lock.writeLock().lock();
+    lock.lock();
     try
     {
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
@@ -397,7 +500,8 @@ public class AciList {
     }
     finally
     {
-      lock.writeLock().unlock();
+      publishIndex();
+      lock.unlock();
     }
   }
 
@@ -406,16 +510,17 @@ public class AciList {
    * interaction over the entire list is performed.
    * @param oldDN The DN of the original entry that was moved.
    * @param newDN The DN of the new entry.
+   * @return True if ACIs were renamed.
    */
-  public void renameAci(DN oldDN, DN newDN ) {
+  public boolean renameAci(DN oldDN, DN newDN ) {
 
     int oldRDNCount=oldDN.size();
     int newRDNCount=newDN.size();
 
-    lock.writeLock().lock();
+    Map<DN,List<Aci>> tempAciList = new HashMap<>();
+    lock.lock();
     try
     {
-      Map<DN,List<Aci>> tempAciList = new HashMap<>();
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
               aciList.entrySet().iterator();
       while (iterator.hasNext()) {
@@ -449,10 +554,16 @@ public class AciList {
         }
       }
       aciList.putAll(tempAciList);
+      return !tempAciList.isEmpty();
     }
     finally
     {
-      lock.writeLock().unlock();
+      // Only rebuild the index when the renamed subtree contained ACIs
+      if (!tempAciList.isEmpty())
+      {
+        publishIndex();
+      }
+      lock.unlock();
     }
   }
 }
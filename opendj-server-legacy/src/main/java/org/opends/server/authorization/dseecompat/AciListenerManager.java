@@ -236,6 +236,7 @@ public class AciListenerManager implements
         List<LocalizableMessage> failedACIMsgs = new LinkedList<>();
 
         aciList.addAci(addedEntry, hasAci, hasGlobalAci, failedACIMsgs);
+        decisionCache.clear();
       }
     }
 
@@ -248,14 +249,20 @@ public class AciListenerManager implements
               AciHandler.aciType);
       boolean hasGlobalAci = deletedEntry.hasAttribute(
               AciHandler.globalAciType);
-      aciList.removeAci(deletedEntry, hasAci, hasGlobalAci);
+      if (aciList.removeAci(deletedEntry, hasAci, hasGlobalAci))
+      {
+        decisionCache.clear();
+      }
     }
 
 
 
     private void doPostModifyDN(DN fromDN, DN toDN)
     {
-      aciList.renameAci(fromDN, toDN);
+      if (aciList.renameAci(fromDN, toDN))
+      {
+        decisionCache.clear();
+      }
     }
 
 
@@ -291,6 +298,7 @@ public class AciListenerManager implements
       {
         aciList.modAciOldNewEntry(oldEntry, newEntry, hasAci,
             hasGlobalAci);
+        decisionCache.clear();
       }
     }
 
@@ -307,6 +315,9 @@ public class AciListenerManager implements
   /** The AciList caches the ACIs. */
   private AciList aciList;
 
+  /** The cache of bind rule results, cleared whenever the ACIs change. */
+  private final AciDecisionCache decisionCache;
+
   /** Search filter used in context search for "aci" attribute types. */
   private static SearchFilter aciFilter;
 
@@ -345,12 +356,15 @@ public class AciListenerManager implements
    *
    * @param aciList
    *          The list object created and loaded by the handler.
+   * @param decisionCache
+   *          The cache of bind rule results used by the handler.
    * @param cfgDN
    *          The DN of the access control configuration entry.
    */
-  public AciListenerManager(AciList aciList, DN cfgDN)
+  public AciListenerManager(AciList aciList, AciDecisionCache decisionCache, DN cfgDN)
   {
     this.aciList = aciList;
+    this.decisionCache = decisionCache;
     this.configurationDN = cfgDN;
     this.plugin = new AciChangeListenerPlugin();
 
@@ -464,6 +478,7 @@ public class AciListenerManager implements
   public void performBackendPostFinalizationProcessing(Backend<?> backend)
   {
     aciList.removeAci(backend);
+    decisionCache.clear();
   }
 
   @Override
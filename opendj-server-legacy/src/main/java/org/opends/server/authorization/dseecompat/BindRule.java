@@ -55,6 +55,12 @@ public class BindRule {
     /** The keyword of a simple bind rule. */
     private EnumBindRuleKeyword keyword;
 
+    /**
+     * True if the result of this bind rule only depends on the client, and not
+     * on the entry being evaluated or on the current time.
+     */
+    private final boolean clientScoped;
+
     /** Regular expression group position of a bind rule keyword. */
     private static final int keywordPos = 1;
     /** Regular expression group position of a bind rule operation. */
@@ -99,6 +105,7 @@ public class BindRule {
     private BindRule(EnumBindRuleKeyword keyword, KeywordBindRule rule) {
         this.keyword=keyword;
         this.keywordRuleMap.put(keyword.toString(), rule);
+        this.clientScoped = isClientScoped(keyword, rule);
     }
 
 
@@ -139,6 +146,40 @@ public class BindRule {
         this.booleanType = booleanType;
         this.left = left;
         this.right = right;
+        this.clientScoped = left.clientScoped && right.clientScoped;
+    }
+
+    /**
+     * Returns whether the result of a simple bind rule only depends on the
+     * client connection and on the authorization identity, so that it can be
+     * cached for the client.
+     */
+    private static boolean isClientScoped(EnumBindRuleKeyword keyword, KeywordBindRule rule) {
+        switch (keyword) {
+        case IP:
+        case DNS:
+        case SSF:
+        case AUTHMETHOD:
+        case GROUPDN:
+            return true;
+        case USERDN:
+            return ((UserDN) rule).isClientScoped();
+        default:
+            // dayofweek and timeofday depend on the current time,
+            // userattr depends on the entry being evaluated
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the result of this bind rule only depends on the client
+     * connection and on the authorization identity. Such results can be cached
+     * for the client, see {@link AciDecisionCache}.
+     *
+     * @return True if the result of this bind rule only depends on the client.
+     */
+    public boolean isClientScoped() {
+        return clientScoped;
     }
 
     /*
@@ -203,6 +203,27 @@ public class UserDN implements KeywordBindRule {
         return matched.getRet(type, undefined);
     }
 
+    /**
+     * Returns whether this userdn bind rule only depends on the client DN.
+     * The "self" and "parent" types depend on the entry being evaluated, and
+     * LDAP URLs with a filter depend on the content of the client entry.
+     *
+     * @return True if this userdn bind rule only depends on the client DN.
+     */
+    boolean isClientScoped() {
+        for (UserDNTypeURL dnTypeURL : urlList) {
+            switch (dnTypeURL.getUserDNType()) {
+            case SELF:
+            case PARENT:
+            case URL:
+                return false;
+            default:
+                break;
+            }
+        }
+        return true;
+    }
+
     /**
      * Performs an evaluation of a single UserDNTypeURL of a userdn bind
      * rule using the evaluation context provided. This method is called
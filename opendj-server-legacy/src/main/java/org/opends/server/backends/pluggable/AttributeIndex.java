@@ -933,6 +933,45 @@ class AttributeIndex implements ConfigurationChangeListener<BackendIndexCfg>, Cl
     return indexIdToIndexes;
   }
 
+  /**
+   * Returns the indexes which are read when evaluating a filter of the provided type.
+   *
+   * @param indexFilterType
+   *          the type of the filter
+   * @return the indexes read when evaluating a filter of the provided type, empty if there is none
+   */
+  Collection<MatchingRuleIndex> getIndexes(IndexFilterType indexFilterType)
+  {
+    if (!config.getIndexType().contains(indexFilterType.indexType))
+    {
+      return Collections.emptyList();
+    }
+    if (indexFilterType == IndexFilterType.PRESENCE)
+    {
+      return getIndexes(Collections.singletonList(PRESENCE_INDEXER));
+    }
+    final MatchingRule rule = getMatchingRule(indexFilterType.indexType, config.getAttribute());
+    if (rule == null)
+    {
+      return Collections.emptyList();
+    }
+    return getIndexes(rule.createIndexers(indexingOptions));
+  }
+
+  private Collection<MatchingRuleIndex> getIndexes(Collection<? extends Indexer> indexers)
+  {
+    final Collection<MatchingRuleIndex> indexes = new ArrayList<>(indexers.size());
+    for (Indexer indexer : indexers)
+    {
+      final MatchingRuleIndex index = indexIdToIndexes.get(indexer.getIndexID());
+      if (index != null)
+      {
+        indexes.add(index);
+      }
+    }
+    return indexes;
+  }
+
   /**
    * Retrieve the entry IDs that might match an extensible filter.
    *
@@ -30,6 +30,7 @@ import static org.forgerock.util.Reject.*;
 import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 import static org.opends.server.backends.pluggable.State.IndexFlag.*;
+import static org.opends.server.util.StaticUtils.*;
 
 import java.util.EnumSet;
 
@@ -61,6 +62,7 @@ class DefaultIndex extends AbstractTree implements Index
   private final EntryContainer entryContainer;
   private int indexEntryLimit;
   private EntryIDSetCodec codec;
+  private final IndexStatistics statistics = new IndexStatistics();
 
   /**
    * A flag to indicate if this index should be trusted to be consistent with the entries tree.
@@ -101,16 +103,83 @@ class DefaultIndex extends AbstractTree implements Index
   final void afterOpen(WriteableTransaction txn, boolean createOnDemand)
   {
     final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
-    codec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+    codec = getCodec(flags);
     trusted = flags.contains(TRUSTED);
-    if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
+    if (entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
-      // If there are no entries in the entry container then there
-      // is no reason why this index can't be upgraded to trusted.
-      setTrusted(txn, true);
+      // If there are no entries in the entry container then there is no reason why this index can't be upgraded to
+      // trusted, nor why it could not use the configured encoding.
+      if (!trusted)
+      {
+        setTrusted(txn, true);
+      }
+      setBitmapEncoded(txn, entryContainer.isBitmapIndexEncoding());
     }
   }
 
+  private static EntryIDSetCodec getCodec(EnumSet<IndexFlag> flags)
+  {
+    if (flags.contains(BITMAP))
+    {
+      return CODEC_V3;
+    }
+    return flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+  }
+
+  /**
+   * Changes the encoding used to store the entry IDs of this index. Existing records remain readable when switching
+   * from compact to bitmap encoding, but records which exceeded the index entry limit are only recomputed once the
+   * index has been rebuilt.
+   *
+   * @param txn
+   *          a non null transaction
+   * @param bitmapEncoded
+   *          {@code true} if entry IDs should be stored as compressed bitmaps
+   * @throws StorageRuntimeException
+   *           If an error occurs in the storage.
+   */
+  final synchronized void setBitmapEncoded(WriteableTransaction txn, boolean bitmapEncoded)
+      throws StorageRuntimeException
+  {
+    if (bitmapEncoded)
+    {
+      state.addFlagsToIndex(txn, getName(), COMPACTED, BITMAP);
+    }
+    else
+    {
+      state.removeFlagsFromIndex(txn, getName(), BITMAP);
+    }
+    codec = getCodec(state.getIndexFlags(txn, getName()));
+  }
+
+  /**
+   * Indicates whether the entry IDs of this index are stored as compressed bitmaps.
+   *
+   * @return {@code true} if the entry IDs of this index are stored as compressed bitmaps
+   */
+  final boolean isBitmapEncoded()
+  {
+    return codec == CODEC_V3;
+  }
+
+  /**
+   * Indicates whether the provided entry ID set should be replaced by an undefined set. With bitmap encoding, the index
+   * entry limit is a storage budget rather than a number of IDs: a set remains defined as long as its bitmap is not
+   * larger than an array holding {@code indexEntryLimit} IDs.
+   *
+   * @param entryIDSet
+   *          the entry ID set to check
+   * @return {@code true} if the provided entry ID set exceeds the index entry limit
+   */
+  final boolean isAboveEntryLimit(EntryIDSet entryIDSet)
+  {
+    if (indexEntryLimit <= 0 || entryIDSet.size() < indexEntryLimit)
+    {
+      return false;
+    }
+    return !isBitmapEncoded() || entryIDSet.getBitmapEncodedSize() >= (long) indexEntryLimit * LONG_SIZE;
+  }
+
   @Override
   public String valueToString(ByteString value)
   {
@@ -153,6 +222,21 @@ class DefaultIndex extends AbstractTree implements Index
     return codec.encode(entryIDSet);
   }
 
+  long decodeSize(ByteString value)
+  {
+    return codec.decodeSize(value);
+  }
+
+  /**
+   * Returns the cardinality statistics of this index.
+   *
+   * @return the cardinality statistics of this index
+   */
+  final IndexStatistics getStatistics()
+  {
+    return statistics;
+  }
+
   @Override
   public final void update(final WriteableTransaction txn, final ByteString key, final EntryIDSet deletedIDs,
       final EntryIDSet addedIDs) throws StorageRuntimeException
@@ -217,6 +301,10 @@ class DefaultIndex extends AbstractTree implements Index
   private EntryIDSet computeEntryIDSet(ByteString key, ByteString value, EntryIDSet deletedIDs, EntryIDSet addedIDs)
   {
     EntryIDSet entryIDSet = decodeValue(key, value);
+    if (isBitmapEncoded())
+    {
+      return computeBitmapEntryIDSet(key, entryIDSet, deletedIDs, addedIDs);
+    }
     if (addedIDs != null)
     {
       if (entryIDSet.isDefined() && indexEntryLimit > 0)
@@ -243,6 +331,29 @@ class DefaultIndex extends AbstractTree implements Index
     return entryIDSet;
   }
 
+  private EntryIDSet computeBitmapEntryIDSet(ByteString key, EntryIDSet entryIDSet, EntryIDSet deletedIDs,
+      EntryIDSet addedIDs)
+  {
+    if (addedIDs != null)
+    {
+      entryIDSet.addAll(addedIDs);
+    }
+    if (deletedIDs != null)
+    {
+      entryIDSet.removeAll(deletedIDs);
+    }
+    if (entryIDSet.isDefined() && isAboveEntryLimit(entryIDSet))
+    {
+      if (logger.isTraceEnabled())
+      {
+        logger.trace("Index entry exceeded in index %s. " + "Limit: %d. ID list size: %d.\nKey:%s", getName(),
+            indexEntryLimit, entryIDSet.size(), key.toHexPlusAsciiString(4));
+      }
+      return newUndefinedSetWithKey(key);
+    }
+    return entryIDSet;
+  }
+
   private void logIndexCorruptError(WriteableTransaction txn, ByteString key)
   {
     if (logger.isTraceEnabled())
@@ -262,9 +373,17 @@ class DefaultIndex extends AbstractTree implements Index
       ByteString value = txn.read(getName(), key);
       if (value != null)
       {
-        return decodeValue(key, value);
+        final EntryIDSet entryIDSet = decodeValue(key, value);
+        statistics.recordRead(entryIDSet);
+        return entryIDSet;
+      }
+      if (trusted)
+      {
+        final EntryIDSet entryIDSet = newDefinedSet();
+        statistics.recordRead(entryIDSet);
+        return entryIDSet;
       }
-      return trusted ? newDefinedSet() : newUndefinedSet();
+      return newUndefinedSet();
     }
     catch (StorageRuntimeException e)
     {
@@ -291,6 +410,7 @@ class DefaultIndex extends AbstractTree implements Index
   public final synchronized void setTrusted(WriteableTransaction txn, boolean trusted) throws StorageRuntimeException
   {
     this.trusted = trusted;
+    statistics.reset();
     if (trusted)
     {
       state.addFlagsToIndex(txn, getName(), TRUSTED);
@@ -73,6 +73,9 @@ import org.opends.server.api.EntryCache;
 import org.opends.server.api.VirtualAttributeProvider;
 import org.opends.server.api.plugin.PluginResult.SubordinateDelete;
 import org.opends.server.api.plugin.PluginResult.SubordinateModifyDN;
+import org.opends.server.backends.pluggable.ParallelSearchEvaluator.Evaluation;
+import org.opends.server.backends.pluggable.ParallelSearchEvaluator.PartitionMatcher;
+import org.opends.server.backends.pluggable.ParallelSearchEvaluator.SearchPartition;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
@@ -1173,6 +1176,19 @@ public class EntryContainer
       begin = suffix;
     }
 
+    final ParallelSearchEvaluator evaluator = rootContainer.getParallelSearchEvaluator();
+    if (evaluator != null)
+    {
+      if (searchNotIndexedInParallel(evaluator, txn, searchOperation, pageRequest, begin, end, baseDNKey)
+          && pageRequest != null)
+      {
+        // Indicate no more pages.
+        Control control = new PagedResultsControl(pageRequest.isCritical(), 0, null);
+        searchOperation.getResponseControls().add(control);
+      }
+      return;
+    }
+
     int lookthroughCount = 0;
     int lookthroughLimit = searchOperation.getClientConnection().getLookthroughLimit();
 
@@ -1250,6 +1266,209 @@ public class EntryContainer
     }
   }
 
+  /**
+   * Same as the dn2id walk of {@link #searchNotIndexed}, except that the candidate entries are read and matched in
+   * parallel by the provided evaluator. The dn2id keys are still walked on the current thread, and the matching
+   * entries are returned in dn2id key order.
+   *
+   * @return {@code true} if the search went through all the candidate entries, {@code false} if it stopped early
+   *         because of a limit, the page size or the client
+   */
+  private boolean searchNotIndexedInParallel(ParallelSearchEvaluator evaluator, ReadableTransaction txn,
+      SearchOperation searchOperation, PagedResultsControl pageRequest, ByteSequence begin, ByteSequence end,
+      ByteString baseDNKey) throws DirectoryException, CanceledOperationException
+  {
+    final boolean singleLevel = searchOperation.getScope() == SearchScope.SINGLE_LEVEL;
+    int lookthroughCount = 0;
+    int lookthroughLimit = searchOperation.getClientConnection().getLookthroughLimit();
+
+    try (final Evaluation evaluation = evaluator.newEvaluation(new CandidateMatcher(searchOperation, true, false));
+        final Cursor<ByteString, ByteString> cursor = txn.openCursor(dn2id.getName()))
+    {
+      boolean success = cursor.positionToKeyOrNext(begin) && cursor.getKey().compareTo(end) < 0;
+      while (true)
+      {
+        // Keep the pool busy with the next candidates while returning the oldest ones
+        while (success && !evaluation.isFull())
+        {
+          final SearchPartition partition = new SearchPartition(pageRequest != null);
+          while (success && !partition.isFull())
+          {
+            // Check if this entry is an immediate child.
+            if (!singleLevel || findDNKeyParent(cursor.getKey()) == baseDNKey.length())
+            {
+              partition.add(new EntryID(cursor.getValue()).longValue(), cursor.getKey());
+            }
+            success = cursor.next() && cursor.getKey().compareTo(end) < 0;
+          }
+          if (!partition.isEmpty())
+          {
+            evaluation.submit(partition);
+          }
+        }
+        if (evaluation.isEmpty())
+        {
+          return true;
+        }
+
+        final SearchPartition partition = evaluation.next();
+        for (int i = 0; i < partition.size(); i++)
+        {
+          if (lookthroughLimit > 0 && lookthroughCount > lookthroughLimit)
+          {
+            // Lookthrough limit exceeded
+            searchOperation.setResultCode(ResultCode.ADMIN_LIMIT_EXCEEDED);
+            searchOperation.appendErrorMessage(NOTE_LOOKTHROUGH_LIMIT_EXCEEDED.get(lookthroughLimit));
+            return false;
+          }
+          if (partition.isFound(i))
+          {
+            lookthroughCount++;
+          }
+          final Entry entry = partition.getMatchingEntry(i);
+          if (entry != null)
+          {
+            if (pageRequest != null && searchOperation.getEntriesSent() == pageRequest.getSize())
+            {
+              // The current page is full.
+              // Set the cookie to remember where we were.
+              Control control = new PagedResultsControl(pageRequest.isCritical(), 0, partition.getKey(i));
+              searchOperation.getResponseControls().add(control);
+              return false;
+            }
+            if (!searchOperation.returnEntry(entry, null))
+            {
+              // We have been told to discontinue processing of the
+              // search. This could be due to size limit exceeded or
+              // operation cancelled.
+              return false;
+            }
+          }
+        }
+        searchOperation.checkIfCanceled(false);
+      }
+    }
+    catch (StorageRuntimeException e)
+    {
+      logger.traceException(e);
+      return true;
+    }
+  }
+
+  /**
+   * Same as the candidate loop of {@link #searchIndexed}, except that the candidate entries are read and matched in
+   * parallel by the provided evaluator. The matching entries are returned in candidate order.
+   *
+   * @return {@code true} if the search went through all the candidate entries or was stopped by a limit or the client,
+   *         {@code false} if the current page is full
+   */
+  private boolean searchIndexedInParallel(ParallelSearchEvaluator evaluator, long[] entryIDReorderedSet,
+      int startIndex, boolean candidatesAreInScope, SearchOperation searchOperation, PagedResultsControl pageRequest)
+      throws DirectoryException, CanceledOperationException
+  {
+    final PartitionMatcher matcher = new CandidateMatcher(searchOperation, candidatesAreInScope, true);
+    try (final Evaluation evaluation = evaluator.newEvaluation(matcher))
+    {
+      int nextIndex = startIndex;
+      while (true)
+      {
+        // Keep the pool busy with the next candidates while returning the oldest ones
+        while (nextIndex < entryIDReorderedSet.length && !evaluation.isFull())
+        {
+          final SearchPartition partition = new SearchPartition(false);
+          while (nextIndex < entryIDReorderedSet.length && !partition.isFull())
+          {
+            partition.add(entryIDReorderedSet[nextIndex++], null);
+          }
+          evaluation.submit(partition);
+        }
+        if (evaluation.isEmpty())
+        {
+          return true;
+        }
+
+        final SearchPartition partition = evaluation.next();
+        for (int i = 0; i < partition.size(); i++)
+        {
+          final Entry entry = partition.getMatchingEntry(i);
+          if (entry != null)
+          {
+            if (pageRequest != null && searchOperation.getEntriesSent() == pageRequest.getSize())
+            {
+              // The current page is full.
+              // Set the cookie to remember where we were.
+              ByteString cookie = new EntryID(partition.getEntryID(i)).toByteString();
+              Control control = new PagedResultsControl(pageRequest.isCritical(), 0, cookie);
+              searchOperation.getResponseControls().add(control);
+              return false;
+            }
+            if (!searchOperation.returnEntry(entry, null))
+            {
+              // We have been told to discontinue processing of the
+              // search. This could be due to size limit exceeded or
+              // operation cancelled.
+              return true;
+            }
+          }
+        }
+        searchOperation.checkIfCanceled(false);
+      }
+    }
+  }
+
+  /** Reads and matches the candidate entries of a search on behalf of a {@link ParallelSearchEvaluator}. */
+  private final class CandidateMatcher implements PartitionMatcher
+  {
+    private final SearchFilter filter;
+    private final SearchScope searchScope;
+    private final DN aBaseDN;
+    private final boolean manageDsaIT;
+    private final boolean candidatesAreInScope;
+    /** Whether candidates which cannot be read are skipped rather than failing the search. */
+    private final boolean skipUnreadableCandidates;
+
+    private CandidateMatcher(SearchOperation searchOperation, boolean candidatesAreInScope,
+        boolean skipUnreadableCandidates)
+    {
+      this.filter = searchOperation.getFilter();
+      this.searchScope = searchOperation.getScope();
+      this.aBaseDN = searchOperation.getBaseDN();
+      this.manageDsaIT = isManageDsaITOperation(searchOperation);
+      this.candidatesAreInScope = candidatesAreInScope;
+      this.skipUnreadableCandidates = skipUnreadableCandidates;
+    }
+
+    @Override
+    public void evaluate(ReadableTransaction txn, SearchPartition partition) throws Exception
+    {
+      for (int i = 0; i < partition.size(); i++)
+      {
+        final Entry entry;
+        try
+        {
+          entry = getEntry(txn, new EntryID(partition.getEntryID(i)));
+        }
+        catch (Exception e)
+        {
+          if (!skipUnreadableCandidates)
+          {
+            throw e;
+          }
+          logger.traceException(e);
+          continue;
+        }
+
+        if (entry != null)
+        {
+          final boolean matches = isInScope(candidatesAreInScope, searchScope, aBaseDN, entry)
+              && (manageDsaIT || entry.getReferralURLs() == null)
+              && filter.matchesEntry(entry);
+          partition.setResult(i, true, matches ? entry : null);
+        }
+      }
+    }
+  }
+
   /**
    * Returns the entry corresponding to the provided entryID.
    *
@@ -1345,10 +1564,22 @@ public class EntryContainer
     }
 
     // Iterate through the index candidates.
-    if (continueSearch)
+    final int startIndex = findStartIndex(beginEntryID, entryIDReorderedSet);
+    final ParallelSearchEvaluator evaluator = rootContainer.getParallelSearchEvaluator();
+    if (continueSearch
+        && evaluator != null
+        && entryIDReorderedSet.length - startIndex >= config.getParallelSearchThreshold())
+    {
+      if (!searchIndexedInParallel(evaluator, entryIDReorderedSet, startIndex, candidatesAreInScope,
+          searchOperation, pageRequest))
+      {
+        return;
+      }
+    }
+    else if (continueSearch)
     {
       final SearchFilter filter = searchOperation.getFilter();
-      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet); i < entryIDReorderedSet.length; i++)
+      for (int i = startIndex; i < entryIDReorderedSet.length; i++)
       {
         EntryID entryID = new EntryID(entryIDReorderedSet[i]);
         Entry entry;
@@ -2469,6 +2700,16 @@ public class EntryContainer
     return baseDN;
   }
 
+  /**
+   * Indicates whether indexes built from now on should store their entry IDs as compressed bitmaps.
+   *
+   * @return {@code true} if indexes should be encoded as compressed bitmaps
+   */
+  boolean isBitmapIndexEncoding()
+  {
+    return config.isBitmapIndexEncoding();
+  }
+
   /**
    * Get the parent of a DN in the scope of the base DN.
    *
@@ -0,0 +1,1002 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.forgerock.util.Reject.*;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * Compressed bitmap of entry IDs organized after Roaring bitmaps. Entry IDs are partitioned on their high order bits
+ * in chunks of 65536 consecutive values. Each chunk is stored in a container which is either a sorted array of 16 bits
+ * values when the chunk is sparse, or a plain 65536 bits bitmap when the chunk is dense. Set operations between two
+ * bitmaps are performed container by container, using word-level operations whenever both containers are bitmaps.
+ * <p>
+ * This class is not thread safe.
+ */
+final class EntryIDBitmap
+{
+  /** Maximum cardinality of an array container before it gets converted to a bitmap container. */
+  static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+
+  private static final int CHUNK_BITS = 16;
+  private static final int LOW_MASK = 0xFFFF;
+  private static final int BITMAP_WORDS = 1 << (CHUNK_BITS - 6);
+  private static final byte ARRAY_CONTAINER = 0;
+  private static final byte BITMAP_CONTAINER = 1;
+
+  /** Keys (high order bits of the entry IDs) of the containers, in ascending order. */
+  private long[] keys;
+  private Container[] containers;
+  private int nbContainers;
+  private long cardinality;
+
+  /** Creates a new empty bitmap. */
+  EntryIDBitmap()
+  {
+    this(4);
+  }
+
+  private EntryIDBitmap(int initialCapacity)
+  {
+    keys = new long[initialCapacity];
+    containers = new Container[initialCapacity];
+  }
+
+  /**
+   * Creates a new bitmap containing the provided entry IDs.
+   *
+   * @param entryIDs
+   *          Sorted entry IDs
+   * @return a new bitmap containing the provided entry IDs
+   */
+  static EntryIDBitmap valueOf(long... entryIDs)
+  {
+    final EntryIDBitmap bitmap = new EntryIDBitmap();
+    for (long entryID : entryIDs)
+    {
+      bitmap.add(entryID);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns a deep copy of this bitmap.
+   *
+   * @return a deep copy of this bitmap
+   */
+  EntryIDBitmap copy()
+  {
+    final EntryIDBitmap copy = new EntryIDBitmap(Math.max(nbContainers, 1));
+    for (int i = 0; i < nbContainers; i++)
+    {
+      copy.append(keys[i], containers[i].copy());
+    }
+    return copy;
+  }
+
+  long cardinality()
+  {
+    return cardinality;
+  }
+
+  boolean isEmpty()
+  {
+    return nbContainers == 0;
+  }
+
+  long first()
+  {
+    if (nbContainers == 0)
+    {
+      throw new NoSuchElementException();
+    }
+    return toEntryID(keys[0], containers[0].nextValue(0));
+  }
+
+  long last()
+  {
+    if (nbContainers == 0)
+    {
+      throw new NoSuchElementException();
+    }
+    return toEntryID(keys[nbContainers - 1], containers[nbContainers - 1].last());
+  }
+
+  boolean add(long entryID)
+  {
+    final long key = entryID >>> CHUNK_BITS;
+    final int low = (int) (entryID & LOW_MASK);
+    int pos = indexOf(key);
+    if (pos < 0)
+    {
+      pos = -(pos + 1);
+      insertAt(pos, key, new ArrayContainer());
+    }
+    final Container container = containers[pos];
+    final int before = container.cardinality();
+    containers[pos] = container.add(low);
+    if (containers[pos].cardinality() != before)
+    {
+      cardinality++;
+      return true;
+    }
+    return false;
+  }
+
+  boolean remove(long entryID)
+  {
+    final int pos = indexOf(entryID >>> CHUNK_BITS);
+    if (pos < 0)
+    {
+      return false;
+    }
+    final Container container = containers[pos];
+    final int before = container.cardinality();
+    final Container updated = container.remove((int) (entryID & LOW_MASK));
+    setOrRemoveAt(pos, updated);
+    if (updated.cardinality() != before)
+    {
+      cardinality--;
+      return true;
+    }
+    return false;
+  }
+
+  boolean contains(long entryID)
+  {
+    final int pos = indexOf(entryID >>> CHUNK_BITS);
+    return pos >= 0 && containers[pos].contains((int) (entryID & LOW_MASK));
+  }
+
+  /**
+   * Adds all the entry IDs of the provided bitmap into this one.
+   *
+   * @param that
+   *          the bitmap to merge into this one
+   */
+  void or(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(nbContainers + that.nbContainers);
+    int i = 0, j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        result.append(keys[i], containers[i]);
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        result.append(that.keys[j], that.containers[j].copy());
+        j++;
+      }
+      else
+      {
+        result.append(keys[i], containers[i].or(that.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    for (; i < nbContainers; i++)
+    {
+      result.append(keys[i], containers[i]);
+    }
+    for (; j < that.nbContainers; j++)
+    {
+      result.append(that.keys[j], that.containers[j].copy());
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Retains only the entry IDs which are also contained in the provided bitmap.
+   *
+   * @param that
+   *          the bitmap to intersect with this one
+   */
+  void and(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(Math.max(1, Math.min(nbContainers, that.nbContainers)));
+    int i = 0, j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        j++;
+      }
+      else
+      {
+        final Container container = containers[i].and(that.containers[j]);
+        if (container.cardinality() > 0)
+        {
+          result.append(keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Removes all the entry IDs which are contained in the provided bitmap.
+   *
+   * @param that
+   *          the bitmap containing the entry IDs to remove
+   */
+  void andNot(EntryIDBitmap that)
+  {
+    final EntryIDBitmap result = new EntryIDBitmap(Math.max(1, nbContainers));
+    int i = 0, j = 0;
+    while (i < nbContainers && j < that.nbContainers)
+    {
+      if (keys[i] < that.keys[j])
+      {
+        result.append(keys[i], containers[i]);
+        i++;
+      }
+      else if (keys[i] > that.keys[j])
+      {
+        j++;
+      }
+      else
+      {
+        final Container container = containers[i].andNot(that.containers[j]);
+        if (container.cardinality() > 0)
+        {
+          result.append(keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    for (; i < nbContainers; i++)
+    {
+      result.append(keys[i], containers[i]);
+    }
+    replaceWith(result);
+  }
+
+  /**
+   * Returns all the entry IDs contained in this bitmap.
+   *
+   * @return a new array containing the entry IDs of this bitmap in ascending order
+   */
+  long[] toArray()
+  {
+    final long[] entryIDs = new long[(int) cardinality()];
+    int offset = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      offset = containers[i].toArray(keys[i] << CHUNK_BITS, entryIDs, offset);
+    }
+    return entryIDs;
+  }
+
+  /**
+   * Returns the smallest entry ID of this bitmap which is greater or equal to the provided one.
+   *
+   * @param entryID
+   *          the lower bound, inclusive
+   * @return the next entry ID or {@code -1} if there is none
+   */
+  long nextValue(long entryID)
+  {
+    final long key = entryID >>> CHUNK_BITS;
+    int pos = indexOf(key);
+    int low = (int) (entryID & LOW_MASK);
+    if (pos < 0)
+    {
+      pos = -(pos + 1);
+      low = 0;
+    }
+    for (; pos < nbContainers; pos++, low = 0)
+    {
+      final int next = containers[pos].nextValue(low);
+      if (next >= 0)
+      {
+        return toEntryID(keys[pos], next);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns an upper bound of the number of bytes needed to serialize this bitmap.
+   *
+   * @return an upper bound of the number of bytes needed to serialize this bitmap
+   */
+  int getSerializedSize()
+  {
+    int size = 2 * ByteStringBuilder.MAX_COMPACT_SIZE;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      size += 2 * ByteStringBuilder.MAX_COMPACT_SIZE + containers[i].getSerializedSize();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the value {@link #getSerializedSize()} would return for a bitmap holding the provided entry IDs, without
+   * building the bitmap.
+   *
+   * @param entryIDs
+   *          Sorted entry IDs
+   * @return an upper bound of the number of bytes needed to serialize a bitmap holding the provided entry IDs
+   */
+  static long getSerializedSize(long[] entryIDs)
+  {
+    long size = 2 * ByteStringBuilder.MAX_COMPACT_SIZE;
+    int begin = 0;
+    while (begin < entryIDs.length)
+    {
+      final long key = entryIDs[begin] >>> CHUNK_BITS;
+      int end = begin + 1;
+      while (end < entryIDs.length && entryIDs[end] >>> CHUNK_BITS == key)
+      {
+        end++;
+      }
+      final int chunkCardinality = end - begin;
+      size += 2 * ByteStringBuilder.MAX_COMPACT_SIZE + (chunkCardinality > ARRAY_CONTAINER_MAX_SIZE
+          ? BitmapContainer.SERIALIZED_SIZE
+          : ArrayContainer.getSerializedSize(chunkCardinality));
+      begin = end;
+    }
+    return size;
+  }
+
+  /**
+   * Serializes this bitmap into the provided builder.
+   *
+   * @param builder
+   *          the builder where to serialize this bitmap
+   * @return the provided builder
+   */
+  ByteStringBuilder writeTo(ByteStringBuilder builder)
+  {
+    builder.appendCompactUnsigned(cardinality);
+    builder.appendCompactUnsigned(nbContainers);
+    long previousKey = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      builder.appendCompactUnsigned(keys[i] - previousKey);
+      previousKey = keys[i];
+      containers[i].writeTo(builder);
+    }
+    return builder;
+  }
+
+  /**
+   * Deserializes a bitmap previously serialized with {@link #writeTo(ByteStringBuilder)}.
+   *
+   * @param reader
+   *          the reader positioned at the beginning of the serialized bitmap
+   * @return the deserialized bitmap
+   */
+  static EntryIDBitmap readFrom(ByteSequenceReader reader)
+  {
+    checkNotNull(reader, "reader must not be null");
+    // Cardinality is recomputed while appending the containers
+    reader.readCompactUnsignedLong();
+    final int nbContainers = reader.readCompactUnsignedInt();
+    final EntryIDBitmap bitmap = new EntryIDBitmap(Math.max(nbContainers, 1));
+    long key = 0;
+    for (int i = 0; i < nbContainers; i++)
+    {
+      key += reader.readCompactUnsignedLong();
+      bitmap.append(key, readContainer(reader));
+    }
+    return bitmap;
+  }
+
+  /**
+   * Reads the number of entry IDs of a bitmap serialized with {@link #writeTo(ByteStringBuilder)} without
+   * deserializing it.
+   *
+   * @param reader
+   *          the reader positioned at the beginning of the serialized bitmap
+   * @return the number of entry IDs of the serialized bitmap
+   */
+  static long readCardinality(ByteSequenceReader reader)
+  {
+    return reader.readCompactUnsignedLong();
+  }
+
+  private static Container readContainer(ByteSequenceReader reader)
+  {
+    final byte type = reader.readByte();
+    if (type == BITMAP_CONTAINER)
+    {
+      final long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        words[i] = reader.readLong();
+      }
+      return new BitmapContainer(words);
+    }
+    final int cardinality = reader.readCompactUnsignedInt();
+    final char[] values = new char[Math.max(cardinality, 1)];
+    int value = 0;
+    for (int i = 0; i < cardinality; i++)
+    {
+      value += reader.readCompactUnsignedInt();
+      values[i] = (char) value;
+    }
+    return new ArrayContainer(values, cardinality);
+  }
+
+  private static long toEntryID(long key, int low)
+  {
+    return (key << CHUNK_BITS) | low;
+  }
+
+  private int indexOf(long key)
+  {
+    if (nbContainers > 0 && keys[nbContainers - 1] == key)
+    {
+      // Fast path: entry IDs are mostly added in ascending order
+      return nbContainers - 1;
+    }
+    return Arrays.binarySearch(keys, 0, nbContainers, key);
+  }
+
+  private void append(long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    keys[nbContainers] = key;
+    containers[nbContainers] = container;
+    nbContainers++;
+    cardinality += container.cardinality();
+  }
+
+  private void insertAt(int pos, long key, Container container)
+  {
+    ensureCapacity(nbContainers + 1);
+    System.arraycopy(keys, pos, keys, pos + 1, nbContainers - pos);
+    System.arraycopy(containers, pos, containers, pos + 1, nbContainers - pos);
+    keys[pos] = key;
+    containers[pos] = container;
+    nbContainers++;
+  }
+
+  private void setOrRemoveAt(int pos, Container container)
+  {
+    if (container.cardinality() > 0)
+    {
+      containers[pos] = container;
+      return;
+    }
+    System.arraycopy(keys, pos + 1, keys, pos, nbContainers - pos - 1);
+    System.arraycopy(containers, pos + 1, containers, pos, nbContainers - pos - 1);
+    nbContainers--;
+    containers[nbContainers] = null;
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    if (capacity > keys.length)
+    {
+      final int newCapacity = Math.max(capacity, keys.length * 2);
+      keys = Arrays.copyOf(keys, newCapacity);
+      containers = Arrays.copyOf(containers, newCapacity);
+    }
+  }
+
+  private void replaceWith(EntryIDBitmap other)
+  {
+    keys = other.keys;
+    containers = other.containers;
+    nbContainers = other.nbContainers;
+    cardinality = other.cardinality;
+  }
+
+  /** A container holds the low order 16 bits of the entry IDs sharing the same high order bits. */
+  private static abstract class Container
+  {
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /** Returns the container holding the value, which might be a new container if a conversion was needed. */
+    abstract Container add(int low);
+
+    /** Returns the container without the value, which might be a new container if a conversion was needed. */
+    abstract Container remove(int low);
+
+    abstract Container or(Container that);
+
+    abstract Container and(Container that);
+
+    abstract Container andNot(Container that);
+
+    /** Returns the smallest value greater or equal to the provided one, or -1 if there is none. */
+    abstract int nextValue(int low);
+
+    abstract int last();
+
+    abstract int toArray(long base, long[] dest, int offset);
+
+    abstract int getSerializedSize();
+
+    abstract void writeTo(ByteStringBuilder builder);
+
+    abstract Container copy();
+  }
+
+  /** Sparse container storing the values in a sorted array. */
+  private static final class ArrayContainer extends Container
+  {
+    private char[] values;
+    private int cardinality;
+
+    ArrayContainer()
+    {
+      this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] values, int cardinality)
+    {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, (char) low) >= 0;
+    }
+
+    @Override
+    Container add(int low)
+    {
+      int pos = cardinality > 0 && values[cardinality - 1] < low
+          ? -(cardinality + 1)
+          : Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        return this;
+      }
+      if (cardinality >= ARRAY_CONTAINER_MAX_SIZE)
+      {
+        return toBitmapContainer().add(low);
+      }
+      pos = -(pos + 1);
+      if (cardinality == values.length)
+      {
+        values = Arrays.copyOf(values, Math.min(ARRAY_CONTAINER_MAX_SIZE, values.length * 2));
+      }
+      System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+      values[pos] = (char) low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(int low)
+    {
+      final int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        System.arraycopy(values, pos + 1, values, pos, cardinality - pos - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      if (that instanceof BitmapContainer)
+      {
+        return that.or(this);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      final char[] merged = new char[cardinality + other.cardinality];
+      int i = 0, j = 0, k = 0;
+      while (i < cardinality && j < other.cardinality)
+      {
+        if (values[i] < other.values[j])
+        {
+          merged[k++] = values[i++];
+        }
+        else if (values[i] > other.values[j])
+        {
+          merged[k++] = other.values[j++];
+        }
+        else
+        {
+          merged[k++] = values[i++];
+          j++;
+        }
+      }
+      while (i < cardinality)
+      {
+        merged[k++] = values[i++];
+      }
+      while (j < other.cardinality)
+      {
+        merged[k++] = other.values[j++];
+      }
+      final ArrayContainer result = new ArrayContainer(merged, k);
+      return k > ARRAY_CONTAINER_MAX_SIZE ? result.toBitmapContainer() : result;
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      final char[] retained = new char[cardinality];
+      int k = 0;
+      if (that instanceof BitmapContainer)
+      {
+        for (int i = 0; i < cardinality; i++)
+        {
+          if (that.contains(values[i]))
+          {
+            retained[k++] = values[i];
+          }
+        }
+        return new ArrayContainer(retained, k);
+      }
+      final ArrayContainer other = (ArrayContainer) that;
+      int i = 0, j = 0;
+      while (i < cardinality && j < other.cardinality)
+      {
+        if (values[i] < other.values[j])
+        {
+          i++;
+        }
+        else if (values[i] > other.values[j])
+        {
+          j++;
+        }
+        else
+        {
+          retained[k++] = values[i++];
+          j++;
+        }
+      }
+      return new ArrayContainer(retained, k);
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final char[] retained = new char[cardinality];
+      int k = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (!that.contains(values[i]))
+        {
+          retained[k++] = values[i];
+        }
+      }
+      return new ArrayContainer(retained, k);
+    }
+
+    @Override
+    int nextValue(int low)
+    {
+      int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos < 0)
+      {
+        pos = -(pos + 1);
+      }
+      return pos < cardinality ? values[pos] : -1;
+    }
+
+    @Override
+    int last()
+    {
+      return values[cardinality - 1];
+    }
+
+    @Override
+    int toArray(long base, long[] dest, int offset)
+    {
+      for (int i = 0; i < cardinality; i++)
+      {
+        dest[offset++] = base | values[i];
+      }
+      return offset;
+    }
+
+    @Override
+    int getSerializedSize()
+    {
+      return getSerializedSize(cardinality);
+    }
+
+    static int getSerializedSize(int cardinality)
+    {
+      return 1 + ByteStringBuilder.MAX_COMPACT_SIZE + cardinality * 3;
+    }
+
+    @Override
+    void writeTo(ByteStringBuilder builder)
+    {
+      builder.appendByte(ARRAY_CONTAINER);
+      builder.appendCompactUnsigned(cardinality);
+      int previous = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        builder.appendCompactUnsigned(values[i] - previous);
+        previous = values[i];
+      }
+    }
+
+    @Override
+    Container copy()
+    {
+      return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+    }
+
+    private BitmapContainer toBitmapContainer()
+    {
+      final long[] words = new long[BITMAP_WORDS];
+      for (int i = 0; i < cardinality; i++)
+      {
+        words[values[i] >>> 6] |= 1L << values[i];
+      }
+      return new BitmapContainer(words);
+    }
+  }
+
+  /** Dense container storing the values in a 65536 bits bitmap. */
+  private static final class BitmapContainer extends Container
+  {
+    static final int SERIALIZED_SIZE = 1 + BITMAP_WORDS * 8;
+
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer(long[] words)
+    {
+      this.words = words;
+      this.cardinality = computeCardinality(words);
+    }
+
+    private static int computeCardinality(long[] words)
+    {
+      int cardinality = 0;
+      for (long word : words)
+      {
+        cardinality += Long.bitCount(word);
+      }
+      return cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Container add(int low)
+    {
+      final long word = words[low >>> 6];
+      final long updated = word | (1L << low);
+      if (updated != word)
+      {
+        words[low >>> 6] = updated;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(int low)
+    {
+      final long word = words[low >>> 6];
+      final long updated = word & ~(1L << low);
+      if (updated != word)
+      {
+        words[low >>> 6] = updated;
+        cardinality--;
+        if (cardinality <= ARRAY_CONTAINER_MAX_SIZE)
+        {
+          return toArrayContainer(words, cardinality);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    Container or(Container that)
+    {
+      final long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+      if (that instanceof BitmapContainer)
+      {
+        final long[] other = ((BitmapContainer) that).words;
+        for (int i = 0; i < BITMAP_WORDS; i++)
+        {
+          result[i] |= other[i];
+        }
+      }
+      else
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        for (int i = 0; i < other.cardinality; i++)
+        {
+          result[other.values[i] >>> 6] |= 1L << other.values[i];
+        }
+      }
+      return new BitmapContainer(result);
+    }
+
+    @Override
+    Container and(Container that)
+    {
+      if (that instanceof ArrayContainer)
+      {
+        return that.and(this);
+      }
+      final long[] other = ((BitmapContainer) that).words;
+      final long[] result = new long[BITMAP_WORDS];
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        result[i] = words[i] & other[i];
+      }
+      return shrinkIfSparse(result);
+    }
+
+    @Override
+    Container andNot(Container that)
+    {
+      final long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+      if (that instanceof BitmapContainer)
+      {
+        final long[] other = ((BitmapContainer) that).words;
+        for (int i = 0; i < BITMAP_WORDS; i++)
+        {
+          result[i] &= ~other[i];
+        }
+      }
+      else
+      {
+        final ArrayContainer other = (ArrayContainer) that;
+        for (int i = 0; i < other.cardinality; i++)
+        {
+          result[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+        }
+      }
+      return shrinkIfSparse(result);
+    }
+
+    @Override
+    int nextValue(int low)
+    {
+      int wordIndex = low >>> 6;
+      long word = words[wordIndex] & (-1L << low);
+      while (word == 0)
+      {
+        if (++wordIndex == BITMAP_WORDS)
+        {
+          return -1;
+        }
+        word = words[wordIndex];
+      }
+      return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    int last()
+    {
+      for (int i = BITMAP_WORDS - 1; i >= 0; i--)
+      {
+        if (words[i] != 0)
+        {
+          return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int toArray(long base, long[] dest, int offset)
+    {
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          dest[offset++] = base | ((i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    @Override
+    int getSerializedSize()
+    {
+      return SERIALIZED_SIZE;
+    }
+
+    @Override
+    void writeTo(ByteStringBuilder builder)
+    {
+      builder.appendByte(BITMAP_CONTAINER);
+      for (long word : words)
+      {
+        builder.appendLong(word);
+      }
+    }
+
+    @Override
+    Container copy()
+    {
+      return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS));
+    }
+
+    private static Container shrinkIfSparse(long[] words)
+    {
+      final int cardinality = computeCardinality(words);
+      if (cardinality <= ARRAY_CONTAINER_MAX_SIZE)
+      {
+        return toArrayContainer(words, cardinality);
+      }
+      return new BitmapContainer(words);
+    }
+
+    private static ArrayContainer toArrayContainer(long[] words, int cardinality)
+    {
+      final char[] values = new char[Math.max(cardinality, 1)];
+      int k = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          values[k++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, cardinality);
+    }
+  }
+}
@@ -50,6 +50,7 @@ final class EntryIDSet implements Iterable<EntryID>
 {
   public static final EntryIDSetCodec CODEC_V1 = new EntryIDSetCodecV1();
   public static final EntryIDSetCodec CODEC_V2 = new EntryIDSetCodecV2();
+  public static final EntryIDSetCodec CODEC_V3 = new EntryIDSetCodecV3();
 
   private static final ByteSequence NO_KEY = ByteString.valueOfUtf8("<none>");
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
@@ -90,6 +91,15 @@ final class EntryIDSet implements Iterable<EntryID>
     ByteString encode(EntryIDSet idSet);
 
     EntryIDSet decode(ByteSequence key, ByteString value);
+
+    /**
+     * Returns the number of entry IDs of an encoded set without decoding it.
+     *
+     * @param value
+     *          the encoded set
+     * @return the number of entry IDs of the encoded set, {@link Long#MAX_VALUE} if the set is undefined
+     */
+    long decodeSize(ByteString value);
   }
 
   /** Concrete implementation representing a set of EntryIDs, sorted in ascending order. */
@@ -287,6 +297,115 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Concrete implementation representing a set of EntryIDs stored in a compressed bitmap. This implementation is used
+   * for large sets where word-level operations are much cheaper than merging sorted arrays.
+   */
+  private static final class BitmapImpl implements EntryIDSetImplementor
+  {
+    private final EntryIDBitmap bitmap;
+
+    BitmapImpl(EntryIDBitmap bitmap)
+    {
+      this.bitmap = checkNotNull(bitmap, "bitmap must not be null");
+    }
+
+    @Override
+    public long size()
+    {
+      return bitmap.cardinality();
+    }
+
+    @Override
+    public void toString(StringBuilder buffer)
+    {
+      buffer.append("[COUNT:").append(size()).append("]");
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean add(EntryID entryID)
+    {
+      return bitmap.add(entryID.longValue());
+    }
+
+    @Override
+    public boolean remove(EntryID entryID)
+    {
+      return bitmap.remove(entryID.longValue());
+    }
+
+    @Override
+    public boolean contains(EntryID entryID)
+    {
+      return bitmap.contains(entryID.longValue());
+    }
+
+    @Override
+    public void addAll(EntryIDSet that)
+    {
+      bitmap.or(toBitmap(that));
+    }
+
+    @Override
+    public void removeAll(EntryIDSet that)
+    {
+      bitmap.andNot(toBitmap(that));
+    }
+
+    void retainAll(EntryIDSet that)
+    {
+      bitmap.and(toBitmap(that));
+    }
+
+    private static EntryIDBitmap toBitmap(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        return ((BitmapImpl) that.concreteImpl).bitmap;
+      }
+      return EntryIDBitmap.valueOf(that.getIDs());
+    }
+
+    @Override
+    public Iterator<EntryID> iterator()
+    {
+      return new BitmapIterator(bitmap, 0);
+    }
+
+    @Override
+    public Iterator<EntryID> iterator(EntryID begin)
+    {
+      if (begin == null || !bitmap.contains(begin.longValue()))
+      {
+        // Same as IDSetIterator: restart from the beginning when the requested ID is not in the set.
+        return new BitmapIterator(bitmap, 0);
+      }
+      return new BitmapIterator(bitmap, begin.longValue());
+    }
+
+    @Override
+    public long[] getRange()
+    {
+      if (!bitmap.isEmpty())
+      {
+        return new long[] { bitmap.first(), bitmap.last() };
+      }
+      return NO_ENTRY_IDS_RANGE;
+    }
+
+    @Override
+    public long[] getIDs()
+    {
+      return bitmap.toArray();
+    }
+  }
+
   /**
    * Concrete implementation where the EntryIDs are not defined, for example when the index entry
    * limit has been exceeded.
@@ -421,6 +540,43 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /** Iterator over the entry IDs of a bitmap. It returns values in order of ID without materializing them. */
+  private static final class BitmapIterator implements Iterator<EntryID>
+  {
+    private final EntryIDBitmap bitmap;
+    private long nextID;
+
+    BitmapIterator(EntryIDBitmap bitmap, long begin)
+    {
+      this.bitmap = bitmap;
+      this.nextID = bitmap.nextValue(begin);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return nextID >= 0;
+    }
+
+    @Override
+    public EntryID next()
+    {
+      if (hasNext())
+      {
+        final EntryID entryID = new EntryID(nextID);
+        nextID = nextID == Long.MAX_VALUE ? -1 : bitmap.nextValue(nextID + 1);
+        return entryID;
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   /** Legacy EntryIDSet codec implementation. */
   private static final class EntryIDSetCodecV1 implements EntryIDSetCodec
   {
@@ -454,6 +610,17 @@ final class EntryIDSet implements Iterable<EntryID>
       }
     }
 
+    @Override
+    public long decodeSize(ByteString value)
+    {
+      checkNotNull(value, "value must not be null");
+      if (!value.isEmpty() && (value.byteAt(0) & 0x80) == 0x80)
+      {
+        return Long.MAX_VALUE;
+      }
+      return value.length() / LONG_SIZE;
+    }
+
     private static int getEstimatedSize(EntryIDSet idSet)
     {
       return idSet.isDefined() ? idSet.getIDs().length * LONG_SIZE : LONG_SIZE;
@@ -520,6 +687,17 @@ final class EntryIDSet implements Iterable<EntryID>
       return newDefinedSet(decodeRaw(reader, reader.readCompactUnsignedInt()));
     }
 
+    @Override
+    public long decodeSize(ByteString value)
+    {
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == UNDEFINED_SET)
+      {
+        return Long.MAX_VALUE;
+      }
+      return value.asReader().readCompactUnsignedInt();
+    }
+
     private static ByteStringBuilder append(ByteStringBuilder builder, EntryIDSet idSet)
     {
       checkNotNull(idSet, "idSet must not be null");
@@ -565,6 +743,65 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Bitmap EntryIDSet codec implementation. Small sets are encoded exactly like {@link EntryIDSetCodecV2} does, while
+   * sets larger than {@link #MIN_BITMAP_SIZE} are encoded as compressed bitmaps. This codec is able to decode values
+   * encoded with {@link EntryIDSetCodecV2}, so that switching an index to this codec does not require to rewrite it.
+   * Large sets are decoded as bitmaps so that they can be combined using word-level operations.
+   */
+  private static final class EntryIDSetCodecV3 implements EntryIDSetCodec
+  {
+    /**
+     * First byte of the bitmap encoded sets. A V2 defined set starts with its size as a compact unsigned int: its
+     * first byte is at most 0xF7 since the size is less than 2^31, and a V2 undefined set starts with 0xFF. V1 records,
+     * whose first byte could be anything, are never decoded with this codec: an index only switches to bitmap encoding
+     * when it is empty or rebuilt, and the bitmap flag of the index state implies the compacted flag.
+     */
+    private static final byte BITMAP_SET = (byte) 0xFE;
+    private static final long MIN_BITMAP_SIZE = 1024;
+
+    @Override
+    public ByteString encode(EntryIDSet idSet)
+    {
+      checkNotNull(idSet, "idSet must not be null");
+      if (!idSet.isDefined() || idSet.size() < MIN_BITMAP_SIZE)
+      {
+        return CODEC_V2.encode(idSet);
+      }
+      final EntryIDBitmap bitmap = BitmapImpl.toBitmap(idSet);
+      final ByteStringBuilder builder = new ByteStringBuilder(1 + bitmap.getSerializedSize());
+      bitmap.writeTo(builder.appendByte(BITMAP_SET));
+      return ByteString.wrap(builder.getBackingArray(), 0, builder.length());
+    }
+
+    @Override
+    public EntryIDSet decode(ByteSequence key, ByteString value)
+    {
+      checkNotNull(key, "key must not be null");
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == BITMAP_SET)
+      {
+        final ByteSequenceReader reader = value.asReader();
+        reader.skip(1);
+        return newBitmapSet(EntryIDBitmap.readFrom(reader));
+      }
+      return CODEC_V2.decode(key, value);
+    }
+
+    @Override
+    public long decodeSize(ByteString value)
+    {
+      checkNotNull(value, "value must not be null");
+      if (value.byteAt(0) == BITMAP_SET)
+      {
+        final ByteSequenceReader reader = value.asReader();
+        reader.skip(1);
+        return EntryIDBitmap.readCardinality(reader);
+      }
+      return CODEC_V2.decodeSize(value);
+    }
+  }
+
   static EntryIDSet newUndefinedSet()
   {
     return newUndefinedSetWithKey(NO_KEY);
@@ -592,6 +829,26 @@ final class EntryIDSet implements Iterable<EntryID>
     return new EntryIDSet(new DefinedImpl(entryIDs));
   }
 
+  /**
+   * Creates a new defined entry ID set backed by a compressed bitmap.
+   *
+   * @param entryIDs
+   *          Entry IDs contained in the set.
+   * @return A new defined {@link EntryIDSet} containing the provided entryIDs
+   * @throws NullPointerException
+   *           if entryIDs is null
+   */
+  static EntryIDSet newBitmapSet(long... entryIDs)
+  {
+    checkNotNull(entryIDs, "ids must not be null");
+    return newBitmapSet(EntryIDBitmap.valueOf(entryIDs));
+  }
+
+  private static EntryIDSet newBitmapSet(EntryIDBitmap bitmap)
+  {
+    return new EntryIDSet(new BitmapImpl(bitmap));
+  }
+
   private static long[] intersection(long[] set1, long[] set2)
   {
     long[] target = new long[Math.min(set1.length, set2.length)];
@@ -621,6 +878,20 @@ final class EntryIDSet implements Iterable<EntryID>
     return target;
   }
 
+  private static long[] retainContained(long[] entryIDs, EntryIDSet that)
+  {
+    final long[] target = new long[entryIDs.length];
+    int ci = 0;
+    for (long entryID : entryIDs)
+    {
+      if (that.concreteImpl.contains(new EntryID(entryID)))
+      {
+        target[ci++] = entryID;
+      }
+    }
+    return ci < target.length ? Arrays.copyOf(target, ci) : target;
+  }
+
   /**
    * Creates a new set of entry IDs that is the union of several entry ID sets.
    *
@@ -653,6 +924,16 @@ final class EntryIDSet implements Iterable<EntryID>
       return newUndefinedSet();
     }
 
+    if (containsBitmapSet(sets))
+    {
+      final EntryIDBitmap union = new EntryIDBitmap();
+      for (EntryIDSet l : sets)
+      {
+        union.or(BitmapImpl.toBitmap(l));
+      }
+      return newBitmapSet(union);
+    }
+
     boolean needSort = false;
     long[] n = new long[count];
     int pos = 0;
@@ -687,6 +968,18 @@ final class EntryIDSet implements Iterable<EntryID>
     return newDefinedSet(Arrays.copyOf(n1, j));
   }
 
+  private static boolean containsBitmapSet(List<EntryIDSet> sets)
+  {
+    for (EntryIDSet set : sets)
+    {
+      if (set.concreteImpl instanceof BitmapImpl)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private EntryIDSetImplementor concreteImpl;
 
   private EntryIDSet(EntryIDSetImplementor concreteImpl)
@@ -829,7 +1122,11 @@ final class EntryIDSet implements Iterable<EntryID>
     checkNotNull(that, "that must not be null");
     if (!concreteImpl.isDefined())
     {
-      if ( that.isDefined() ) {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        concreteImpl = new BitmapImpl(((BitmapImpl) that.concreteImpl).bitmap.copy());
+      }
+      else if ( that.isDefined() ) {
         // NOTE: It's ok to share the same array instance here thanks to the copy-on-write
         // performed by the implementation.
         concreteImpl = new DefinedImpl(that.getIDs());
@@ -843,6 +1140,17 @@ final class EntryIDSet implements Iterable<EntryID>
       return;
     }
 
+    if (concreteImpl instanceof BitmapImpl)
+    {
+      ((BitmapImpl) concreteImpl).retainAll(that);
+      return;
+    }
+    if (that.concreteImpl instanceof BitmapImpl)
+    {
+      concreteImpl = new DefinedImpl(retainContained(concreteImpl.getIDs(), that));
+      return;
+    }
+
     final boolean thatSetOverlap = compareForOverlap(getRange(), that.getRange()) == 0;
     if (thatSetOverlap)
     {
@@ -894,6 +1202,26 @@ final class EntryIDSet implements Iterable<EntryID>
     return concreteImpl.iterator(begin);
   }
 
+  /**
+   * Returns an upper bound of the number of bytes needed to encode this set as a compressed bitmap.
+   *
+   * @return an upper bound of the number of bytes needed to encode this set as a compressed bitmap, or
+   *         {@link Long#MAX_VALUE} if this set is undefined.
+   */
+  long getBitmapEncodedSize()
+  {
+    if (!isDefined())
+    {
+      return Long.MAX_VALUE;
+    }
+    if (concreteImpl instanceof BitmapImpl)
+    {
+      return 1 + ((BitmapImpl) concreteImpl).bitmap.getSerializedSize();
+    }
+    // Called for every index update above the entry limit: do not build a bitmap just to know its size
+    return 1 + EntryIDBitmap.getSerializedSize(getIDs());
+  }
+
   private long[] getIDs()
   {
     return concreteImpl.getIDs();
@@ -30,14 +30,13 @@ import static org.opends.messages.BackendMessages.*;
 import static org.opends.server.backends.pluggable.EntryIDSet.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.backends.pluggable.IndexFilterPlanner.PlannedFilter;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
 import org.opends.server.core.SearchOperation;
 import org.opends.server.types.AttributeType;
-import org.opends.server.types.FilterType;
 import org.opends.server.types.SearchFilter;
 
 /**
@@ -173,111 +172,108 @@ class IndexFilter
   }
 
   /**
-   * Evaluate a logical AND search filter against the indexes.
+   * Evaluate a logical AND search filter against the indexes. The components are evaluated in the order computed by
+   * the {@link IndexFilterPlanner}, cheapest first, and once the candidate set is defined, the components which cannot
+   * narrow it enough are skipped. Candidate entries are always checked against the whole filter, so skipped components
+   * are only a matter of performance. Skipped components are still reported to the index filter analyzer.
    *
    * @param andFilter The AND search filter to be evaluated.
    * @return A set of entry IDs representing candidate entries.
    */
   private EntryIDSet evaluateLogicalAndFilter(SearchFilter andFilter)
   {
-    // Put the slow range filters (greater-or-equal, less-or-equal)
-    // into a hash map, the faster components (equality, presence, approx)
-    // into one list and the remainder into another list.
+    final List<PlannedFilter> plan = new IndexFilterPlanner(entryContainer, txn).plan(andFilter);
+    appendPlanToDebugBuffer(plan);
 
-    ArrayList<SearchFilter> fastComps = new ArrayList<>();
-    ArrayList<SearchFilter> otherComps = new ArrayList<>();
-    HashMap<AttributeType, ArrayList<SearchFilter>> rangeComps = new HashMap<>();
-
-    for (SearchFilter filter : andFilter.getFilterComponents())
+    EntryIDSet results = newUndefinedSet();
+    for (PlannedFilter step : plan)
     {
-      FilterType filterType = filter.getFilterType();
-      if (filterType == FilterType.GREATER_OR_EQUAL ||
-           filterType == FilterType.LESS_OR_EQUAL)
+      if (isBelowFilterThreshold(results))
       {
-        ArrayList<SearchFilter> rangeList;
-        rangeList = rangeComps.get(filter.getAttributeType());
-        if (rangeList == null)
-        {
-          rangeList = new ArrayList<>();
-          rangeComps.put(filter.getAttributeType(), rangeList);
-        }
-        rangeList.add(filter);
+        return results;
       }
-      else if (filterType == FilterType.EQUALITY ||
-           filterType == FilterType.PRESENT ||
-           filterType == FilterType.APPROXIMATE_MATCH)
+      if (step.canBeSkipped(results))
       {
-        fastComps.add(filter);
+        appendSkippedToDebugBuffer(step);
+        updateSkippedStats(step, results);
+        continue;
+      }
+      if (step.isBoundedRange())
+      {
+        // Process range component pairs like (cn>=A)(cn<=B).
+        results.retainAll(evaluateBoundedRange(step.getFilters()));
       }
       else
       {
-        otherComps.add(filter);
+        results.retainAll(evaluateFilter(step.getFilters().get(0)));
       }
     }
+    return results;
+  }
 
-    EntryIDSet results = newUndefinedSet();
-    // First, process the fast components.
-    results = applyFiltersUntilThreshold(results, fastComps);
-    // Next, process the other (non-range) components.
-    results = applyFiltersUntilThreshold(results, otherComps);
-
-    if ( isBelowFilterThreshold(results) || rangeComps.isEmpty() ) {
-      return results;
-    }
+  private EntryIDSet evaluateBoundedRange(List<SearchFilter> rangeList)
+  {
+    final SearchFilter filter1 = rangeList.get(0);
+    final SearchFilter filter2 = rangeList.get(1);
+    final AttributeType attributeType = filter1.getAttributeType();
 
-    // Next, process range component pairs like (cn>=A)(cn<=B).
-    ArrayList<SearchFilter> remainComps = new ArrayList<>();
-    for (Map.Entry<AttributeType, ArrayList<SearchFilter>> rangeEntry : rangeComps.entrySet())
+    AttributeIndex attributeIndex = entryContainer.getAttributeIndex(attributeType);
+    if (attributeIndex == null)
     {
-      ArrayList<SearchFilter> rangeList = rangeEntry.getValue();
-      if (rangeList.size() == 2)
+      if (monitor.isFilterUseEnabled())
       {
-        SearchFilter filter1 = rangeList.get(0);
-        SearchFilter filter2 = rangeList.get(1);
+        monitor.updateStats(SearchFilter.createANDFilter(rangeList),
+            INFO_INDEX_FILTER_INDEX_TYPE_DISABLED.get("ordering", attributeType.getNameOrOID()));
+      }
+      return newUndefinedSet();
+    }
 
-        AttributeIndex attributeIndex = entryContainer.getAttributeIndex(rangeEntry.getKey());
-        if (attributeIndex == null)
-        {
-          if(monitor.isFilterUseEnabled())
-          {
-            monitor.updateStats(SearchFilter.createANDFilter(rangeList),
-                INFO_INDEX_FILTER_INDEX_TYPE_DISABLED.get("ordering", rangeEntry.getKey().getNameOrOID()));
-          }
-          continue;
-        }
+    final IndexQueryFactoryImpl indexQueryFactory = new IndexQueryFactoryImpl(txn, attributeIndex);
+    EntryIDSet set = attributeIndex.evaluateBoundedRange(indexQueryFactory, filter1, filter2, buffer, monitor);
+    if (monitor.isFilterUseEnabled() && set.isDefined())
+    {
+      monitor.updateStats(SearchFilter.createANDFilter(rangeList), set.size());
+    }
+    return set;
+  }
 
-        final IndexQueryFactoryImpl indexQueryFactory = new IndexQueryFactoryImpl(txn, attributeIndex);
-        EntryIDSet set = attributeIndex.evaluateBoundedRange(indexQueryFactory, filter1, filter2, buffer, monitor);
-        if(monitor.isFilterUseEnabled() && set.isDefined())
-        {
-          monitor.updateStats(SearchFilter.createANDFilter(rangeList), set.size());
-        }
-        results.retainAll(set);
-        if (isBelowFilterThreshold(results))
+  private void appendPlanToDebugBuffer(List<PlannedFilter> plan)
+  {
+    if (buffer != null)
+    {
+      buffer.append("plan=[");
+      for (int i = 0; i < plan.size(); i++)
+      {
+        if (i > 0)
         {
-          return results;
+          buffer.append(" ");
         }
+        plan.get(i).toString(buffer);
       }
-      else
-      {
-        // Add to the remaining range components to be processed.
-        remainComps.addAll(rangeList);
-      }
+      buffer.append("]");
     }
+  }
 
-    // Finally, process the remaining slow range components.
-    return applyFiltersUntilThreshold(results, remainComps);
+  private void updateSkippedStats(PlannedFilter step, EntryIDSet candidates)
+  {
+    if (monitor.isFilterUseEnabled())
+    {
+      final SearchFilter filter =
+          step.isBoundedRange() ? SearchFilter.createANDFilter(step.getFilters()) : step.getFilters().get(0);
+      monitor.updateStats(filter, INFO_INDEX_FILTER_COMPONENT_SKIPPED.get(candidates.size()));
+    }
   }
 
-  private EntryIDSet applyFiltersUntilThreshold(EntryIDSet results, ArrayList<SearchFilter> filters)
+  private void appendSkippedToDebugBuffer(PlannedFilter step)
   {
-    for(SearchFilter filter : filters) {
-      if (isBelowFilterThreshold(results)) {
-        return results;
+    if (buffer != null)
+    {
+      for (SearchFilter filter : step.getFilters())
+      {
+        filter.toString(buffer);
       }
-      results.retainAll(evaluateFilter(filter));
+      buffer.append("[SKIPPED]");
     }
-    return results;
   }
 
   static boolean isBelowFilterThreshold(EntryIDSet set)
@@ -0,0 +1,349 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opends.server.backends.pluggable.AttributeIndex.IndexFilterType;
+import org.opends.server.backends.pluggable.AttributeIndex.MatchingRuleIndex;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.FilterType;
+import org.opends.server.types.SearchFilter;
+
+/**
+ * Cost-based planner ordering the components of an AND search filter. The cost of a component is the estimated number
+ * of entry IDs read from the indexes to evaluate it, computed from the {@link IndexStatistics} of the indexes involved.
+ * Components are evaluated cheapest first. Once the candidate set is defined, the components which cannot narrow it
+ * enough to pay off, either because they are not indexed, because their index records are very likely to have exceeded
+ * the index entry limit, or because reading them costs more than reading the candidate entries, are skipped. Components
+ * are never skipped while the candidate set is undefined, so that skipping never turns an indexed search into an
+ * unindexed one. The skipped components are still checked against each candidate entry, so skipping them never alters
+ * the result.
+ */
+final class IndexFilterPlanner
+{
+  /** Cost of a component which always evaluates to an undefined set. */
+  static final double UNINDEXED = Double.POSITIVE_INFINITY;
+
+  /**
+   * Components whose index records have exceeded the index entry limit in at least this ratio are considered
+   * unindexed.
+   */
+  private static final double UNDEFINED_RATIO_THRESHOLD = 0.95;
+  /** Estimated cost of reading and matching one candidate entry, relative to reading one entry ID from an index. */
+  private static final int ENTRY_READ_COST = 100;
+  /** Estimated number of keys read for each element of a substring assertion. */
+  private static final int SUBSTRING_KEYS_PER_ELEMENT = 4;
+  /** Estimated ratio of the index keys read by a one-sided range. */
+  private static final int RANGE_KEYS_DIVISOR = 2;
+  /** Estimated ratio of the index keys read by a bounded range. */
+  private static final int BOUNDED_RANGE_KEYS_DIVISOR = 8;
+  /** Cost of the components for which nothing can be estimated, like extensible matches. */
+  private static final double UNKNOWN_COST = 1000000;
+
+  /** A component of an AND filter, along with its estimated cost. */
+  static final class PlannedFilter
+  {
+    private final List<SearchFilter> filters;
+    private final double cost;
+    /** Breaks ties between equal costs: fast components first, then the other ones, then ranges. */
+    private final int rank;
+
+    private PlannedFilter(List<SearchFilter> filters, double cost)
+    {
+      this.filters = filters;
+      this.cost = cost;
+      this.rank = rank(filters.get(0).getFilterType());
+    }
+
+    private static int rank(FilterType filterType)
+    {
+      switch (filterType)
+      {
+      case EQUALITY:
+      case PRESENT:
+      case APPROXIMATE_MATCH:
+        return 0;
+      case GREATER_OR_EQUAL:
+      case LESS_OR_EQUAL:
+        return 2;
+      default:
+        return 1;
+      }
+    }
+
+    /**
+     * Returns the filters evaluated by this step of the plan: either a single filter, or a pair of greater-or-equal
+     * and less-or-equal filters on the same attribute which are evaluated as a bounded range.
+     *
+     * @return the filters evaluated by this step of the plan
+     */
+    List<SearchFilter> getFilters()
+    {
+      return filters;
+    }
+
+    boolean isBoundedRange()
+    {
+      return filters.size() == 2;
+    }
+
+    double getCost()
+    {
+      return cost;
+    }
+
+    /**
+     * Indicates whether this step can be skipped because it cannot narrow the current candidate set enough to pay off.
+     * A step is never skipped while the candidate set is undefined.
+     *
+     * @param candidates
+     *          the current candidate set
+     * @return {@code true} if this step can be skipped
+     */
+    boolean canBeSkipped(EntryIDSet candidates)
+    {
+      return candidates.isDefined() && (cost == UNINDEXED || cost > (double) candidates.size() * ENTRY_READ_COST);
+    }
+
+    void toString(StringBuilder buffer)
+    {
+      for (SearchFilter filter : filters)
+      {
+        filter.toString(buffer);
+      }
+      buffer.append(":");
+      if (cost == UNINDEXED)
+      {
+        buffer.append("unindexed");
+      }
+      else
+      {
+        buffer.append(Math.round(cost));
+      }
+    }
+  }
+
+  private static final Comparator<PlannedFilter> BY_COST = new Comparator<PlannedFilter>()
+  {
+    @Override
+    public int compare(PlannedFilter o1, PlannedFilter o2)
+    {
+      final int cmp = Double.compare(o1.cost, o2.cost);
+      return cmp != 0 ? cmp : Integer.compare(o1.rank, o2.rank);
+    }
+  };
+
+  private final EntryContainer entryContainer;
+  private final ReadableTransaction txn;
+
+  /**
+   * Creates a new planner.
+   *
+   * @param entryContainer
+   *          the entry container holding the attribute indexes
+   * @param txn
+   *          a non null transaction, used to sample the indexes statistics if needed
+   */
+  IndexFilterPlanner(EntryContainer entryContainer, ReadableTransaction txn)
+  {
+    this.entryContainer = entryContainer;
+    this.txn = txn;
+  }
+
+  /**
+   * Orders the components of an AND filter cheapest first. Pairs of greater-or-equal and less-or-equal components on
+   * the same attribute are planned as a single bounded range.
+   *
+   * @param andFilter
+   *          the AND filter to plan
+   * @return the plan, cheapest step first
+   */
+  List<PlannedFilter> plan(SearchFilter andFilter)
+  {
+    final List<PlannedFilter> plan = new ArrayList<>();
+    final Map<AttributeType, List<SearchFilter>> rangeComps = new LinkedHashMap<>();
+    for (SearchFilter filter : andFilter.getFilterComponents())
+    {
+      if (isRange(filter))
+      {
+        List<SearchFilter> rangeList = rangeComps.get(filter.getAttributeType());
+        if (rangeList == null)
+        {
+          rangeList = new ArrayList<>(2);
+          rangeComps.put(filter.getAttributeType(), rangeList);
+        }
+        rangeList.add(filter);
+      }
+      else
+      {
+        plan.add(new PlannedFilter(Collections.singletonList(filter), estimateCost(filter)));
+      }
+    }
+
+    for (Map.Entry<AttributeType, List<SearchFilter>> rangeEntry : rangeComps.entrySet())
+    {
+      final List<SearchFilter> rangeList = rangeEntry.getValue();
+      if (rangeList.size() == 2)
+      {
+        final double cost = estimateIndexCost(rangeEntry.getKey(), IndexFilterType.GREATER_OR_EQUAL,
+            BOUNDED_RANGE_KEYS_DIVISOR, 0);
+        plan.add(new PlannedFilter(rangeList, cost));
+      }
+      else
+      {
+        for (SearchFilter filter : rangeList)
+        {
+          plan.add(new PlannedFilter(Collections.singletonList(filter), estimateCost(filter)));
+        }
+      }
+    }
+
+    // Stable sort: without statistics, fast components are evaluated first, then the other ones, then ranges
+    Collections.sort(plan, BY_COST);
+    return plan;
+  }
+
+  private static boolean isRange(SearchFilter filter)
+  {
+    final FilterType filterType = filter.getFilterType();
+    return filterType == FilterType.GREATER_OR_EQUAL || filterType == FilterType.LESS_OR_EQUAL;
+  }
+
+  /**
+   * Estimates the number of entry IDs read from the indexes when evaluating the provided filter.
+   *
+   * @param filter
+   *          the filter to evaluate
+   * @return the estimated cost, {@link #UNINDEXED} if the filter always evaluates to an undefined set
+   */
+  double estimateCost(SearchFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+    case AND:
+      double min = UNINDEXED;
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        min = Math.min(min, estimateCost(component));
+      }
+      return min;
+
+    case OR:
+      double sum = 0;
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        final double cost = estimateCost(component);
+        if (cost == UNINDEXED)
+        {
+          // Evaluation stops on the first undefined component
+          return UNINDEXED;
+        }
+        sum += cost;
+      }
+      return sum;
+
+    case EQUALITY:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.EQUALITY, 0, 1);
+
+    case APPROXIMATE_MATCH:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.APPROXIMATE, 0, 1);
+
+    case PRESENT:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.PRESENCE, 0, 1);
+
+    case SUBSTRING:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.SUBSTRING, 0,
+          SUBSTRING_KEYS_PER_ELEMENT * getNbSubstringElements(filter));
+
+    case GREATER_OR_EQUAL:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.GREATER_OR_EQUAL, RANGE_KEYS_DIVISOR, 0);
+
+    case LESS_OR_EQUAL:
+      return estimateIndexCost(filter.getAttributeType(), IndexFilterType.LESS_OR_EQUAL, RANGE_KEYS_DIVISOR, 0);
+
+    case EXTENSIBLE_MATCH:
+      return filter.getDNAttributes() ? UNINDEXED : UNKNOWN_COST;
+
+    case NOT:
+    default:
+      return UNINDEXED;
+    }
+  }
+
+  private static int getNbSubstringElements(SearchFilter filter)
+  {
+    int nbElements = filter.getSubAnyElements() != null ? filter.getSubAnyElements().size() : 0;
+    if (filter.getSubInitialElement() != null)
+    {
+      nbElements++;
+    }
+    if (filter.getSubFinalElement() != null)
+    {
+      nbElements++;
+    }
+    return Math.max(nbElements, 1);
+  }
+
+  /**
+   * Estimates the cost of reading an index: either a fixed number of keys, or a ratio of all its keys for ranges.
+   */
+  private double estimateIndexCost(AttributeType attributeType, IndexFilterType indexFilterType, int keysDivisor,
+      int nbKeys)
+  {
+    final AttributeIndex attributeIndex = entryContainer.getAttributeIndex(attributeType);
+    if (attributeIndex == null)
+    {
+      return UNINDEXED;
+    }
+    final Collection<MatchingRuleIndex> indexes = attributeIndex.getIndexes(indexFilterType);
+    if (indexes.isEmpty())
+    {
+      return UNINDEXED;
+    }
+
+    double cost = 0;
+    for (MatchingRuleIndex index : indexes)
+    {
+      final IndexStatistics statistics = index.getStatistics();
+      statistics.sampleIfNeeded(txn, index);
+      if (statistics.getUndefinedRatio() >= UNDEFINED_RATIO_THRESHOLD)
+      {
+        return UNINDEXED;
+      }
+      final double keysRead = keysDivisor > 0 ? Math.max(1, statistics.getKeyCount() / keysDivisor) : nbKeys;
+      cost += keysRead * statistics.getAverageEntryIDSetSize();
+    }
+    return cost;
+  }
+}
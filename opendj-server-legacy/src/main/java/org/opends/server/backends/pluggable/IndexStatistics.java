@@ -0,0 +1,211 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+
+/**
+ * Cardinality statistics of a {@link DefaultIndex}, used to estimate the cost of evaluating a search filter against
+ * it. Statistics combine a bounded sample of the index records, taken the first time they are needed, with the sizes
+ * of the records actually read while processing searches. Once enough records have been read, the observed sizes take
+ * precedence over the sample because they reflect the keys the clients are really looking for.
+ * <p>
+ * Statistics are estimates: they are not persisted and are not updated transactionally.
+ */
+final class IndexStatistics
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Maximum number of records read when sampling the index. */
+  static final int SAMPLE_SIZE = 1000;
+  /** Number of records which must have been read before the observed sizes are preferred over the sample. */
+  private static final long MIN_OBSERVED_READS = 100;
+
+  private volatile boolean sampled;
+  private volatile long sampledKeys;
+  private volatile long sampledUndefinedKeys;
+  private volatile long sampledEntryIDs;
+  private volatile boolean sampleComplete;
+
+  private final AtomicLong reads = new AtomicLong();
+  private final AtomicLong undefinedReads = new AtomicLong();
+  private final AtomicLong entryIDsRead = new AtomicLong();
+
+  /**
+   * Records the size of an entry ID set read from the index.
+   *
+   * @param entryIDSet
+   *          the entry ID set read from the index
+   */
+  void recordRead(EntryIDSet entryIDSet)
+  {
+    reads.incrementAndGet();
+    if (entryIDSet.isDefined())
+    {
+      entryIDsRead.addAndGet(entryIDSet.size());
+    }
+    else
+    {
+      undefinedReads.incrementAndGet();
+    }
+  }
+
+  /**
+   * Samples the records of the provided index if it has not been done yet.
+   *
+   * @param txn
+   *          a non null transaction
+   * @param index
+   *          the index owning these statistics
+   */
+  void sampleIfNeeded(ReadableTransaction txn, DefaultIndex index)
+  {
+    if (!sampled)
+    {
+      sample(txn, index);
+    }
+  }
+
+  private synchronized void sample(ReadableTransaction txn, DefaultIndex index)
+  {
+    if (sampled)
+    {
+      return;
+    }
+    long keys = 0;
+    long undefinedKeys = 0;
+    long entryIDs = 0;
+    boolean complete = true;
+    try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(index.getName()))
+    {
+      while (cursor.next())
+      {
+        if (keys == SAMPLE_SIZE)
+        {
+          complete = false;
+          break;
+        }
+        keys++;
+        final long size = index.decodeSize(cursor.getValue());
+        if (size == Long.MAX_VALUE)
+        {
+          undefinedKeys++;
+        }
+        else
+        {
+          entryIDs += size;
+        }
+      }
+    }
+    catch (StorageRuntimeException e)
+    {
+      // Statistics are only estimates: keep the ones gathered so far.
+      logger.traceException(e);
+    }
+    sampledKeys = keys;
+    sampledUndefinedKeys = undefinedKeys;
+    sampledEntryIDs = entryIDs;
+    sampleComplete = complete;
+    sampled = true;
+  }
+
+  /**
+   * Forgets the sampled statistics, for example after the index has been rebuilt.
+   */
+  synchronized void reset()
+  {
+    sampled = false;
+    reads.set(0);
+    undefinedReads.set(0);
+    entryIDsRead.set(0);
+  }
+
+  /**
+   * Returns the number of keys of the index, which is a lower bound if the index has more keys than
+   * {@link #SAMPLE_SIZE}.
+   *
+   * @return the number of keys of the index
+   */
+  long getKeyCount()
+  {
+    return sampledKeys;
+  }
+
+  /**
+   * Indicates whether the key count is exact.
+   *
+   * @return {@code true} if the key count is exact, {@code false} if it is a lower bound
+   */
+  boolean isKeyCountExact()
+  {
+    return sampleComplete;
+  }
+
+  /**
+   * Returns the average number of entry IDs of the defined records of the index.
+   *
+   * @return the average number of entry IDs of the defined records of the index
+   */
+  double getAverageEntryIDSetSize()
+  {
+    final long observedReads = reads.get();
+    final long observedDefinedReads = observedReads - undefinedReads.get();
+    if (observedReads >= MIN_OBSERVED_READS && observedDefinedReads > 0)
+    {
+      return (double) entryIDsRead.get() / observedDefinedReads;
+    }
+    final long definedKeys = sampledKeys - sampledUndefinedKeys;
+    return definedKeys > 0 ? (double) sampledEntryIDs / definedKeys : 0;
+  }
+
+  /**
+   * Returns the ratio of records of the index which exceeded the index entry limit.
+   *
+   * @return a value between 0 and 1
+   */
+  double getUndefinedRatio()
+  {
+    final long observedReads = reads.get();
+    if (observedReads >= MIN_OBSERVED_READS)
+    {
+      return (double) undefinedReads.get() / observedReads;
+    }
+    return sampledKeys > 0 ? (double) sampledUndefinedKeys / sampledKeys : 0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("keys=%d%s avgSize=%.1f undefined=%.0f%%", getKeyCount(), isKeyCountExact() ? "" : "+",
+        getAverageEntryIDSetSize(), getUndefinedRatio() * 100);
+  }
+}
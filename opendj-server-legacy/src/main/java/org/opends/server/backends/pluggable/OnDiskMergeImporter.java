@@ -956,6 +956,7 @@ final class OnDiskMergeImporter
     {
       entryContainer.delete(asWriteableTransaction(importer));
       visitIndexes(entryContainer, setTrust(false, importer));
+      visitIndexes(entryContainer, setEncoding(entryContainer.isBitmapIndexEncoding(), importer));
     }
 
     abstract Callable<Void> newPhaseTwoTask(TreeName treeName, Chunk source, PhaseTwoProgressReporter progressReporter);
@@ -1180,6 +1181,9 @@ final class OnDiskMergeImporter
     {
       visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, setTrust(false, importer)));
       visitIndexes(entryContainer, visitOnlyIndexes(indexesToRebuild, deleteDatabase(importer)));
+      // Rebuilding is the migration path between array and bitmap encoded indexes
+      visitIndexes(entryContainer,
+          visitOnlyIndexes(indexesToRebuild, setEncoding(entryContainer.isBitmapIndexEncoding(), importer)));
     }
 
     @Override
@@ -3097,7 +3101,7 @@ final class OnDiskMergeImporter
     if (index != null)
     {
       // key conflicts == merge EntryIDSets
-      return new EntryIDSetsCollector(index);
+      return index.isBitmapEncoded() ? new EntryIDBitmapCollector(index) : new EntryIDSetsCollector(index);
     }
     else if (isID2ChildrenCount(treeName))
     {
@@ -3314,6 +3318,52 @@ final class OnDiskMergeImporter
     }
   }
 
+  /**
+   * {@link Collector} that accepts encoded {@link EntryIDSet} objects and produces a {@link ByteString} representing
+   * the merged {@link EntryIDSet} for bitmap encoded indexes. Values are merged into a compressed bitmap, the index
+   * entry limit being checked once all the values have been merged.
+   */
+  static final class EntryIDBitmapCollector implements Collector<EntryIDSet, ByteString>
+  {
+    private final DefaultIndex index;
+
+    EntryIDBitmapCollector(DefaultIndex index)
+    {
+      this.index = index;
+    }
+
+    @Override
+    public EntryIDSet get()
+    {
+      return EntryIDSet.newBitmapSet();
+    }
+
+    @Override
+    public EntryIDSet accept(EntryIDSet resultContainer, ByteString value)
+    {
+      if (resultContainer.isDefined())
+      {
+        final EntryIDSet entryIDSet = index.decodeValue(ByteString.empty(), value);
+        if (!entryIDSet.isDefined())
+        {
+          return entryIDSet;
+        }
+        resultContainer.addAll(entryIDSet);
+      }
+      return resultContainer;
+    }
+
+    @Override
+    public ByteString merge(EntryIDSet resultContainer)
+    {
+      if (!resultContainer.isDefined() || index.isAboveEntryLimit(resultContainer))
+      {
+        return index.toValue(EntryIDSet.newUndefinedSet());
+      }
+      return index.toValue(resultContainer);
+    }
+  }
+
   private static MeteredCursor<ByteString, ByteString> asProgressCursor(
       SequentialCursor<ByteString, ByteString> delegate, String metricName, long totalSize)
   {
@@ -3490,6 +3540,45 @@ final class OnDiskMergeImporter
     }
   }
 
+  private static IndexVisitor setEncoding(boolean bitmapEncoded, Importer importer)
+  {
+    return new EncodingModifier(asWriteableTransaction(importer), bitmapEncoded);
+  }
+
+  /** Update the entry IDs encoding of the visited indexes. */
+  private static final class EncodingModifier implements IndexVisitor
+  {
+    private final WriteableTransaction txn;
+    private final boolean bitmapEncoded;
+
+    EncodingModifier(WriteableTransaction txn, boolean bitmapEncoded)
+    {
+      this.txn = txn;
+      this.bitmapEncoded = bitmapEncoded;
+    }
+
+    @Override
+    public void visitAttributeIndex(Index index)
+    {
+      if (index instanceof DefaultIndex)
+      {
+        ((DefaultIndex) index).setBitmapEncoded(txn, bitmapEncoded);
+      }
+    }
+
+    @Override
+    public void visitVLVIndex(VLVIndex index)
+    {
+      // VLV indexes don't store entry ID sets
+    }
+
+    @Override
+    public void visitSystemIndex(Tree index)
+    {
+      // System indexes don't store entry ID sets
+    }
+  }
+
   private static IndexVisitor deleteDatabase(Importer importer)
   {
     return new DeleteDatabase(importer);
@@ -0,0 +1,353 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+
+/**
+ * Reads and matches the candidate entries of a search on a fork/join pool.
+ * <p>
+ * The candidates are split in partitions of {@link #PARTITION_SIZE} entries. Each partition is evaluated by a pool
+ * thread in its own read transaction, while the thread processing the search operation hands the partitions back in
+ * the order they were submitted. Entries are therefore returned to the client in candidate order, which preserves both
+ * the order of sorted searches and the parent before children order of unsorted ones. Only a bounded number of
+ * partitions are evaluated ahead of the partition being returned, so a search stopped by a size limit or by paging
+ * does not read the whole candidate set.
+ */
+final class ParallelSearchEvaluator
+{
+  /** Number of candidate entries read and matched by a single task. */
+  static final int PARTITION_SIZE = 256;
+  /** Number of partitions which can be evaluated ahead of the partition being returned, per pool thread. */
+  private static final int PARTITIONS_IN_FLIGHT_PER_THREAD = 4;
+
+  /** Reads and matches the candidate entries of a partition. */
+  interface PartitionMatcher
+  {
+    /**
+     * Reads and matches the candidate entries of the provided partition, recording the results with
+     * {@link SearchPartition#setResult(int, boolean, Entry)}.
+     *
+     * @param txn
+     *          a non null transaction
+     * @param partition
+     *          the partition to evaluate
+     * @throws Exception
+     *           if a problem occurs while evaluating the partition
+     */
+    void evaluate(ReadableTransaction txn, SearchPartition partition) throws Exception;
+  }
+
+  /** A partition of the candidate entries of a search, along with the results of its evaluation. */
+  static final class SearchPartition
+  {
+    private final long[] entryIDs = new long[PARTITION_SIZE];
+    /** The keys used as paged results cookies, null if they are not needed. */
+    private final ByteString[] keys;
+    private final boolean[] found = new boolean[PARTITION_SIZE];
+    private final Entry[] matchingEntries = new Entry[PARTITION_SIZE];
+    private int size;
+    private Exception failure;
+
+    SearchPartition(boolean withKeys)
+    {
+      this.keys = withKeys ? new ByteString[PARTITION_SIZE] : null;
+    }
+
+    void add(long entryID, ByteString key)
+    {
+      entryIDs[size] = entryID;
+      if (keys != null)
+      {
+        keys[size] = key;
+      }
+      size++;
+    }
+
+    boolean isFull()
+    {
+      return size == PARTITION_SIZE;
+    }
+
+    boolean isEmpty()
+    {
+      return size == 0;
+    }
+
+    int size()
+    {
+      return size;
+    }
+
+    long getEntryID(int index)
+    {
+      return entryIDs[index];
+    }
+
+    ByteString getKey(int index)
+    {
+      return keys[index];
+    }
+
+    /**
+     * Records the result of the evaluation of a candidate entry.
+     *
+     * @param index
+     *          the index of the candidate in this partition
+     * @param exists
+     *          whether the candidate entry exists
+     * @param matchingEntry
+     *          the candidate entry if it matches the search, null otherwise
+     */
+    void setResult(int index, boolean exists, Entry matchingEntry)
+    {
+      found[index] = exists;
+      matchingEntries[index] = matchingEntry;
+    }
+
+    boolean isFound(int index)
+    {
+      return found[index];
+    }
+
+    Entry getMatchingEntry(int index)
+    {
+      return matchingEntries[index];
+    }
+  }
+
+  /**
+   * The in-order evaluation of the partitions of a single search. It must be closed once the search is over, which
+   * waits for the partitions still owned by the pool threads.
+   */
+  final class Evaluation implements Closeable
+  {
+    private final PartitionMatcher matcher;
+    private final ArrayDeque<ForkJoinTask<SearchPartition>> inFlight = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    private Evaluation(PartitionMatcher matcher)
+    {
+      this.matcher = matcher;
+    }
+
+    /**
+     * Indicates whether enough partitions are being evaluated ahead of the next one to return.
+     *
+     * @return {@code true} if no more partitions should be submitted before {@link #next()} is called
+     */
+    boolean isFull()
+    {
+      return inFlight.size() >= maxInFlight;
+    }
+
+    boolean isEmpty()
+    {
+      return inFlight.isEmpty();
+    }
+
+    void submit(final SearchPartition partition)
+    {
+      final ForkJoinTask<SearchPartition> task = ForkJoinTask.adapt(new Callable<SearchPartition>()
+      {
+        @Override
+        public SearchPartition call()
+        {
+          if (!closed)
+          {
+            evaluate(partition);
+          }
+          return partition;
+        }
+      });
+      try
+      {
+        pool.execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The pool has been shut down by a configuration change during this search
+        task.invoke();
+      }
+      inFlight.add(task);
+    }
+
+    private void evaluate(final SearchPartition partition)
+    {
+      try
+      {
+        storage.read(new ReadOperation<Void>()
+        {
+          @Override
+          public Void run(ReadableTransaction txn) throws Exception
+          {
+            matcher.evaluate(txn, partition);
+            return null;
+          }
+        });
+      }
+      catch (Exception e)
+      {
+        partition.failure = e;
+      }
+    }
+
+    /**
+     * Waits for the evaluation of the oldest submitted partition and returns it.
+     *
+     * @return the oldest submitted partition
+     * @throws DirectoryException
+     *           if the partition could not be matched against the search
+     * @throws StorageRuntimeException
+     *           if the entries of the partition could not be read
+     */
+    SearchPartition next() throws DirectoryException, StorageRuntimeException
+    {
+      final SearchPartition partition = inFlight.poll().join();
+      final Exception failure = partition.failure;
+      if (failure instanceof DirectoryException)
+      {
+        throw (DirectoryException) failure;
+      }
+      else if (failure instanceof StorageRuntimeException)
+      {
+        throw (StorageRuntimeException) failure;
+      }
+      else if (failure != null)
+      {
+        throw new StorageRuntimeException(failure);
+      }
+      return partition;
+    }
+
+    @Override
+    public void close()
+    {
+      // Partitions not yet started are skipped, wait for the ones being evaluated
+      closed = true;
+      for (ForkJoinTask<SearchPartition> task : inFlight)
+      {
+        task.quietlyJoin();
+      }
+      inFlight.clear();
+    }
+  }
+
+  private final Storage storage;
+  private final ForkJoinPool pool;
+  private final int maxInFlight;
+
+  /**
+   * Creates a new evaluator and starts its pool threads.
+   *
+   * @param backendID
+   *          the ID of the backend, used to name the pool threads
+   * @param storage
+   *          the storage from which the candidate entries are read
+   * @param nbThreads
+   *          the number of pool threads
+   */
+  ParallelSearchEvaluator(final String backendID, Storage storage, int nbThreads)
+  {
+    this.storage = storage;
+    this.maxInFlight = nbThreads * PARTITIONS_IN_FLIGHT_PER_THREAD;
+    final AtomicInteger threadNumber = new AtomicInteger();
+    this.pool = new ForkJoinPool(nbThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+    {
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+      {
+        final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+        {
+          // Needed because the constructor is protected
+        };
+        thread.setName("Parallel Search Worker " + threadNumber.incrementAndGet() + " for " + backendID);
+        return thread;
+      }
+    }, null, false);
+  }
+
+  /**
+   * Returns the number of pool threads.
+   *
+   * @return the number of pool threads
+   */
+  int getParallelism()
+  {
+    return pool.getParallelism();
+  }
+
+  /**
+   * Starts the evaluation of the partitions of a search.
+   *
+   * @param matcher
+   *          reads and matches the candidate entries of the search
+   * @return the evaluation, which must be closed once the search is over
+   */
+  Evaluation newEvaluation(PartitionMatcher matcher)
+  {
+    return new Evaluation(matcher);
+  }
+
+  /** Stops the pool threads once the evaluations in progress are over. */
+  void shutdown()
+  {
+    pool.shutdown();
+  }
+
+  /**
+   * Stops the pool threads and waits for the evaluations in progress to be over.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of the timeout
+   * @return {@code true} if the pool threads are stopped, {@code false} if the timeout elapsed before
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  boolean shutdownAndAwaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    pool.shutdown();
+    return pool.awaitTermination(timeout, unit);
+  }
+}
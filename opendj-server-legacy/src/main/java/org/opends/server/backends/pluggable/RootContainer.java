@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -70,6 +71,9 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** Maximum time to wait for the parallel search threads to stop when closing the storage. */
+  private static final long PARALLEL_SEARCH_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
   /** The tree storage. */
   private final Storage storage;
 
@@ -89,6 +93,9 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
   /** The compressed schema manager for this backend. */
   private PersistentCompressedSchema compressedSchema;
 
+  /** Evaluates large searches in parallel, null if parallel search evaluation is disabled. */
+  private volatile ParallelSearchEvaluator parallelSearchEvaluator;
+
   /**
    * Creates a new RootContainer object representing a storage.
    *
@@ -106,6 +113,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
     getMonitorProvider().enableFilterUseStats(config.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(config.getIndexFilterAnalyzerMaxFilters());
+    parallelSearchEvaluator = newParallelSearchEvaluator(config.getParallelSearchThreads());
 
     config.addPluggableChangeListener(this);
   }
@@ -120,6 +128,22 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     return storage;
   }
 
+  private ParallelSearchEvaluator newParallelSearchEvaluator(int nbThreads)
+  {
+    return nbThreads > 0 ? new ParallelSearchEvaluator(backendId, storage, nbThreads) : null;
+  }
+
+  /**
+   * Returns the evaluator of the searches which are processed in parallel.
+   *
+   * @return the evaluator of the searches which are processed in parallel, or null if parallel search evaluation is
+   *         disabled
+   */
+  ParallelSearchEvaluator getParallelSearchEvaluator()
+  {
+    return parallelSearchEvaluator;
+  }
+
   /**
    * Opens the root container.
    *
@@ -337,6 +361,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
       }
     }
     config.removePluggableChangeListener(this);
+    closeParallelSearchEvaluator();
     if (storage != null)
     {
       storage.close();
@@ -456,9 +481,49 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     getMonitorProvider().enableFilterUseStats(configuration.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(configuration.getIndexFilterAnalyzerMaxFilters());
 
+    final ParallelSearchEvaluator evaluator = parallelSearchEvaluator;
+    final int nbThreads = configuration.getParallelSearchThreads();
+    if (nbThreads != (evaluator != null ? evaluator.getParallelism() : 0))
+    {
+      setParallelSearchEvaluator(newParallelSearchEvaluator(nbThreads));
+    }
+
     return new ConfigChangeResult();
   }
 
+  private void setParallelSearchEvaluator(ParallelSearchEvaluator newEvaluator)
+  {
+    final ParallelSearchEvaluator oldEvaluator = parallelSearchEvaluator;
+    parallelSearchEvaluator = newEvaluator;
+    if (oldEvaluator != null)
+    {
+      // The searches in progress evaluate their remaining partitions on their own thread
+      oldEvaluator.shutdown();
+    }
+  }
+
+  /** Stops the parallel search threads, waiting for them to stop using the storage before it gets closed. */
+  private void closeParallelSearchEvaluator()
+  {
+    final ParallelSearchEvaluator evaluator = parallelSearchEvaluator;
+    parallelSearchEvaluator = null;
+    if (evaluator != null)
+    {
+      try
+      {
+        if (!evaluator.shutdownAndAwaitTermination(PARALLEL_SEARCH_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        {
+          logger.warn(WARN_PARALLEL_SEARCH_THREADS_STILL_RUNNING.get(backendId,
+              PARALLEL_SEARCH_SHUTDOWN_TIMEOUT_SECONDS));
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Checks the storage has enough resources for an operation.
    *
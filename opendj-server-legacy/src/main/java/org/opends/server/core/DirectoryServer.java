@@ -149,6 +149,7 @@ import org.opends.server.loggers.TextErrorLogPublisher;
 import org.opends.server.loggers.TextWriter;
 import org.opends.server.monitors.BackendMonitor;
 import org.opends.server.monitors.ConnectionHandlerMonitor;
+import org.opends.server.monitors.LockManagerMonitor;
 import org.opends.server.protocols.internal.InternalClientConnection;
 import org.opends.server.protocols.internal.InternalConnectionHandler;
 import org.opends.server.schema.BooleanEqualityMatchingRuleFactory;
@@ -1436,6 +1437,10 @@ public final class DirectoryServer
       monitorConfigManager = new MonitorConfigManager(serverContext);
       monitorConfigManager.initializeMonitorProviders();
 
+      LockManagerMonitor lockManagerMonitor = new LockManagerMonitor(lockManager);
+      lockManagerMonitor.initializeMonitorProvider(null);
+      registerMonitorProvider(lockManagerMonitor);
+
       initializeAuthenticationPolicyComponents();
 
       pluginConfigManager.initializeUserPlugins(null);
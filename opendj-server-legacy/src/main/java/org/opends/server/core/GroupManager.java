@@ -34,6 +34,7 @@ import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -42,6 +43,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -76,6 +78,7 @@ import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
+import org.opends.server.types.Modification;
 import org.opends.server.types.SearchFilter;
 import org.opends.server.types.SearchResultEntry;
 import org.opends.server.types.operation.PluginOperation;
@@ -115,6 +118,24 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private volatile long refreshToken;
 
+  /**
+   * Counts the changes made to the member lists of the registered group
+   * instances, which do not replace the group instances.
+   */
+  private final AtomicLong memberListChanges = new AtomicLong();
+
+  /** The reverse index of the group memberships. */
+  private final GroupMembershipIndex membershipIndex = new GroupMembershipIndex(this);
+
+  /** The group instances which must be notified of the changes made to entries. */
+  private volatile List<Group<?>> entryChangeListeners = Collections.emptyList();
+
+  /**
+   * The refresh token when the entry change listeners were last looked up,
+   * or -1 if they have never been looked up.
+   */
+  private volatile long entryChangeListenersToken = -1;
+
   /**
    * A mapping between the DNs of the config entries and the associated group
    * implementations.
@@ -550,6 +571,26 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
 
 
+  /**
+   * Retrieves the number of group instances defined in the server.
+   *
+   * @return  The number of group instances defined in the server.
+   */
+  public int getGroupInstanceCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return groupInstances.size();
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+
+
   /**
    * Retrieves the group instance defined in the entry with the specified DN.
    *
@@ -711,6 +752,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private void doPostAdd(PluginOperation addOperation, Entry entry)
   {
+    notifyEntryChanged(null, entry);
     if (hasGroupMembershipUpdateControl(addOperation))
     {
       return;
@@ -745,6 +787,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private void doPostDelete(PluginOperation deleteOperation, Entry entry)
   {
+    notifyEntryChanged(entry, null);
     if (hasGroupMembershipUpdateControl(deleteOperation))
     {
       return;
@@ -768,22 +811,26 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
   /**
    * In this case, if the entry is associated with a registered
-   * group instance, then that instance will be recreated from
-   * the contents of the provided entry and re-registered with
-   * the group manager.
+   * group instance, then the modifications are applied to that
+   * instance in place if it supports it. Otherwise, that instance
+   * will be recreated from the contents of the provided entry and
+   * re-registered with the group manager.
    */
   private void doPostModify(PluginOperation modifyOperation,
-          Entry oldEntry, Entry newEntry)
+          List<Modification> modifications, Entry oldEntry, Entry newEntry)
   {
+    notifyEntryChanged(oldEntry, newEntry);
     if (hasGroupMembershipUpdateControl(modifyOperation))
     {
       return;
     }
 
+    final Group<?> group;
     lock.readLock().lock();
     try
     {
-      if (!groupInstances.containsKey(oldEntry.getName()))
+      group = groupInstances.get(oldEntry.getName());
+      if (group == null)
       {
         // If the modified entry is not in any group instance, it's probably
         // not a group, exit fast
@@ -795,6 +842,15 @@ public class GroupManager extends InternalDirectoryServerPlugin
       lock.readLock().unlock();
     }
 
+    if (oldEntry.getName().equals(newEntry.getName())
+        && group.applyModifications(modifications))
+    {
+      // Only the member list of the group has changed, other group
+      // instances do not need to refresh their nested groups.
+      memberListChanged();
+      return;
+    }
+
     lock.writeLock().lock();
     try
     {
@@ -826,6 +882,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
   private void doPostModifyDN(PluginOperation modifyDNOperation,
           Entry oldEntry, Entry newEntry)
   {
+    notifyEntryChanged(oldEntry, newEntry);
     if (hasGroupMembershipUpdateControl(modifyDNOperation))
     {
       return;
@@ -900,6 +957,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
     if (modifyOperation.getResultCode() == ResultCode.SUCCESS)
     {
       doPostModify(modifyOperation,
+            modifyOperation.getModifications(),
             modifyOperation.getCurrentEntry(),
             modifyOperation.getModifiedEntry());
     }
@@ -959,7 +1017,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
     Entry modEntry = modifyOperation.getModifiedEntry();
     if (entry != null && modEntry != null)
     {
-      doPostModify(modifyOperation, entry, modEntry);
+      doPostModify(modifyOperation, modifyOperation.getModifications(), entry, modEntry);
     }
   }
 
@@ -978,6 +1036,39 @@ public class GroupManager extends InternalDirectoryServerPlugin
 
 
 
+  /**
+   * Notifies the group instances requiring it of a change made to an entry.
+   *
+   * @param  oldEntry  The entry before the change, or {@code null} if the
+   *                   entry has been added.
+   * @param  newEntry  The entry after the change, or {@code null} if the
+   *                   entry has been deleted.
+   */
+  private void notifyEntryChanged(Entry oldEntry, Entry newEntry)
+  {
+    if (hasInstancesChanged(entryChangeListenersToken))
+    {
+      final long token = refreshToken;
+      final List<Group<?>> listeners = new ArrayList<>();
+      for (Group<?> group : getGroupInstances())
+      {
+        if (group.requiresEntryChanges())
+        {
+          listeners.add(group);
+        }
+      }
+      entryChangeListeners = listeners;
+      entryChangeListenersToken = token;
+    }
+
+    for (Group<?> group : entryChangeListeners)
+    {
+      group.entryChanged(oldEntry, newEntry);
+    }
+  }
+
+
+
   /**
    * Attempts to create a group instance from the provided entry, and if that is
    * successful then register it with the server, overwriting any existing
@@ -1058,5 +1149,62 @@ public class GroupManager extends InternalDirectoryServerPlugin
   public long refreshToken() {
     return this.refreshToken;
   }
+
+  /**
+   * Records that the member list of a registered group instance has been
+   * changed in place, for example by {@link Group#addMember(Entry)}.
+   */
+  public void memberListChanged() {
+    memberListChanges.incrementAndGet();
+  }
+
+  /**
+   * Records that a member has been added in place to the member list of a
+   * registered group instance whose member list is indexable.
+   *
+   * @param group The group whose member list has changed.
+   * @param memberDN The DN of the added member.
+   */
+  public void memberAdded(Group<?> group, DN memberDN) {
+    membershipIndex.memberAdded(group, memberDN);
+    memberListChanged();
+  }
+
+  /**
+   * Records that a member has been removed in place from the member list of a
+   * registered group instance whose member list is indexable.
+   *
+   * @param group The group whose member list has changed.
+   * @param memberDN The DN of the removed member.
+   */
+  public void memberRemoved(Group<?> group, DN memberDN) {
+    membershipIndex.memberRemoved(group, memberDN);
+    memberListChanged();
+  }
+
+  /**
+   * Retrieves the group instances the provided entry is a member of, either
+   * directly or through nested groups. The groups are looked up in a reverse
+   * index of the group memberships, so the cost depends on the number of
+   * groups of the entry rather than on the number of groups in the server.
+   *
+   * @param entry The entry for which to retrieve the groups.
+   * @return The group instances the provided entry is a member of.
+   */
+  public Set<Group<?>> getGroups(Entry entry) {
+    return membershipIndex.getGroups(entry);
+  }
+
+  /**
+   * Return a token which changes whenever group memberships may have
+   * changed: groups have been registered or deleted, or the member list of a
+   * group has changed. Can be used to invalidate cached membership based
+   * decisions.
+   *
+   * @return The current membership token value.
+   */
+  public long membershipToken() {
+    return this.refreshToken + memberListChanges.get();
+  }
 }
 
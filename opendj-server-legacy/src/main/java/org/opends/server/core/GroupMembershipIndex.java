@@ -0,0 +1,385 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.api.Group;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.MemberList;
+import org.opends.server.types.MembershipException;
+
+/**
+ * A reverse index of group memberships, mapping the DN of each member to the
+ * groups which explicitly list it as a member. It is used to find the groups
+ * of an entry, including the groups it belongs to through nested groups,
+ * without checking the membership of the entry in every group.
+ * <p>
+ * Only the groups whose member list is indexable are indexed. The membership
+ * of an entry in the other groups, such as dynamic groups, is checked for
+ * each entry. The index is built on first use, is kept up to date with the
+ * changes reported by the indexed groups, and catches up with registered and
+ * deregistered groups when the group manager refresh token changes.
+ * <p>
+ * The index may contain stale memberships, so the membership of an entry in
+ * the groups found in the index is always confirmed by the groups themselves.
+ */
+final class GroupMembershipIndex
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * The minimum number of deregistered groups which may still be referenced
+   * from the index before it is rebuilt.
+   */
+  private static final int MIN_STALE_GROUPS_BEFORE_REBUILD = 64;
+
+  private final GroupManager groupManager;
+
+  /**
+   * Maps the normalized DN of each member to the indexed groups which list
+   * it as a member. The arrays are never modified once in the map.
+   */
+  private final ConcurrentMap<ByteString, Group<?>[]> groupsByMember = new ConcurrentHashMap<>();
+
+  /** The groups whose member list has been indexed. */
+  private final Set<Group<?>> indexedGroups =
+      Collections.newSetFromMap(new ConcurrentHashMap<Group<?>, Boolean>());
+
+  /** The registered groups whose member list cannot be indexed. */
+  private volatile List<Group<?>> unindexedGroups = Collections.emptyList();
+
+  /**
+   * The group manager refresh token at the time of the last refresh of the
+   * indexed groups, or -1 if the index has never been built.
+   */
+  private volatile long indexedRefreshToken = -1;
+
+  /** The number of deregistered groups which may still be referenced from the index. */
+  private int staleGroups;
+
+  /**
+   * Creates a new empty index for the groups of the provided group manager.
+   *
+   * @param groupManager
+   *          the group manager holding the groups to index
+   */
+  GroupMembershipIndex(GroupManager groupManager)
+  {
+    this.groupManager = groupManager;
+  }
+
+  /**
+   * Returns the groups the provided entry is a member of, either directly or
+   * through nested groups.
+   *
+   * @param entry
+   *          the entry for which to retrieve the groups
+   * @return the groups the provided entry is a member of
+   */
+  Set<Group<?>> getGroups(Entry entry)
+  {
+    refreshIfNeeded();
+
+    final Set<Group<?>> groups = new LinkedHashSet<>();
+    final Deque<DN> groupsToExpand = new ArrayDeque<>();
+    for (Group<?> group : unindexedGroups)
+    {
+      if (isMember(group, entry))
+      {
+        groups.add(group);
+        groupsToExpand.add(group.getGroupDN());
+      }
+    }
+
+    addIndexedGroups(entry.getName(), groups, groupsToExpand);
+    while (!groupsToExpand.isEmpty())
+    {
+      addIndexedGroups(groupsToExpand.poll(), groups, groupsToExpand);
+    }
+    return groups;
+  }
+
+  private void addIndexedGroups(DN memberDN, Set<Group<?>> groups, Deque<DN> groupsToExpand)
+  {
+    final Group<?>[] candidates = groupsByMember.get(memberDN.toNormalizedByteString());
+    if (candidates == null)
+    {
+      return;
+    }
+    for (Group<?> group : candidates)
+    {
+      if (!groups.contains(group)
+          && groupManager.getGroupInstance(group.getGroupDN()) == group
+          && isMember(group, memberDN))
+      {
+        groups.add(group);
+        groupsToExpand.add(group.getGroupDN());
+      }
+    }
+  }
+
+  private boolean isMember(Group<?> group, Entry entry)
+  {
+    try
+    {
+      return group.isMember(entry);
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return false;
+    }
+  }
+
+  private boolean isMember(Group<?> group, DN memberDN)
+  {
+    try
+    {
+      return group.isMember(memberDN);
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return false;
+    }
+  }
+
+  /**
+   * Records that a member has been added to the member list of a group.
+   *
+   * @param group
+   *          the group whose member list has changed
+   * @param memberDN
+   *          the DN of the added member
+   */
+  void memberAdded(Group<?> group, DN memberDN)
+  {
+    // Groups which are not indexed yet will be entirely indexed later
+    if (indexedGroups.contains(group))
+    {
+      add(memberDN.toNormalizedByteString(), group);
+    }
+  }
+
+  /**
+   * Records that a member has been removed from the member list of a group.
+   *
+   * @param group
+   *          the group whose member list has changed
+   * @param memberDN
+   *          the DN of the removed member
+   */
+  void memberRemoved(Group<?> group, DN memberDN)
+  {
+    remove(memberDN.toNormalizedByteString(), group);
+  }
+
+  private void add(ByteString key, Group<?> group)
+  {
+    while (true)
+    {
+      final Group<?>[] groups = groupsByMember.get(key);
+      if (groups == null)
+      {
+        if (groupsByMember.putIfAbsent(key, new Group<?>[] { group }) == null)
+        {
+          return;
+        }
+      }
+      else if (indexOf(groups, group) >= 0)
+      {
+        return;
+      }
+      else
+      {
+        final Group<?>[] newGroups = Arrays.copyOf(groups, groups.length + 1);
+        newGroups[groups.length] = group;
+        if (groupsByMember.replace(key, groups, newGroups))
+        {
+          return;
+        }
+      }
+    }
+  }
+
+  private void remove(ByteString key, Group<?> group)
+  {
+    while (true)
+    {
+      final Group<?>[] groups = groupsByMember.get(key);
+      final int index = groups != null ? indexOf(groups, group) : -1;
+      if (index < 0)
+      {
+        return;
+      }
+      if (groups.length == 1)
+      {
+        if (groupsByMember.remove(key, groups))
+        {
+          return;
+        }
+      }
+      else
+      {
+        final Group<?>[] newGroups = new Group<?>[groups.length - 1];
+        System.arraycopy(groups, 0, newGroups, 0, index);
+        System.arraycopy(groups, index + 1, newGroups, index, newGroups.length - index);
+        if (groupsByMember.replace(key, groups, newGroups))
+        {
+          return;
+        }
+      }
+    }
+  }
+
+  private static int indexOf(Group<?>[] groups, Group<?> group)
+  {
+    for (int i = 0; i < groups.length; i++)
+    {
+      if (groups[i] == group)
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Indexes the newly registered groups if group instances have changed. */
+  private void refreshIfNeeded()
+  {
+    if (!groupManager.hasInstancesChanged(indexedRefreshToken))
+    {
+      return;
+    }
+
+    synchronized (this)
+    {
+      final long refreshToken = groupManager.refreshToken();
+      if (refreshToken == indexedRefreshToken)
+      {
+        return;
+      }
+
+      final Set<Group<?>> registeredGroups =
+          Collections.newSetFromMap(new IdentityHashMap<Group<?>, Boolean>());
+      final List<Group<?>> newUnindexedGroups = new ArrayList<>();
+      for (Group<?> group : groupManager.getGroupInstances())
+      {
+        registeredGroups.add(group);
+        if (!group.isMemberListIndexable())
+        {
+          newUnindexedGroups.add(group);
+        }
+      }
+
+      // Forget the deregistered groups. Their memberships are ignored until
+      // there are enough of them to make rebuilding the index worthwhile.
+      for (Iterator<Group<?>> it = indexedGroups.iterator(); it.hasNext();)
+      {
+        if (!registeredGroups.contains(it.next()))
+        {
+          it.remove();
+          staleGroups++;
+        }
+      }
+      if (staleGroups > Math.max(MIN_STALE_GROUPS_BEFORE_REBUILD, indexedGroups.size() / 4))
+      {
+        indexedGroups.clear();
+        groupsByMember.clear();
+        staleGroups = 0;
+      }
+
+      for (Group<?> group : registeredGroups)
+      {
+        // Mark the group as indexed first, so that the members added while
+        // reading its member list are indexed as well
+        if (group.isMemberListIndexable() && indexedGroups.add(group))
+        {
+          indexMembers(group);
+        }
+      }
+      unindexedGroups = newUnindexedGroups;
+      indexedRefreshToken = refreshToken;
+    }
+  }
+
+  private void indexMembers(Group<?> group)
+  {
+    final MemberList memberList;
+    try
+    {
+      memberList = group.getMembers();
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return;
+    }
+
+    try
+    {
+      while (memberList.hasMoreMembers())
+      {
+        try
+        {
+          final DN memberDN = memberList.nextMemberDN();
+          if (memberDN != null)
+          {
+            add(memberDN.toNormalizedByteString(), group);
+          }
+        }
+        catch (MembershipException e)
+        {
+          logger.traceException(e);
+          if (!e.continueIterating())
+          {
+            break;
+          }
+        }
+      }
+    }
+    finally
+    {
+      memberList.close();
+    }
+  }
+}
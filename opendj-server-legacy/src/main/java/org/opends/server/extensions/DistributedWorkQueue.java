@@ -0,0 +1,708 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.admin.std.server.DistributedWorkQueueCfg;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.DistributedWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * A work queue where each worker thread has its own bounded lock-free queue of
+ * pending operations. Operations are dispatched to the queues according to
+ * their client connection, so that the operations of a client connection are
+ * picked up in the order they were received, as with a single FIFO queue. A
+ * worker thread processes the operations of its own queue first, then steals
+ * operations from the head of the queues of the other worker threads, which
+ * preserves this order.
+ * <p>
+ * Submitting and picking up operations only involves a few atomic operations
+ * on the queue of a worker thread: there is no lock shared by all the worker
+ * threads. Idle worker threads are parked and woken up when an operation is
+ * submitted to their queue, or when an operation is submitted to the queue of
+ * a busy worker thread.
+ */
+public class DistributedWorkQueue extends WorkQueue<DistributedWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * The upper bounds, in nanoseconds, of the ranges of time spent by the
+   * operations in the queue reported by the monitor.
+   */
+  public static final long[] WAIT_TIME_BUCKET_BOUNDS = {
+    TimeUnit.MICROSECONDS.toNanos(100),
+    TimeUnit.MILLISECONDS.toNanos(1),
+    TimeUnit.MILLISECONDS.toNanos(10),
+    TimeUnit.MILLISECONDS.toNanos(100),
+    TimeUnit.SECONDS.toNanos(1),
+  };
+
+  /** The minimum capacity of the queue of a worker thread. */
+  private static final int MIN_QUEUE_CAPACITY = 16;
+
+  /**
+   * The maximum time a worker thread is parked before checking the queues
+   * again, as a safety net against missed wake ups.
+   */
+  private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** The time a submitter waits before retrying to submit to a full queue. */
+  private static final long FULL_QUEUE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  /**
+   * A bounded multi-producer multi-consumer lock-free queue of operations. Each
+   * slot has a sequence number telling whether it is ready to be written or
+   * read for a given position, so that producers and consumers only compete on
+   * the tail and head positions.
+   */
+  static final class OperationQueue
+  {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<Operation> operations;
+    /** Written before publishing the slot sequence, read after reading it. */
+    private final long[] submitTimes;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a new queue.
+     *
+     * @param capacity
+     *          The capacity of the queue, which must be a power of two.
+     */
+    OperationQueue(int capacity)
+    {
+      mask = capacity - 1;
+      sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++)
+      {
+        sequences.set(i, i);
+      }
+      operations = new AtomicReferenceArray<>(capacity);
+      submitTimes = new long[capacity];
+    }
+
+    /**
+     * Adds an operation at the tail of this queue.
+     *
+     * @param operation
+     *          The operation to add.
+     * @return {@code true} if the operation was added, {@code false} if this
+     *         queue is full.
+     */
+    boolean offer(Operation operation)
+    {
+      long position = tail.get();
+      while (true)
+      {
+        final int index = (int) position & mask;
+        final long diff = sequences.get(index) - position;
+        if (diff == 0)
+        {
+          if (tail.compareAndSet(position, position + 1))
+          {
+            submitTimes[index] = System.nanoTime();
+            operations.lazySet(index, operation);
+            // Publishes the slot to the consumers
+            sequences.set(index, position + 1);
+            return true;
+          }
+          position = tail.get();
+        }
+        else if (diff < 0)
+        {
+          return false;
+        }
+        else
+        {
+          // Another producer took this position
+          position = tail.get();
+        }
+      }
+    }
+
+    /**
+     * Removes the operation at the head of this queue.
+     *
+     * @param consumer
+     *          The worker thread taking the operation, or {@code null} if the
+     *          operation is not taken for processing.
+     * @param stolen
+     *          Whether the consumer does not own this queue.
+     * @return The operation at the head of this queue, or {@code null} if this
+     *         queue is empty.
+     */
+    Operation poll(DistributedWorkerThread consumer, boolean stolen)
+    {
+      long position = head.get();
+      while (true)
+      {
+        final int index = (int) position & mask;
+        final long diff = sequences.get(index) - (position + 1);
+        if (diff == 0)
+        {
+          if (head.compareAndSet(position, position + 1))
+          {
+            final Operation operation = operations.get(index);
+            final long submitTime = submitTimes[index];
+            operations.lazySet(index, null);
+            // Gives back the slot to the producers
+            sequences.set(index, position + mask + 1);
+            if (consumer != null)
+            {
+              consumer.operationDequeued(System.nanoTime() - submitTime, stolen);
+            }
+            return operation;
+          }
+          position = head.get();
+        }
+        else if (diff < 0)
+        {
+          return null;
+        }
+        else
+        {
+          // Another consumer took this position
+          position = head.get();
+        }
+      }
+    }
+
+    /**
+     * Retrieves the approximate number of operations in this queue.
+     *
+     * @return The approximate number of operations in this queue.
+     */
+    int size()
+    {
+      final long size = tail.get() - head.get();
+      return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * Retrieves the number of operations added to this queue.
+     *
+     * @return The number of operations added to this queue.
+     */
+    long getOpsSubmitted()
+    {
+      return tail.get();
+    }
+  }
+
+  /** The worker threads, the queue of a worker thread has the same index. */
+  private DistributedWorkerThread[] workerThreads;
+
+  /** The queues of the worker threads. */
+  private OperationQueue[] queues;
+
+  /** The number of worker threads waiting for work. */
+  private final AtomicInteger nbWaitingWorkers = new AtomicInteger();
+
+  /**
+   * The number of times that an attempt to submit a new request has been
+   * rejected because the work queue is already at its maximum capacity.
+   */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The maximum number of pending operations in all the queues. */
+  private int maxCapacity;
+
+  /** The monitor provider of this work queue. */
+  private DistributedWorkQueueMonitor monitor;
+
+
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public DistributedWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeWorkQueue(DistributedWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+
+    final int numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    final int queueCapacity = getQueueCapacity(maxCapacity, numWorkerThreads);
+
+    queues = new OperationQueue[numWorkerThreads];
+    workerThreads = new DistributedWorkerThread[numWorkerThreads];
+    for (int i = 0; i < numWorkerThreads; i++)
+    {
+      queues[i] = new OperationQueue(queueCapacity);
+      workerThreads[i] = new DistributedWorkerThread(this, i);
+    }
+    for (DistributedWorkerThread t : workerThreads)
+    {
+      t.start();
+    }
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      monitor = new DistributedWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, DistributedWorkQueueMonitor.class, e);
+    }
+  }
+
+  /**
+   * Returns the capacity of the queue of each worker thread: the smallest power
+   * of two allowing to hold the maximum capacity in all the queues.
+   */
+  static int getQueueCapacity(int maxCapacity, int numWorkerThreads)
+  {
+    // computed in long, maxCapacity + numWorkerThreads - 1 can overflow
+    final int perWorker =
+        (int) Math.max(MIN_QUEUE_CAPACITY, ((long) maxCapacity + numWorkerThreads - 1) / numWorkerThreads);
+    final int capacity = Integer.highestOneBit(perWorker);
+    return capacity == perWorker || capacity == 1 << 30 ? capacity : capacity << 1;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // From now on no more operations can be enqueued. Send responses to any
+    // operations in the queues to indicate that they won't be processed because
+    // the server is shutting down.
+    abortPendingOperations(new CancelRequest(true, reason));
+
+    // Notify all the worker threads of the shutdown.
+    for (DistributedWorkerThread t : workerThreads)
+    {
+      try
+      {
+        t.shutDown();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_NOTIFY_THREAD, t.getName(), e);
+      }
+    }
+
+    if (monitor != null)
+    {
+      DirectoryServer.deregisterMonitorProvider(monitor);
+      monitor.finalizeMonitorProvider();
+    }
+  }
+
+  private void abortPendingOperations(CancelRequest cancelRequest)
+  {
+    for (OperationQueue queue : queues)
+    {
+      Operation o;
+      while ((o = queue.poll(null, false)) != null)
+      {
+        try
+        {
+          // The operation has no chance of responding to the cancel
+          // request so avoid waiting for a cancel response.
+          if (o.getCancelResult() == null)
+          {
+            o.abort(cancelRequest);
+          }
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+          logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has recieved a request to shut
+   *         down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+
+
+  /**
+   * Submits an operation to be processed by one of the worker threads
+   * associated with this work queue. If the queue of the client connection of
+   * the operation is full, this method blocks until it has available capacity.
+   *
+   * @param operation
+   *          The operation to be processed.
+   * @throws DirectoryException
+   *           If the provided operation is not accepted for some reason (e.g.,
+   *           if the server is shutting down).
+   */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, true);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean trySubmitOperation(Operation operation)
+      throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation,
+      boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    checkNotShutdown();
+
+    final int index = getQueueIndex(operation);
+    final OperationQueue queue = queues[index];
+    while (!queue.offer(operation))
+    {
+      if (!blockEnqueuingWhenFull)
+      {
+        queueFullRejects.incrementAndGet();
+
+        LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity);
+        throw new DirectoryException(ResultCode.BUSY, message);
+      }
+
+      // Make sure the queue is being drained, then wait a bit
+      wakeUpWorkers(index);
+      LockSupport.parkNanos(this, FULL_QUEUE_PARK_NANOS);
+      if (Thread.interrupted())
+      {
+        // We cannot handle the interruption here. Reject the request and
+        // re-interrupt this thread.
+        Thread.currentThread().interrupt();
+
+        queueFullRejects.incrementAndGet();
+
+        LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get();
+        throw new DirectoryException(ResultCode.BUSY, message);
+      }
+      checkNotShutdown();
+    }
+
+    if (shutdownRequested)
+    {
+      // Raced with the shutdown: nobody will pick up the operation
+      abortPendingOperations(new CancelRequest(true, WARN_OP_REJECTED_BY_SHUTDOWN.get()));
+      return;
+    }
+    wakeUpWorkers(index);
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+  }
+
+  /**
+   * Returns the index of the queue of an operation: all the operations of a
+   * client connection go to the same queue.
+   */
+  private int getQueueIndex(Operation operation)
+  {
+    final long connectionID = operation.getConnectionID();
+    final int hash = (int) (connectionID ^ (connectionID >>> 32));
+    return (hash & Integer.MAX_VALUE) % queues.length;
+  }
+
+  /**
+   * Wakes up the owner of the provided queue if it is waiting for work,
+   * otherwise wakes up another waiting worker thread so that it can steal the
+   * operation.
+   */
+  private void wakeUpWorkers(int index)
+  {
+    final DistributedWorkerThread owner = workerThreads[index];
+    if (owner.isWaitingForWork())
+    {
+      LockSupport.unpark(owner);
+      return;
+    }
+    if (nbWaitingWorkers.get() > 0)
+    {
+      for (int i = 1; i < workerThreads.length; i++)
+      {
+        final DistributedWorkerThread t = workerThreads[(index + i) % workerThreads.length];
+        if (t.isWaitingForWork())
+        {
+          LockSupport.unpark(t);
+          return;
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves the next operation that should be processed by the provided
+   * worker thread, blocking if necessary until a new request arrives. This
+   * method should only be called by a worker thread associated with this work
+   * queue.
+   *
+   * @param workerThread
+   *          The worker thread that is requesting the operation.
+   * @return The next operation that should be processed, or <CODE>null</CODE>
+   *         if the server is shutting down and no more operations will be
+   *         processed.
+   */
+  Operation nextOperation(DistributedWorkerThread workerThread)
+  {
+    while (!shutdownRequested)
+    {
+      Operation operation = pollOrSteal(workerThread);
+      if (operation != null)
+      {
+        return operation;
+      }
+
+      // Advertise that this thread is waiting before checking the queues again,
+      // so that a concurrent submitter either sees it waiting or its operation
+      // is seen by this thread.
+      workerThread.setWaitingForWork(true);
+      nbWaitingWorkers.incrementAndGet();
+      try
+      {
+        operation = pollOrSteal(workerThread);
+        if (operation != null)
+        {
+          return operation;
+        }
+        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+      }
+      finally
+      {
+        nbWaitingWorkers.decrementAndGet();
+        workerThread.setWaitingForWork(false);
+      }
+
+      if (Thread.interrupted() && !shutdownRequested)
+      {
+        // The worker thread was interrupted for some other reason. This should
+        // not happen, and we need to log a message.
+        logger.warn(WARN_WORKER_INTERRUPTED_WITHOUT_SHUTDOWN, workerThread.getName(),
+            new InterruptedException());
+      }
+    }
+    return null;
+  }
+
+  private Operation pollOrSteal(DistributedWorkerThread workerThread)
+  {
+    final int index = workerThread.getQueueIndex();
+    Operation operation = queues[index].poll(workerThread, false);
+    for (int i = 1; operation == null && i < queues.length; i++)
+    {
+      operation = queues[(index + i) % queues.length].poll(workerThread, true);
+    }
+    return operation;
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    long opsSubmitted = 0;
+    for (OperationQueue queue : queues)
+    {
+      opsSubmitted += queue.getOpsSubmitted();
+    }
+    return opsSubmitted;
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.get();
+  }
+
+
+
+  /**
+   * Retrieves the total number of operations that have been processed by a
+   * worker thread other than the one owning the queue they were submitted to.
+   *
+   * @return The total number of operations stolen by the worker threads.
+   */
+  public long getOpsStolen()
+  {
+    long opsStolen = 0;
+    for (DistributedWorkerThread t : workerThreads)
+    {
+      opsStolen += t.getOpsStolen();
+    }
+    return opsStolen;
+  }
+
+
+
+  /**
+   * Retrieves the number of operations picked up by the worker threads, by
+   * range of time spent in the queue. The ranges are delimited by
+   * {@link #WAIT_TIME_BUCKET_BOUNDS}, the last range has no upper bound.
+   *
+   * @return The number of operations picked up by the worker threads, by range
+   *         of time spent in the queue.
+   */
+  public long[] getWaitTimeHistogram()
+  {
+    final long[] histogram = new long[WAIT_TIME_BUCKET_BOUNDS.length + 1];
+    for (DistributedWorkerThread t : workerThreads)
+    {
+      t.addWaitTimeHistogram(histogram);
+    }
+    return histogram;
+  }
+
+
+
+  /**
+   * Retrieves the number of pending operations in the queues that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queues that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    int size = 0;
+    for (OperationQueue queue : queues)
+    {
+      size += queue.size();
+    }
+    return size;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdle()
+  {
+    if (size() > 0)
+    {
+      return false;
+    }
+    for (DistributedWorkerThread t : workerThreads)
+    {
+      if (t.isActive())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return workerThreads.length;
+  }
+}
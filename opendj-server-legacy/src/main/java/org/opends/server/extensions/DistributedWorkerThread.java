@@ -0,0 +1,343 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.Operation;
+
+/**
+ * A worker thread of a {@link DistributedWorkQueue}. Each worker thread
+ * processes the operations of its own queue first, then steals operations from
+ * the queues of the other worker threads.
+ * <p>
+ * The statistics of a worker thread are only updated by the worker thread
+ * itself, so that worker threads do not contend on shared counters.
+ */
+public class DistributedWorkerThread extends DirectoryThread
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Indicates whether the Directory Server is shutting down and this thread should stop running. */
+  private volatile boolean shutdownRequested;
+
+  /** Indicates whether this thread is parked, waiting for work. */
+  private volatile boolean waitingForWork;
+
+  /** The operation that this worker thread is currently processing. */
+  private volatile Operation operation;
+
+  /** The work queue that this worker thread will service. */
+  private final DistributedWorkQueue workQueue;
+
+  /** The index of the queue of this worker thread. */
+  private final int queueIndex;
+
+  /** The number of operations stolen from the queues of the other worker threads. */
+  private volatile long opsStolen;
+
+  /** The number of operations picked up by this thread, by range of time spent in the queue. */
+  private final AtomicLongArray waitTimeHistogram =
+      new AtomicLongArray(DistributedWorkQueue.WAIT_TIME_BUCKET_BOUNDS.length + 1);
+
+
+
+  /**
+   * Creates a new worker thread that will service the provided work queue and
+   * process any new requests that are submitted.
+   *
+   * @param  workQueue   The work queue with which this worker thread is
+   *                     associated.
+   * @param  queueIndex  The index of the queue of this worker thread, also
+   *                     used as its thread ID.
+   */
+  public DistributedWorkerThread(DistributedWorkQueue workQueue, int queueIndex)
+  {
+    super("Worker Thread " + queueIndex);
+    this.workQueue = workQueue;
+    this.queueIndex = queueIndex;
+  }
+
+
+
+  /**
+   * Retrieves the index of the queue of this worker thread.
+   *
+   * @return The index of the queue of this worker thread.
+   */
+  int getQueueIndex()
+  {
+    return queueIndex;
+  }
+
+
+
+  /**
+   * Indicates whether this worker thread is waiting for work.
+   *
+   * @return {@code true} if this worker thread is waiting for work.
+   */
+  boolean isWaitingForWork()
+  {
+    return waitingForWork;
+  }
+
+
+
+  /**
+   * Indicates whether this worker thread is waiting for work.
+   *
+   * @param waitingForWork
+   *          {@code true} if this worker thread is about to wait for work,
+   *          {@code false} if it stopped waiting.
+   */
+  void setWaitingForWork(boolean waitingForWork)
+  {
+    this.waitingForWork = waitingForWork;
+  }
+
+
+
+  /**
+   * Records that an operation has been picked up by this worker thread.
+   *
+   * @param waitTimeNanos
+   *          The time the operation spent in the queue, in nanoseconds.
+   * @param stolen
+   *          Whether the operation was taken from the queue of another worker
+   *          thread.
+   */
+  void operationDequeued(long waitTimeNanos, boolean stolen)
+  {
+    int bucket = 0;
+    final long[] bounds = DistributedWorkQueue.WAIT_TIME_BUCKET_BOUNDS;
+    while (bucket < bounds.length && waitTimeNanos >= bounds[bucket])
+    {
+      bucket++;
+    }
+    // Only this thread updates the statistics
+    waitTimeHistogram.lazySet(bucket, waitTimeHistogram.get(bucket) + 1);
+    if (stolen)
+    {
+      opsStolen++;
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of operations stolen by this worker thread from the
+   * queues of the other worker threads.
+   *
+   * @return The number of operations stolen by this worker thread.
+   */
+  long getOpsStolen()
+  {
+    return opsStolen;
+  }
+
+
+
+  /**
+   * Adds the wait time histogram of this worker thread to the provided one.
+   *
+   * @param histogram
+   *          The histogram to add to.
+   */
+  void addWaitTimeHistogram(long[] histogram)
+  {
+    for (int i = 0; i < histogram.length; i++)
+    {
+      histogram[i] += waitTimeHistogram.get(i);
+    }
+  }
+
+
+
+  /**
+   * Indicates whether this worker thread is actively processing a request.
+   * Note that this is a point-in-time determination and if a reliable answer is
+   * expected then the server should impose some external constraint to ensure
+   * that no new requests are enqueued.
+   *
+   * @return  {@code true} if this worker thread is actively processing a
+   *          request, or {@code false} if it is idle.
+   */
+  public boolean isActive()
+  {
+    return isAlive() && operation != null;
+  }
+
+
+
+  /**
+   * Operates in a loop, retrieving the next request from the work queue,
+   * processing it, and then going back to the queue for more.
+   */
+  @Override
+  public void run()
+  {
+    while (! shutdownRequested)
+    {
+      try
+      {
+        operation = null; // this line is necessary because next line can block
+        operation = workQueue.nextOperation(this);
+        if (operation == null)
+        {
+          // The operation may be null if the server is shutting down.  If that
+          // is the case, then break out of the while loop.
+          break;
+        }
+
+        operation.run();
+        operation.operationCompleted();
+      }
+      catch (Throwable t)
+      {
+        if (logger.isTraceEnabled())
+        {
+          logger.trace(
+            "Uncaught exception in worker thread while processing " +
+                "operation %s: %s", operation, t);
+          logger.traceException(t);
+        }
+
+        try
+        {
+          LocalizableMessage message =
+              ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(getName(), operation, stackTraceToSingleLineString(t));
+          logger.error(message);
+
+          // Ensure that the client receives some kind of result so that it does
+          // not hang.
+          operation.setResultCode(DirectoryServer.getServerErrorResultCode());
+          operation.appendErrorMessage(message);
+          operation.getClientConnection().sendResponse(operation);
+        }
+        catch (Throwable t2)
+        {
+          logger.traceException(t2);
+        }
+
+        try
+        {
+          LocalizableMessage message = ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(
+              getName(), operation, stackTraceToSingleLineString(t));
+
+          operation.disconnectClient(DisconnectReason.SERVER_ERROR, true, message);
+        }
+        catch (Throwable t2)
+        {
+          logger.traceException(t2);
+        }
+      }
+    }
+
+    // If we have gotten here, then we presume that the server thread is
+    // shutting down.  However, if that's not the case then that is a problem
+    // and we will want to log a message.
+    if (! workQueue.shutdownRequested())
+    {
+      logger.warn(WARN_UNEXPECTED_WORKER_THREAD_EXIT, getName());
+    }
+
+    if (logger.isTraceEnabled())
+    {
+      logger.trace(getName() + " exiting.");
+    }
+  }
+
+
+
+  /**
+   * Indicates that the Directory Server has received a request to stop running
+   * and that this thread should stop running as soon as possible.
+   */
+  public void shutDown()
+  {
+    if (logger.isTraceEnabled())
+    {
+      logger.trace(getName() + " being signaled to shut down.");
+    }
+
+    // Set a flag that indicates that the thread should stop running.
+    shutdownRequested = true;
+
+    final Operation localOperation = operation;
+    if (localOperation == null)
+    {
+      // Wake up the thread if it is waiting for work.
+      interrupt();
+      return;
+    }
+
+    try
+    {
+      CancelRequest cancelRequest = new CancelRequest(true,
+          INFO_CANCELED_BY_SHUTDOWN.get());
+      localOperation.cancel(cancelRequest);
+    }
+    catch (Exception e)
+    {
+      if (logger.isTraceEnabled())
+      {
+        logger.trace(
+          "Caught an exception while trying to abandon the " +
+              "operation in progress for the worker thread: %s", e);
+        logger.traceException(e);
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieves any relevant debug information with which this tread is
+   * associated so they can be included in debug messages.
+   *
+   * @return debug information about this thread as a string.
+   */
+  @Override
+  public Map<String, String> getDebugProperties()
+  {
+    Map<String, String> properties = super.getDebugProperties();
+    properties.put("clientConnection", operation != null
+        ? String.valueOf(operation.getClientConnection()) : "none");
+    properties.put("operation", String.valueOf(operation));
+    return properties;
+  }
+}
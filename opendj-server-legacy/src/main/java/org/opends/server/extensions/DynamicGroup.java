@@ -28,21 +28,31 @@ package org.opends.server.extensions;
 
 
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.opends.server.admin.std.server.DynamicGroupImplementationCfg;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
 import org.opends.server.api.Group;
+import org.opends.server.api.MonitorProvider;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.ServerContext;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.types.Attribute;
 import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.types.DirectoryConfig;
 import org.opends.server.types.DirectoryException;
@@ -51,8 +61,10 @@ import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
 import org.opends.server.types.LDAPURL;
 import org.opends.server.types.MemberList;
+import org.opends.server.types.MembershipException;
 import org.opends.server.types.ObjectClass;
 import org.opends.server.types.SearchFilter;
+import org.opends.server.types.VirtualAttributeRule;
 import org.forgerock.opendj.ldap.SearchScope;
 
 import static org.opends.messages.ExtensionMessages.*;
@@ -68,6 +80,14 @@ import static org.forgerock.util.Reject.*;
  * in the form of one or more LDAP URLs.  All dynamic groups should
  * contain the groupOfURLs object class, with the memberURL attribute
  * specifying the membership criteria.
+ * <p>
+ * When the members are materialized, they are found by searching the member
+ * URLs the first time they are needed, and are then kept in memory and
+ * maintained by matching the entries changed in the server against the member
+ * URLs. When the member URLs use virtual attributes, for example isMemberOf,
+ * the changed entries alone do not tell whether the values of these attributes
+ * have changed: the members are then materialized again whenever the group
+ * memberships of the server may have changed.
  */
 public class DynamicGroup
        extends Group<DynamicGroupImplementationCfg>
@@ -80,6 +100,114 @@ public class DynamicGroup
   /** The set of the LDAP URLs that define the membership criteria. */
   private LinkedHashSet<LDAPURL> memberURLs;
 
+  /**
+   * The statistics of the materialized dynamic groups, or {@code null} if the
+   * members of this group are not materialized.
+   */
+  private MaterializationStatistics statistics;
+
+  /**
+   * The materialized members of this group, ordered so that the members below
+   * a given DN are contiguous, or {@code null} if they have not been
+   * materialized yet or need to be materialized again.
+   */
+  private volatile NavigableSet<DN> memberDNs;
+
+  /**
+   * The DNs of the entries changed while the members are being materialized,
+   * or {@code null} if the members are not being materialized.
+   */
+  private volatile Set<DN> changedWhileMaterializing;
+
+  /** The time when the members were last materialized, or 0 if they never were. */
+  private volatile long materializationTime;
+
+  /**
+   * The group manager membership token when the members were last
+   * materialized, or -1 if the member URLs do not use virtual attributes and
+   * the members do not depend on the group memberships.
+   */
+  private volatile long materializationMembershipToken = -1;
+
+  /** The statistics shared by the materialized dynamic groups of an implementation. */
+  private static final class MaterializationStatistics
+  {
+    private final AtomicLong entryChanges = new AtomicLong();
+    private final AtomicLong entryChangesNanos = new AtomicLong();
+    private final AtomicLong materializations = new AtomicLong();
+    private final AtomicLong materializationsNanos = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+  }
+
+  /**
+   * The monitor reporting the statistics of the materialized dynamic groups,
+   * or {@code null} if the members of the dynamic groups are not materialized.
+   */
+  private Monitor monitor;
+
+  /**
+   * Reports the staleness and maintenance cost of the materialized dynamic
+   * groups.
+   */
+  private final class Monitor extends MonitorProvider<MonitorProviderCfg>
+  {
+    @Override
+    public String getMonitorInstanceName()
+    {
+      return "Materialized Dynamic Groups";
+    }
+
+    @Override
+    public List<Attribute> getMonitorData()
+    {
+      int groups = 0;
+      int pendingGroups = 0;
+      long members = 0;
+      long oldestMaterializationTime = 0;
+      for (Group<?> group : DirectoryServer.getGroupManager().getGroupInstances())
+      {
+        if (group instanceof DynamicGroup && ((DynamicGroup) group).statistics == statistics)
+        {
+          final DynamicGroup dynamicGroup = (DynamicGroup) group;
+          final Set<DN> groupMembers = dynamicGroup.memberDNs;
+          groups++;
+          if (groupMembers == null)
+          {
+            pendingGroups++;
+          }
+          else
+          {
+            members += groupMembers.size();
+            final long time = dynamicGroup.materializationTime;
+            if (oldestMaterializationTime == 0 || time < oldestMaterializationTime)
+            {
+              oldestMaterializationTime = time;
+            }
+          }
+        }
+      }
+
+      final long entryChanges = statistics.entryChanges.get();
+      final long entryChangesNanos = statistics.entryChangesNanos.get();
+      final List<Attribute> attrs = new ArrayList<>();
+      attrs.add(Attributes.create("materializedGroups", String.valueOf(groups)));
+      attrs.add(Attributes.create("groupsPendingMaterialization", String.valueOf(pendingGroups)));
+      attrs.add(Attributes.create("materializedMembers", String.valueOf(members)));
+      attrs.add(Attributes.create("oldestMaterializationAgeSeconds", String.valueOf(
+          oldestMaterializationTime != 0 ? (System.currentTimeMillis() - oldestMaterializationTime) / 1000 : 0)));
+      attrs.add(Attributes.create("materializations", String.valueOf(statistics.materializations.get())));
+      attrs.add(Attributes.create("materializationTimeMillis",
+          String.valueOf(TimeUnit.NANOSECONDS.toMillis(statistics.materializationsNanos.get()))));
+      attrs.add(Attributes.create("invalidations", String.valueOf(statistics.invalidations.get())));
+      attrs.add(Attributes.create("entryChanges", String.valueOf(entryChanges)));
+      attrs.add(Attributes.create("entryChangesTimeMillis",
+          String.valueOf(TimeUnit.NANOSECONDS.toMillis(entryChangesNanos))));
+      attrs.add(Attributes.create("averageEntryChangeTimeMicros",
+          String.valueOf(entryChanges != 0 ? TimeUnit.NANOSECONDS.toMicros(entryChangesNanos / entryChanges) : 0)));
+      return attrs;
+    }
+  }
+
 
 
   /**
@@ -116,13 +244,49 @@ public class DynamicGroup
 
 
 
+  /**
+   * Creates a new dynamic group instance whose members are materialized.
+   *
+   * @param  groupEntryDN  The DN of the entry that holds the definition for
+   *                       this group.
+   * @param  memberURLs    The set of LDAP URLs that define the membership
+   *                       criteria for this group.
+   * @param  statistics    The statistics shared by the materialized groups.
+   */
+  private DynamicGroup(DN groupEntryDN, LinkedHashSet<LDAPURL> memberURLs,
+                       MaterializationStatistics statistics)
+  {
+    this(groupEntryDN, memberURLs);
+    this.statistics = statistics;
+  }
+
+
+
   /** {@inheritDoc} */
   @Override
   public void initializeGroupImplementation(
                    DynamicGroupImplementationCfg configuration)
          throws ConfigException, InitializationException
   {
-    // No additional initialization is required.
+    if (configuration.isMaterializeMembers())
+    {
+      statistics = new MaterializationStatistics();
+      monitor = new Monitor();
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeGroupImplementation()
+  {
+    if (monitor != null)
+    {
+      DirectoryServer.deregisterMonitorProvider(monitor);
+      monitor = null;
+    }
   }
 
 
@@ -161,6 +325,10 @@ public class DynamicGroup
       }
     }
 
+    if (statistics != null)
+    {
+      return new DynamicGroup(groupEntry.getName(), memberURLs, statistics);
+    }
     return new DynamicGroup(groupEntry.getName(), memberURLs);
   }
 
@@ -279,6 +447,11 @@ public class DynamicGroup
       return false;
     }
 
+    if (isMaterialized())
+    {
+      return getMemberDNs().contains(userDN);
+    }
+
     Entry entry = DirectoryConfig.getEntry(userDN);
     return entry != null && isMember(entry);
   }
@@ -295,6 +468,11 @@ public class DynamicGroup
       return false;
     }
 
+    if (isMaterialized())
+    {
+      return getMemberDNs().contains(userEntry.getName());
+    }
+
     for (LDAPURL memberURL : memberURLs)
     {
       if (memberURL.matchesEntry(userEntry))
@@ -313,6 +491,10 @@ public class DynamicGroup
   public MemberList getMembers()
          throws DirectoryException
   {
+    if (isMaterialized())
+    {
+      return new MaterializedDynamicGroupMemberList(groupEntryDN, getMemberDNs(), null, null, null);
+    }
     return new DynamicGroupMemberList(groupEntryDN, memberURLs);
   }
 
@@ -324,7 +506,11 @@ public class DynamicGroup
                                SearchFilter filter)
          throws DirectoryException
   {
-    if (baseDN == null && filter == null)
+    if (isMaterialized())
+    {
+      return new MaterializedDynamicGroupMemberList(groupEntryDN, getMemberDNs(), baseDN, scope, filter);
+    }
+    else if (baseDN == null && filter == null)
     {
       return new DynamicGroupMemberList(groupEntryDN, memberURLs);
     }
@@ -337,6 +523,308 @@ public class DynamicGroup
 
 
 
+  /**
+   * Indicates whether the members of this group are materialized.
+   *
+   * @return  {@code true} if the members of this group are materialized, or
+   *          {@code false} if they are found by searching the member URLs.
+   */
+  public boolean isMaterialized()
+  {
+    return statistics != null;
+  }
+
+
+
+  /**
+   * Returns the materialized members of this group, materializing them first
+   * if needed.
+   */
+  private Set<DN> getMemberDNs() throws DirectoryException
+  {
+    Set<DN> members = memberDNs;
+    if (members == null || isMembershipStale())
+    {
+      synchronized (this)
+      {
+        members = memberDNs;
+        if (members != null && isMembershipStale())
+        {
+          // Virtual attributes like isMemberOf may have changed without any
+          // change to the member entries
+          memberDNs = null;
+          members = null;
+          statistics.invalidations.incrementAndGet();
+        }
+        if (members == null)
+        {
+          members = materializeMembers();
+        }
+      }
+    }
+    return members;
+  }
+
+
+
+  /**
+   * Indicates whether the materialized members depend on the group memberships
+   * of the server, and these may have changed since the members were
+   * materialized.
+   */
+  private boolean isMembershipStale()
+  {
+    final long token = materializationMembershipToken;
+    return token != -1 && token != DirectoryServer.getGroupManager().membershipToken();
+  }
+
+
+
+  /**
+   * Indicates whether the filter of one of the member URLs uses a virtual
+   * attribute, whose values may depend on other entries than the member.
+   */
+  private boolean usesVirtualAttributes()
+  {
+    final Set<AttributeType> virtualTypes = new HashSet<>();
+    for (VirtualAttributeRule rule : DirectoryServer.getVirtualAttributes())
+    {
+      virtualTypes.add(rule.getAttributeType());
+    }
+    for (LDAPURL memberURL : memberURLs)
+    {
+      try
+      {
+        if (usesAttributeTypes(memberURL.getFilter(), virtualTypes))
+        {
+          return true;
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+    return false;
+  }
+
+
+
+  private static boolean usesAttributeTypes(SearchFilter filter, Set<AttributeType> types)
+  {
+    switch (filter.getFilterType())
+    {
+    case AND:
+    case OR:
+      for (SearchFilter component : filter.getFilterComponents())
+      {
+        if (usesAttributeTypes(component, types))
+        {
+          return true;
+        }
+      }
+      return false;
+    case NOT:
+      return usesAttributeTypes(filter.getNotComponent(), types);
+    default:
+      return types.contains(filter.getAttributeType());
+    }
+  }
+
+
+
+  /**
+   * Searches the member URLs for the members of this group, then catches up
+   * with the entries changed during the search.
+   */
+  private NavigableSet<DN> materializeMembers() throws DirectoryException
+  {
+    final long start = System.nanoTime();
+    // Read the token first so that membership changes made during the search
+    // trigger a new materialization
+    materializationMembershipToken =
+        usesVirtualAttributes() ? DirectoryServer.getGroupManager().membershipToken() : -1;
+    final NavigableSet<DN> members = new ConcurrentSkipListSet<>();
+    changedWhileMaterializing = Collections.newSetFromMap(new ConcurrentHashMap<DN, Boolean>());
+    try
+    {
+      final MemberList memberList = new DynamicGroupMemberList(groupEntryDN, memberURLs);
+      try
+      {
+        while (memberList.hasMoreMembers())
+        {
+          try
+          {
+            final DN memberDN = memberList.nextMemberDN();
+            if (memberDN != null)
+            {
+              members.add(memberDN);
+            }
+          }
+          catch (MembershipException e)
+          {
+            logger.traceException(e);
+            if (!e.continueIterating())
+            {
+              throw new DirectoryException(DirectoryServer.getServerErrorResultCode(),
+                  ERR_DYNAMICGROUP_CANNOT_MATERIALIZE_MEMBERS.get(groupEntryDN, e.getMessageObject()), e);
+            }
+          }
+        }
+      }
+      finally
+      {
+        memberList.close();
+      }
+
+      // The search may have missed or returned stale versions of the entries
+      // changed in the meantime: check them again now that the changes are
+      // applied to the members.
+      memberDNs = members;
+      for (DN changedDN : changedWhileMaterializing)
+      {
+        final Entry entry = DirectoryConfig.getEntry(changedDN);
+        if (entry == null)
+        {
+          members.remove(changedDN);
+          removeSubordinates(members, changedDN);
+        }
+        else
+        {
+          updateMember(members, entry);
+        }
+      }
+    }
+    catch (DirectoryException e)
+    {
+      memberDNs = null;
+      throw e;
+    }
+    finally
+    {
+      changedWhileMaterializing = null;
+    }
+
+    materializationTime = System.currentTimeMillis();
+    statistics.materializations.incrementAndGet();
+    statistics.materializationsNanos.addAndGet(System.nanoTime() - start);
+    return members;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean requiresEntryChanges()
+  {
+    return isMaterialized();
+  }
+
+
+
+  /**
+   * {@inheritDoc}  In this case, the materialized members are updated by
+   * matching the changed entry against the member URLs.
+   */
+  @Override
+  public void entryChanged(Entry oldEntry, Entry newEntry)
+  {
+    NavigableSet<DN> members = memberDNs;
+    if (members == null)
+    {
+      // Remember the change if the members are being materialized, otherwise
+      // it will be seen when the members are materialized
+      final Set<DN> changedDNs = changedWhileMaterializing;
+      if (changedDNs != null)
+      {
+        if (oldEntry != null)
+        {
+          changedDNs.add(oldEntry.getName());
+        }
+        if (newEntry != null)
+        {
+          changedDNs.add(newEntry.getName());
+        }
+      }
+      // The materialization may have completed in the meantime, after
+      // checking the changed entries: apply the change now. Both the members
+      // and the changed entries are published before being processed, so the
+      // change cannot be missed by both threads.
+      members = memberDNs;
+      if (members == null)
+      {
+        return;
+      }
+    }
+
+    final long start = System.nanoTime();
+    if (oldEntry != null
+        && (newEntry == null || !oldEntry.getName().equals(newEntry.getName())))
+    {
+      // The entry has been deleted or renamed, with its subordinates if any
+      final DN oldDN = oldEntry.getName();
+      members.remove(oldDN);
+      if (removeSubordinates(members, oldDN) && newEntry != null)
+      {
+        // The new DNs of the renamed subordinates must be matched against the
+        // member URLs again: let the next reader materialize the members again
+        memberDNs = null;
+        statistics.invalidations.incrementAndGet();
+      }
+    }
+    if (newEntry != null)
+    {
+      updateMember(members, newEntry);
+    }
+    statistics.entryChanges.incrementAndGet();
+    statistics.entryChangesNanos.addAndGet(System.nanoTime() - start);
+  }
+
+
+
+  /** Adds or removes the provided entry from the members, depending on whether it matches the member URLs. */
+  private void updateMember(Set<DN> members, Entry entry)
+  {
+    for (LDAPURL memberURL : memberURLs)
+    {
+      try
+      {
+        if (memberURL.matchesEntry(entry))
+        {
+          members.add(entry.getName());
+          return;
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+    members.remove(entry.getName());
+  }
+
+
+
+  /**
+   * Removes the members subordinate to the provided DN, which are contiguous
+   * and sort right after it.
+   *
+   * @return {@code true} if some members have been removed
+   */
+  private static boolean removeSubordinates(NavigableSet<DN> members, DN dn)
+  {
+    boolean removed = false;
+    final Iterator<DN> it = members.tailSet(dn, false).iterator();
+    while (it.hasNext() && it.next().isDescendantOf(dn))
+    {
+      it.remove();
+      removed = true;
+    }
+    return removed;
+  }
+
+
+
   /** {@inheritDoc} */
   @Override
   public boolean mayAlterMemberList()
@@ -0,0 +1,184 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryConfig;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.MemberList;
+import org.opends.server.types.MembershipException;
+import org.opends.server.types.SearchFilter;
+
+/**
+ * This class provides an implementation of the {@code MemberList} class that
+ * returns the materialized members of a dynamic group, optionally restricted
+ * to the members matching additional criteria. Member entries are only read
+ * when they are returned or when a filter must be evaluated.
+ */
+class MaterializedDynamicGroupMemberList extends MemberList
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The DN of the dynamic group with which this member list is associated. */
+  private final DN groupDN;
+
+  /** The iterator used to traverse the set of member DNs. */
+  private final Iterator<DN> memberDNIterator;
+
+  /** The base DN below which all returned members should exist, or {@code null}. */
+  private final DN baseDN;
+
+  /** The scope for the members to return, if a base DN is provided. */
+  private final SearchScope scope;
+
+  /** The filter that all returned members should match, or {@code null}. */
+  private final SearchFilter filter;
+
+  /** The DN of the next member to return, or {@code null} if there is none. */
+  private DN nextDN;
+
+  /** The entry of the next member to return, if it has already been read. */
+  private Entry nextEntry;
+
+  /**
+   * Creates a new member list for the provided materialized members.
+   *
+   * @param  groupDN    The DN of the dynamic group with which this member list
+   *                    is associated.
+   * @param  memberDNs  The materialized members of the dynamic group.
+   * @param  baseDN     The base DN below which all returned members should
+   *                    exist, or {@code null} if members should not be
+   *                    restricted by location.
+   * @param  scope      The scope for the members to return, if a base DN is
+   *                    provided.
+   * @param  filter     The filter that all returned members should match, or
+   *                    {@code null} if members should not be filtered.
+   */
+  MaterializedDynamicGroupMemberList(DN groupDN, Set<DN> memberDNs, DN baseDN, SearchScope scope,
+      SearchFilter filter)
+  {
+    this.groupDN = groupDN;
+    this.memberDNIterator = memberDNs.iterator();
+    this.baseDN = baseDN;
+    this.scope = scope != null ? scope : SearchScope.WHOLE_SUBTREE;
+    this.filter = filter;
+    nextMemberInternal();
+  }
+
+  /** Finds the next member matching the criteria of this member list. */
+  private void nextMemberInternal()
+  {
+    nextDN = null;
+    nextEntry = null;
+    while (memberDNIterator.hasNext())
+    {
+      final DN dn = memberDNIterator.next();
+      if (baseDN != null && !dn.matchesBaseAndScope(baseDN, scope))
+      {
+        continue;
+      }
+      if (filter != null)
+      {
+        try
+        {
+          final Entry entry = DirectoryConfig.getEntry(dn);
+          if (entry == null || !filter.matchesEntry(entry))
+          {
+            continue;
+          }
+          nextEntry = entry;
+        }
+        catch (DirectoryException e)
+        {
+          logger.traceException(e);
+          continue;
+        }
+      }
+      nextDN = dn;
+      return;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean hasMoreMembers()
+  {
+    return nextDN != null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN nextMemberDN() throws MembershipException
+  {
+    final DN dn = nextDN;
+    nextMemberInternal();
+    return dn;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry nextMemberEntry() throws MembershipException
+  {
+    final DN dn = nextDN;
+    Entry entry = nextEntry;
+    nextMemberInternal();
+    if (dn == null || entry != null)
+    {
+      return entry;
+    }
+
+    try
+    {
+      entry = DirectoryConfig.getEntry(dn);
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      throw new MembershipException(ERR_DYNAMICMEMBERS_CANNOT_GET_ENTRY.get(dn, groupDN, e.getMessageObject()),
+          true, e);
+    }
+    if (entry == null)
+    {
+      throw new MembershipException(ERR_DYNAMICMEMBERS_NO_SUCH_ENTRY.get(dn, groupDN), true);
+    }
+    return entry;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close()
+  {
+    // No implementation is required.
+  }
+}
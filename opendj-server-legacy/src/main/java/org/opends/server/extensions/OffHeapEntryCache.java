@@ -0,0 +1,834 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.OffHeapEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.CompressedSchema;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache storing the entries
+ * outside of the JVM heap, so that large caches do not increase the garbage
+ * collection pauses.
+ * <BR><BR>
+ * Entries are stored in their compact encoded form, using the compressed
+ * schema tokens of the server, in a ring of direct memory segments.  Entries
+ * are appended to the current segment, and when it is full the oldest segment
+ * is recycled: all the entries it holds are evicted at once.  Entries are only
+ * decoded when they are read from the cache.
+ * <BR><BR>
+ * Only a small index mapping the entries DNs and backend IDs/entry IDs to
+ * their location in the segments is held in the JVM heap.  Reading the cache
+ * only locks the segment being read, and only against its recycling.
+ * <BR><BR>
+ * Direct memory segments are allocated when they are first needed, and they
+ * are kept until the cache is finalized or resized.  The JVM must be allowed to
+ * allocate enough direct memory, for example using the
+ * <CODE>-XX:MaxDirectMemorySize</CODE> option.
+ */
+public class OffHeapEntryCache
+       extends EntryCache<OffHeapEntryCacheCfg>
+       implements ConfigurationChangeListener<OffHeapEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Maximum size of a memory segment. */
+  private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+  /** Minimum number of segments, so that recycling a segment only evicts a fraction of the cache. */
+  private static final int MIN_NB_SEGMENTS = 8;
+  /** Number of entries under which handling low memory clears the whole cache. */
+  private static final int LOW_MEMORY_CLEAR_THRESHOLD = 1000;
+
+  /** Buffers used to encode entries before copying them to a segment. */
+  private static final ThreadLocal<ByteStringBuilder> ENCODE_BUFFERS = new ThreadLocal<ByteStringBuilder>()
+  {
+    @Override
+    protected ByteStringBuilder initialValue()
+    {
+      return new ByteStringBuilder();
+    }
+  };
+
+  /** A memory segment holding encoded entries. */
+  private static final class Segment
+  {
+    private final int capacity;
+    /**
+     * Readers hold the read lock while copying bytes out of the segment, the
+     * writer holds the write lock while it invalidates the segment content.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Lazily allocated. Written while holding the cache write lock. */
+    private volatile ByteBuffer buffer;
+    /** Incremented each time the segment is recycled. */
+    private volatile long generation;
+    /** The following fields are guarded by the cache write lock. */
+    private int writeOffset;
+    private final List<Location> locations = new ArrayList<>();
+
+    private Segment(int capacity)
+    {
+      this.capacity = capacity;
+    }
+  }
+
+  /** The location of an entry in a segment, along with its keys. */
+  private static final class Location
+  {
+    private final Segment segment;
+    private final long generation;
+    private final int offset;
+    private final int length;
+    private final DN dn;
+    private final String backendID;
+    private final long entryID;
+
+    private Location(Segment segment, int offset, int length, DN dn, String backendID, long entryID)
+    {
+      this.segment = segment;
+      this.generation = segment.generation;
+      this.offset = offset;
+      this.length = length;
+      this.dn = dn;
+      this.backendID = backendID;
+      this.entryID = entryID;
+    }
+  }
+
+  /** The mapping between DNs and entries. */
+  private final ConcurrentMap<DN, Location> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and entries. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Location>> idMap = new ConcurrentHashMap<>();
+
+  /** Serializes the writes to the segments. */
+  private final Lock writeLock = new ReentrantLock();
+  /** Only replaced while holding the write lock. */
+  private volatile Segment[] segments = new Segment[0];
+  /** Guarded by the write lock. */
+  private int currentSegment;
+
+  /** The total size of the cached entries, excluding the evicted or removed ones. */
+  private final AtomicLong usedMemory = new AtomicLong();
+  /** The number of entries evicted from the cache to make room for other entries. */
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** The maximum total encoded size of the cached entries. */
+  private volatile long maxMemorySize;
+
+  /** The encoding used for cached entries. */
+  private EntryEncodeConfig encodeConfig;
+
+  /** Currently registered configuration object. */
+  private OffHeapEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this off-heap entry cache. */
+  public OffHeapEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(OffHeapEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addOffHeapChangeListener(this);
+
+    encodeConfig = new EntryEncodeConfig(false, true, true, DirectoryServer.getDefaultCompressedSchema());
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_OFFHEAPCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeOffHeapChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    writeLock.lock();
+    try
+    {
+      clear();
+      segments = new Segment[0];
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final Location location = dnMap.get(entryDN);
+    final Entry entry = location != null ? read(location) : null;
+    if (entry == null) {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    return entry;
+  }
+
+  /**
+   * Reads and decodes an entry from its segment.
+   *
+   * @return the entry, or {@code null} if the segment has been recycled
+   */
+  private Entry read(Location location)
+  {
+    final Segment segment = location.segment;
+    final byte[] bytes = new byte[location.length];
+    final Lock readLock = segment.lock.readLock();
+    readLock.lock();
+    try
+    {
+      if (segment.generation != location.generation)
+      {
+        return null;
+      }
+      final ByteBuffer buffer = segment.buffer.duplicate();
+      buffer.position(location.offset);
+      buffer.get(bytes);
+    }
+    finally
+    {
+      readLock.unlock();
+    }
+
+    try
+    {
+      return Entry.decode(ByteString.wrap(bytes).asReader(), getCompressedSchema());
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  private CompressedSchema getCompressedSchema()
+  {
+    return encodeConfig.getCompressedSchema();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final Location location = dnMap.get(entryDN);
+    return location != null ? location.entryID : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    final Map<Long, Location> backendMap = idMap.get(backendID);
+    if (backendMap != null) {
+      final Location location = backendMap.get(entryID);
+      if (location != null) {
+        return location.dn;
+      }
+    }
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    final ByteStringBuilder encodedEntry = encode(entry);
+    writeLock.lock();
+    try
+    {
+      if (encodedEntry != null)
+      {
+        store(entry.getName(), encodedEntry, backendID, entryID);
+      }
+      else
+      {
+        // Do not keep an outdated version of the entry.
+        removeEntry(entry.getName());
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+      releaseEncodeBuffer(encodedEntry);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    final ByteStringBuilder encodedEntry = encode(entry);
+    writeLock.lock();
+    try
+    {
+      if (dnMap.containsKey(entry.getName()))
+      {
+        return false;
+      }
+      if (encodedEntry != null)
+      {
+        store(entry.getName(), encodedEntry, backendID, entryID);
+      }
+      // We'll always return true in this case, even if we didn't actually add
+      // the entry because it is too big.
+      return true;
+    }
+    finally
+    {
+      writeLock.unlock();
+      releaseEncodeBuffer(encodedEntry);
+    }
+  }
+
+  /**
+   * Encodes an entry in the calling thread encode buffer.
+   *
+   * @return the buffer holding the encoded entry, or {@code null} if the entry
+   *         cannot be cached
+   */
+  private ByteStringBuilder encode(Entry entry)
+  {
+    final ByteStringBuilder buffer = ENCODE_BUFFERS.get();
+    try
+    {
+      entry.encode(buffer, encodeConfig);
+      if (segments.length > 0 && buffer.length() <= segments[0].capacity)
+      {
+        return buffer;
+      }
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+    }
+    releaseEncodeBuffer(buffer);
+    return null;
+  }
+
+  private void releaseEncodeBuffer(ByteStringBuilder buffer)
+  {
+    if (buffer != null)
+    {
+      buffer.clearAndTruncate(DirectoryServer.getMaxInternalBufferSize(), 512);
+    }
+  }
+
+  /** Must be called while holding the write lock. */
+  private void store(DN dn, ByteStringBuilder encodedEntry, String backendID, long entryID)
+  {
+    final int length = encodedEntry.length();
+    if (segments.length == 0 || length > segments[0].capacity)
+    {
+      // The cache has been resized since the entry was encoded.
+      removeEntry(dn);
+      return;
+    }
+
+    Segment segment = segments[currentSegment];
+    if (segment.writeOffset + length > segment.capacity)
+    {
+      currentSegment = (currentSegment + 1) % segments.length;
+      segment = segments[currentSegment];
+      recycle(segment, true);
+    }
+    if (segment.buffer == null)
+    {
+      segment.buffer = ByteBuffer.allocateDirect(segment.capacity);
+    }
+
+    final ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(segment.writeOffset);
+    buffer.put(encodedEntry.getBackingArray(), 0, length);
+
+    final Location location = new Location(segment, segment.writeOffset, length, dn, backendID, entryID);
+    segment.writeOffset += length;
+    segment.locations.add(location);
+
+    usedMemory.addAndGet(length);
+    final Location oldLocation = dnMap.put(dn, location);
+    if (oldLocation != null)
+    {
+      removeFromIDMap(oldLocation);
+      usedMemory.addAndGet(-oldLocation.length);
+    }
+    getBackendMap(backendID).put(entryID, location);
+  }
+
+  /**
+   * Invalidates all the entries of a segment and makes it available for new
+   * entries. Must be called while holding the write lock.
+   */
+  private void recycle(Segment segment, boolean isEviction)
+  {
+    // Wait for the readers to be done with the current content.
+    final Lock segmentLock = segment.lock.writeLock();
+    segmentLock.lock();
+    try
+    {
+      segment.generation++;
+    }
+    finally
+    {
+      segmentLock.unlock();
+    }
+
+    for (Location location : segment.locations)
+    {
+      if (dnMap.remove(location.dn, location))
+      {
+        removeFromIDMap(location);
+        usedMemory.addAndGet(-location.length);
+        if (isEviction)
+        {
+          evictions.getAndIncrement();
+        }
+      }
+    }
+    segment.locations.clear();
+    segment.writeOffset = 0;
+  }
+
+  private ConcurrentMap<Long, Location> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, Location> backendMap = idMap.get(backendID);
+    if (backendMap == null)
+    {
+      final ConcurrentMap<Long, Location> newBackendMap = new ConcurrentHashMap<>();
+      backendMap = idMap.putIfAbsent(backendID, newBackendMap);
+      if (backendMap == null)
+      {
+        backendMap = newBackendMap;
+      }
+    }
+    return backendMap;
+  }
+
+  private void removeFromIDMap(Location location)
+  {
+    final Map<Long, Location> backendMap = idMap.get(location.backendID);
+    if (backendMap != null)
+    {
+      backendMap.remove(location.entryID, location);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    // The entry bytes are reclaimed when its segment is recycled.
+    final Location location = dnMap.remove(entryDN);
+    if (location != null)
+    {
+      removeFromIDMap(location);
+      usedMemory.addAndGet(-location.length);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    writeLock.lock();
+    try
+    {
+      for (Segment segment : segments)
+      {
+        recycle(segment, false);
+      }
+      currentSegment = 0;
+      dnMap.clear();
+      idMap.clear();
+      usedMemory.set(0);
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    final Map<Long, Location> backendMap = idMap.remove(backendID);
+    if (backendMap != null)
+    {
+      removeAll(backendMap.values());
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    final Map<Long, Location> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      // Since the provided base DN could hold a subset of the information in
+      // the specified backend, we will have to do this by iterating through all
+      // the entries for that backend.
+      final List<Location> removedLocations = new ArrayList<>();
+      for (Iterator<Location> it = backendMap.values().iterator(); it.hasNext();)
+      {
+        final Location location = it.next();
+        if (location.dn.isDescendantOf(baseDN))
+        {
+          it.remove();
+          removedLocations.add(location);
+        }
+      }
+      removeAll(removedLocations);
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /** Removes locations which have already been removed from the ID map. */
+  private void removeAll(Iterable<Location> locations)
+  {
+    for (Location location : locations)
+    {
+      if (dnMap.remove(location.dn, location))
+      {
+        usedMemory.addAndGet(-location.length);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    // Cached entries are not in the heap, only their index is. If there are
+    // less than 1000 entries, then we'll dump all of them. Otherwise, we'll
+    // recycle the oldest 10% of the segments.
+    writeLock.lock();
+    try
+    {
+      if (dnMap.size() < LOW_MEMORY_CLEAR_THRESHOLD)
+      {
+        clear();
+        return;
+      }
+      int nbToRecycle = Math.max(segments.length / 10, 1);
+      for (int i = 1; i <= segments.length && nbToRecycle > 0; i++)
+      {
+        final Segment segment = segments[(currentSegment + i) % segments.length];
+        if (!segment.locations.isEmpty())
+        {
+          recycle(segment, true);
+          nbToRecycle--;
+        }
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    OffHeapEntryCacheCfg config = (OffHeapEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      OffHeapEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(OffHeapEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      OffHeapEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxMemorySize = configuration.getMaxMemorySize();
+
+    // Get include and exclude filters.
+    Set<SearchFilter> newIncludeFilters = EntryCacheCommon.getFilters (
+        configuration.getIncludeFilter(),
+        ERR_CACHE_INVALID_INCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+    Set<SearchFilter> newExcludeFilters = EntryCacheCommon.getFilters (
+        configuration.getExcludeFilter(),
+        ERR_CACHE_INVALID_EXCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      if (newMaxMemorySize != maxMemorySize)
+      {
+        resize(newMaxMemorySize);
+      }
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** Replaces all the segments: the cached entries are lost. */
+  private void resize(long newMaxMemorySize)
+  {
+    writeLock.lock();
+    try
+    {
+      clear();
+      final int segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, newMaxMemorySize / MIN_NB_SEGMENTS);
+      final int nbSegments = (int) ((newMaxMemorySize + segmentSize - 1) / segmentSize);
+      final Segment[] newSegments = new Segment[nbSegments];
+      for (int i = 0; i < nbSegments; i++)
+      {
+        newSegments[i] = new Segment(segmentSize);
+      }
+      segments = newSegments;
+      currentSegment = 0;
+      maxMemorySize = newMaxMemorySize;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      final List<Attribute> attrs = EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        Long.valueOf(usedMemory.get()),
+        Long.valueOf(maxMemorySize),
+        Long.valueOf(dnMap.size()),
+        null
+        );
+      attrs.add(Attributes.create("entryCacheEvictions", Long.toString(evictions.get())));
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /**
+   * Returns the number of entries evicted from this cache to make room for
+   * other entries.
+   *
+   * @return the number of entries evicted from this cache
+   */
+  public long getEvictionCount()
+  {
+    return evictions.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+    for (Location location : dnMap.values()) {
+      sb.append(location.dn);
+      sb.append(":");
+      sb.append(location.entryID);
+      sb.append(":");
+      sb.append(location.backendID);
+      sb.append(ServerConstants.EOL);
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+}
@@ -27,10 +27,10 @@
 package org.opends.server.extensions;
 
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizedIllegalArgumentException;
@@ -46,6 +46,7 @@ import org.opends.server.admin.std.server.GroupImplementationCfg;
 import org.opends.server.admin.std.server.StaticGroupImplementationCfg;
 import org.opends.server.api.Group;
 import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.GroupManager;
 import org.opends.server.core.ModifyOperation;
 import org.opends.server.core.ModifyOperationBasis;
 import org.opends.server.core.ServerContext;
@@ -84,6 +85,11 @@ import static org.forgerock.util.Reject.*;
  *   <li>one based on the {@code groupOfUniqueNames} object class, which stores
  * the member list in the {@code uniqueMember} attribute.</li>
  * </ul>
+ * <p>
+ * The member list is loaded lazily from the group entry the first time it is
+ * needed, and is then updated in place when members are added or removed, so
+ * that changing the membership of large groups does not copy or reload the
+ * whole member list.
  */
 public class StaticGroup extends Group<StaticGroupImplementationCfg>
 {
@@ -95,8 +101,14 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   /** The DN of the entry that holds the definition for this group. */
   private DN groupEntryDN;
 
-  /** The set of the DNs of the members for this group. */
-  private LinkedHashSet<CompactDn> memberDNs;
+  /**
+   * The set of the DNs of the members for this group, or {@code null} until
+   * it has been loaded from the group entry.
+   */
+  private volatile Set<CompactDn> memberDNs;
+
+  /** Incremented each time the member list of this group changes. */
+  private volatile long membershipVersion;
 
   /** The list of nested group DNs for this group. */
   private LinkedList<DN> nestedGroups = new LinkedList<>();
@@ -122,19 +134,15 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
    *                              for this group.
    * @param  memberAttributeType  The attribute type used to hold the membership
    *                              list for this group.
-   * @param  memberDNs            The set of the DNs of the members for this
-   *                              group.
    */
-  private StaticGroup(ServerContext serverContext, DN groupEntryDN, AttributeType memberAttributeType,
-      LinkedHashSet<CompactDn> memberDNs)
+  private StaticGroup(ServerContext serverContext, DN groupEntryDN, AttributeType memberAttributeType)
   {
     super();
-    ifNull(groupEntryDN, memberAttributeType, memberDNs);
+    ifNull(groupEntryDN, memberAttributeType);
 
     this.serverContext       = serverContext;
     this.groupEntryDN        = groupEntryDN;
     this.memberAttributeType = memberAttributeType;
-    this.memberDNs           = memberDNs;
   }
 
   /** {@inheritDoc} */
@@ -196,7 +204,27 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       throw new DirectoryException(ResultCode.OBJECTCLASS_VIOLATION, message);
     }
 
-    List<Attribute> memberAttrList = groupEntry.getAttribute(someMemberAttributeType);
+    // The member list is only loaded when first needed.
+    return new StaticGroup(serverContext, groupEntry.getName(), someMemberAttributeType);
+  }
+
+  /**
+   * Loads the member list of this group from the group entry.
+   *
+   * @return  The set of the DNs of the members of this group.
+   *
+   * @throws  DirectoryException  If the group entry cannot be read.
+   */
+  private Set<CompactDn> loadMemberDNs() throws DirectoryException
+  {
+    Entry groupEntry = DirectoryServer.getEntry(groupEntryDN);
+    if (groupEntry == null)
+    {
+      throw new DirectoryException(ResultCode.NO_SUCH_OBJECT,
+          ERR_STATICGROUP_GROUP_INSTANCE_INVALID.get(groupEntryDN));
+    }
+
+    List<Attribute> memberAttrList = groupEntry.getAttribute(memberAttributeType);
     int membersCount = 0;
     if (memberAttrList != null)
     {
@@ -205,27 +233,54 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         membersCount += a.size();
       }
     }
-    LinkedHashSet<CompactDn> someMemberDNs = new LinkedHashSet<>(membersCount);
+    Set<CompactDn> someMemberDNs = newMemberDNSet(membersCount);
     if (memberAttrList != null)
     {
       for (Attribute a : memberAttrList)
       {
         for (ByteString v : a)
         {
-          try
-          {
-            someMemberDNs.add(org.forgerock.opendj.ldap.DN.valueOf(v.toString()).compact());
-          }
-          catch (LocalizedIllegalArgumentException e)
+          CompactDn memberDN = decodeMemberDN(v);
+          if (memberDN != null)
           {
-            logger.traceException(e);
-            logger.error(ERR_STATICGROUP_CANNOT_DECODE_MEMBER_VALUE_AS_DN, v,
-                someMemberAttributeType.getNameOrOID(), groupEntry.getName(), e.getMessageObject());
+            someMemberDNs.add(memberDN);
           }
         }
       }
     }
-    return new StaticGroup(serverContext, groupEntry.getName(), someMemberAttributeType, someMemberDNs);
+    return someMemberDNs;
+  }
+
+  /**
+   * Decodes the provided value of the member attribute.
+   *
+   * @param  value  The value of the member attribute.
+   *
+   * @return  The compact DN of the member, or {@code null} if the value is not
+   *          a valid DN.
+   */
+  private CompactDn decodeMemberDN(ByteString value)
+  {
+    try
+    {
+      return org.forgerock.opendj.ldap.DN.valueOf(value.toString()).compact();
+    }
+    catch (LocalizedIllegalArgumentException e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_STATICGROUP_CANNOT_DECODE_MEMBER_VALUE_AS_DN, value,
+          memberAttributeType.getNameOrOID(), groupEntryDN, e.getMessageObject());
+      return null;
+    }
+  }
+
+  /**
+   * Creates an empty set of member DNs which can be updated in place while
+   * being read by other threads.
+   */
+  private static Set<CompactDn> newMemberDNSet(int expectedSize)
+  {
+    return Collections.newSetFromMap(new ConcurrentHashMap<CompactDn, Boolean>(Math.max(16, expectedSize)));
   }
 
   /** {@inheritDoc} */
@@ -337,10 +392,13 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newNestedGroups.add(nestedGroupDN);
       nestedGroups = newNestedGroups;
       //Add it to the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.add(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      if (memberDNs != null)
+      {
+        memberDNs.add(toCompactDn(nestedGroupDN));
+      }
+      membershipVersion++;
     }
+    DirectoryServer.getGroupManager().memberAdded(this, nestedGroupDN);
   }
 
   /** {@inheritDoc} */
@@ -371,19 +429,22 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       newNestedGroups.remove(nestedGroupDN);
       nestedGroups = newNestedGroups;
       //Remove it from the member DN list.
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(toCompactDn(nestedGroupDN));
-      memberDNs = newMemberDNs;
+      if (memberDNs != null)
+      {
+        memberDNs.remove(toCompactDn(nestedGroupDN));
+      }
+      membershipVersion++;
     }
+    DirectoryServer.getGroupManager().memberRemoved(this, nestedGroupDN);
   }
 
   /** {@inheritDoc} */
   @Override
   public boolean isMember(DN userDN, Set<DN> examinedGroups) throws DirectoryException
   {
-    reloadIfNeeded();
+    Set<CompactDn> members = reloadIfNeeded();
     CompactDn compactUserDN = toCompactDn(userDN);
-    if (memberDNs.contains(compactUserDN))
+    if (members.contains(compactUserDN))
     {
       return true;
     }
@@ -415,23 +476,29 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
 
   /**
    * Check if the group manager has registered a new group instance or removed a
-   * a group instance that might impact this group's membership list.
+   * a group instance that might impact this group's membership list, and load
+   * the member list if it has not been loaded yet.
+   *
+   * @return The set of the DNs of the members of this group.
    */
-  private void reloadIfNeeded() throws DirectoryException
+  private Set<CompactDn> reloadIfNeeded() throws DirectoryException
   {
     //Check if group instances have changed by passing the group manager
     //the current token.
-    if (DirectoryServer.getGroupManager().hasInstancesChanged(nestedGroupRefreshToken))
+    final GroupManager groupManager = DirectoryServer.getGroupManager();
+    Set<CompactDn> members = memberDNs;
+    if (members == null || groupManager.hasInstancesChanged(nestedGroupRefreshToken))
     {
       synchronized (this)
       {
-        Group<?> thisGroup = DirectoryServer.getGroupManager().getGroupInstance(groupEntryDN);
+        final long refreshToken = groupManager.refreshToken();
+        Group<?> thisGroup = groupManager.getGroupInstance(groupEntryDN);
         // Check if the group itself has been removed
         if (thisGroup == null) {
           throw new DirectoryException(ResultCode.NO_SUCH_ATTRIBUTE,
                   ERR_STATICGROUP_GROUP_INSTANCE_INVALID.get(groupEntryDN));
         } else if (thisGroup != this) {
-          LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>();
+          Set<CompactDn> newMemberDNs = newMemberDNSet(0);
           MemberList memberList = thisGroup.getMembers();
           while (memberList.hasMoreMembers())
           {
@@ -445,41 +512,83 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             }
           }
           memberDNs = newMemberDNs;
+          membershipVersion++;
+        } else if (memberDNs == null) {
+          memberDNs = loadMemberDNs();
+        } else if (!groupManager.hasInstancesChanged(nestedGroupRefreshToken)) {
+          // Another thread already did the work
+          return memberDNs;
         }
-        LinkedList<DN> newNestedGroups = new LinkedList<>();
-        for (CompactDn compactDn : memberDNs)
+        members = memberDNs;
+        nestedGroups = findNestedGroups(groupManager, members);
+        nestedGroupRefreshToken = refreshToken;
+      }
+    }
+    return members;
+  }
+
+  /**
+   * Returns the DNs of the registered groups which are members of this group,
+   * looking up whichever is the smallest of the member list and of the set of
+   * registered groups.
+   */
+  private LinkedList<DN> findNestedGroups(GroupManager groupManager, Set<CompactDn> members)
+  {
+    LinkedList<DN> newNestedGroups = new LinkedList<>();
+    if (members.size() <= groupManager.getGroupInstanceCount())
+    {
+      for (CompactDn compactDn : members)
+      {
+        Group<?> group = groupManager.getGroupInstance(fromCompactDn(compactDn));
+        if (group != null)
         {
-          DN dn = fromCompactDn(compactDn);
-          Group<?> group = DirectoryServer.getGroupManager().getGroupInstance(dn);
-          if (group != null)
-          {
-            newNestedGroups.add(group.getGroupDN());
-          }
+          newNestedGroups.add(group.getGroupDN());
+        }
+      }
+    }
+    else
+    {
+      for (Group<?> group : groupManager.getGroupInstances())
+      {
+        if (members.contains(toCompactDn(group.getGroupDN())))
+        {
+          newNestedGroups.add(group.getGroupDN());
         }
-        nestedGroupRefreshToken = DirectoryServer.getGroupManager().refreshToken();
-        nestedGroups=newNestedGroups;
       }
     }
+    return newNestedGroups;
+  }
+
+  /**
+   * Retrieves the version of the member list of this group, which is
+   * incremented each time members are added to or removed from this group.
+   * It can be used to invalidate information derived from the member list of
+   * this group only.
+   *
+   * @return  The version of the member list of this group.
+   */
+  public long getMembershipVersion()
+  {
+    return membershipVersion;
   }
 
   /** {@inheritDoc} */
   @Override
   public MemberList getMembers() throws DirectoryException
   {
-    reloadIfNeeded();
-    return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
+    return new SimpleStaticGroupMemberList(groupEntryDN, reloadIfNeeded());
   }
 
   /** {@inheritDoc} */
   @Override
   public MemberList getMembers(DN baseDN, SearchScope scope, SearchFilter filter) throws DirectoryException
   {
-    reloadIfNeeded();
+    Set<CompactDn> members = reloadIfNeeded();
     if (baseDN == null && filter == null)
     {
-      return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
+      return new SimpleStaticGroupMemberList(groupEntryDN, members);
     }
-    return new FilteredStaticGroupMemberList(groupEntryDN, memberDNs, baseDN, scope, filter);
+    return new FilteredStaticGroupMemberList(groupEntryDN, members, baseDN, scope, filter);
   }
 
   /** {@inheritDoc} */
@@ -495,12 +604,13 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   {
     ifNull(userEntry);
 
+    Set<CompactDn> members = reloadIfNeeded();
     synchronized (this)
     {
       DN userDN = userEntry.getName();
       CompactDn compactUserDN = toCompactDn(userDN);
 
-      if (memberDNs.contains(compactUserDN))
+      if (members.contains(compactUserDN))
       {
         LocalizableMessage message = ERR_STATICGROUP_ADD_MEMBER_ALREADY_EXISTS.get(userDN, groupEntryDN);
         throw new DirectoryException(ResultCode.ATTRIBUTE_OR_VALUE_EXISTS, message);
@@ -514,10 +624,10 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_ADD_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<CompactDn>(memberDNs);
-      newMemberDNs.add(compactUserDN);
-      memberDNs = newMemberDNs;
+      members.add(compactUserDN);
+      membershipVersion++;
     }
+    DirectoryServer.getGroupManager().memberAdded(this, userEntry.getName());
   }
 
   /** {@inheritDoc} */
@@ -527,9 +637,10 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     ifNull(userDN);
 
     CompactDn compactUserDN = toCompactDn(userDN);
+    Set<CompactDn> members = reloadIfNeeded();
     synchronized (this)
     {
-      if (! memberDNs.contains(compactUserDN))
+      if (! members.contains(compactUserDN))
       {
         LocalizableMessage message = ERR_STATICGROUP_REMOVE_MEMBER_NO_SUCH_MEMBER.get(userDN, groupEntryDN);
         throw new DirectoryException(ResultCode.NO_SUCH_ATTRIBUTE, message);
@@ -543,9 +654,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             ERR_STATICGROUP_REMOVE_MEMBER_UPDATE_FAILED.get(userDN, groupEntryDN, modifyOperation.getErrorMessage()));
       }
 
-      LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
-      newMemberDNs.remove(compactUserDN);
-      memberDNs = newMemberDNs;
+      members.remove(compactUserDN);
+      membershipVersion++;
       //If it is in the nested group list remove it.
       if(nestedGroups.contains(userDN)) {
         LinkedList<DN> newNestedGroups = new LinkedList<>(nestedGroups);
@@ -553,6 +663,99 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         nestedGroups = newNestedGroups;
       }
     }
+    DirectoryServer.getGroupManager().memberRemoved(this, userDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isMemberListIndexable()
+  {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}  In this case, additions and removals of values of the
+   * member attribute are applied to the member list in place. Other changes
+   * to the member attribute or to the object classes of the group entry
+   * require the group instance to be recreated.
+   */
+  @Override
+  public boolean applyModifications(List<Modification> modifications)
+  {
+    for (Modification mod : modifications)
+    {
+      Attribute attr = mod.getAttribute();
+      AttributeType attrType = attr.getAttributeType();
+      if (attrType.isObjectClass())
+      {
+        return false;
+      }
+      if (attrType.equals(memberAttributeType)
+          && mod.getModificationType() != ModificationType.ADD
+          && (mod.getModificationType() != ModificationType.DELETE || attr.isEmpty()))
+      {
+        return false;
+      }
+    }
+
+    final GroupManager groupManager = DirectoryServer.getGroupManager();
+    synchronized (this)
+    {
+      // If the member list has not been loaded yet, it will be loaded
+      // from the modified entry.
+      final Set<CompactDn> members = memberDNs;
+      if (members != null)
+      {
+        LinkedList<DN> newNestedGroups = null;
+        for (Modification mod : modifications)
+        {
+          if (!mod.getAttribute().getAttributeType().equals(memberAttributeType))
+          {
+            continue;
+          }
+          final boolean add = mod.getModificationType() == ModificationType.ADD;
+          for (ByteString v : mod.getAttribute())
+          {
+            CompactDn memberDN = decodeMemberDN(v);
+            if (memberDN == null)
+            {
+              continue;
+            }
+            DN dn = fromCompactDn(memberDN);
+            if (add && members.add(memberDN))
+            {
+              groupManager.memberAdded(this, dn);
+            }
+            else if (!add && members.remove(memberDN))
+            {
+              groupManager.memberRemoved(this, dn);
+            }
+            List<DN> groups = newNestedGroups != null ? newNestedGroups : nestedGroups;
+            if (add ? !groups.contains(dn) && groupManager.getGroupInstance(dn) != null : groups.contains(dn))
+            {
+              if (newNestedGroups == null)
+              {
+                newNestedGroups = new LinkedList<>(nestedGroups);
+              }
+              if (add)
+              {
+                newNestedGroups.add(dn);
+              }
+              else
+              {
+                newNestedGroups.remove(dn);
+              }
+            }
+          }
+        }
+        if (newNestedGroups != null)
+        {
+          nestedGroups = newNestedGroups;
+        }
+      }
+      membershipVersion++;
+    }
+    return true;
   }
 
   private ModifyOperation newModifyOperation(ModificationType modType, DN userDN)
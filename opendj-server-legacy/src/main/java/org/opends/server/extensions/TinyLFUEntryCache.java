@@ -0,0 +1,1132 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.util.Utils;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.EntryCacheCfg;
+import org.opends.server.admin.std.server.TinyLFUEntryCacheCfg;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.CacheEntry;
+import org.opends.server.types.DN;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache using the W-TinyLFU
+ * admission and eviction policy.
+ * <BR><BR>
+ * New entries are stored in a small admission window managed in LRU order.
+ * Entries evicted from the window become candidates for the main area of the
+ * cache, which is a segmented LRU made of a probation and a protected segment.
+ * A candidate is only admitted in the main area if its estimated access
+ * frequency is higher than the frequency of the entry it would replace.
+ * Access frequencies are estimated with a 4-bit count-min sketch which is
+ * halved periodically, so that the cache adapts to changes of the workload.
+ * <BR><BR>
+ * Cached entries are held in concurrent maps, so reading the cache never
+ * blocks.  Reads are recorded in lossy striped buffers which are replayed
+ * against the eviction policy by whichever thread holds the eviction lock.
+ * Writes hold the eviction lock, which only serializes them against other
+ * writers, and update both the DN and the ID maps while holding it so that the
+ * two maps never reference different nodes for the same entry.
+ * <BR><BR>
+ * Cache sizing is based on the encoded size of the cached entries, which is
+ * independent of the JVM heap usage.  It is also possible to configure a
+ * maximum number of entries for the cache.
+ */
+public class TinyLFUEntryCache
+       extends EntryCache<TinyLFUEntryCacheCfg>
+       implements ConfigurationChangeListener<TinyLFUEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Percentage of the cache capacity allocated to the admission window. */
+  private static final int WINDOW_PERCENT = 1;
+  /** Percentage of the main area capacity allocated to the protected segment. */
+  private static final int PROTECTED_PERCENT = 80;
+  /** Average encoded size of an entry, used to size the frequency sketch. */
+  private static final int AVERAGE_ENTRY_SIZE = 1024;
+
+  /** Queues where a node may be held by the eviction policy. */
+  private static final int NEW = 0;
+  private static final int WINDOW = 1;
+  private static final int PROBATION = 2;
+  private static final int PROTECTED = 3;
+  private static final int DEAD = 4;
+
+  /** A cached entry along with its eviction policy data. */
+  private static final class Node
+  {
+    private final CacheEntry cacheEntry;
+    private final int weight;
+
+    /** The following fields are guarded by the eviction lock. */
+    private int queue = NEW;
+    private Node prev;
+    private Node next;
+
+    private Node(CacheEntry cacheEntry, int weight)
+    {
+      this.cacheEntry = cacheEntry;
+      this.weight = weight;
+    }
+
+    private DN getDN()
+    {
+      return cacheEntry.getDN();
+    }
+  }
+
+  /** Intrusive doubly linked list of nodes, in access order. Not thread safe. */
+  private static final class AccessOrderQueue
+  {
+    private final Node sentinel = new Node(null, 0);
+    private long weight;
+    private int size;
+
+    private AccessOrderQueue()
+    {
+      sentinel.prev = sentinel;
+      sentinel.next = sentinel;
+    }
+
+    private void addLast(Node node)
+    {
+      node.prev = sentinel.prev;
+      node.next = sentinel;
+      sentinel.prev.next = node;
+      sentinel.prev = node;
+      weight += node.weight;
+      size++;
+    }
+
+    private void remove(Node node)
+    {
+      node.prev.next = node.next;
+      node.next.prev = node.prev;
+      node.prev = null;
+      node.next = null;
+      weight -= node.weight;
+      size--;
+    }
+
+    private void moveToLast(Node node)
+    {
+      remove(node);
+      addLast(node);
+    }
+
+    private Node peekFirst()
+    {
+      return sentinel.next != sentinel ? sentinel.next : null;
+    }
+
+    private Node peekLast()
+    {
+      return sentinel.prev != sentinel ? sentinel.prev : null;
+    }
+
+    private void clear()
+    {
+      for (Node node = sentinel.next; node != sentinel; node = node.next)
+      {
+        node.queue = DEAD;
+      }
+      sentinel.prev = sentinel;
+      sentinel.next = sentinel;
+      weight = 0;
+      size = 0;
+    }
+  }
+
+  /**
+   * Bounded buffer recording the nodes read from the cache. Offering a node
+   * never blocks: reads are dropped when the buffer is full, which only makes
+   * the eviction policy slightly less accurate.
+   */
+  private static final class ReadBuffer
+  {
+    private static final int SIZE = 32;
+    private static final int MASK = SIZE - 1;
+    private static final int DRAIN_THRESHOLD = SIZE / 2;
+
+    private final AtomicLong writeCounter = new AtomicLong();
+    private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<>(SIZE);
+    /** Only written while holding the eviction lock. */
+    private volatile long readCounter;
+
+    /**
+     * Records a read.
+     *
+     * @return {@code true} if the buffer should be drained
+     */
+    private boolean offer(Node node)
+    {
+      final long head = readCounter;
+      final long tail = writeCounter.get();
+      final long size = tail - head;
+      if (size >= SIZE)
+      {
+        return true;
+      }
+      if (writeCounter.compareAndSet(tail, tail + 1))
+      {
+        slots.lazySet((int) (tail & MASK), node);
+        return size + 1 >= DRAIN_THRESHOLD;
+      }
+      return false;
+    }
+
+    /** Must be called while holding the eviction lock. */
+    private void drainTo(TinyLFUEntryCache cache)
+    {
+      long head = readCounter;
+      final long tail = writeCounter.get();
+      for (; head != tail; head++)
+      {
+        final int index = (int) (head & MASK);
+        final Node node = slots.get(index);
+        if (node == null)
+        {
+          // The writer has not published its node yet
+          break;
+        }
+        slots.lazySet(index, null);
+        cache.onAccess(node);
+      }
+      readCounter = head;
+    }
+  }
+
+  /**
+   * A 4-bit count-min sketch estimating the access frequency of the cached
+   * entries, with periodic aging. Not thread safe.
+   */
+  static final class FrequencySketch
+  {
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MIN_TABLE_SIZE = 64;
+    private static final int MAX_TABLE_SIZE = 1 << 26;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a frequency sketch for the provided number of entries.
+     *
+     * @param maximumSize
+     *          the expected maximum number of entries tracked by this sketch
+     */
+    FrequencySketch(long maximumSize)
+    {
+      final int maximum = (int) Math.max(Math.min(maximumSize, MAX_TABLE_SIZE), MIN_TABLE_SIZE);
+      table = new long[Integer.highestOneBit(maximum - 1) << 1];
+      tableMask = table.length - 1;
+      sampleSize = 10 * maximum;
+      additions = 0;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of an item, up to 15.
+     *
+     * @param hashCode
+     *          the hash code of the item
+     * @return the estimated number of occurrences of the item
+     */
+    int frequency(int hashCode)
+    {
+      final int hash = spread(hashCode);
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++)
+      {
+        final int index = indexOf(hash, i);
+        final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    /**
+     * Increments the number of occurrences of an item, aging all the counters
+     * once enough increments have been recorded.
+     *
+     * @param hashCode
+     *          the hash code of the item
+     */
+    void increment(int hashCode)
+    {
+      final int hash = spread(hashCode);
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++)
+      {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++additions == sampleSize)
+      {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+      final int offset = counter << 2;
+      final long mask = 0xfL << offset;
+      if ((table[index] & mask) != mask)
+      {
+        table[index] += 1L << offset;
+        return true;
+      }
+      return false;
+    }
+
+    /** Halves all the counters. */
+    private void reset()
+    {
+      int count = 0;
+      for (int i = 0; i < table.length; i++)
+      {
+        count += Long.bitCount(table[i] & ONE_MASK);
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions = (additions - (count >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i)
+    {
+      long hash = (item + SEEDS[i]) * SEEDS[i];
+      hash += hash >>> 32;
+      return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x)
+    {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+
+  /** The mapping between DNs and entries, only updated while holding the eviction lock. */
+  private final ConcurrentMap<DN, Node> dnMap = new ConcurrentHashMap<>();
+
+  /** The mapping between entry backends/IDs and entries, only updated while holding the eviction lock. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Node>> idMap = new ConcurrentHashMap<>();
+
+  /** Guards the eviction policy: the queues, the read buffers draining and the frequency sketch. */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final AccessOrderQueue window = new AccessOrderQueue();
+  private final AccessOrderQueue probation = new AccessOrderQueue();
+  private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+  private final ReadBuffer[] readBuffers;
+  private FrequencySketch sketch;
+
+  /** The number of entries evicted from the cache to make room for other entries. */
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** The maximum total encoded size of the cached entries. */
+  private volatile long maxMemorySize;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private TinyLFUEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this tiny LFU entry cache. */
+  public TinyLFUEntryCache()
+  {
+    super();
+    final int nbBuffers = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    readBuffers = new ReadBuffer[nbBuffers];
+    for (int i = 0; i < readBuffers.length; i++)
+    {
+      readBuffers[i] = new ReadBuffer();
+    }
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeEntryCache(TinyLFUEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addTinyLFUChangeListener(this);
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_TINYLFUCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeTinyLFUChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final Node node = dnMap.get(entryDN);
+    if (node == null) {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    recordRead(node);
+    return node.cacheEntry.getEntry();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    final Node node = dnMap.get(entryDN);
+    return node != null ? node.cacheEntry.getEntryID() : -1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    final Map<Long, Node> backendMap = idMap.get(backendID);
+    if (backendMap != null) {
+      final Node node = backendMap.get(entryID);
+      if (node != null) {
+        return node.getDN();
+      }
+    }
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    final Node node = newNode(entry, backendID, entryID);
+    if (node == null)
+    {
+      // Do not keep an outdated version of the entry.
+      removeEntry(entry.getName());
+      return;
+    }
+
+    evictionLock.lock();
+    try
+    {
+      final Node oldNode = dnMap.put(entry.getName(), node);
+      if (oldNode != null)
+      {
+        removeFromIDMap(oldNode);
+        unlink(oldNode);
+      }
+      putInIDMap(backendID, entryID, node);
+      link(node);
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    final Node node = newNode(entry, backendID, entryID);
+    if (node == null)
+    {
+      // The entry is too big to be cached: pretend it was cached.
+      return !dnMap.containsKey(entry.getName());
+    }
+
+    evictionLock.lock();
+    try
+    {
+      if (dnMap.putIfAbsent(entry.getName(), node) != null)
+      {
+        return false;
+      }
+      putInIDMap(backendID, entryID, node);
+      link(node);
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Creates the node for a new cache entry.
+   *
+   * @return the new node, or {@code null} if the entry cannot be cached
+   */
+  private Node newNode(Entry entry, String backendID, long entryID)
+  {
+    try
+    {
+      final ByteStringBuilder buffer = new ByteStringBuilder();
+      entry.encode(buffer, EntryEncodeConfig.DEFAULT_CONFIG);
+      if (buffer.length() > maxMemorySize)
+      {
+        return null;
+      }
+      return new Node(new CacheEntry(entry, backendID, entryID), buffer.length());
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private ConcurrentMap<Long, Node> getBackendMap(String backendID)
+  {
+    ConcurrentMap<Long, Node> backendMap = idMap.get(backendID);
+    if (backendMap == null)
+    {
+      backendMap = new ConcurrentHashMap<>();
+      idMap.put(backendID, backendMap);
+    }
+    return backendMap;
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private void putInIDMap(String backendID, long entryID, Node node)
+  {
+    final Node oldNode = getBackendMap(backendID).put(entryID, node);
+    if (oldNode != null)
+    {
+      // The entry has been renamed: its previous DN must not be mapped anymore
+      dnMap.remove(oldNode.cacheEntry.getDN(), oldNode);
+      unlink(oldNode);
+    }
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private void removeFromIDMap(Node node)
+  {
+    final CacheEntry cacheEntry = node.cacheEntry;
+    final Map<Long, Node> backendMap = idMap.get(cacheEntry.getBackendID());
+    if (backendMap != null)
+    {
+      backendMap.remove(cacheEntry.getEntryID(), node);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    if (!dnMap.containsKey(entryDN))
+    {
+      return;
+    }
+
+    evictionLock.lock();
+    try
+    {
+      final Node node = dnMap.remove(entryDN);
+      if (node != null)
+      {
+        removeFromIDMap(node);
+        unlink(node);
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clear()
+  {
+    evictionLock.lock();
+    try
+    {
+      dnMap.clear();
+      idMap.clear();
+      window.clear();
+      probation.clear();
+      protectedQueue.clear();
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearBackend(String backendID)
+  {
+    evictionLock.lock();
+    try
+    {
+      // Remove all references to entries for this backend from the ID cache.
+      final Map<Long, Node> backendMap = idMap.remove(backendID);
+      if (backendMap != null)
+      {
+        removeAll(backendMap.values());
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    final Map<Long, Node> backendMap = idMap.get(backend.getBackendID());
+    if (backendMap != null)
+    {
+      // Since the provided base DN could hold a subset of the information in
+      // the specified backend, we will have to do this by iterating through all
+      // the entries for that backend.
+      evictionLock.lock();
+      try
+      {
+        final List<Node> removedNodes = new ArrayList<>();
+        for (Iterator<Node> it = backendMap.values().iterator(); it.hasNext();)
+        {
+          final Node node = it.next();
+          if (node.getDN().isDescendantOf(baseDN))
+          {
+            it.remove();
+            removedNodes.add(node);
+          }
+        }
+        removeAll(removedNodes);
+      }
+      finally
+      {
+        evictionLock.unlock();
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isDescendantOf(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes nodes which have already been removed from the ID map. Must be
+   * called while holding the eviction lock.
+   */
+  private void removeAll(Iterable<Node> nodes)
+  {
+    for (Node node : nodes)
+    {
+      if (dnMap.remove(node.getDN(), node))
+      {
+        unlink(node);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void handleLowMemory()
+  {
+    evictionLock.lock();
+    try
+    {
+      // See how many entries are in the cache.  If there are less than 1000,
+      // then we'll dump all of them.  Otherwise, we'll dump 10% of the entries,
+      // least valuable first.
+      final int numEntries = getSize();
+      int numToDrop = numEntries < 1000 ? numEntries : numEntries / 10;
+      for (; numToDrop > 0; numToDrop--)
+      {
+        evict(selectVictim());
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Records a read of a node. Reads are recorded in a buffer which is drained
+   * when it is half full, by the first thread acquiring the eviction lock.
+   */
+  private void recordRead(Node node)
+  {
+    final ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+    if (buffer.offer(node) && evictionLock.tryLock())
+    {
+      try
+      {
+        drainReadBuffers();
+      }
+      finally
+      {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private void drainReadBuffers()
+  {
+    for (ReadBuffer buffer : readBuffers)
+    {
+      buffer.drainTo(this);
+    }
+  }
+
+  /**
+   * Applies a read to the eviction policy. Must be called while holding the
+   * eviction lock.
+   */
+  private void onAccess(Node node)
+  {
+    switch (node.queue)
+    {
+    case WINDOW:
+      sketch.increment(node.getDN().hashCode());
+      window.moveToLast(node);
+      break;
+
+    case PROBATION:
+      // Promote the node to the protected segment, demoting the least recently
+      // used protected nodes if needed.
+      sketch.increment(node.getDN().hashCode());
+      probation.remove(node);
+      node.queue = PROTECTED;
+      protectedQueue.addLast(node);
+      final long maxProtectedWeight = (maxMemorySize - getMaxWindowWeight()) * PROTECTED_PERCENT / 100;
+      final long maxProtectedEntries = (maxEntries - getMaxWindowEntries()) * PROTECTED_PERCENT / 100;
+      while ((protectedQueue.weight > maxProtectedWeight || protectedQueue.size > maxProtectedEntries)
+          && protectedQueue.size > 1)
+      {
+        final Node demoted = protectedQueue.peekFirst();
+        protectedQueue.remove(demoted);
+        demoted.queue = PROBATION;
+        probation.addLast(demoted);
+      }
+      break;
+
+    case PROTECTED:
+      sketch.increment(node.getDN().hashCode());
+      protectedQueue.moveToLast(node);
+      break;
+
+    default:
+      // The node has been removed from the cache since it was read
+      break;
+    }
+  }
+
+  /**
+   * Adds a new node to the admission window and evicts nodes if the cache is
+   * over capacity. Must be called while holding the eviction lock.
+   */
+  private void link(Node node)
+  {
+    drainReadBuffers();
+    // The node could have been removed, or replaced, before the lock was acquired
+    if (node.queue == NEW && dnMap.get(node.getDN()) == node)
+    {
+      sketch.increment(node.getDN().hashCode());
+      node.queue = WINDOW;
+      window.addLast(node);
+      evictEntries();
+    }
+    else
+    {
+      node.queue = DEAD;
+    }
+  }
+
+  /** Removes a node from the eviction policy. Must be called while holding the eviction lock. */
+  private void unlink(Node node)
+  {
+    final AccessOrderQueue queue = getQueue(node);
+    if (queue != null)
+    {
+      queue.remove(node);
+    }
+    node.queue = DEAD;
+  }
+
+  private AccessOrderQueue getQueue(Node node)
+  {
+    switch (node.queue)
+    {
+    case WINDOW:
+      return window;
+    case PROBATION:
+      return probation;
+    case PROTECTED:
+      return protectedQueue;
+    default:
+      return null;
+    }
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private void evictEntries()
+  {
+    // Move the nodes overflowing from the window to the probation segment,
+    // where they compete with the main area nodes to stay in the cache.
+    while ((window.weight > getMaxWindowWeight() || window.size > getMaxWindowEntries()) && window.size > 1)
+    {
+      final Node candidate = window.peekFirst();
+      window.remove(candidate);
+      candidate.queue = PROBATION;
+      probation.addLast(candidate);
+    }
+
+    while (isOverCapacity())
+    {
+      evict(selectVictim());
+    }
+  }
+
+  private boolean isOverCapacity()
+  {
+    return getSize() > maxEntries || getWeight() > maxMemorySize;
+  }
+
+  /**
+   * Selects the node to evict. The most recent candidate of the probation
+   * segment competes with its least recently used node, and only stays in the
+   * cache if it has been accessed more frequently.
+   */
+  private Node selectVictim()
+  {
+    final Node victim = probation.peekFirst();
+    if (victim == null)
+    {
+      final Node node = protectedQueue.peekFirst();
+      return node != null ? node : window.peekFirst();
+    }
+    final Node candidate = probation.peekLast();
+    if (candidate == victim)
+    {
+      return victim;
+    }
+    final int candidateFrequency = sketch.frequency(candidate.getDN().hashCode());
+    final int victimFrequency = sketch.frequency(victim.getDN().hashCode());
+    return candidateFrequency > victimFrequency ? victim : candidate;
+  }
+
+  /** Must be called while holding the eviction lock. */
+  private void evict(Node node)
+  {
+    unlink(node);
+    if (dnMap.remove(node.getDN(), node))
+    {
+      removeFromIDMap(node);
+    }
+    evictions.getAndIncrement();
+  }
+
+  private int getSize()
+  {
+    return window.size + probation.size + protectedQueue.size;
+  }
+
+  private long getWeight()
+  {
+    return window.weight + probation.weight + protectedQueue.weight;
+  }
+
+  private long getMaxWindowWeight()
+  {
+    return Math.max(maxMemorySize * WINDOW_PERCENT / 100, 1);
+  }
+
+  private long getMaxWindowEntries()
+  {
+    return Math.max(maxEntries * WINDOW_PERCENT / 100, 1);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    TinyLFUEntryCacheCfg config = (TinyLFUEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      TinyLFUEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ConfigChangeResult applyConfigurationChange(TinyLFUEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired());
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      TinyLFUEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newMaxEntries = configuration.getMaxEntries();
+    long newMaxMemorySize = configuration.getMaxMemorySize();
+
+    // Get include and exclude filters.
+    Set<SearchFilter> newIncludeFilters = EntryCacheCommon.getFilters (
+        configuration.getIncludeFilter(),
+        ERR_CACHE_INVALID_INCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+    Set<SearchFilter> newExcludeFilters = EntryCacheCommon.getFilters (
+        configuration.getExcludeFilter(),
+        ERR_CACHE_INVALID_EXCLUDE_FILTER,
+        errorHandler,
+        newConfigEntryDN
+        );
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      evictionLock.lock();
+      try
+      {
+        maxEntries = newMaxEntries;
+        maxMemorySize = newMaxMemorySize;
+        // Frequencies are only meaningful relative to each other: starting
+        // over with a resized sketch is fine.
+        sketch = new FrequencySketch(Math.min(newMaxEntries, newMaxMemorySize / AVERAGE_ENTRY_SIZE));
+        evictEntries();
+      }
+      finally
+      {
+        evictionLock.unlock();
+      }
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<Attribute> getMonitorData()
+  {
+    try {
+      final List<Attribute> attrs = EntryCacheCommon.getGenericMonitorData(
+        Long.valueOf(cacheHits.longValue()),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        Long.valueOf(getWeight()),
+        Long.valueOf(maxMemorySize),
+        Long.valueOf(dnMap.size()),
+        Long.valueOf(maxEntries != Integer.MAX_VALUE ? maxEntries : 0)
+        );
+      attrs.add(Attributes.create("entryCacheEvictions", Long.toString(evictions.get())));
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return Collections.emptyList();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /**
+   * Returns the number of entries evicted from this cache to make room for
+   * other entries.
+   *
+   * @return the number of entries evicted from this cache
+   */
+  public long getEvictionCount()
+  {
+    return evictions.get();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+    for (Node node : dnMap.values()) {
+      final CacheEntry cacheEntry = node.cacheEntry;
+      sb.append(cacheEntry.getDN());
+      sb.append(":");
+      sb.append(cacheEntry.getEntryID());
+      sb.append(":");
+      sb.append(cacheEntry.getBackendID());
+      sb.append(ServerConstants.EOL);
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+}
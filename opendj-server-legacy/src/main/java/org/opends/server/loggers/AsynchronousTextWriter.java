@@ -26,12 +26,16 @@
  */
 package org.opends.server.loggers;
 
-import java.util.ArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import static org.opends.messages.LoggerMessages.*;
+
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.api.DirectoryThread;
 import org.opends.server.api.ServerShutdownListener;
 import org.opends.server.core.DirectoryServer;
@@ -39,20 +43,53 @@ import org.opends.server.core.DirectoryServer;
 /**
  * A Text Writer which writes log records asynchronously to
  * character-based stream.
+ * <p>
+ * Log records are stored in a preallocated ring buffer shared by all the
+ * threads writing log records. Each writing thread claims a slot with a
+ * compare-and-set on the next sequence number and publishes its record in it,
+ * then a single thread writes the published records in batches to the wrapped
+ * writer. When the ring buffer is full, writing threads either wait for a slot
+ * to be freed or discard their record.
  */
 class AsynchronousTextWriter
     implements ServerShutdownListener, TextWriter
 {
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** Time the writer thread waits for new records before checking for shutdown. */
+  private static final long IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10);
+  /** Time a thread waits for a free slot before trying again when the ring buffer is full. */
+  private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  /** Maximum number of records written before freeing their slots for the writing threads. */
+  private static final int MAX_RECORDS_BEFORE_RELEASE = 256;
+
   /**
    * The wrapped Text Writer.
    */
   private final TextWriter writer;
 
-  /** Queue to store unpublished records. */
-  private final LinkedBlockingQueue<String> queue;
-
-  /** The capacity for the queue. */
+  /** Ring buffer to store unpublished records. */
+  private final String[] records;
+  /**
+   * The sequence number of the record published in each slot of the ring
+   * buffer, used by the writer thread to know which slots it can read.
+   */
+  private final AtomicLongArray publishedSequences;
+  /** Mask applied to a sequence number to get its slot in the ring buffer. */
+  private final int mask;
+  /** The capacity for the ring buffer. */
   private final int capacity;
+  /** The sequence number the next record will be published with. */
+  private final AtomicLong nextSequence = new AtomicLong();
+  /** All the records with a lower sequence number have been written, so their slots can be reused. */
+  private volatile long writtenSequence;
+  /** Whether the writer thread is waiting for records to be published. */
+  private volatile boolean writerIdle;
+
+  /** Whether log records are discarded instead of waiting when the ring buffer is full. */
+  private final boolean dropWhenFull;
+  /** Number of log records discarded since it was last reported. */
+  private final AtomicLong droppedRecords = new AtomicLong();
 
   private String name;
   private AtomicBoolean stopRequested;
@@ -71,13 +108,38 @@ class AsynchronousTextWriter
    */
   public AsynchronousTextWriter(String name, int capacity, boolean autoFlush,
                                TextWriter writer)
+  {
+    this(name, capacity, autoFlush, false, writer);
+  }
+
+  /**
+   * Construct a new AsynchronousTextWriter wrapper.
+   *
+   * @param name      the name of the thread.
+   * @param capacity      the size of the queue before it gets flushed. It is
+   *                      rounded up to the next power of two.
+   * @param autoFlush indicates if the underlying writer should be flushed
+   *                  after the queue is flushed.
+   * @param dropWhenFull indicates if log records should be discarded instead of
+   *                  waiting for room in the queue when it is full.
+   * @param writer    a character stream used for output.
+   */
+  public AsynchronousTextWriter(String name, int capacity, boolean autoFlush,
+                               boolean dropWhenFull, TextWriter writer)
   {
     this.name = name;
     this.autoFlush = autoFlush;
+    this.dropWhenFull = dropWhenFull;
     this.writer = writer;
 
-    this.queue = new LinkedBlockingQueue<>(capacity);
-    this.capacity = capacity;
+    this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.records = new String[this.capacity];
+    this.publishedSequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++)
+    {
+      publishedSequences.set(i, -1);
+    }
     this.writerThread = null;
     this.stopRequested = new AtomicBoolean(false);
 
@@ -105,53 +167,77 @@ class AsynchronousTextWriter
     @Override
     public void run()
     {
-      ArrayList<String> drainList = new ArrayList<>(capacity);
-
-      String message = null;
-      while (!stopRequested.get() || !queue.isEmpty()) {
-        try
+      while (!stopRequested.get() || hasUnwrittenRecords())
+      {
+        if (writePublishedRecords() > 0)
         {
-          queue.drainTo(drainList, capacity);
-          if (drainList.isEmpty())
+          if (autoFlush)
           {
-            message = queue.poll(10, TimeUnit.SECONDS);
-            if(message != null)
-            {
-              do
-              {
-                writer.writeRecord(message);
-                message = queue.poll();
-              }
-              while(message != null);
-
-              if(autoFlush)
-              {
-                flush();
-              }
-            }
+            flush();
           }
-          else
+        }
+        else
+        {
+          writerIdle = true;
+          // double check to protect against a missed call to unpark()
+          if (!isPublished(writtenSequence) && !stopRequested.get())
           {
-            for (String record : drainList)
-            {
-              writer.writeRecord(record);
-            }
-            drainList.clear();
-
-            if (autoFlush)
-            {
-              flush();
-            }
+            LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
           }
+          writerIdle = false;
         }
-        catch (InterruptedException ex) {
-          // Ignore. We'll rerun the loop
-          // and presumably fall out.
-        }
+        reportDroppedRecords();
       }
     }
   }
 
+  private boolean hasUnwrittenRecords()
+  {
+    return nextSequence.get() != writtenSequence;
+  }
+
+  private boolean isPublished(long sequence)
+  {
+    return publishedSequences.get((int) (sequence & mask)) == sequence;
+  }
+
+  /**
+   * Writes all the records published so far to the wrapped writer.
+   * Must only be called by a single thread at a time.
+   *
+   * @return the number of records written
+   */
+  private int writePublishedRecords()
+  {
+    long sequence = writtenSequence;
+    int nbWritten = 0;
+    while (isPublished(sequence))
+    {
+      final int index = (int) (sequence & mask);
+      final String record = records[index];
+      records[index] = null;
+      writer.writeRecord(record);
+      sequence++;
+      nbWritten++;
+      if (nbWritten % MAX_RECORDS_BEFORE_RELEASE == 0)
+      {
+        // free the slots for the threads waiting for room in the ring buffer
+        writtenSequence = sequence;
+      }
+    }
+    writtenSequence = sequence;
+    return nbWritten;
+  }
+
+  private void reportDroppedRecords()
+  {
+    final long dropped = droppedRecords.getAndSet(0);
+    if (dropped > 0)
+    {
+      logger.warn(WARN_LOGGER_ASYNC_RECORDS_DROPPED, dropped, name);
+    }
+  }
+
   /**
    * Write the log record asynchronously.
    *
@@ -161,22 +247,41 @@ class AsynchronousTextWriter
   public void writeRecord(String record)
   {
     // No writer?  Off to the bit bucket.
-    if (writer != null) {
-      while (!stopRequested.get())
+    if (writer == null)
+    {
+      return;
+    }
+
+    long sequence;
+    do
+    {
+      sequence = nextSequence.get();
+      if (sequence - writtenSequence >= capacity)
       {
-        // Put request on queue for writer
-        try
+        // The ring buffer is full
+        if (dropWhenFull)
         {
-          queue.put(record);
-          break;
+          droppedRecords.incrementAndGet();
+          return;
         }
-        catch(InterruptedException e)
+        if (stopRequested.get())
         {
-          // We expect this to happen. Just ignore it and hopefully
-          // drop out in the next try.
+          return;
         }
+        LockSupport.parkNanos(FULL_WAIT_NANOS);
+        continue;
       }
     }
+    while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+    // Put request in the ring buffer for writer
+    final int index = (int) (sequence & mask);
+    records[index] = record;
+    publishedSequences.set(index, sequence);
+    if (writerIdle)
+    {
+      LockSupport.unpark(writerThread);
+    }
   }
 
   /** {@inheritDoc} */
@@ -251,10 +356,7 @@ class AsynchronousTextWriter
     // The writer writerThread SHOULD have drained the queue.
     // If not, handle outstanding requests ourselves,
     // and push them to the writer.
-    while (!queue.isEmpty()) {
-      String message = queue.poll();
-      writer.writeRecord(message);
-    }
+    writePublishedRecords();
 
     // Shutdown the wrapped writer.
     if (shutdownWrapped && writer != null)
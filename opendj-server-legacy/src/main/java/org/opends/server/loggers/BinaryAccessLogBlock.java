@@ -0,0 +1,394 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A block of the binary access log. A binary access log file starts with a
+ * file header and is followed by blocks, each made of a summary followed by the
+ * deflated records of the block:
+ *
+ * <pre>
+ * file   := MAGIC VERSION block*
+ * block  := BLOCK_MARKER count minTime maxTime minConnID maxConnID maxEtime
+ *           etimeUnit nbResultCodes (resultCode resultCodeCount)*
+ *           uncompressedLength compressedLength deflatedRecords
+ * </pre>
+ *
+ * The summary allows readers to skip whole blocks without reading or inflating
+ * their records. The
+ * etime unit, milliseconds or nanoseconds depending on the server
+ * configuration, is the same for all the records of a block. It was not
+ * recorded by the first version of the format, whose etimes are assumed to be
+ * in milliseconds.
+ */
+final class BinaryAccessLogBlock
+{
+  /** Magic number at the start of every binary access log file ("ODJB"). */
+  static final int MAGIC = 0x4F444A42;
+  /** Version of the binary access log file format. */
+  static final byte VERSION = 2;
+  /** Version of the binary access log file format without the etime unit. */
+  static final byte VERSION_1 = 1;
+  /** Etime unit of the blocks whose etimes are in milliseconds. */
+  private static final byte ETIME_MILLISECONDS = 0;
+  /** Etime unit of the blocks whose etimes are in nanoseconds. */
+  private static final byte ETIME_NANOSECONDS = 1;
+  /** Marker at the start of every block. */
+  static final int BLOCK_MARKER = 0x424C4B31;
+
+  private int count;
+  private long minTime = Long.MAX_VALUE;
+  private long maxTime = Long.MIN_VALUE;
+  private long minConnectionID = Long.MAX_VALUE;
+  private long maxConnectionID = Long.MIN_VALUE;
+  private long maxEtime = -1;
+  private boolean etimeNanos;
+  private final Map<Integer, Integer> resultCodes = new TreeMap<>();
+  /** The serialized records, only used when the block is being built. */
+  private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+  private final DataOutputStream recordOutput = new DataOutputStream(recordBytes);
+  /** The deflated records, only used when the block has been read. */
+  private byte[] compressedRecords;
+  private int compressedLength;
+  private int uncompressedLength;
+  /** Position of this block in the sequence of blocks written by a writer. */
+  private long sequence;
+
+  /**
+   * Adds a record to this block and updates the block summary.
+   *
+   * @param record
+   *          the record to add
+   * @throws IOException
+   *           if the record cannot be serialized
+   */
+  void add(BinaryAccessLogRecord record) throws IOException
+  {
+    if (record.getEtime() >= 0 && maxEtime < 0)
+    {
+      etimeNanos = record.isEtimeNanos();
+    }
+    record.writeTo(recordOutput);
+    count++;
+    minTime = Math.min(minTime, record.getTime());
+    maxTime = Math.max(maxTime, record.getTime());
+    minConnectionID = Math.min(minConnectionID, record.getConnectionID());
+    maxConnectionID = Math.max(maxConnectionID, record.getConnectionID());
+    maxEtime = Math.max(maxEtime, record.getEtime());
+    if (record.getResultCode() >= 0)
+    {
+      final Integer rc = record.getResultCode();
+      final Integer rcCount = resultCodes.get(rc);
+      resultCodes.put(rc, rcCount != null ? rcCount + 1 : 1);
+    }
+  }
+
+  /**
+   * Returns whether the provided record can be added to this block, which is
+   * the case unless its etime unit differs from the one of this block.
+   *
+   * @param record
+   *          the record to add
+   * @return {@code true} if the record can be added to this block
+   */
+  boolean accepts(BinaryAccessLogRecord record)
+  {
+    return record.getEtime() < 0 || maxEtime < 0 || record.isEtimeNanos() == etimeNanos;
+  }
+
+  int getCount()
+  {
+    return count;
+  }
+
+  long getMinTime()
+  {
+    return minTime;
+  }
+
+  long getMaxTime()
+  {
+    return maxTime;
+  }
+
+  long getMinConnectionID()
+  {
+    return minConnectionID;
+  }
+
+  long getMaxConnectionID()
+  {
+    return maxConnectionID;
+  }
+
+  long getMaxEtime()
+  {
+    return maxEtime;
+  }
+
+  boolean isEtimeNanos()
+  {
+    return etimeNanos;
+  }
+
+  long getMaxEtimeMillis()
+  {
+    return etimeNanos && maxEtime >= 0 ? TimeUnit.NANOSECONDS.toMillis(maxEtime) : maxEtime;
+  }
+
+  /**
+   * Returns the number of operations of this block per result code.
+   *
+   * @return the number of operations of this block per result code
+   */
+  Map<Integer, Integer> getResultCodes()
+  {
+    return resultCodes;
+  }
+
+  /**
+   * Writes this block, summary and compressed records, to the provided output.
+   *
+   * @param out
+   *          where to write this block
+   * @throws IOException
+   *           if the block cannot be written
+   */
+  void writeTo(DataOutputStream out) throws IOException
+  {
+    recordOutput.flush();
+    final byte[] uncompressed = recordBytes.toByteArray();
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4 + 64);
+    try
+    {
+      deflater.setInput(uncompressed);
+      deflater.finish();
+      final byte[] buffer = new byte[8192];
+      while (!deflater.finished())
+      {
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+    }
+    finally
+    {
+      deflater.end();
+    }
+
+    out.writeInt(BLOCK_MARKER);
+    out.writeInt(count);
+    out.writeLong(minTime);
+    out.writeLong(maxTime);
+    out.writeLong(minConnectionID);
+    out.writeLong(maxConnectionID);
+    out.writeLong(maxEtime);
+    out.writeByte(etimeNanos ? ETIME_NANOSECONDS : ETIME_MILLISECONDS);
+    out.writeInt(resultCodes.size());
+    for (Map.Entry<Integer, Integer> entry : resultCodes.entrySet())
+    {
+      out.writeInt(entry.getKey());
+      out.writeInt(entry.getValue());
+    }
+    out.writeInt(uncompressed.length);
+    out.writeInt(compressed.size());
+    compressed.writeTo(out);
+  }
+
+  /**
+   * Reads the summary of the next block from the provided input. It must be
+   * followed by a call to {@link #readRecords(DataInputStream)} or to
+   * {@link #skipRecords(DataInputStream)}.
+   *
+   * @param in
+   *          where to read the block from
+   * @param version
+   *          the version of the format of the file
+   * @return the block, or {@code null} if the end of the input has been reached
+   * @throws IOException
+   *           if the block cannot be read or is corrupted
+   */
+  static BinaryAccessLogBlock readSummary(DataInputStream in, byte version) throws IOException
+  {
+    final int marker;
+    try
+    {
+      marker = in.readInt();
+    }
+    catch (EOFException e)
+    {
+      return null;
+    }
+    if (marker != BLOCK_MARKER)
+    {
+      throw new IOException("Invalid block marker " + Integer.toHexString(marker));
+    }
+    final BinaryAccessLogBlock block = new BinaryAccessLogBlock();
+    block.count = in.readInt();
+    block.minTime = in.readLong();
+    block.maxTime = in.readLong();
+    block.minConnectionID = in.readLong();
+    block.maxConnectionID = in.readLong();
+    block.maxEtime = in.readLong();
+    if (version > VERSION_1)
+    {
+      block.etimeNanos = in.readByte() == ETIME_NANOSECONDS;
+    }
+    final int nbResultCodes = in.readInt();
+    for (int i = 0; i < nbResultCodes; i++)
+    {
+      final int rc = in.readInt();
+      block.resultCodes.put(rc, in.readInt());
+    }
+    block.uncompressedLength = in.readInt();
+    block.compressedLength = in.readInt();
+    if (block.count < 0 || block.uncompressedLength < 0 || block.compressedLength < 0)
+    {
+      throw new IOException("Invalid block summary");
+    }
+    return block;
+  }
+
+  /**
+   * Reads the records of this block, which are kept compressed until
+   * {@link #getRecords()} is called.
+   *
+   * @param in
+   *          where to read the records from, positioned after the summary
+   * @throws IOException
+   *           if the records cannot be read
+   */
+  void readRecords(DataInputStream in) throws IOException
+  {
+    compressedRecords = new byte[compressedLength];
+    in.readFully(compressedRecords);
+  }
+
+  /**
+   * Skips the records of this block, without reading them.
+   *
+   * @param in
+   *          where to skip the records from, positioned after the summary
+   * @throws IOException
+   *           if the end of the input is reached before the end of the records
+   */
+  void skipRecords(DataInputStream in) throws IOException
+  {
+    int remaining = compressedLength;
+    while (remaining > 0)
+    {
+      final int skipped = in.skipBytes(remaining);
+      if (skipped <= 0)
+      {
+        // skipBytes() returns 0 at the end of the input
+        in.readByte();
+        remaining--;
+      }
+      else
+      {
+        remaining -= skipped;
+      }
+    }
+  }
+
+  /**
+   * Returns the length of this block as written to a file in the current
+   * version of the format, once its summary has been read.
+   *
+   * @return the length of this block, in bytes
+   */
+  long getLength()
+  {
+    return 4 + 4 + 5 * 8 + 1 + 4 + 8 * resultCodes.size() + 4 + 4 + compressedLength;
+  }
+
+  long getSequence()
+  {
+    return sequence;
+  }
+
+  void setSequence(long sequence)
+  {
+    this.sequence = sequence;
+  }
+
+  /**
+   * Inflates and returns the records of a block read with
+   * {@link #readRecords(DataInputStream)}.
+   *
+   * @return the records of this block
+   * @throws IOException
+   *           if the records cannot be decompressed
+   */
+  List<BinaryAccessLogRecord> getRecords() throws IOException
+  {
+    final byte[] uncompressed = new byte[uncompressedLength];
+    final Inflater inflater = new Inflater();
+    try
+    {
+      inflater.setInput(compressedRecords);
+      int offset = 0;
+      while (offset < uncompressed.length && !inflater.finished())
+      {
+        offset += inflater.inflate(uncompressed, offset, uncompressed.length - offset);
+        if (inflater.needsInput())
+        {
+          break;
+        }
+      }
+    }
+    catch (DataFormatException e)
+    {
+      throw new IOException(e);
+    }
+    finally
+    {
+      inflater.end();
+    }
+
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+    final List<BinaryAccessLogRecord> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+    {
+      records.add(BinaryAccessLogRecord.readFrom(in, etimeNanos));
+    }
+    return records;
+  }
+}
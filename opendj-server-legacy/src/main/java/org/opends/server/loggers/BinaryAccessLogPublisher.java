@@ -0,0 +1,287 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.opends.server.admin.server.ConfigurationChangeListener;
+import org.opends.server.admin.std.server.BinaryFileAccessLogPublisherCfg;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.core.*;
+import org.opends.server.types.*;
+import org.opends.server.util.TimeThread;
+
+/**
+ * An access log publisher writing one compact binary record per connection,
+ * disconnection and completed operation. The records are written in deflated
+ * blocks carrying a summary which allows the query-access-log tool to skip
+ * whole blocks when filtering.
+ */
+public final class BinaryAccessLogPublisher extends
+    AbstractTextAccessLogPublisher<BinaryFileAccessLogPublisherCfg> implements
+    ConfigurationChangeListener<BinaryFileAccessLogPublisherCfg>
+{
+  private BinaryAccessLogWriter writer;
+  private BinaryFileAccessLogPublisherCfg cfg;
+
+  @Override
+  public void initializeLogPublisher(final BinaryFileAccessLogPublisherCfg cfg, ServerContext serverContext)
+      throws ConfigException, InitializationException
+  {
+    final File logFile = getFileForPath(cfg.getLogFile());
+    final FileNamingPolicy fnPolicy = new TimeStampNaming(logFile);
+
+    try
+    {
+      final FilePermission perm = FilePermission.decodeUNIXMode(cfg.getLogFilePermissions());
+      final LogPublisherErrorHandler errorHandler = new LogPublisherErrorHandler(cfg.dn());
+      writer = new BinaryAccessLogWriter("Binary Access Log Writer for " + cfg.dn(),
+          cfg.getTimeInterval(), fnPolicy, perm, errorHandler, cfg.getBlockSize());
+      addPolicies(cfg);
+    }
+    catch (final DirectoryException e)
+    {
+      throw new InitializationException(ERR_CONFIG_LOGGING_CANNOT_CREATE_WRITER.get(cfg.dn(), e), e);
+    }
+    catch (final IOException e)
+    {
+      throw new InitializationException(ERR_CONFIG_LOGGING_CANNOT_OPEN_FILE.get(logFile, cfg.dn(), e), e);
+    }
+
+    initializeFilters(cfg);
+
+    this.cfg = cfg;
+    cfg.addBinaryFileAccessChangeListener(this);
+  }
+
+  private void addPolicies(final BinaryFileAccessLogPublisherCfg config) throws DirectoryException
+  {
+    writer.removeAllRotationPolicies();
+    writer.removeAllRetentionPolicies();
+    for (final DN dn : config.getRotationPolicyDNs())
+    {
+      writer.addRotationPolicy(DirectoryServer.getRotationPolicy(dn));
+    }
+    for (final DN dn : config.getRetentionPolicyDNs())
+    {
+      writer.addRetentionPolicy(DirectoryServer.getRetentionPolicy(dn));
+    }
+  }
+
+  @Override
+  public boolean isConfigurationAcceptable(final BinaryFileAccessLogPublisherCfg configuration,
+      final List<LocalizableMessage> unacceptableReasons)
+  {
+    return isFilterConfigurationAcceptable(configuration, unacceptableReasons)
+        && isConfigurationChangeAcceptable(configuration, unacceptableReasons);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(final BinaryFileAccessLogPublisherCfg config,
+      final List<LocalizableMessage> unacceptableReasons)
+  {
+    try
+    {
+      final FilePermission filePerm = FilePermission.decodeUNIXMode(config.getLogFilePermissions());
+      if (!filePerm.isOwnerWritable())
+      {
+        unacceptableReasons.add(ERR_CONFIG_LOGGING_INSANE_MODE.get(config.getLogFilePermissions()));
+        return false;
+      }
+    }
+    catch (final DirectoryException e)
+    {
+      unacceptableReasons.add(ERR_CONFIG_LOGGING_MODE_INVALID.get(config.getLogFilePermissions(), e));
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(final BinaryFileAccessLogPublisherCfg config)
+  {
+    final ConfigChangeResult ccr = new ConfigChangeResult();
+    try
+    {
+      writer.setFilePermissions(FilePermission.decodeUNIXMode(config.getLogFilePermissions()));
+      writer.setBlockSize(config.getBlockSize());
+      writer.setInterval(config.getTimeInterval());
+      addPolicies(config);
+
+      if (!getFileForPath(config.getLogFile()).equals(writer.getNamingPolicy().getInitialName()))
+      {
+        // the writer keeps writing to the current file until the publisher is restarted
+        ccr.setAdminActionRequired(true);
+      }
+      cfg = config;
+    }
+    catch (final Exception e)
+    {
+      ccr.setResultCode(DirectoryServer.getServerErrorResultCode());
+      ccr.addMessage(ERR_CONFIG_LOGGING_CANNOT_CREATE_WRITER.get(config.dn(), stackTraceToSingleLineString(e)));
+    }
+    return ccr;
+  }
+
+  @Override
+  protected void close0()
+  {
+    writer.shutdown();
+    if (cfg != null)
+    {
+      cfg.removeBinaryFileAccessChangeListener(this);
+    }
+  }
+
+  @Override
+  public void logConnect(final ClientConnection clientConnection)
+  {
+    if (isConnectLoggable(clientConnection))
+    {
+      final String details = "from=" + clientConnection.getClientHostPort()
+          + " to=" + clientConnection.getServerHostPort()
+          + " protocol=" + clientConnection.getProtocol();
+      writer.writeRecord(new BinaryAccessLogRecord(TimeThread.getTime(), clientConnection.getConnectionID(),
+          -1, -1, "CONNECT", null, -1, -1, false, details));
+    }
+  }
+
+  @Override
+  public void logDisconnect(final ClientConnection clientConnection, final DisconnectReason disconnectReason,
+      final LocalizableMessage message)
+  {
+    if (isDisconnectLoggable(clientConnection))
+    {
+      String details = "reason=\"" + disconnectReason + "\"";
+      if (message != null)
+      {
+        details += " msg=\"" + message + "\"";
+      }
+      writer.writeRecord(new BinaryAccessLogRecord(TimeThread.getTime(), clientConnection.getConnectionID(),
+          -1, -1, "DISCONNECT", null, -1, -1, false, details));
+    }
+  }
+
+  @Override
+  public void logAbandonResult(final AbandonOperation abandonOperation)
+  {
+    logResult(abandonOperation, "ABANDON", null, "idToAbandon=" + abandonOperation.getIDToAbandon());
+  }
+
+  @Override
+  public void logAddResponse(final AddOperation addOperation)
+  {
+    logResult(addOperation, "ADD", addOperation.getRawEntryDN(), null);
+  }
+
+  @Override
+  public void logBindResponse(final BindOperation bindOperation)
+  {
+    String details = "type=" + bindOperation.getAuthenticationType();
+    if (bindOperation.getAuthenticationType() == AuthenticationType.SASL)
+    {
+      details += " mechanism=" + bindOperation.getSASLMechanism();
+    }
+    logResult(bindOperation, "BIND", bindOperation.getRawBindDN(), details);
+  }
+
+  @Override
+  public void logCompareResponse(final CompareOperation compareOperation)
+  {
+    logResult(compareOperation, "COMPARE", compareOperation.getRawEntryDN(), null);
+  }
+
+  @Override
+  public void logDeleteResponse(final DeleteOperation deleteOperation)
+  {
+    logResult(deleteOperation, "DELETE", deleteOperation.getRawEntryDN(), null);
+  }
+
+  @Override
+  public void logExtendedResponse(final ExtendedOperation extendedOperation)
+  {
+    logResult(extendedOperation, "EXTENDED", null, "oid=\"" + extendedOperation.getRequestOID() + "\"");
+  }
+
+  @Override
+  public void logModifyDNResponse(final ModifyDNOperation modifyDNOperation)
+  {
+    logResult(modifyDNOperation, "MODDN", modifyDNOperation.getRawEntryDN(),
+        "newRDN=\"" + modifyDNOperation.getRawNewRDN() + "\"");
+  }
+
+  @Override
+  public void logModifyResponse(final ModifyOperation modifyOperation)
+  {
+    logResult(modifyOperation, "MODIFY", modifyOperation.getRawEntryDN(), null);
+  }
+
+  @Override
+  public void logSearchResultDone(final SearchOperation searchOperation)
+  {
+    final String details = "scope=" + searchOperation.getScope()
+        + " filter=\"" + searchOperation.getRawFilter() + "\""
+        + " nentries=" + searchOperation.getEntriesSent();
+    logResult(searchOperation, "SEARCH", searchOperation.getRawBaseDN(), details);
+  }
+
+  @Override
+  public void logUnbind(final UnbindOperation unbindOperation)
+  {
+    if (isRequestLoggable(unbindOperation))
+    {
+      writer.writeRecord(new BinaryAccessLogRecord(TimeThread.getTime(), unbindOperation.getConnectionID(),
+          unbindOperation.getOperationID(), unbindOperation.getMessageID(), "UNBIND", null, -1, -1, false, null));
+    }
+  }
+
+  private void logResult(final Operation operation, final String type, final Object dn, final String details)
+  {
+    if (!isResponseLoggable(operation))
+    {
+      return;
+    }
+
+    // the server can be configured to log processing time as nanos xor millis
+    long etime = operation.getProcessingNanoTime();
+    final boolean etimeNanos = etime > -1;
+    if (!etimeNanos)
+    {
+      etime = operation.getProcessingTime();
+    }
+    writer.writeRecord(new BinaryAccessLogRecord(TimeThread.getTime(), operation.getConnectionID(),
+        operation.getOperationID(), operation.getMessageID(), type, dn != null ? dn.toString() : null,
+        operation.getResultCode().intValue(), etime, etimeNanos, details));
+  }
+}
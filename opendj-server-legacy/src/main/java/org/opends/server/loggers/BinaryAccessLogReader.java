@@ -0,0 +1,272 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Reads the records of a binary access log file matching a set of criteria.
+ * <p>
+ * Blocks whose summary shows they cannot contain any matching record are
+ * skipped without being decompressed, so that narrow queries over large log
+ * files only pay for the blocks they actually need.
+ */
+public final class BinaryAccessLogReader implements Closeable
+{
+  private final DataInputStream in;
+  private final byte version;
+
+  private long startTime = Long.MIN_VALUE;
+  private long endTime = Long.MAX_VALUE;
+  private long connectionID = -1;
+  private String baseDN;
+  private long minEtime = -1;
+  private int resultCode = -1;
+
+  private Iterator<BinaryAccessLogRecord> currentRecords = Collections.<BinaryAccessLogRecord> emptyList().iterator();
+  private int blocksRead;
+  private int blocksSkipped;
+
+  /**
+   * Opens the provided binary access log file for reading.
+   *
+   * @param file
+   *          the binary access log file to read
+   * @throws IOException
+   *           if the file cannot be opened, or is not a binary access log file
+   */
+  public BinaryAccessLogReader(File file) throws IOException
+  {
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    try
+    {
+      final int magic = in.readInt();
+      version = in.readByte();
+      if (magic != BinaryAccessLogBlock.MAGIC
+          || (version != BinaryAccessLogBlock.VERSION && version != BinaryAccessLogBlock.VERSION_1))
+      {
+        throw new IOException("File " + file + " is not a binary access log file");
+      }
+    }
+    catch (IOException e)
+    {
+      close(in);
+      throw e;
+    }
+  }
+
+  /**
+   * Only returns the records logged between the provided times, inclusive.
+   *
+   * @param startTime
+   *          the start time in milliseconds since the epoch
+   * @param endTime
+   *          the end time in milliseconds since the epoch
+   * @return this reader
+   */
+  public BinaryAccessLogReader setTimeRange(long startTime, long endTime)
+  {
+    this.startTime = startTime;
+    this.endTime = endTime;
+    return this;
+  }
+
+  /**
+   * Only returns the records of the provided connection.
+   *
+   * @param connectionID
+   *          the connection ID
+   * @return this reader
+   */
+  public BinaryAccessLogReader setConnectionID(long connectionID)
+  {
+    this.connectionID = connectionID;
+    return this;
+  }
+
+  /**
+   * Only returns the records of operations targeting an entry at or below the
+   * provided base DN. The DNs are compared as case insensitive strings.
+   *
+   * @param baseDN
+   *          the base DN
+   * @return this reader
+   */
+  public BinaryAccessLogReader setBaseDN(String baseDN)
+  {
+    this.baseDN = baseDN != null ? toLowerCase(baseDN.trim()) : null;
+    return this;
+  }
+
+  /**
+   * Only returns the records of operations which took at least the provided
+   * processing time, whatever the etime unit the records were logged with.
+   *
+   * @param minEtime
+   *          the processing time threshold in milliseconds
+   * @return this reader
+   */
+  public BinaryAccessLogReader setMinEtime(long minEtime)
+  {
+    this.minEtime = minEtime;
+    return this;
+  }
+
+  /**
+   * Only returns the records of operations with the provided result code.
+   *
+   * @param resultCode
+   *          the result code
+   * @return this reader
+   */
+  public BinaryAccessLogReader setResultCode(int resultCode)
+  {
+    this.resultCode = resultCode;
+    return this;
+  }
+
+  /**
+   * Returns the next record matching the criteria of this reader.
+   *
+   * @return the next matching record, or {@code null} if there are no more
+   *         matching records
+   * @throws IOException
+   *           if the file cannot be read or is corrupted
+   */
+  public BinaryAccessLogRecord next() throws IOException
+  {
+    while (true)
+    {
+      while (currentRecords.hasNext())
+      {
+        final BinaryAccessLogRecord record = currentRecords.next();
+        if (matches(record))
+        {
+          return record;
+        }
+      }
+
+      final BinaryAccessLogBlock block = BinaryAccessLogBlock.readSummary(in, version);
+      if (block == null)
+      {
+        return null;
+      }
+      if (mayMatch(block))
+      {
+        blocksRead++;
+        block.readRecords(in);
+        currentRecords = block.getRecords().iterator();
+      }
+      else
+      {
+        blocksSkipped++;
+        block.skipRecords(in);
+      }
+    }
+  }
+
+  /** Returns whether the provided block summary allows for matching records. */
+  private boolean mayMatch(BinaryAccessLogBlock block)
+  {
+    return block.getMaxTime() >= startTime
+        && block.getMinTime() <= endTime
+        && (connectionID < 0
+            || (block.getMinConnectionID() <= connectionID && connectionID <= block.getMaxConnectionID()))
+        && block.getMaxEtimeMillis() >= minEtime
+        && (resultCode < 0 || block.getResultCodes().containsKey(resultCode));
+  }
+
+  private boolean matches(BinaryAccessLogRecord record)
+  {
+    if (record.getTime() < startTime || record.getTime() > endTime)
+    {
+      return false;
+    }
+    if (connectionID >= 0 && record.getConnectionID() != connectionID)
+    {
+      return false;
+    }
+    if (minEtime >= 0 && record.getEtimeMillis() < minEtime)
+    {
+      return false;
+    }
+    if (resultCode >= 0 && record.getResultCode() != resultCode)
+    {
+      return false;
+    }
+    return baseDN == null || isAtOrBelow(toLowerCase(record.getDN()));
+  }
+
+  private boolean isAtOrBelow(String dn)
+  {
+    if (baseDN.length() == 0)
+    {
+      return true;
+    }
+    if (!dn.endsWith(baseDN))
+    {
+      return false;
+    }
+    final int prefixLength = dn.length() - baseDN.length();
+    return prefixLength == 0 || dn.charAt(prefixLength - 1) == ',';
+  }
+
+  /**
+   * Returns the number of blocks decompressed so far.
+   *
+   * @return the number of blocks decompressed so far
+   */
+  int getBlocksRead()
+  {
+    return blocksRead;
+  }
+
+  /**
+   * Returns the number of blocks skipped so far thanks to their summary.
+   *
+   * @return the number of blocks skipped so far
+   */
+  int getBlocksSkipped()
+  {
+    return blocksSkipped;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException
+  {
+    in.close();
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A record of the binary access log. There is one record per connection, per
+ * disconnection and per completed operation.
+ */
+public final class BinaryAccessLogRecord
+{
+  /** Maximum number of characters of the strings stored in a record. */
+  private static final int MAX_STRING_LENGTH = 8192;
+
+  private final long time;
+  private final long connectionID;
+  private final long operationID;
+  private final int messageID;
+  private final String type;
+  private final String dn;
+  private final int resultCode;
+  private final long etime;
+  private final boolean etimeNanos;
+  private final String details;
+
+  /**
+   * Creates a new binary access log record.
+   *
+   * @param time
+   *          the time of the record, in milliseconds since the epoch
+   * @param connectionID
+   *          the connection ID
+   * @param operationID
+   *          the operation ID, or -1 for connection records
+   * @param messageID
+   *          the message ID, or -1 for connection records
+   * @param type
+   *          the record type, e.g. {@code SEARCH} or {@code CONNECT}
+   * @param dn
+   *          the DN targeted by the operation, or the empty string
+   * @param resultCode
+   *          the operation result code, or -1 for connection records
+   * @param etime
+   *          the operation processing time, or -1 for connection records
+   * @param etimeNanos
+   *          whether the processing time is in nanoseconds rather than in
+   *          milliseconds
+   * @param details
+   *          the type specific details of the record, or the empty string
+   */
+  public BinaryAccessLogRecord(long time, long connectionID, long operationID, int messageID, String type,
+      String dn, int resultCode, long etime, boolean etimeNanos, String details)
+  {
+    this.time = time;
+    this.connectionID = connectionID;
+    this.operationID = operationID;
+    this.messageID = messageID;
+    this.type = type;
+    this.dn = dn != null ? dn : "";
+    this.resultCode = resultCode;
+    this.etime = etime;
+    this.etimeNanos = etimeNanos;
+    this.details = details != null ? details : "";
+  }
+
+  /**
+   * Returns the time of this record.
+   *
+   * @return the time of this record, in milliseconds since the epoch
+   */
+  public long getTime()
+  {
+    return time;
+  }
+
+  /**
+   * Returns the connection ID of this record.
+   *
+   * @return the connection ID of this record
+   */
+  public long getConnectionID()
+  {
+    return connectionID;
+  }
+
+  /**
+   * Returns the operation ID of this record.
+   *
+   * @return the operation ID of this record, or -1 for connection records
+   */
+  public long getOperationID()
+  {
+    return operationID;
+  }
+
+  /**
+   * Returns the message ID of this record.
+   *
+   * @return the message ID of this record, or -1 for connection records
+   */
+  public int getMessageID()
+  {
+    return messageID;
+  }
+
+  /**
+   * Returns the type of this record.
+   *
+   * @return the type of this record, e.g. {@code SEARCH} or {@code CONNECT}
+   */
+  public String getType()
+  {
+    return type;
+  }
+
+  /**
+   * Returns the DN targeted by the operation of this record.
+   *
+   * @return the DN targeted by the operation of this record, or the empty
+   *         string
+   */
+  public String getDN()
+  {
+    return dn;
+  }
+
+  /**
+   * Returns the result code of the operation of this record.
+   *
+   * @return the result code of the operation of this record, or -1 for
+   *         connection records
+   */
+  public int getResultCode()
+  {
+    return resultCode;
+  }
+
+  /**
+   * Returns the processing time of the operation of this record.
+   *
+   * @return the processing time of the operation of this record, or -1 for
+   *         connection records
+   */
+  public long getEtime()
+  {
+    return etime;
+  }
+
+  /**
+   * Returns whether the processing time of the operation of this record is in
+   * nanoseconds rather than in milliseconds.
+   *
+   * @return {@code true} if the processing time is in nanoseconds
+   */
+  public boolean isEtimeNanos()
+  {
+    return etimeNanos;
+  }
+
+  /**
+   * Returns the processing time of the operation of this record in
+   * milliseconds, whatever the unit it was recorded with.
+   *
+   * @return the processing time of the operation of this record in
+   *         milliseconds, or -1 for connection records
+   */
+  public long getEtimeMillis()
+  {
+    return etimeNanos && etime >= 0 ? TimeUnit.NANOSECONDS.toMillis(etime) : etime;
+  }
+
+  /**
+   * Returns the type specific details of this record.
+   *
+   * @return the type specific details of this record, or the empty string
+   */
+  public String getDetails()
+  {
+    return details;
+  }
+
+  /**
+   * Returns whether this record is about a connection rather than about an
+   * operation.
+   *
+   * @return {@code true} if this record is about a connection
+   */
+  public boolean isConnectionRecord()
+  {
+    return operationID < 0;
+  }
+
+  void writeTo(DataOutput out) throws IOException
+  {
+    out.writeLong(time);
+    out.writeLong(connectionID);
+    out.writeLong(operationID);
+    out.writeInt(messageID);
+    out.writeUTF(type);
+    out.writeUTF(truncate(dn));
+    out.writeInt(resultCode);
+    out.writeLong(etime);
+    out.writeUTF(truncate(details));
+  }
+
+  static BinaryAccessLogRecord readFrom(DataInput in, boolean etimeNanos) throws IOException
+  {
+    final long time = in.readLong();
+    final long connectionID = in.readLong();
+    final long operationID = in.readLong();
+    final int messageID = in.readInt();
+    final String type = in.readUTF();
+    final String dn = in.readUTF();
+    final int resultCode = in.readInt();
+    final long etime = in.readLong();
+    final String details = in.readUTF();
+    return new BinaryAccessLogRecord(time, connectionID, operationID, messageID, type, dn, resultCode, etime,
+        etimeNanos, details);
+  }
+
+  /** Ensures the string can be written with {@link DataOutput#writeUTF(String)}. */
+  private static String truncate(String s)
+  {
+    return s.length() > MAX_STRING_LENGTH ? s.substring(0, MAX_STRING_LENGTH) : s;
+  }
+
+  /**
+   * Appends this record to the provided buffer in the same format as the text
+   * access log in combined mode.
+   *
+   * @param buffer
+   *          the buffer where to append this record
+   * @param dateFormat
+   *          the format of the record time
+   */
+  public void toString(StringBuilder buffer, SimpleDateFormat dateFormat)
+  {
+    buffer.append('[').append(dateFormat.format(new Date(time))).append("] ");
+    buffer.append(type);
+    buffer.append(" conn=").append(connectionID);
+    if (!isConnectionRecord())
+    {
+      buffer.append(" op=").append(operationID);
+      buffer.append(" msgID=").append(messageID);
+    }
+    if (dn.length() > 0)
+    {
+      buffer.append(" dn=\"").append(dn).append('"');
+    }
+    if (details.length() > 0)
+    {
+      buffer.append(' ').append(details);
+    }
+    if (!isConnectionRecord())
+    {
+      buffer.append(" result=").append(resultCode);
+      buffer.append(" etime=").append(etime);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString()
+  {
+    final StringBuilder buffer = new StringBuilder();
+    toString(buffer, new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z"));
+    return buffer.toString();
+  }
+}
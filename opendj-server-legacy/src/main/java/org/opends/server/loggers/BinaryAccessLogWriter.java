@@ -0,0 +1,614 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.opends.messages.LoggerMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Calendar;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.ServerShutdownListener;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.FilePermission;
+import org.opends.server.util.TimeThread;
+
+/**
+ * Writes binary access log records to a set of files, in blocks of deflated
+ * records preceded by a summary, see {@link BinaryAccessLogBlock}.
+ * <p>
+ * Like the {@link MultifileTextWriter}, it switches files as dictated by the
+ * rotation and retention policies. Pending records are written as a block once
+ * the block size is reached, and at every rotater thread interval, so that the
+ * log file never lags far behind.
+ * <p>
+ * Logging threads only append records to the current block. Full blocks are
+ * handed to the rotater thread, which deflates and writes them, so that logging
+ * threads do not wait for each other while a block is being deflated. A new
+ * block is also started whenever the etime unit of the records changes, so that
+ * all the records of a block share the etime unit recorded in its summary.
+ */
+class BinaryAccessLogWriter implements ServerShutdownListener, RotatableLogFile
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * Maximum number of full blocks waiting for the rotater thread. When it is
+   * reached, logging threads write the full blocks themselves.
+   */
+  private static final int MAX_PENDING_BLOCKS = 16;
+
+  private final CopyOnWriteArrayList<RotationPolicy> rotationPolicies = new CopyOnWriteArrayList<>();
+  private final CopyOnWriteArrayList<RetentionPolicy> retentionPolicies = new CopyOnWriteArrayList<>();
+
+  private final String name;
+  private final FileNamingPolicy namingPolicy;
+  private final LogPublisherErrorHandler errorHandler;
+  private volatile FilePermission filePermissions;
+  private volatile long interval;
+  private volatile int blockSize;
+  private volatile boolean stopRequested;
+
+  private final Thread rotaterThread;
+
+  private Calendar lastRotationTime = TimeThread.getCalendar();
+
+  /** Guards the output streams, which are used outside of the lock on this. */
+  private final Object outputLock = new Object();
+  /** The underlying output stream. */
+  private MeteredStream outputStream;
+  /** The buffered output stream on top of the metered stream. */
+  private DataOutputStream out;
+  /** The block currently being filled, guarded by this. */
+  private BinaryAccessLogBlock currentBlock = new BinaryAccessLogBlock();
+  /** The sequence number of the next block taken from the current block, guarded by this. */
+  private long nextSequence;
+  /** The sequence number of the next block to write, guarded by the output lock. */
+  private long nextSequenceToWrite;
+  /**
+   * The blocks which cannot be written yet because a block with a lower
+   * sequence number has not been handed over yet, guarded by the output lock.
+   */
+  private final SortedMap<Long, BinaryAccessLogBlock> heldBackBlocks = new TreeMap<>();
+  /** The full blocks waiting to be written by the rotater thread. */
+  private final BlockingQueue<BinaryAccessLogBlock> pendingBlocks =
+      new LinkedBlockingQueue<>(MAX_PENDING_BLOCKS);
+
+  /**
+   * Creates a new binary access log writer.
+   *
+   * @param name
+   *          the name of the log rotation thread.
+   * @param interval
+   *          the interval to check whether the logs need to be rotated, and to
+   *          write the pending records.
+   * @param namingPolicy
+   *          the file naming policy to use to name rotated log files.
+   * @param filePermissions
+   *          the file permissions to set on the log files.
+   * @param errorHandler
+   *          the log publisher error handler to notify when an error occurs.
+   * @param blockSize
+   *          the maximum number of records per block.
+   * @throws IOException
+   *           if an error occurs while creating the log file.
+   * @throws DirectoryException
+   *           if an error occurs while preping the new log file.
+   */
+  BinaryAccessLogWriter(String name, long interval, FileNamingPolicy namingPolicy, FilePermission filePermissions,
+      LogPublisherErrorHandler errorHandler, int blockSize) throws IOException, DirectoryException
+  {
+    this.name = name;
+    this.interval = interval;
+    this.namingPolicy = namingPolicy;
+    this.filePermissions = filePermissions;
+    this.errorHandler = errorHandler;
+    this.blockSize = blockSize;
+
+    openFile(namingPolicy.getInitialName());
+
+    rotaterThread = new RotaterThread();
+    rotaterThread.start();
+
+    DirectoryServer.registerShutdownListener(this);
+  }
+
+  private void openFile(File file) throws IOException, DirectoryException
+  {
+    if (file.exists() && !truncateIncompleteBlock(file))
+    {
+      // Do not append blocks of the current format to another file
+      final File newFile = namingPolicy.getNextName();
+      file.renameTo(newFile);
+      logger.trace("Log file %s is not in the current format and was renamed to %s", file, newFile);
+    }
+
+    final boolean isNew = !file.exists() || file.length() == 0;
+    outputStream = new MeteredStream(new FileOutputStream(file, true), file.length());
+    out = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+    if (isNew)
+    {
+      out.writeInt(BinaryAccessLogBlock.MAGIC);
+      out.writeByte(BinaryAccessLogBlock.VERSION);
+      out.flush();
+    }
+
+    try
+    {
+      if (!FilePermission.setPermissions(file, filePermissions))
+      {
+        logger.warn(WARN_LOGGER_UNABLE_SET_PERMISSIONS, filePermissions, file);
+      }
+    }
+    catch (Exception e)
+    {
+      logger.warn(WARN_LOGGER_SET_PERMISSION_FAILED, file, stackTraceToSingleLineString(e));
+    }
+  }
+
+  /**
+   * Truncates the provided log file after its last complete block: the server
+   * may have stopped while writing a block, and appending blocks after a torn
+   * one would make them unreadable.
+   *
+   * @return {@code false} if the file is not a binary access log file in the
+   *         current format, and must not be appended to
+   */
+  private static boolean truncateIncompleteBlock(File file) throws IOException
+  {
+    long validLength = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024)))
+    {
+      if (in.readInt() != BinaryAccessLogBlock.MAGIC || in.readByte() != BinaryAccessLogBlock.VERSION)
+      {
+        return false;
+      }
+      validLength = 5;
+      BinaryAccessLogBlock block;
+      while ((block = BinaryAccessLogBlock.readSummary(in, BinaryAccessLogBlock.VERSION)) != null)
+      {
+        block.skipRecords(in);
+        validLength += block.getLength();
+      }
+    }
+    catch (IOException e)
+    {
+      // Torn file header or block
+      logger.traceException(e);
+    }
+
+    if (validLength < file.length())
+    {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+      {
+        raf.setLength(validLength);
+      }
+      logger.trace("Log file %s truncated after its last complete block at %d bytes", file, validLength);
+    }
+    return true;
+  }
+
+  /**
+   * Add a rotation policy to enforce on the files written by this writer.
+   *
+   * @param policy
+   *          The rotation policy to add.
+   */
+  void addRotationPolicy(RotationPolicy policy)
+  {
+    rotationPolicies.add(policy);
+  }
+
+  /**
+   * Add a retention policy to enforce on the files written by this writer.
+   *
+   * @param policy
+   *          The retention policy to add.
+   */
+  void addRetentionPolicy(RetentionPolicy policy)
+  {
+    retentionPolicies.add(policy);
+  }
+
+  /** Removes all the rotation policies currently enforced by this writer. */
+  void removeAllRotationPolicies()
+  {
+    rotationPolicies.clear();
+  }
+
+  /** Removes all retention policies being enforced by this writer. */
+  void removeAllRetentionPolicies()
+  {
+    retentionPolicies.clear();
+  }
+
+  /**
+   * Set the file permission to set for newly created log files.
+   *
+   * @param filePermissions
+   *          The file permission to set for new log files.
+   */
+  void setFilePermissions(FilePermission filePermissions)
+  {
+    this.filePermissions = filePermissions;
+  }
+
+  /**
+   * Set the maximum number of records per block.
+   *
+   * @param blockSize
+   *          The maximum number of records per block.
+   */
+  void setBlockSize(int blockSize)
+  {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Set the interval in which the rotator thread checks to see if the log file
+   * should be rotated.
+   *
+   * @param interval
+   *          The interval to check if the log file needs to be rotated.
+   */
+  void setInterval(long interval)
+  {
+    this.interval = interval;
+
+    // Wake up the thread if its sleeping on the old interval
+    if (rotaterThread.getState() == Thread.State.TIMED_WAITING)
+    {
+      rotaterThread.interrupt();
+    }
+  }
+
+  /**
+   * Retrieves the current naming policy used to generate log file names.
+   *
+   * @return The current naming policy in use.
+   */
+  FileNamingPolicy getNamingPolicy()
+  {
+    return namingPolicy;
+  }
+
+  /**
+   * Adds a record to the current block, handing the block to the rotater thread
+   * if it is full.
+   *
+   * @param record
+   *          the log record to write.
+   */
+  void writeRecord(BinaryAccessLogRecord record)
+  {
+    BinaryAccessLogBlock previousBlock = null;
+    BinaryAccessLogBlock fullBlock = null;
+    try
+    {
+      synchronized (this)
+      {
+        if (!currentBlock.accepts(record))
+        {
+          previousBlock = takeCurrentBlock();
+        }
+        currentBlock.add(record);
+        if (currentBlock.getCount() >= blockSize)
+        {
+          fullBlock = takeCurrentBlock();
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      logger.traceException(e);
+      errorHandler.handleWriteError(record.toString(), e);
+    }
+    enqueue(previousBlock);
+    enqueue(fullBlock);
+  }
+
+  private void enqueue(BinaryAccessLogBlock block)
+  {
+    if (block != null && !pendingBlocks.offer(block))
+    {
+      // The rotater thread cannot keep up: slow down the logging threads.
+      writeFullBlock(block);
+    }
+  }
+
+  /** Writes the pending records, if any, to the log file. */
+  void flush()
+  {
+    synchronized (outputLock)
+    {
+      try
+      {
+        writePendingBlocks();
+        out.flush();
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        errorHandler.handleFlushError(e);
+      }
+    }
+  }
+
+  /** Writes the full blocks and then the current block. Must be called with the output lock held. */
+  private void writePendingBlocks() throws IOException
+  {
+    BinaryAccessLogBlock block;
+    while ((block = pendingBlocks.poll()) != null)
+    {
+      writeInSequence(block);
+    }
+    synchronized (this)
+    {
+      block = currentBlock.getCount() > 0 ? takeCurrentBlock() : null;
+    }
+    if (block != null)
+    {
+      writeInSequence(block);
+    }
+  }
+
+  /**
+   * Writes the provided block once all the blocks taken before it have been
+   * written, so that the blocks of a file are in time order, which readers
+   * rely on. Must be called with the output lock held.
+   */
+  private void writeInSequence(BinaryAccessLogBlock block) throws IOException
+  {
+    heldBackBlocks.put(block.getSequence(), block);
+    BinaryAccessLogBlock next;
+    while ((next = heldBackBlocks.remove(nextSequenceToWrite)) != null)
+    {
+      nextSequenceToWrite++;
+      next.writeTo(out);
+    }
+  }
+
+  /** Writes a full block handed over by a logging thread. */
+  private void writeFullBlock(BinaryAccessLogBlock block)
+  {
+    synchronized (outputLock)
+    {
+      try
+      {
+        writeInSequence(block);
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        errorHandler.handleFlushError(e);
+      }
+    }
+  }
+
+  /** Returns the current block and starts a new one. Must be called with the lock on this held. */
+  private BinaryAccessLogBlock takeCurrentBlock()
+  {
+    final BinaryAccessLogBlock block = currentBlock;
+    block.setSequence(nextSequence++);
+    currentBlock = new BinaryAccessLogBlock();
+    return block;
+  }
+
+  /**
+   * A rotater thread is responsible for writing the pending records and for
+   * checking if the log files need to be rotated based on the policies.
+   */
+  private class RotaterThread extends DirectoryThread
+  {
+    private RotaterThread()
+    {
+      super(name);
+    }
+
+    @Override
+    public void run()
+    {
+      long nextCheck = System.currentTimeMillis() + interval;
+      while (!stopRequested)
+      {
+        try
+        {
+          final long wait = nextCheck - System.currentTimeMillis();
+          if (wait > 0)
+          {
+            final BinaryAccessLogBlock block = pendingBlocks.poll(wait, TimeUnit.MILLISECONDS);
+            if (block != null)
+            {
+              writeFullBlock(block);
+              continue;
+            }
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // We expect this to happen.
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+        }
+        nextCheck = System.currentTimeMillis() + interval;
+
+        flush();
+
+        for (RotationPolicy rotationPolicy : rotationPolicies)
+        {
+          if (rotationPolicy.rotateFile(BinaryAccessLogWriter.this))
+          {
+            rotate();
+          }
+        }
+
+        for (RetentionPolicy retentionPolicy : retentionPolicies)
+        {
+          try
+          {
+            for (File file : retentionPolicy.deleteFiles(namingPolicy))
+            {
+              file.delete();
+              logger.trace("%s cleaned up log file %s", retentionPolicy, file);
+            }
+          }
+          catch (DirectoryException de)
+          {
+            logger.traceException(de);
+            errorHandler.handleDeleteError(retentionPolicy, de);
+          }
+        }
+      }
+    }
+  }
+
+  /** Writes the pending records, then closes the current file and starts a new one. */
+  private void rotate()
+  {
+    final File currentFile = namingPolicy.getInitialName();
+    final File newFile = namingPolicy.getNextName();
+    synchronized (outputLock)
+    {
+      try
+      {
+        writePendingBlocks();
+        out.close();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        errorHandler.handleCloseError(e);
+      }
+
+      currentFile.renameTo(newFile);
+
+      try
+      {
+        openFile(currentFile);
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        errorHandler.handleOpenError(currentFile, e);
+      }
+    }
+
+    logger.trace("Log file %s rotated and renamed to %s", currentFile, newFile);
+    lastRotationTime = TimeThread.getCalendar();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getBytesWritten()
+  {
+    return outputStream.written;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Calendar getLastRotationTime()
+  {
+    return lastRotationTime;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getShutdownListenerName()
+  {
+    return "BinaryAccessLogWriter Thread " + name;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void processServerShutdown(LocalizableMessage reason)
+  {
+    stopRequested = true;
+
+    // Wait for rotater to terminate
+    while (rotaterThread.isAlive())
+    {
+      try
+      {
+        rotaterThread.interrupt();
+        rotaterThread.join();
+      }
+      catch (InterruptedException ex)
+      {
+        // Ignore; we gotta wait..
+      }
+    }
+
+    DirectoryServer.deregisterShutdownListener(this);
+
+    removeAllRotationPolicies();
+    removeAllRetentionPolicies();
+  }
+
+  /** Writes the pending records and closes the log file. */
+  void shutdown()
+  {
+    processServerShutdown(null);
+
+    synchronized (outputLock)
+    {
+      try
+      {
+        writePendingBlocks();
+        // Do not lose the blocks following a block which was never handed over
+        for (BinaryAccessLogBlock block : heldBackBlocks.values())
+        {
+          block.writeTo(out);
+        }
+        heldBackBlocks.clear();
+        out.close();
+      }
+      catch (Exception e)
+      {
+        errorHandler.handleCloseError(e);
+      }
+    }
+  }
+}
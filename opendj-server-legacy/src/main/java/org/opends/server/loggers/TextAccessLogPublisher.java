@@ -45,6 +45,7 @@ import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.util.Utils;
 import org.opends.server.admin.server.ConfigurationChangeListener;
 import org.opends.server.admin.std.meta.FileBasedAccessLogPublisherCfgDefn.LogFormat;
+import org.opends.server.admin.std.meta.FileBasedAccessLogPublisherCfgDefn.QueueFullPolicy;
 import org.opends.server.admin.std.server.FileBasedAccessLogPublisherCfg;
 import org.opends.server.api.ClientConnection;
 import org.opends.server.api.ExtendedOperationHandler;
@@ -64,6 +65,18 @@ public final class TextAccessLogPublisher extends
   /** The category to use when logging requests. */
   private static final String CATEGORY_REQUEST = "REQ";
 
+  private static final int INITIAL_BUFFER_SIZE = 256;
+  private static final int MAX_BUFFER_SIZE = 16 * 1024;
+  /** The buffer used by each thread for formatting log records. */
+  private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>()
+  {
+    @Override
+    protected StringBuilder initialValue()
+    {
+      return new StringBuilder(INITIAL_BUFFER_SIZE);
+    }
+  };
+
   /**
    * Returns an instance of the text access log publisher that will print all
    * messages to the provided writer. This is used to print the messages to the
@@ -146,7 +159,8 @@ public final class TextAccessLogPublisher extends
         }
 
         if (cfg.isAsynchronous() && config.isAsynchronous()
-            && cfg.getQueueSize() != config.getQueueSize())
+            && (cfg.getQueueSize() != config.getQueueSize()
+                || cfg.getQueueFullPolicy() != config.getQueueFullPolicy()))
         {
           ccr.setAdminActionRequired(true);
         }
@@ -276,7 +290,25 @@ public final class TextAccessLogPublisher extends
   private AsynchronousTextWriter newAsyncWriter(MultifileTextWriter mfWriter, FileBasedAccessLogPublisherCfg config)
   {
     String name = "Asynchronous Text Writer for " + config.dn();
-    return new AsynchronousTextWriter(name, config.getQueueSize(), config.isAutoFlush(), mfWriter);
+    return new AsynchronousTextWriter(name, config.getQueueSize(), config.isAutoFlush(),
+        config.getQueueFullPolicy() == QueueFullPolicy.DROP, mfWriter);
+  }
+
+  /**
+   * Returns the buffer used by the current thread for formatting log records,
+   * so that no buffer is allocated for each log record.
+   */
+  private static StringBuilder getBuffer()
+  {
+    StringBuilder buffer = BUFFERS.get();
+    if (buffer.capacity() > MAX_BUFFER_SIZE)
+    {
+      // do not hold on to the memory used by an exceptionally large log record
+      buffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+      BUFFERS.set(buffer);
+    }
+    buffer.setLength(0);
+    return buffer;
   }
 
   @Override
@@ -334,7 +366,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(abandonOperation, "ABANDON", CATEGORY_REQUEST, buffer);
     appendAbandonRequest(abandonOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -348,7 +380,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(abandonOperation, "ABANDON", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -368,7 +400,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(addOperation, "ADD", CATEGORY_REQUEST, buffer);
     appendAddRequest(addOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -382,7 +414,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(addOperation, "ADD", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -403,7 +435,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(bindOperation, "BIND", CATEGORY_REQUEST, buffer);
     appendBindRequest(bindOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -417,7 +449,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(bindOperation, "BIND", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -480,7 +512,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(compareOperation, "COMPARE", CATEGORY_REQUEST, buffer);
     appendCompareRequest(compareOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -494,7 +526,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(compareOperation, "COMPARE", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -516,7 +548,7 @@ public final class TextAccessLogPublisher extends
     }
 
     final long connectionID = clientConnection.getConnectionID();
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     buffer.append('[').append(TimeThread.getUserDefinedTime(timeStampFormat)).append(']');
     buffer.append(" CONNECT conn=").append(connectionID);
     buffer.append(" from=").append(clientConnection.getClientHostPort());
@@ -534,7 +566,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(deleteOperation, "DELETE", CATEGORY_REQUEST, buffer);
     appendDeleteRequest(deleteOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -548,7 +580,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(deleteOperation, "DELETE", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -571,7 +603,7 @@ public final class TextAccessLogPublisher extends
     }
 
     final long connectionID = clientConnection.getConnectionID();
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     buffer.append('[').append(TimeThread.getUserDefinedTime(timeStampFormat)).append(']');
     buffer.append(" DISCONNECT conn=").append(connectionID);
     appendLabel(buffer, "reason", disconnectReason);
@@ -588,7 +620,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(extendedOperation, "EXTENDED", CATEGORY_REQUEST, buffer);
     appendExtendedRequest(extendedOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -602,7 +634,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(extendedOperation, "EXTENDED", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -636,7 +668,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(modifyDNOperation, "MODIFYDN", CATEGORY_REQUEST, buffer);
     appendModifyDNRequest(modifyDNOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -650,7 +682,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(modifyDNOperation, "MODIFYDN", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -671,7 +703,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(modifyOperation, "MODIFY", CATEGORY_REQUEST, buffer);
     appendModifyRequest(modifyOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -685,7 +717,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(modifyOperation, "MODIFY", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -706,7 +738,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(192);
+    final StringBuilder buffer = getBuffer();
     appendHeader(searchOperation, "SEARCH", CATEGORY_REQUEST, buffer);
     appendSearchRequest(searchOperation, buffer);
     writer.writeRecord(buffer.toString());
@@ -720,7 +752,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(128);
+    final StringBuilder buffer = getBuffer();
     appendHeader(searchOperation, "SEARCH", CATEGORY_RESPONSE, buffer);
     if (isCombinedMode)
     {
@@ -742,7 +774,7 @@ public final class TextAccessLogPublisher extends
       return;
     }
 
-    final StringBuilder buffer = new StringBuilder(100);
+    final StringBuilder buffer = getBuffer();
     appendHeader(unbindOperation, "UNBIND", CATEGORY_REQUEST, buffer);
     if (unbindOperation.isSynchronizationOperation())
     {
@@ -0,0 +1,139 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.monitors;
+
+import static org.opends.server.core.DirectoryServer.*;
+
+import java.util.ArrayList;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.opends.server.admin.std.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.AttributeBuilder;
+import org.opends.server.types.AttributeType;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.LockManager;
+
+/**
+ * This class defines a Directory Server monitor that can be used to provide
+ * information about the lock table of the {@link LockManager}: its size, and
+ * the number of times each of its buckets was locked and contended.
+ */
+public class LockManagerMonitor
+       extends MonitorProvider<MonitorProviderCfg>
+{
+  /** The name to use for the monitor attribute that provides the number of buckets of the lock table. */
+  public static final String ATTR_BUCKETS = "lockTableBuckets";
+  /** The name to use for the monitor attribute that provides the number of locks in the lock table. */
+  public static final String ATTR_LOCKS = "lockTableLocks";
+  /** The name to use for the monitor attribute that provides the total number of bucket acquisitions. */
+  public static final String ATTR_ACQUISITIONS = "lockTableBucketAcquisitions";
+  /** The name to use for the monitor attribute that provides the total number of contended bucket acquisitions. */
+  public static final String ATTR_CONTENTIONS = "lockTableBucketContentions";
+  /**
+   * The name to use for the monitor attribute that provides the acquisitions
+   * and contentions of each contended bucket. It has one value per bucket
+   * which was contended at least once.
+   */
+  public static final String ATTR_CONTENDED_BUCKET = "lockTableContendedBucket";
+
+  /** The lock manager with which this monitor is associated. */
+  private final LockManager lockManager;
+
+
+  /**
+   * Initializes this monitor provider.  Note that no initialization should be
+   * done here, since it should be performed in the
+   * <CODE>initializeMonitorProvider</CODE> class.
+   *
+   * @param  lockManager  The lock manager with which this monitor is associated.
+   */
+  public LockManagerMonitor(LockManager lockManager)
+  {
+    this.lockManager = lockManager;
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration)
+         throws ConfigException, InitializationException
+  {
+    // No initialization is required.
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return "Lock Manager";
+  }
+
+
+
+  /** {@inheritDoc} */
+  @Override
+  public ArrayList<Attribute> getMonitorData()
+  {
+    long[] acquisitions = lockManager.getBucketAcquisitions();
+    long[] contentions = lockManager.getBucketContentions();
+    long totalAcquisitions = 0;
+    long totalContentions = 0;
+    AttributeBuilder contendedBuckets = new AttributeBuilder(ATTR_CONTENDED_BUCKET);
+    for (int i = 0; i < acquisitions.length; i++)
+    {
+      totalAcquisitions += acquisitions[i];
+      totalContentions += contentions[i];
+      if (contentions[i] > 0)
+      {
+        contendedBuckets.add("bucket=" + i + " acquisitions=" + acquisitions[i]
+            + " contentions=" + contentions[i]);
+      }
+    }
+
+    ArrayList<Attribute> monitorAttrs = new ArrayList<>();
+    putAttribute(monitorAttrs, ATTR_BUCKETS, lockManager.getNumberOfBuckets());
+    putAttribute(monitorAttrs, ATTR_LOCKS, lockManager.getLockTableSize());
+    putAttribute(monitorAttrs, ATTR_ACQUISITIONS, totalAcquisitions);
+    putAttribute(monitorAttrs, ATTR_CONTENTIONS, totalContentions);
+    if (!contendedBuckets.isEmpty())
+    {
+      monitorAttrs.add(contendedBuckets.toAttribute());
+    }
+    return monitorAttrs;
+  }
+
+  private void putAttribute(ArrayList<Attribute> monitorAttrs, String attrName, Object value)
+  {
+    AttributeType attrType = getAttributeTypeOrDefault(attrName, attrName, getDefaultIntegerSyntax());
+    monitorAttrs.add(Attributes.create(attrType, String.valueOf(value)));
+  }
+}
@@ -80,11 +80,24 @@ final class ASN1ByteChannelReader implements ASN1Reader
   /** The wrapped ASN.1 reader. */
   private final ASN1Reader reader;
 
+  /** Placeholder for the NIO byte buffer while no buffer is held. */
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
   /**
-   * The NIO ByteStringBuilder that stores any immediate data read off the
-   * channel.
+   * The pool providing the NIO byte buffer. It may be replaced by the pool of
+   * the request handler reading from the channel.
+   */
+  private volatile ReadBufferPool readBufferPool;
+
+  /** Indicates whether this reader has been closed. */
+  private volatile boolean closed;
+
+  /**
+   * The NIO byte buffer that stores any immediate data read off the channel.
+   * It is acquired from the read buffer pool before reading from the channel,
+   * and released once all its data has been consumed.
    */
-  private final ByteBuffer byteBuffer;
+  private ByteBuffer byteBuffer = EMPTY_BUFFER;
 
   /**
    * The save buffer used to store any unprocessed data waiting to be read as
@@ -101,8 +114,8 @@ final class ASN1ByteChannelReader implements ASN1Reader
    * sequentially using the InputStream interface.
    *
    * Since the NIO byte buffer is re-used when reading off the channel, any
-   * unused data will be appended to the save buffer before reading off the
-   * channel again. This reader will always read the save buffer first before
+   * unused data will be either kept at the start of the NIO byte buffer or
+   * appended to the save buffer before reading off the channel again. This reader will always read the save buffer first before
    * the actual NIO byte buffer to ensure bytes are read in the same order
    * as they are received.
    *
@@ -289,8 +302,7 @@ final class ASN1ByteChannelReader implements ASN1Reader
       int maxElementSize)
   {
     this.byteChannel = channel;
-    this.byteBuffer = ByteBuffer.allocate(bufferSize);
-    this.byteBuffer.flip();
+    this.readBufferPool = new ReadBufferPool(bufferSize, 1);
     this.saveBuffer = new ByteStringBuilder();
     this.saveBufferReader = saveBuffer.asReader();
 
@@ -298,6 +310,20 @@ final class ASN1ByteChannelReader implements ASN1Reader
     this.reader = ASN1.getReader(bufferStream, maxElementSize);
   }
 
+  /**
+   * Sets the pool providing the buffers used to read from the channel. This
+   * method must be called before reading from the channel in the thread owning
+   * the pool.
+   *
+   * @param readBufferPool
+   *          The pool of read buffers of the request handler reading from the
+   *          channel.
+   */
+  void setReadBufferPool(ReadBufferPool readBufferPool)
+  {
+    this.readBufferPool = readBufferPool;
+  }
+
   /**
    * Process any new data on the channel so they can be read as ASN.1
    * elements. This method should only be called when there are no
@@ -307,9 +333,13 @@ final class ASN1ByteChannelReader implements ASN1Reader
    * method will perform the following operations:
    * <ul>
    * <li>Clear the save buffer if everything was read.
-   * <li>Append any unread data from the NIO byte buffer to the save
-   * buffer.
-   * <li>Clear the NIO byte buffer and read from the channel.
+   * <li>Acquire a NIO byte buffer from the pool if none is held.
+   * <li>Keep any unread data of the NIO byte buffer, either by moving it to
+   * the start of the NIO byte buffer, or by appending it to the save buffer if
+   * the save buffer still contains unread data or if the NIO byte buffer is
+   * full.
+   * <li>Read from the channel after the unread data.
+   * <li>Release the NIO byte buffer if nothing was read.
    * </ul>
    *
    * @return The number of bytes read from the channel or -1 if
@@ -319,20 +349,27 @@ final class ASN1ByteChannelReader implements ASN1Reader
    */
   public int processChannelData() throws IOException
   {
-    // Clear the save buffer if we have read all of it
-    if (saveBufferReader.remaining() == 0)
+    clearSaveBufferIfRead();
+
+    if (byteBuffer == EMPTY_BUFFER)
     {
-      saveBuffer.clear();
-      saveBufferReader.rewind();
+      byteBuffer = readBufferPool.acquire();
     }
-
-    // Append any unused data in the channel buffer to the save buffer
-    if (byteBuffer.remaining() > 0)
+    else
     {
-      saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
+      if (byteBuffer.remaining() > 0
+          && (saveBufferReader.remaining() > 0
+              || byteBuffer.remaining() == byteBuffer.capacity()))
+      {
+        // Data must be read in the same order it was received: append it after
+        // the saved data. Also spill elements larger than the NIO byte buffer.
+        saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
+      }
+      // Move any partial element to the start of the buffer, avoiding a copy
+      // to the heap.
+      byteBuffer.compact();
     }
 
-    byteBuffer.clear();
     try
     {
       return byteChannel.read(byteBuffer);
@@ -343,6 +380,42 @@ final class ASN1ByteChannelReader implements ASN1Reader
       // ensure that subsequent calls which query the remaining data return
       // valid results.
       byteBuffer.flip();
+      if (byteBuffer.remaining() == 0 || closed)
+      {
+        releaseReadBuffer();
+      }
+    }
+  }
+
+  /**
+   * Gives back the NIO byte buffer to the read buffer pool, so that it can be
+   * reused to read from another channel. Any unread data is appended to the
+   * save buffer. This method should be called when the client stops reading
+   * elements from this reader, for example because no more data is available
+   * on the channel.
+   */
+  void releaseReadBuffer()
+  {
+    if (byteBuffer == EMPTY_BUFFER)
+    {
+      return;
+    }
+    if (byteBuffer.remaining() > 0)
+    {
+      clearSaveBufferIfRead();
+      saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
+    }
+    readBufferPool.release(byteBuffer);
+    byteBuffer = EMPTY_BUFFER;
+  }
+
+  /** Clears the save buffer if we have read all of it. */
+  private void clearSaveBufferIfRead()
+  {
+    if (saveBufferReader.remaining() == 0)
+    {
+      saveBuffer.clear();
+      saveBufferReader.rewind();
     }
   }
 
@@ -537,6 +610,10 @@ final class ASN1ByteChannelReader implements ASN1Reader
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
+    // The buffer may be in use by the thread owning the pool: let it give the
+    // buffer back.
+    closed = true;
+    readBufferPool.releaseLater(this);
     reader.close();
     byteChannel.close();
   }
@@ -725,7 +725,17 @@ public final class LDAPClientConnection extends ClientConnection implements
       LDAPMessage message = operationToResponseLDAPMessage(operation);
       if (message != null)
       {
-        sendLDAPMessage(message);
+        // Write the search result done message along with any pending search
+        // results
+        SearchResultBatch batch = getSearchResultBatch(operation);
+        if (batch != null)
+        {
+          sendLDAPMessage(batch, message, true);
+        }
+        else
+        {
+          sendLDAPMessage(message);
+        }
       }
     }
   }
@@ -886,8 +896,8 @@ public final class LDAPClientConnection extends ClientConnection implements
     SearchResultEntryProtocolOp protocolOp =
         new SearchResultEntryProtocolOp(searchEntry, ldapVersion);
 
-    sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchEntry.getControls()));
+    sendSearchResult(searchOperation, new LDAPMessage(
+        searchOperation.getMessageID(), protocolOp, searchEntry.getControls()));
   }
 
 
@@ -923,8 +933,9 @@ public final class LDAPClientConnection extends ClientConnection implements
     SearchResultReferenceProtocolOp protocolOp =
         new SearchResultReferenceProtocolOp(searchReference);
 
-    sendLDAPMessage(new LDAPMessage(searchOperation.getMessageID(),
-        protocolOp, searchReference.getControls()));
+    sendSearchResult(searchOperation, new LDAPMessage(
+        searchOperation.getMessageID(), protocolOp,
+        searchReference.getControls()));
     return true;
   }
 
@@ -951,7 +962,16 @@ public final class LDAPClientConnection extends ClientConnection implements
     LDAPMessage message =
         new LDAPMessage(operation.getMessageID(), protocolOp,
             intermediateResponse.getControls());
-    sendLDAPMessage(message);
+    SearchResultBatch batch = getSearchResultBatch(operation);
+    if (batch != null)
+    {
+      // Keep the responses of the search in order
+      sendLDAPMessage(batch, message, true);
+    }
+    else
+    {
+      sendLDAPMessage(message);
+    }
 
     // The only reason we shouldn't continue processing is if the
     // connection is closed.
@@ -960,6 +980,63 @@ public final class LDAPClientConnection extends ClientConnection implements
 
 
 
+  /**
+   * Sends the provided search result entry or reference to the client. Unless
+   * the search is a persistent search, whose changes must be sent as soon as
+   * they happen, the search results following the first
+   * {@link SearchResultBatch#MIN_BATCHED_RESULTS} ones are batched until the
+   * search result done message is sent.
+   *
+   * @param searchOperation
+   *          The search operation with which the message is associated.
+   * @param message
+   *          The LDAP message to send to the client.
+   */
+  private void sendSearchResult(SearchOperation searchOperation,
+      LDAPMessage message)
+  {
+    if (!searchOperation.isSendResponse())
+    {
+      sendLDAPMessage(message);
+      return;
+    }
+
+    SearchResultBatch batch = getSearchResultBatch(searchOperation);
+    if (batch == null)
+    {
+      if (searchOperation.getEntriesSent() + searchOperation.getReferencesSent()
+          < SearchResultBatch.MIN_BATCHED_RESULTS)
+      {
+        sendLDAPMessage(message);
+        return;
+      }
+      batch = new SearchResultBatch();
+      searchOperation.setAttachment(SearchResultBatch.ATTACHMENT_NAME, batch);
+    }
+    sendLDAPMessage(batch, message, false);
+  }
+
+
+
+  /**
+   * Retrieves the search result batch of the provided operation.
+   *
+   * @param operation
+   *          The operation.
+   * @return The search result batch of the operation, or {@code null} if the
+   *         operation is not a search or has not sent any search result yet.
+   */
+  private SearchResultBatch getSearchResultBatch(Operation operation)
+  {
+    if (operation instanceof SearchOperation)
+    {
+      return operation.getAttachment(SearchResultBatch.ATTACHMENT_NAME);
+    }
+    return null;
+  }
+
+
+
   /**
    * Sends the provided LDAP message to the client.
    *
@@ -975,38 +1052,97 @@ public final class LDAPClientConnection extends ClientConnection implements
       message.write(holder.writer);
       holder.buffer.copyTo(saslChannel);
 
-      if (logger.isTraceEnabled())
-      {
-        logger.trace("LDAPMessage=%s", message);
-      }
+      messageWritten(message);
+    }
+    catch (Exception e)
+    {
+      handleWriteFailure(e);
+    }
+    finally
+    {
+      // Clear and reset all of the internal buffers ready for the next usage.
+      // The ASN1Writer is based on a ByteStringBuilder so closing will cause
+      // the internal buffers to be resized if needed.
+      close(holder);
+    }
+  }
 
-      if (keepStats)
+
+
+  /**
+   * Adds the provided LDAP message to a search result batch, writing the
+   * pending messages of the batch to the client if needed.
+   *
+   * @param batch
+   *          The search result batch.
+   * @param message
+   *          The LDAP message to send to the client.
+   * @param flush
+   *          Whether the pending messages must be written now.
+   */
+  private void sendLDAPMessage(final SearchResultBatch batch,
+      LDAPMessage message, boolean flush)
+  {
+    try
+    {
+      if (batch.write(message, flush, saslChannel))
       {
-        statTracker.updateMessageWritten(message);
+        batch.setScheduledFlush(connectionHandler.scheduleSearchResultFlush(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              batch.scheduledFlush(saslChannel);
+            }
+            catch (Exception e)
+            {
+              handleWriteFailure(e);
+            }
+          }
+        }));
       }
+
+      messageWritten(message);
     }
-    catch (ClosedChannelException e)
+    catch (Exception e)
+    {
+      handleWriteFailure(e);
+    }
+  }
+
+
+
+  private void messageWritten(LDAPMessage message)
+  {
+    if (logger.isTraceEnabled())
+    {
+      logger.trace("LDAPMessage=%s", message);
+    }
+
+    if (keepStats)
+    {
+      statTracker.updateMessageWritten(message);
+    }
+  }
+
+
+
+  private void handleWriteFailure(Exception e)
+  {
+    logger.traceException(e);
+    if (e instanceof ClosedChannelException)
     {
-      logger.traceException(e);
       disconnect(DisconnectReason.IO_ERROR, false,
           ERR_IO_ERROR_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
-      return;
     }
-    catch (Exception e)
+    else
     {
-      logger.traceException(e);
       disconnect(DisconnectReason.SERVER_ERROR, false,
           ERR_UNEXPECTED_EXCEPTION_ON_CLIENT_CONNECTION.get(getExceptionMessage(e)));
-      return;
-    }
-    finally
-    {
-      // Clear and reset all of the internal buffers ready for the next usage.
-      // The ASN1Writer is based on a ByteStringBuilder so closing will cause
-      // the internal buffers to be resized if needed.
-      close(holder);
     }
- }
+  }
 
 
 
@@ -1294,6 +1430,14 @@ public final class LDAPClientConnection extends ClientConnection implements
       return false;
     }
 
+    // The operation completed without sending a response, because it was
+    // abandoned: do not send the search results waiting to be written.
+    SearchResultBatch batch = getSearchResultBatch(operation);
+    if (batch != null)
+    {
+      batch.discard();
+    }
+
     if (operation.getOperationType() == OperationType.ABANDON
         && keepStats
         && operation.getResultCode() == ResultCode.CANCELLED)
@@ -37,7 +37,10 @@ import java.net.SocketException;
 import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManager;
@@ -236,6 +239,12 @@ public final class LDAPConnectionHandler extends
   private List<Runnable> connectionFinalizerActiveJobQueue;
   private List<Runnable> connectionFinalizerPendingJobQueue;
 
+  /**
+   * Search result flusher thread, writing the batched search results which
+   * have been pending for too long.
+   */
+  private ScheduledExecutorService searchResultFlusher;
+
 
 
   /**
@@ -407,6 +416,10 @@ public final class LDAPConnectionHandler extends
       requestHandler.processServerShutdown(finalizeReason);
     }
 
+    // Pending search results will not be sent after the connections are
+    // closed.
+    searchResultFlusher.shutdownNow();
+
     // Shutdown the connection finalizer and ensure that any pending
     // unclosed connections are closed.
     synchronized (connectionFinalizerLock)
@@ -734,6 +747,13 @@ public final class LDAPConnectionHandler extends
     connectionFinalizer.scheduleWithFixedDelay(
         new ConnectionFinalizerRunnable(), 100, 100, TimeUnit.MILLISECONDS);
 
+    final ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1,
+        new DirectoryThread.Factory(
+            "LDAP Search Result Flusher for connection handler " + toString()));
+    // Most flushes are cancelled once the search completes
+    flusher.setRemoveOnCancelPolicy(true);
+    searchResultFlusher = flusher;
+
     // Create and start the request handlers.
     requestHandlers = new LDAPRequestHandler[numRequestHandlers];
     for (int i = 0; i < numRequestHandlers; i++)
@@ -1471,6 +1491,31 @@ public final class LDAPConnectionHandler extends
     }
   }
 
+  /**
+   * Schedules the write of batched search results once the maximum delay
+   * of a search result batch has expired.
+   *
+   * @param flush
+   *          The task writing the pending search results.
+   * @return The scheduled flush, or {@code null} if it has been run
+   *         immediately.
+   */
+  ScheduledFuture<?> scheduleSearchResultFlush(Runnable flush)
+  {
+    try
+    {
+      return searchResultFlusher.schedule(
+          flush, SearchResultBatch.MAX_BATCH_DELAY, TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // Already finalized - invoked immediately.
+      logger.traceException(e);
+      flush.run();
+      return null;
+    }
+  }
+
   /**
    * Enqueue a connection finalizer which will be invoked after a short delay.
    *
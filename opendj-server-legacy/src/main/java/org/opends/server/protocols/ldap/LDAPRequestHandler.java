@@ -46,7 +46,6 @@ import org.opends.server.api.DirectoryThread;
 import org.opends.server.api.ServerShutdownListener;
 import org.opends.server.core.DirectoryServer;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
-import org.forgerock.opendj.io.ASN1Reader;
 import org.forgerock.opendj.ldap.DecodeException;
 import org.opends.server.types.DisconnectReason;
 import org.opends.server.types.InitializationException;
@@ -90,6 +89,18 @@ public class LDAPRequestHandler
   /** The name to use for this request handler. */
   private final String handlerName;
 
+  /**
+   * The maximum number of LDAP messages read from a connection before giving
+   * a chance to the other ready connections.
+   */
+  private static final int MAX_MESSAGES_PER_BATCH = 16;
+
+  /** The maximum number of read buffers kept for reuse. */
+  private static final int MAX_POOLED_READ_BUFFERS = 16;
+
+  /** The buffers used to read data off the client connections. */
+  private final ReadBufferPool readBufferPool;
+
 
 
   /**
@@ -113,6 +124,8 @@ public class LDAPRequestHandler
 
 
     handlerName        = getName();
+    readBufferPool     = new ReadBufferPool(connectionHandler.getBufferSize(),
+                                            MAX_POOLED_READ_BUFFERS);
 
     try
     {
@@ -168,36 +181,34 @@ public class LDAPRequestHandler
       {
         try
         {
-          ASN1Reader asn1Reader = readyConnection.getASN1Reader();
-          boolean ldapMessageProcessed = false;
+          ASN1ByteChannelReader asn1Reader = readyConnection.getASN1Reader();
+          int nbMessagesProcessed = 0;
           while (true)
           {
             if (asn1Reader.elementAvailable())
             {
-              if (!ldapMessageProcessed)
-              {
-                if (readyConnection.processLDAPMessage(
-                    LDAPReader.readMessage(asn1Reader)))
-                {
-                  ldapMessageProcessed = true;
-                }
-                else
-                {
-                  break;
-                }
-              }
-              else
+              if (nbMessagesProcessed == MAX_MESSAGES_PER_BATCH)
               {
+                // Give a chance to the other ready connections, keeping the
+                // read buffer along with the unprocessed messages.
                 readyConnections.add(readyConnection);
                 break;
               }
-            }
-            else
-            {
-              if (readyConnection.processDataRead() <= 0)
+              if (!readyConnection.processLDAPMessage(
+                  LDAPReader.readMessage(asn1Reader)))
               {
+                // The connection has been closed.
+                asn1Reader.releaseReadBuffer();
                 break;
               }
+              nbMessagesProcessed++;
+            }
+            else if (readyConnection.processDataRead() <= 0)
+            {
+              // Nothing more to process for now: the read buffer can be used
+              // for another connection.
+              asn1Reader.releaseReadBuffer();
+              break;
             }
           }
         }
@@ -206,12 +217,14 @@ public class LDAPRequestHandler
           logger.traceException(e);
           readyConnection.disconnect(DisconnectReason.PROTOCOL_ERROR, true,
             e.getMessageObject());
+          readyConnection.getASN1Reader().releaseReadBuffer();
         }
         catch (Exception e)
         {
           logger.traceException(e);
           readyConnection.disconnect(DisconnectReason.PROTOCOL_ERROR, true,
             LocalizableMessage.raw(e.toString()));
+          readyConnection.getASN1Reader().releaseReadBuffer();
         }
       }
 
@@ -248,6 +261,9 @@ public class LDAPRequestHandler
         }
       }
 
+      // Give back the read buffers of the connections closed by other threads.
+      readBufferPool.releaseClosedReaders();
+
       // Create a copy of the selection keys which can be used in a
       // thread-safe manner by getClientConnections. This copy is only
       // updated once per loop, so may not be accurate.
@@ -436,6 +452,7 @@ public class LDAPRequestHandler
     // disconnect the client.
     synchronized (pendingConnectionsLock)
     {
+      clientConnection.getASN1Reader().setReadBufferPool(readBufferPool);
       pendingConnections.add(clientConnection);
     }
 
@@ -0,0 +1,145 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of direct byte buffers used to read data off client connections.
+ * <p>
+ * Reading from a socket channel into a heap buffer makes the JDK copy the data
+ * through a temporary direct buffer. Reading straight into a direct buffer
+ * avoids this copy, but direct buffers are expensive to allocate, so they are
+ * pooled. A connection only holds a buffer while it has unprocessed data:
+ * idle connections do not hold any buffer.
+ * <p>
+ * This class is not thread safe: each pool is confined to the
+ * {@link LDAPRequestHandler} thread which owns it. The only exception is
+ * {@link #releaseLater(ASN1ByteChannelReader)}, which allows the buffer of a
+ * connection closed by another thread to be given back by the owner thread.
+ */
+final class ReadBufferPool
+{
+  /** The size of the buffers handed out by this pool. */
+  private final int bufferSize;
+
+  /** The maximum number of buffers kept in this pool. */
+  private final int maxPooledBuffers;
+
+  /** The buffers available for reuse. */
+  private final ArrayDeque<ByteBuffer> buffers;
+
+  /** The closed readers whose buffer must be given back by the owner thread. */
+  private final Queue<ASN1ByteChannelReader> closedReaders = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Creates a new pool of read buffers.
+   *
+   * @param bufferSize
+   *          The size of the buffers handed out by this pool.
+   * @param maxPooledBuffers
+   *          The maximum number of released buffers kept for reuse.
+   */
+  ReadBufferPool(int bufferSize, int maxPooledBuffers)
+  {
+    this.bufferSize = bufferSize;
+    this.maxPooledBuffers = maxPooledBuffers;
+    this.buffers = new ArrayDeque<>(maxPooledBuffers);
+  }
+
+  /**
+   * Retrieves a cleared buffer from this pool, allocating a new one if none is
+   * available.
+   *
+   * @return A cleared buffer ready to be read into.
+   */
+  ByteBuffer acquire()
+  {
+    // Last released first, its memory is most likely still in the CPU caches
+    final ByteBuffer buffer = buffers.pollLast();
+    if (buffer != null)
+    {
+      buffer.clear();
+      return buffer;
+    }
+    return ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  /**
+   * Gives back a buffer to this pool. The buffer must no longer be used by the
+   * caller.
+   *
+   * @param buffer
+   *          The buffer previously acquired from this pool.
+   */
+  void release(ByteBuffer buffer)
+  {
+    if (buffers.size() < maxPooledBuffers && buffer.capacity() == bufferSize)
+    {
+      buffers.addLast(buffer);
+    }
+  }
+
+  /**
+   * Asks the owner thread of this pool to give back the buffer held by the
+   * provided reader, if any. This method can be called by any thread, typically
+   * the one closing the connection of the reader.
+   *
+   * @param reader
+   *          The closed reader whose buffer must be given back to this pool.
+   */
+  void releaseLater(ASN1ByteChannelReader reader)
+  {
+    closedReaders.add(reader);
+  }
+
+  /**
+   * Gives back to this pool the buffers held by the readers passed to
+   * {@link #releaseLater(ASN1ByteChannelReader)}. This method must be called
+   * by the owner thread.
+   */
+  void releaseClosedReaders()
+  {
+    ASN1ByteChannelReader reader;
+    while ((reader = closedReaders.poll()) != null)
+    {
+      reader.releaseReadBuffer();
+    }
+  }
+
+  /**
+   * Retrieves the number of buffers currently available for reuse.
+   *
+   * @return The number of buffers currently available for reuse.
+   */
+  int getNumberOfPooledBuffers()
+  {
+    return buffers.size();
+  }
+}
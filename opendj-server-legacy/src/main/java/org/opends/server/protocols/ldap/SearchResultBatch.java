@@ -0,0 +1,208 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ScheduledFuture;
+
+import org.forgerock.opendj.io.ASN1;
+import org.forgerock.opendj.io.ASN1Writer;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * Accumulates the encoded responses of a search operation so that they are
+ * written to the client in large chunks. Each chunk is written with a single
+ * write through the channel chain of the connection, so that the TLS and SASL
+ * layers produce a few full size records instead of one record per entry.
+ * <p>
+ * Pending responses are written once their size reaches
+ * {@link #MAX_BATCH_SIZE}, along with the search result done message, or at
+ * the latest {@link #MAX_BATCH_DELAY} milliseconds after being added, by a
+ * flush scheduled by the connection handler. The scheduled flush is cancelled
+ * once the pending responses have been written along with the search result
+ * done message, or once they are discarded because the search was abandoned.
+ * <p>
+ * Searches returning only a few results do not benefit from batching: the
+ * first {@link #MIN_BATCHED_RESULTS} results are written directly, and the
+ * batch is only created afterwards.
+ */
+final class SearchResultBatch
+{
+  /** The name of the search operation attachment holding the batch. */
+  static final String ATTACHMENT_NAME = SearchResultBatch.class.getName();
+
+  /** The size in bytes above which the pending responses are written. */
+  static final int MAX_BATCH_SIZE = 32 * 1024;
+
+  /** The maximum delay in milliseconds a pending response may wait. */
+  static final long MAX_BATCH_DELAY = 50;
+
+  /**
+   * The number of search results written directly to the client before the
+   * following ones are batched.
+   */
+  static final int MIN_BATCHED_RESULTS = 4;
+
+  /** The initial size in bytes of the buffer, which grows as needed. */
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  /** The encoded pending responses. */
+  private final ByteStringBuilder buffer = new ByteStringBuilder(INITIAL_BUFFER_SIZE);
+
+  /** The writer encoding the responses directly into the buffer. */
+  private final ASN1Writer writer = ASN1.getWriter(buffer);
+
+  /** Whether a delayed flush is already scheduled for this batch. */
+  private boolean flushScheduled;
+
+  /** The delayed flush scheduled for this batch, if known. */
+  private ScheduledFuture<?> scheduledFlush;
+
+  /**
+   * Adds the provided message to this batch, and writes the pending messages
+   * to the channel if requested or if the size threshold is reached.
+   *
+   * @param message
+   *          The LDAP message to send to the client.
+   * @param flush
+   *          Whether the pending messages must be written now, for example
+   *          because the message is the search result done message.
+   * @param channel
+   *          The channel to write to.
+   * @return {@code true} if the caller must schedule a delayed call to
+   *         {@link #scheduledFlush(WritableByteChannel)}, {@code false}
+   *         otherwise.
+   * @throws IOException
+   *           If an error occurs while writing to the channel.
+   */
+  synchronized boolean write(LDAPMessage message, boolean flush,
+      WritableByteChannel channel) throws IOException
+  {
+    message.write(writer);
+    if (flush)
+    {
+      cancelScheduledFlush();
+      flush(channel);
+      return false;
+    }
+    if (buffer.length() >= MAX_BATCH_SIZE)
+    {
+      flush(channel);
+      return false;
+    }
+    if (!flushScheduled)
+    {
+      flushScheduled = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remembers the delayed flush scheduled for this batch, so that it can be
+   * cancelled when it is not needed anymore.
+   *
+   * @param future
+   *          The delayed flush, or {@code null} if it has already run.
+   */
+  synchronized void setScheduledFlush(ScheduledFuture<?> future)
+  {
+    if (flushScheduled)
+    {
+      scheduledFlush = future;
+    }
+    else if (future != null)
+    {
+      // Already written along with the search result done message
+      future.cancel(false);
+    }
+  }
+
+  /**
+   * Discards the pending messages and cancels the scheduled flush, for
+   * example because the search has been abandoned.
+   */
+  synchronized void discard()
+  {
+    cancelScheduledFlush();
+    buffer.clearAndTruncate(2 * MAX_BATCH_SIZE, MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Writes the pending messages to the channel, once the delay of a scheduled
+   * flush has expired.
+   *
+   * @param channel
+   *          The channel to write to.
+   * @throws IOException
+   *           If an error occurs while writing to the channel.
+   */
+  synchronized void scheduledFlush(WritableByteChannel channel)
+      throws IOException
+  {
+    flushScheduled = false;
+    scheduledFlush = null;
+    flush(channel);
+  }
+
+  /**
+   * Retrieves the size in bytes of the pending messages.
+   *
+   * @return The size in bytes of the pending messages.
+   */
+  synchronized int getPendingSize()
+  {
+    return buffer.length();
+  }
+
+  private void cancelScheduledFlush()
+  {
+    if (scheduledFlush != null)
+    {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    flushScheduled = false;
+  }
+
+  private void flush(WritableByteChannel channel) throws IOException
+  {
+    if (buffer.length() == 0)
+    {
+      return;
+    }
+    try
+    {
+      buffer.copyTo(channel);
+    }
+    finally
+    {
+      // Do not keep the memory used by very large entries
+      buffer.clearAndTruncate(2 * MAX_BATCH_SIZE, MAX_BATCH_SIZE);
+    }
+  }
+}
@@ -48,6 +48,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.DataFormatException;
 
@@ -245,6 +246,8 @@ public final class LDAPReplicationDomain extends ReplicationDomain
       new AtomicInteger();
   /** The number of updates replayed successfully by the replication. */
   private final AtomicInteger numReplayedPostOpCalled = new AtomicInteger();
+  /** The number of updates which had to wait for an older conflicting update to be replayed. */
+  private final AtomicLong numReplayDependencyStalls = new AtomicLong();
 
   private final PersistentServerState state;
   private volatile boolean generationIdSavedStatus;
@@ -2451,6 +2454,15 @@ public final class LDAPReplicationDomain extends ReplicationDomain
     } while (msg != null);
   }
 
+  /**
+   * Records that an update received for this domain had to wait for an older
+   * conflicting update to be replayed.
+   */
+  void incrementReplayDependencyStalls()
+  {
+    numReplayDependencyStalls.incrementAndGet();
+  }
+
   private String logDecodingOperationError(LDAPUpdateMsg msg, Exception e)
   {
     LocalizableMessage message =
@@ -4306,6 +4318,17 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     addMonitorData(attributes, "remote-pending-changes-size",
         remotePendingChanges.getQueueSize());
 
+    final CSN oldestPendingCSN = remotePendingChanges.getOldestPendingCSN();
+    addMonitorData(attributes, "replay-lag", oldestPendingCSN != null
+        ? Math.max(0, TimeThread.getTime() - oldestPendingCSN.getTime()) : 0);
+    addMonitorData(attributes, "replay-dependency-stalls",
+        numReplayDependencyStalls.get());
+    final ReplayScheduler replayScheduler = MultimasterReplication.getReplayScheduler();
+    addMonitorData(attributes, "replay-partitions",
+        replayScheduler.getNbPartitions(this));
+    addMonitorData(attributes, "replay-max-partition-queue-size",
+        replayScheduler.getMaxPartitionSize(this));
+
     return attributes;
   }
 
@@ -108,6 +108,8 @@ public class MultimasterReplication
   private static final DSRSShutdownSync dsrsShutdownSync = new DSRSShutdownSync();
   /** The queue of received update messages, to be treated by the ReplayThread threads. */
   private static final BlockingQueue<UpdateToReplay> updateToReplayQueue = new LinkedBlockingQueue<>(10000);
+  /** Decides which of the received update messages can be replayed concurrently. */
+  private static final ReplayScheduler replayScheduler = new ReplayScheduler(updateToReplayQueue);
   /** The list of ReplayThread threads. */
   private static final List<ReplayThread> replayThreads = new ArrayList<>();
   /** The configurable number of replay threads. */
@@ -319,12 +321,23 @@ public class MultimasterReplication
 
     for (int i = 0; i < replayThreadNumber; i++)
     {
-      ReplayThread replayThread = new ReplayThread(updateToReplayQueue);
+      ReplayThread replayThread = new ReplayThread(replayScheduler);
       replayThread.start();
       replayThreads.add(replayThread);
     }
   }
 
+  /**
+   * Returns the scheduler of the update messages replayed by the replay
+   * threads.
+   *
+   * @return the scheduler of the update messages to replay
+   */
+  static ReplayScheduler getReplayScheduler()
+  {
+    return replayScheduler;
+  }
+
   /**
    * Stop the threads that are waiting for incoming update messages.
    */
@@ -84,6 +84,17 @@ final class RemotePendingChanges
     return pendingChanges.size();
   }
 
+  /**
+   * Returns the CSN of the oldest change not replayed yet.
+   *
+   * @return The CSN of the oldest change not replayed yet, or null if all the
+   *         changes have been replayed.
+   */
+  public synchronized CSN getOldestPendingCSN()
+  {
+    return pendingChanges.isEmpty() ? null : pendingChanges.firstKey();
+  }
+
   /**
    * Add a new LDAPUpdateMsg that was received from the replication server
    * to the pendingList.
@@ -203,6 +214,11 @@ final class RemotePendingChanges
 
     for (PendingChange pendingChange : pendingChanges.values())
     {
+      if (pendingChange.isCommitted())
+      {
+        // Already replayed, only waiting for older changes to be committed
+        continue;
+      }
       if (pendingChange.getCSN().isOlderThan(csn))
       {
         final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
@@ -295,6 +311,11 @@ final class RemotePendingChanges
 
     for (PendingChange pendingChange : pendingChanges.values())
     {
+      if (pendingChange.isCommitted())
+      {
+        // Already replayed, only waiting for older changes to be committed
+        continue;
+      }
       if (pendingChange.getCSN().isOlderThan(csn))
       {
         final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
@@ -351,6 +372,11 @@ final class RemotePendingChanges
 
     for (PendingChange pendingChange : pendingChanges.values())
     {
+      if (pendingChange.isCommitted())
+      {
+        // Already replayed, only waiting for older changes to be committed
+        continue;
+      }
       if (pendingChange.getCSN().isOlderThan(csn))
       {
         final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
@@ -437,6 +463,11 @@ final class RemotePendingChanges
 
     for (PendingChange pendingChange : pendingChanges.values())
     {
+      if (pendingChange.isCommitted())
+      {
+        // Already replayed, only waiting for older changes to be committed
+        continue;
+      }
       if (pendingChange.getCSN().isOlderThan(csn))
       {
         final LDAPUpdateMsg pendingMsg = pendingChange.getLDAPUpdateMsg();
@@ -0,0 +1,460 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.replication.protocol.AddMsg;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.opends.server.replication.protocol.ModifyDNMsg;
+import org.opends.server.types.DN;
+
+/**
+ * Hands the updates received by the replication domains over to the
+ * {@link ReplayThread}s, so that independent updates are replayed
+ * concurrently while conflicting updates are replayed in the order they were
+ * received, which is the CSN order.
+ * <p>
+ * Updates are partitioned by the DN of their target entry, a modify DN
+ * belonging to the partitions of both its old and new DNs. An update is only
+ * replayed once all the older updates of its partitions have been replayed.
+ * In addition, an update waits for the older adds, deletes and modify DNs
+ * still pending on the parent chain of its entries, and an add, delete or
+ * modify DN waits for the older updates still pending on the subtree below
+ * its entries. This covers the dependencies checked by
+ * {@link RemotePendingChanges}, so that replayed updates seldom need to be
+ * parked until their dependencies are replayed.
+ * <p>
+ * The scheduler only takes a limited number of updates from the queue filled
+ * by the replication domains, which keeps pushing back on the replication
+ * servers when replay falls behind.
+ */
+final class ReplayScheduler
+{
+  /**
+   * The maximum number of updates taken from the queue and not replayed yet.
+   * This bounds how far the replay threads can look ahead for independent
+   * updates when the oldest ones are waiting for each other.
+   */
+  private static final int MAX_SCHEDULED_UPDATES = 1000;
+
+  /** An update taken from the queue, waiting to be replayed or being replayed. */
+  static final class ScheduledUpdate
+  {
+    private final UpdateToReplay updateToReplay;
+    /** The reception order, conflicting updates are replayed in this order. */
+    private final long sequenceNumber;
+    /** The DNs of the partitions of this update. */
+    private final DN[] dns;
+    /** Whether this update changes the tree structure: add, delete or modify DN. */
+    private final boolean isStructural;
+
+    private ScheduledUpdate(final UpdateToReplay updateToReplay, final long sequenceNumber)
+    {
+      this.updateToReplay = updateToReplay;
+      this.sequenceNumber = sequenceNumber;
+
+      final LDAPUpdateMsg msg = updateToReplay.getUpdateMessage();
+      final DN newDN = msg instanceof ModifyDNMsg ? ((ModifyDNMsg) msg).getNewDN() : null;
+      this.dns = newDN != null && !newDN.equals(msg.getDN())
+          ? new DN[] { msg.getDN(), newDN }
+          : new DN[] { msg.getDN() };
+      this.isStructural = msg instanceof AddMsg || msg instanceof DeleteMsg || msg instanceof ModifyDNMsg;
+    }
+
+    /**
+     * Returns the update to replay.
+     *
+     * @return the update to replay
+     */
+    UpdateToReplay getUpdateToReplay()
+    {
+      return updateToReplay;
+    }
+
+    private LDAPReplicationDomain getDomain()
+    {
+      return updateToReplay.getReplicationDomain();
+    }
+
+    private boolean isOlderThan(final ScheduledUpdate update)
+    {
+      return sequenceNumber < update.sequenceNumber;
+    }
+  }
+
+  /** The updates of an entry, and the updates pending on the subtree below it. */
+  private static final class Partition
+  {
+    /** The updates targeting this entry, oldest first. */
+    private final Queue<ScheduledUpdate> updates = new ArrayDeque<>();
+    /** Whether the oldest update of this partition is being replayed. */
+    private boolean isReplaying;
+    /** The updates targeting an entry below this one, oldest first. */
+    private final Set<ScheduledUpdate> updatesBelow = new LinkedHashSet<>();
+    /** The updates waiting for an update of this partition to be replayed. */
+    private final List<ScheduledUpdate> waiters = new ArrayList<>();
+
+    private boolean isEmpty()
+    {
+      return updates.isEmpty() && updatesBelow.isEmpty() && waiters.isEmpty();
+    }
+  }
+
+  private final BlockingQueue<UpdateToReplay> queue;
+
+  /** The following fields are guarded by this. */
+  private final Map<DN, Partition> partitions = new HashMap<>();
+  private final Queue<ScheduledUpdate> readyUpdates = new ArrayDeque<>();
+  private int nbScheduledUpdates;
+  private long nextSequenceNumber;
+  /** Whether a replay thread is waiting for updates on the queue. */
+  private boolean isPolling;
+
+  /**
+   * Creates a new scheduler for the updates of the provided queue.
+   *
+   * @param queue
+   *          the queue filled by the replication domains
+   */
+  ReplayScheduler(final BlockingQueue<UpdateToReplay> queue)
+  {
+    this.queue = queue;
+  }
+
+  /**
+   * Returns the next update which can be replayed, waiting if necessary. The
+   * caller must call {@link #replayed(ScheduledUpdate)} once the update has
+   * been replayed.
+   *
+   * @param timeout
+   *          how long to wait before giving up
+   * @param unit
+   *          the unit of the timeout
+   * @return the next update to replay, or null if none could be replayed
+   *         before the timeout elapsed
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  ScheduledUpdate next(final long timeout, final TimeUnit unit) throws InterruptedException
+  {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    UpdateToReplay polledUpdate = null;
+    while (true)
+    {
+      synchronized (this)
+      {
+        if (polledUpdate != null)
+        {
+          schedule(polledUpdate);
+          polledUpdate = null;
+        }
+        takeQueuedUpdates();
+
+        final ScheduledUpdate update = readyUpdates.poll();
+        if (update != null)
+        {
+          if (!readyUpdates.isEmpty())
+          {
+            // Several updates became ready: wake up other threads to replay them
+            notifyAll();
+          }
+          return update;
+        }
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          return null;
+        }
+        if (isPolling || nbScheduledUpdates >= MAX_SCHEDULED_UPDATES)
+        {
+          // Wait for another thread to receive or replay an update
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          continue;
+        }
+        isPolling = true;
+      }
+
+      // Only one thread waits on the queue, the others wait for updates
+      // becoming ready while it is waiting.
+      try
+      {
+        polledUpdate = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      }
+      finally
+      {
+        synchronized (this)
+        {
+          isPolling = false;
+          notifyAll();
+        }
+      }
+      if (polledUpdate == null)
+      {
+        return null;
+      }
+    }
+  }
+
+  /** Takes the updates from the queue without waiting, within the limit. */
+  private void takeQueuedUpdates()
+  {
+    while (nbScheduledUpdates < MAX_SCHEDULED_UPDATES)
+    {
+      final UpdateToReplay updateToReplay = queue.poll();
+      if (updateToReplay == null)
+      {
+        return;
+      }
+      schedule(updateToReplay);
+    }
+  }
+
+  private void schedule(final UpdateToReplay updateToReplay)
+  {
+    final ScheduledUpdate update = new ScheduledUpdate(updateToReplay, nextSequenceNumber++);
+    nbScheduledUpdates++;
+    for (DN dn : update.dns)
+    {
+      getPartition(dn).updates.add(update);
+      for (DN parentDN = getParent(update, dn); parentDN != null; parentDN = getParent(update, parentDN))
+      {
+        getPartition(parentDN).updatesBelow.add(update);
+      }
+    }
+
+    final Partition blockingPartition = getBlockingPartition(update);
+    if (blockingPartition != null)
+    {
+      update.getDomain().incrementReplayDependencyStalls();
+      blockingPartition.waiters.add(update);
+    }
+    else
+    {
+      setReady(update);
+    }
+  }
+
+  /**
+   * Notifies that an update returned by {@link #next(long, TimeUnit)} has been
+   * replayed, allowing the updates which were waiting for it to be replayed.
+   *
+   * @param update
+   *          the replayed update
+   */
+  synchronized void replayed(final ScheduledUpdate update)
+  {
+    nbScheduledUpdates--;
+    final List<ScheduledUpdate> waiters = new ArrayList<>();
+    for (DN dn : update.dns)
+    {
+      final Partition partition = partitions.get(dn);
+      partition.updates.remove(update);
+      partition.isReplaying = false;
+      waiters.addAll(partition.waiters);
+      partition.waiters.clear();
+      removeIfEmpty(dn, partition);
+
+      for (DN parentDN = getParent(update, dn); parentDN != null; parentDN = getParent(update, parentDN))
+      {
+        // The old and new DNs of a modify DN may share their parents
+        final Partition parentPartition = partitions.get(parentDN);
+        if (parentPartition != null)
+        {
+          parentPartition.updatesBelow.remove(update);
+          removeIfEmpty(parentDN, parentPartition);
+        }
+      }
+    }
+
+    for (ScheduledUpdate waiter : waiters)
+    {
+      final Partition blockingPartition = getBlockingPartition(waiter);
+      if (blockingPartition != null)
+      {
+        blockingPartition.waiters.add(waiter);
+      }
+      else
+      {
+        setReady(waiter);
+      }
+    }
+    // Free room for new updates, or some updates may be ready
+    notifyAll();
+  }
+
+  /**
+   * Returns the partition holding an older update the provided update must
+   * wait for, or null if the provided update can be replayed now.
+   */
+  private Partition getBlockingPartition(final ScheduledUpdate update)
+  {
+    for (DN dn : update.dns)
+    {
+      final Partition partition = partitions.get(dn);
+      if (partition.isReplaying || partition.updates.peek() != update)
+      {
+        return partition;
+      }
+
+      if (update.isStructural && !partition.updatesBelow.isEmpty())
+      {
+        final ScheduledUpdate oldestBelow = partition.updatesBelow.iterator().next();
+        if (oldestBelow.isOlderThan(update))
+        {
+          return partitions.get(oldestBelow.dns[0]);
+        }
+      }
+
+      for (DN parentDN = getParent(update, dn); parentDN != null; parentDN = getParent(update, parentDN))
+      {
+        final Partition parentPartition = partitions.get(parentDN);
+        for (ScheduledUpdate parentUpdate : parentPartition.updates)
+        {
+          if (!parentUpdate.isOlderThan(update))
+          {
+            break;
+          }
+          else if (parentUpdate.isStructural)
+          {
+            return parentPartition;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private void setReady(final ScheduledUpdate update)
+  {
+    for (DN dn : update.dns)
+    {
+      partitions.get(dn).isReplaying = true;
+    }
+    readyUpdates.add(update);
+  }
+
+  /**
+   * Returns the parent of the provided DN, or null if the provided DN is the
+   * base DN of the domain of the provided update.
+   */
+  private DN getParent(final ScheduledUpdate update, final DN dn)
+  {
+    final DN baseDN = update.getDomain().getBaseDN();
+    if (dn.equals(baseDN) || !dn.isDescendantOf(baseDN))
+    {
+      return null;
+    }
+    return dn.parent();
+  }
+
+  private Partition getPartition(final DN dn)
+  {
+    Partition partition = partitions.get(dn);
+    if (partition == null)
+    {
+      partition = new Partition();
+      partitions.put(dn, partition);
+    }
+    return partition;
+  }
+
+  private void removeIfEmpty(final DN dn, final Partition partition)
+  {
+    if (partition.isEmpty())
+    {
+      partitions.remove(dn);
+    }
+  }
+
+  /**
+   * Returns the number of entries of the provided domain with updates waiting
+   * to be replayed or being replayed.
+   *
+   * @param domain
+   *          the replication domain
+   * @return the number of partitions of the provided domain
+   */
+  synchronized int getNbPartitions(final LDAPReplicationDomain domain)
+  {
+    int nbPartitions = 0;
+    for (Partition partition : partitions.values())
+    {
+      if (isPartitionOf(partition, domain))
+      {
+        nbPartitions++;
+      }
+    }
+    return nbPartitions;
+  }
+
+  /**
+   * Returns the maximum number of updates waiting to be replayed or being
+   * replayed for a single entry of the provided domain.
+   *
+   * @param domain
+   *          the replication domain
+   * @return the size of the largest partition of the provided domain
+   */
+  synchronized int getMaxPartitionSize(final LDAPReplicationDomain domain)
+  {
+    int maxSize = 0;
+    for (Partition partition : partitions.values())
+    {
+      if (isPartitionOf(partition, domain))
+      {
+        maxSize = Math.max(maxSize, partition.updates.size());
+      }
+    }
+    return maxSize;
+  }
+
+  private boolean isPartitionOf(final Partition partition, final LDAPReplicationDomain domain)
+  {
+    final ScheduledUpdate update = partition.updates.peek();
+    return update != null && update.getDomain() == domain;
+  }
+
+  /**
+   * Returns the number of updates taken from the queue, and not replayed yet.
+   *
+   * @return the number of updates taken from the queue, and not replayed yet
+   */
+  synchronized int getNbScheduledUpdates()
+  {
+    return nbScheduledUpdates;
+  }
+}
@@ -29,12 +29,12 @@ package org.opends.server.replication.plugin;
 import static org.opends.messages.ReplicationMessages.*;
 import static org.opends.server.util.StaticUtils.*;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opends.server.api.DirectoryThread;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.replication.plugin.ReplayScheduler.ScheduledUpdate;
 import org.opends.server.replication.protocol.LDAPUpdateMsg;
 
 /**
@@ -42,25 +42,26 @@ import org.opends.server.replication.protocol.LDAPUpdateMsg;
  * in the updates queue) and replay them in the current server. A configurable
  * number of this thread is created for the whole MultimasterReplication object
  * (i.e: these threads are shared across the ReplicationDomain objects for
- * replaying the updates they receive)
+ * replaying the updates they receive). The {@link ReplayScheduler} decides
+ * which updates can be replayed concurrently.
  */
 public class ReplayThread extends DirectoryThread
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
-  private final BlockingQueue<UpdateToReplay> updateToReplayQueue;
+  private final ReplayScheduler replayScheduler;
   private AtomicBoolean shutdown = new AtomicBoolean(false);
   private static int count;
 
   /**
    * Constructor for the ReplayThread.
    *
-   * @param updateToReplayQueue The queue of update messages we have to replay
+   * @param replayScheduler The scheduler of the update messages we have to replay
    */
-  public ReplayThread(BlockingQueue<UpdateToReplay> updateToReplayQueue)
+  ReplayThread(ReplayScheduler replayScheduler)
   {
      super("Replica replay thread " + count++);
-     this.updateToReplayQueue = updateToReplayQueue;
+     this.replayScheduler = replayScheduler;
   }
 
   /**
@@ -86,17 +87,25 @@ public class ReplayThread extends DirectoryThread
     {
       try
       {
-        UpdateToReplay updateToreplay;
-        // Loop getting an updateToReplayQueue from the update message queue and
+        ScheduledUpdate scheduledUpdate;
+        // Loop getting an updateToReplay from the scheduler and
         // replaying matching changes
         while (!shutdown.get() &&
-          ((updateToreplay = updateToReplayQueue.poll(1L,
+          ((scheduledUpdate = replayScheduler.next(1L,
           TimeUnit.SECONDS)) != null))
         {
-          // Find replication domain for that update message
-          LDAPUpdateMsg updateMsg = updateToreplay.getUpdateMessage();
-          LDAPReplicationDomain domain = updateToreplay.getReplicationDomain();
-          domain.replay(updateMsg, shutdown);
+          try
+          {
+            // Find replication domain for that update message
+            UpdateToReplay updateToreplay = scheduledUpdate.getUpdateToReplay();
+            LDAPUpdateMsg updateMsg = updateToreplay.getUpdateMessage();
+            LDAPReplicationDomain domain = updateToreplay.getReplicationDomain();
+            domain.replay(updateMsg, shutdown);
+          }
+          finally
+          {
+            replayScheduler.replayed(scheduledUpdate);
+          }
         }
       } catch (Exception e)
       {
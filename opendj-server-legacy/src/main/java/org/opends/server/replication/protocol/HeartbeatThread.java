@@ -192,4 +192,13 @@ public class HeartbeatThread extends DirectoryThread
   {
     HeartbeatThread.heartbeatsDisabled = heartbeatsDisabled;
   }
+
+  /**
+   * Returns whether heartbeats are disabled for testing purposes.
+   * @return true if heartbeats must not be sent.
+   */
+  static boolean areHeartbeatsDisabled()
+  {
+    return heartbeatsDisabled;
+  }
 }
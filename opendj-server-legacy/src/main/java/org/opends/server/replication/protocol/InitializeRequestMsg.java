@@ -41,6 +41,17 @@ public class InitializeRequestMsg extends RoutableMsg
   private final DN baseDN;
   private int initWindow;
 
+  /**
+   * Number of entries the sender already imported when this request asks to
+   * resume an interrupted initialization, 0 otherwise.
+   */
+  private long resumeEntryCount;
+  /**
+   * First line of the last entry the sender imported when this request asks
+   * to resume an interrupted initialization, null otherwise.
+   */
+  private String resumeAfter;
+
   /**
    * Creates a InitializeRequestMsg message.
    *
@@ -57,6 +68,25 @@ public class InitializeRequestMsg extends RoutableMsg
     this.initWindow = initWindow; // V4
   }
 
+  /**
+   * Creates a InitializeRequestMsg message asking to resume an initialization
+   * interrupted after the sender imported the provided number of entries.
+   *
+   * @param baseDN      the base DN of the replication domain.
+   * @param destination destination of this message
+   * @param serverID    serverID of the server that will send this message
+   * @param initWindow  initialization window for flow control
+   * @param resumeEntryCount the number of entries already imported
+   * @param resumeAfter the first line of the LDIF for the last entry imported
+   */
+  public InitializeRequestMsg(DN baseDN, int serverID, int destination,
+      int initWindow, long resumeEntryCount, String resumeAfter)
+  {
+    this(baseDN, serverID, destination, initWindow);
+    this.resumeEntryCount = resumeEntryCount; // V9
+    this.resumeAfter = resumeAfter; // V9
+  }
+
   /**
    * Creates a new InitializeRequestMsg by decoding the provided byte array.
    * @param in A byte array containing the encoded information for the message
@@ -81,6 +111,12 @@ public class InitializeRequestMsg extends RoutableMsg
     {
       initWindow = scanner.nextIntUTF8();
     }
+
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V9)
+    {
+      resumeEntryCount = scanner.nextLongUTF8();
+      resumeAfter = scanner.nextString();
+    }
   }
 
   /**
@@ -110,6 +146,11 @@ public class InitializeRequestMsg extends RoutableMsg
     {
       builder.appendIntUTF8(initWindow);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V9)
+    {
+      builder.appendLongUTF8(resumeEntryCount);
+      builder.appendString(resumeAfter);
+    }
     return builder.toByteArray();
   }
 
@@ -121,7 +162,8 @@ public class InitializeRequestMsg extends RoutableMsg
   public String toString()
   {
     return "InitializeRequestMessage: baseDN=" + baseDN + " senderId="
-       + senderID + " destination=" + destination + " initWindow=" + initWindow;
+       + senderID + " destination=" + destination + " initWindow=" + initWindow
+       + " resumeEntryCount=" + resumeEntryCount;
   }
 
   /**
@@ -141,4 +183,38 @@ public class InitializeRequestMsg extends RoutableMsg
   {
     this.initWindow = initWindow;
   }
+
+  /**
+   * Returns whether this message asks to resume an interrupted initialization
+   * rather than to start a new one.
+   *
+   * @return true if this message asks to resume an initialization.
+   */
+  public boolean isResumeRequest()
+  {
+    return resumeAfter != null;
+  }
+
+  /**
+   * Returns the number of entries the sender already imported when this
+   * message asks to resume an initialization.
+   *
+   * @return the number of entries already imported.
+   */
+  public long getResumeEntryCount()
+  {
+    return resumeEntryCount;
+  }
+
+  /**
+   * Returns the first LDIF line of the last entry the sender imported when
+   * this message asks to resume an initialization. The export resumes with the
+   * entry following this one.
+   *
+   * @return the first LDIF line of the last entry imported, or null.
+   */
+  public String getResumeAfter()
+  {
+    return resumeAfter;
+  }
 }
@@ -51,6 +51,12 @@ public class InitializeTargetMsg extends RoutableMsg
 
   private int initWindow;
 
+  /**
+   * Number of entries the destination already imported and which are not
+   * sent again, when this message resumes an interrupted initialization.
+   */
+  private long resumedEntryCount;
+
   /**
    * Creates a InitializeTargetMsg.
    *
@@ -71,6 +77,25 @@ public class InitializeTargetMsg extends RoutableMsg
     this.initWindow = initWindow; // V4
   }
 
+  /**
+   * Creates a InitializeTargetMsg resuming an interrupted initialization.
+   *
+   * @param baseDN     The base DN for which the InitializeMessage is created.
+   * @param serverID   The serverID of the server that sends this message.
+   * @param destination     The destination of this message.
+   * @param requestorID    The server that initiates this export.
+   * @param entryCount The count of entries of the whole export.
+   * @param initWindow the initialization window.
+   * @param resumedEntryCount The count of entries already imported by the
+   *                          destination, which will not be sent again.
+   */
+  public InitializeTargetMsg(DN baseDN, int serverID, int destination,
+      int requestorID, long entryCount, int initWindow, long resumedEntryCount)
+  {
+    this(baseDN, serverID, destination, requestorID, entryCount, initWindow);
+    this.resumedEntryCount = resumedEntryCount; // V9
+  }
+
   /**
    * Creates an InitializeTargetMsg by decoding the provided byte array.
    * @param in A byte array containing the encoded information for the message
@@ -97,6 +122,11 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       initWindow = scanner.nextIntUTF8();
     }
+
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V9)
+    {
+      resumedEntryCount = scanner.nextLongUTF8();
+    }
   }
 
   /**
@@ -140,6 +170,18 @@ public class InitializeTargetMsg extends RoutableMsg
     return this.initWindow;
   }
 
+  /**
+   * Get the number of entries the destination already imported when this
+   * message resumes an interrupted initialization.
+   *
+   * @return the number of entries not sent again, 0 when this message starts
+   *         a new initialization.
+   */
+  public long getResumedEntryCount()
+  {
+    return this.resumedEntryCount;
+  }
+
   // ============
   // Msg encoding
   // ============
@@ -159,6 +201,10 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       builder.appendIntUTF8(initWindow);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V9)
+    {
+      builder.appendLongUTF8(resumedEntryCount);
+    }
     return builder.toByteArray();
   }
 
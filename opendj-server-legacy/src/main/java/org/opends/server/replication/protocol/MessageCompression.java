@@ -0,0 +1,356 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.opends.server.util.StaticUtils;
+
+import static org.opends.server.replication.protocol.ReplicationMsg.*;
+
+/**
+ * Compression of the messages sent over a replication {@link Session}, which
+ * is supported since {@link ProtocolVersion#REPLICATION_PROTOCOL_V9}.
+ * <p>
+ * Each message is deflated on its own, so compressed and uncompressed messages
+ * can be freely interleaved and each message can be decoded independently of
+ * the previous ones. To get good compression ratios on small messages anyway,
+ * the deflater is primed with a preset dictionary made of the attribute names
+ * and values most commonly found in replicated entries and modifications. This
+ * dictionary is part of the protocol and must never be changed.
+ * <p>
+ * A compressed message is encoded as follows:
+ *
+ * <pre>
+ * &lt;MSG_TYPE_COMPRESSED&gt;&lt;uncompressed length (4 bytes)&gt;&lt;deflated message&gt;
+ * </pre>
+ *
+ * Messages shorter than {@link #MIN_COMPRESSED_LENGTH} bytes, and messages
+ * which do not shrink, are sent uncompressed.
+ * <p>
+ * Messages are compressed by the thread holding the session publish lock, and
+ * decompressed by the single thread receiving messages from the session. The
+ * deflater and inflater hold native memory which is only released by
+ * {@link #end()}, when the session is closed.
+ */
+final class MessageCompression
+{
+  /** Messages shorter than this are not worth compressing. */
+  static final int MIN_COMPRESSED_LENGTH = 128;
+
+  private static final int HEADER_LENGTH = 5;
+
+  /**
+   * The maximum compression ratio of the deflate format: each 258 bytes long
+   * match is encoded in at least 2 bits. Used to reject corrupted or malicious
+   * uncompressed lengths before allocating the decompressed message.
+   */
+  private static final int MAX_DEFLATE_RATIO = 1032;
+
+  /**
+   * The preset dictionary, most frequent strings last since they are cheaper
+   * to reference from the end of the dictionary.
+   */
+  private static final byte[] DICTIONARY = StaticUtils.getBytes(
+      "organizationalUnitgroupOfUniqueNamesgroupOfNamesuniqueMemberdomaincomponent"
+      + "dc=comdc=orgou=Groupsou=Peoplecn=Directory Manager,cn=Root DNs,cn=config"
+      + "facsimileTelephoneNumberhomePhonemobilepagerpostalCodepostalAddressstreet"
+      + "localityNamestateOrProvinceNametitledepartmentNumberemployeeNumberemployeeType"
+      + "roomNumberinitialsdisplayNamepreferredLanguagemanagersecretaryjpegPhoto"
+      + "pwdChangedTimepwdAccountLockedTimepwdFailureTimeds-pwp-password-policy-dn"
+      + "{SSHA}{SSHA256}{SSHA512}{PBKDF2}{CRYPT}userPasswordtelephoneNumberdescription"
+      + "memberisMemberOfmailuidcnsngivenNamepersonorganizationalPersoninetOrgPerson"
+      + "topobjectClassentryUUIDcreatorsNamecreateTimestampmodifiersNamemodifyTimestamp"
+      + ":add:del:repl:attrDel:attrAdd:moddn:addds-sync-histds-sync-state");
+
+  /** Lazily created, since sessions only compress once it is negotiated. */
+  private Deflater deflater;
+  /** Lazily created, since most sessions never receive compressed messages. */
+  private Inflater inflater;
+  /** Guards the deflater, which must not be ended while compressing. */
+  private final Object deflaterLock = new Object();
+  /** Guards the inflater, which must not be ended while decompressing. */
+  private final Object inflaterLock = new Object();
+  /** Whether {@link #end()} has been called, guarded by both locks. */
+  private boolean ended;
+
+  private volatile long nbCompressedMessages;
+  private volatile long nbUncompressedBytes;
+  private volatile long nbCompressedBytes;
+  private volatile long compressionTimeNanos;
+  private volatile long nbDecompressedMessages;
+  private volatile long decompressionTimeNanos;
+
+  /**
+   * Compresses an encoded message if it is worth it.
+   *
+   * @param buffer
+   *          the encoded message
+   * @return the compressed message, or the provided buffer if it is not worth
+   *         compressing
+   */
+  byte[] compress(final byte[] buffer)
+  {
+    if (buffer.length < MIN_COMPRESSED_LENGTH)
+    {
+      return buffer;
+    }
+
+    synchronized (deflaterLock)
+    {
+      return ended ? buffer : deflate(buffer);
+    }
+  }
+
+  private byte[] deflate(final byte[] buffer)
+  {
+    final long startTime = System.nanoTime();
+    if (deflater == null)
+    {
+      deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    }
+    deflater.reset();
+    deflater.setDictionary(DICTIONARY);
+    deflater.setInput(buffer);
+    deflater.finish();
+
+    // Anything not shorter than the original message is not worth sending
+    final byte[] compressed = new byte[buffer.length];
+    compressed[0] = MSG_TYPE_COMPRESSED;
+    writeInt(compressed, 1, buffer.length);
+    int length = HEADER_LENGTH;
+    while (!deflater.finished() && length < compressed.length)
+    {
+      length += deflater.deflate(compressed, length, compressed.length - length);
+    }
+    final boolean isWorthIt = deflater.finished();
+    compressionTimeNanos += System.nanoTime() - startTime;
+    if (!isWorthIt)
+    {
+      return buffer;
+    }
+
+    nbCompressedMessages++;
+    nbUncompressedBytes += buffer.length;
+    nbCompressedBytes += length;
+    return Arrays.copyOf(compressed, length);
+  }
+
+  /**
+   * Indicates whether the provided buffer holds a compressed message.
+   *
+   * @param buffer
+   *          the received buffer
+   * @return {@code true} if the buffer must be decompressed before decoding
+   */
+  static boolean isCompressed(final byte[] buffer)
+  {
+    return buffer.length > 0 && buffer[0] == MSG_TYPE_COMPRESSED;
+  }
+
+  /**
+   * Decompresses a compressed message.
+   *
+   * @param buffer
+   *          the compressed message
+   * @return the encoded message
+   * @throws DataFormatException
+   *           if the compressed message is corrupted
+   */
+  byte[] decompress(final byte[] buffer) throws DataFormatException
+  {
+    if (buffer.length < HEADER_LENGTH)
+    {
+      throw new DataFormatException("compressed message is too short");
+    }
+    final int length = readInt(buffer, 1);
+    if (length < 0 || length > (long) (buffer.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO)
+    {
+      throw new DataFormatException("compressed message has an invalid length: " + length);
+    }
+
+    synchronized (inflaterLock)
+    {
+      if (ended)
+      {
+        throw new DataFormatException("session is closed");
+      }
+      return inflate(buffer, length);
+    }
+  }
+
+  private byte[] inflate(final byte[] buffer, final int length) throws DataFormatException
+  {
+    final long startTime = System.nanoTime();
+    if (inflater == null)
+    {
+      inflater = new Inflater();
+    }
+    inflater.reset();
+    inflater.setInput(buffer, HEADER_LENGTH, buffer.length - HEADER_LENGTH);
+
+    final byte[] decompressed = new byte[length];
+    int offset = 0;
+    while (offset < length)
+    {
+      final int read = inflater.inflate(decompressed, offset, length - offset);
+      if (read == 0)
+      {
+        if (!inflater.needsDictionary())
+        {
+          throw new DataFormatException("compressed message is truncated");
+        }
+        setDictionary(inflater);
+      }
+      offset += read;
+    }
+    decompressionTimeNanos += System.nanoTime() - startTime;
+    nbDecompressedMessages++;
+    return decompressed;
+  }
+
+  /**
+   * Releases the native memory held by the deflater and the inflater. Messages
+   * are no longer compressed after this method is called.
+   */
+  void end()
+  {
+    synchronized (deflaterLock)
+    {
+      synchronized (inflaterLock)
+      {
+        ended = true;
+      }
+      if (deflater != null)
+      {
+        deflater.end();
+        deflater = null;
+      }
+    }
+    synchronized (inflaterLock)
+    {
+      if (inflater != null)
+      {
+        inflater.end();
+        inflater = null;
+      }
+    }
+  }
+
+  private static void setDictionary(final Inflater inflater) throws DataFormatException
+  {
+    try
+    {
+      inflater.setDictionary(DICTIONARY);
+    }
+    catch (IllegalArgumentException e)
+    {
+      throw new DataFormatException("compressed message uses an unknown dictionary");
+    }
+  }
+
+  private static void writeInt(final byte[] buffer, final int offset, final int value)
+  {
+    buffer[offset] = (byte) (value >>> 24);
+    buffer[offset + 1] = (byte) (value >>> 16);
+    buffer[offset + 2] = (byte) (value >>> 8);
+    buffer[offset + 3] = (byte) value;
+  }
+
+  private static int readInt(final byte[] buffer, final int offset)
+  {
+    return ((buffer[offset] & 0xFF) << 24)
+        | ((buffer[offset + 1] & 0xFF) << 16)
+        | ((buffer[offset + 2] & 0xFF) << 8)
+        | (buffer[offset + 3] & 0xFF);
+  }
+
+  /**
+   * Returns the number of messages sent compressed.
+   *
+   * @return the number of messages sent compressed
+   */
+  long getCompressedMessages()
+  {
+    return nbCompressedMessages;
+  }
+
+  /**
+   * Returns the number of bytes of the messages sent compressed, before
+   * compression.
+   *
+   * @return the number of bytes before compression
+   */
+  long getUncompressedBytes()
+  {
+    return nbUncompressedBytes;
+  }
+
+  /**
+   * Returns the number of bytes of the messages sent compressed, after
+   * compression.
+   *
+   * @return the number of bytes after compression
+   */
+  long getCompressedBytes()
+  {
+    return nbCompressedBytes;
+  }
+
+  /**
+   * Returns the time spent compressing messages, including the messages which
+   * were finally sent uncompressed.
+   *
+   * @return the time spent compressing messages, in nanoseconds
+   */
+  long getCompressionTimeNanos()
+  {
+    return compressionTimeNanos;
+  }
+
+  /**
+   * Returns the number of compressed messages received.
+   *
+   * @return the number of compressed messages received
+   */
+  long getDecompressedMessages()
+  {
+    return nbDecompressedMessages;
+  }
+
+  /**
+   * Returns the time spent decompressing received messages.
+   *
+   * @return the time spent decompressing messages, in nanoseconds
+   */
+  long getDecompressionTimeNanos()
+  {
+    return decompressionTimeNanos;
+  }
+}
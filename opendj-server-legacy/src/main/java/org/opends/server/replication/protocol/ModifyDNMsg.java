@@ -382,6 +382,23 @@ public class ModifyDNMsg extends ModifyCommonMsg
     return parentDn.child(RDN.decode(newRDN));
   }
 
+  /**
+   * Returns the DN that the entry should have after this operation.
+   *
+   * @return the new DN, or null if it could not be decoded.
+   */
+  public DN getNewDN()
+  {
+    try
+    {
+      return computeNewDN();
+    }
+    catch (DirectoryException e)
+    {
+      return null;
+    }
+  }
+
   /**
    * Check if this MSG will change the DN of the target entry to be
    * the same as the dn given as a parameter.
@@ -29,9 +29,11 @@ package org.opends.server.replication.protocol;
 import java.io.IOException;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.SortedSet;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -280,6 +282,106 @@ public final class ReplSessionSecurity
 
 
 
+  /**
+   * Create a new protocol session in the client role on the provided socket
+   * channel. Contrary to the sessions created on a socket, the TLS negotiation
+   * is performed when the first message is sent.
+   *
+   * @param channel
+   *          The connected socket channel.
+   * @param soTimeout
+   *          The socket timeout option to use for the protocol session.
+   * @return The new protocol session.
+   * @throws ConfigException
+   *           If the protocol session could not be established due to a
+   *           configuration problem.
+   * @throws IOException
+   *           If the protocol session could not be established for some other
+   *           reason.
+   */
+  public Session createClientSession(final SocketChannel channel,
+      final int soTimeout) throws ConfigException, IOException
+  {
+    return createSession(channel, soTimeout, REPLICATION_CLIENT_NAME, true);
+  }
+
+
+
+  /**
+   * Create a new protocol session in the server role on the provided socket
+   * channel. Contrary to the sessions created on a socket, the TLS negotiation
+   * is performed when the first message is received: an {@link SSLException}
+   * thrown at that time is probably a connection attempt from an unexpected
+   * client.
+   *
+   * @param channel
+   *          The connected socket channel.
+   * @param soTimeout
+   *          The socket timeout option to use for the protocol session.
+   * @return The new protocol session.
+   * @throws ConfigException
+   *           If the protocol session could not be established due to a
+   *           configuration problem.
+   * @throws IOException
+   *           If the protocol session could not be established for some other
+   *           reason.
+   */
+  public Session createServerSession(final SocketChannel channel,
+      final int soTimeout) throws ConfigException, IOException
+  {
+    return createSession(channel, soTimeout, REPLICATION_SERVER_NAME, false);
+  }
+
+
+
+  private Session createSession(final SocketChannel channel,
+      final int soTimeout, final String sslContextName,
+      final boolean clientMode) throws ConfigException, IOException
+  {
+    boolean hasCompleted = false;
+
+    try
+    {
+      // Create a new SSL context every time to make sure we pick up the
+      // latest contents of the trust store.
+      final CryptoManager cryptoManager = DirectoryConfig.getCryptoManager();
+      final SSLContext sslContext = cryptoManager.getSslContext(sslContextName, sslCertNicknames);
+
+      final Socket socket = channel.socket();
+      final SSLEngine sslEngine = sslContext.createSSLEngine(
+          socket.getInetAddress().getHostName(), socket.getPort());
+      sslEngine.setUseClientMode(clientMode);
+      if (!clientMode)
+      {
+        sslEngine.setNeedClientAuth(true);
+      }
+      socket.setSoTimeout(soTimeout);
+
+      if (sslProtocols != null)
+      {
+        sslEngine.setEnabledProtocols(sslProtocols);
+      }
+
+      if (sslCipherSuites != null)
+      {
+        sslEngine.setEnabledCipherSuites(sslCipherSuites);
+      }
+
+      final Session session = new Session(channel, sslEngine);
+      hasCompleted = true;
+      return session;
+    }
+    finally
+    {
+      if (!hasCompleted)
+      {
+        close(channel);
+      }
+    }
+  }
+
+
+
   /**
    * Determine whether sessions to a given replication server should be
    * encrypted.
@@ -90,6 +90,12 @@ public abstract class ReplicationMsg
 
   /** @since {@link ProtocolVersion#REPLICATION_PROTOCOL_V8} */
   static final byte MSG_TYPE_REPLICA_OFFLINE = 37;
+  /**
+   * Compressed message, unwrapped by the {@link Session} before decoding.
+   *
+   * @since {@link ProtocolVersion#REPLICATION_PROTOCOL_V9}
+   */
+  static final byte MSG_TYPE_COMPRESSED = 38;
 
   // Adding a new type of message here probably requires to
   // change accordingly generateMsg method below
@@ -31,6 +31,11 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -39,23 +44,50 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DataFormatException;
 
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocket;
 
 import org.opends.server.api.DirectoryThread;
+import org.opends.server.extensions.TLSByteChannel;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.util.StaticUtils;
 
 /**
  * This class defines a replication session using TLS.
+ * <p>
+ * A session is either created on a regular socket, in which case it uses an
+ * {@link SSLSocket} and is read by a dedicated thread, or on a socket channel,
+ * in which case it uses an {@link SSLEngine} and can be read by a
+ * {@link SessionMultiplexer} once the start messages have been exchanged.
  */
 public final class Session extends DirectoryThread implements Closeable
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * Number of bytes after which the messages coalesced in the output stream
+   * are flushed, even if other messages are waiting in the send queue. This is
+   * also the size of the output buffer.
+   */
+  private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+  /**
+   * Size of the buffer holding the data received by a session created on a
+   * socket channel. It grows as needed to hold larger messages.
+   */
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
   private final Socket plainSocket;
   private final SSLSocket secureSocket;
   private final InputStream plainInput;
   private final OutputStream plainOutput;
+
+  /**
+   * The channels of a session created on a socket channel, null for a session
+   * created on a regular socket.
+   */
+  private final SessionByteChannel plainChannel;
+  private final ByteChannel secureChannel;
   private final byte[] rcvLengthBuf = new byte[8];
   private final String readableRemoteAddress;
   private final String remoteAddress;
@@ -100,11 +132,37 @@ public final class Session extends DirectoryThread implements Closeable
   private BufferedInputStream input;
 
   /**
-   * Use a buffered output stream in order to combine message length and content
-   * into a single TCP packet if possible.
+   * The channel data is read from, and the data received and not processed
+   * yet, when the session is created on a socket channel. The same buffer is
+   * used before and after the session is multiplexed, so that no data is lost
+   * in between.
+   */
+  private ByteChannel channel;
+  private ByteBuffer readBuffer;
+
+  /** The multiplexer reading this session, null if it has its own thread. */
+  private volatile SessionMultiplexer multiplexer;
+
+  /**
+   * Use a buffered output stream in order to combine message length and content,
+   * and the messages waiting in the send queue, into as few TCP packets as
+   * possible.
    */
   private BufferedOutputStream output;
 
+  /*
+   * Statistics on the batches of messages sent by this session, guarded by
+   * publishLock. A batch is made of the messages sent between two flushes.
+   */
+  private volatile long nbSentBatches;
+  private volatile long nbSentMessages;
+  private volatile long nbSentBytes;
+
+  /** Compresses the messages sent and decompresses the messages received. */
+  private final MessageCompression compression = new MessageCompression();
+  /** Whether the messages sent are compressed, see {@link #enableCompression()}. */
+  private volatile boolean isCompressing;
+
   private final LinkedBlockingQueue<byte[]> sendQueue = new LinkedBlockingQueue<>(4000);
   private AtomicBoolean isRunning = new AtomicBoolean(false);
   private final CountDownLatch latch = new CountDownLatch(1);
@@ -137,8 +195,10 @@ public final class Session extends DirectoryThread implements Closeable
     this.secureSocket = secureSocket;
     this.plainInput = plainSocket.getInputStream();
     this.plainOutput = plainSocket.getOutputStream();
+    this.plainChannel = null;
+    this.secureChannel = null;
     this.input = new BufferedInputStream(secureSocket.getInputStream());
-    this.output = new BufferedOutputStream(secureSocket.getOutputStream());
+    this.output = new BufferedOutputStream(secureSocket.getOutputStream(), FLUSH_THRESHOLD);
     this.readableRemoteAddress = plainSocket.getRemoteSocketAddress()
         .toString();
     this.remoteAddress = plainSocket.getInetAddress().getHostAddress();
@@ -146,6 +206,57 @@ public final class Session extends DirectoryThread implements Closeable
         + plainSocket.getLocalPort();
   }
 
+  /**
+   * Creates a new Session on a socket channel, which can be multiplexed once
+   * the start messages have been exchanged. The TLS handshake is performed
+   * when the first message is sent or received.
+   *
+   * @param socketChannel
+   *          The connected socket channel on which the session will be based.
+   *          It is switched to the non-blocking mode once multiplexed.
+   * @param sslEngine
+   *          The SSL engine securing the session until encryption is stopped.
+   * @throws IOException
+   *           When an IOException happens on the socket channel.
+   */
+  public Session(final SocketChannel socketChannel,
+                 final SSLEngine sslEngine) throws IOException
+  {
+    super("Replication Session from "
+        + socketChannel.socket().getLocalSocketAddress() + " to "
+        + socketChannel.socket().getRemoteSocketAddress());
+    if (logger.isTraceEnabled())
+    {
+      logger.trace(
+          "Creating Session from %s to %s in %s",
+          socketChannel.socket().getLocalSocketAddress(),
+          socketChannel.socket().getRemoteSocketAddress(),
+          stackTraceToSingleLineString(new Exception()));
+    }
+
+    this.plainSocket = socketChannel.socket();
+    this.secureSocket = null;
+    this.plainInput = null;
+    this.plainOutput = null;
+    this.plainChannel = new SessionByteChannel(socketChannel);
+    this.secureChannel = new TLSByteChannel(plainChannel, sslEngine).getChannel();
+    this.channel = secureChannel;
+    this.readBuffer = newReadBuffer(READ_BUFFER_SIZE);
+    this.output = new BufferedOutputStream(Channels.newOutputStream(secureChannel), FLUSH_THRESHOLD);
+    this.readableRemoteAddress = plainSocket.getRemoteSocketAddress()
+        .toString();
+    this.remoteAddress = plainSocket.getInetAddress().getHostAddress();
+    this.localUrl = plainSocket.getLocalAddress().getHostName() + ":"
+        + plainSocket.getLocalPort();
+  }
+
+  private static ByteBuffer newReadBuffer(final int size)
+  {
+    final ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.flip(); // Initially nothing has been received.
+    return buffer;
+  }
+
 
 
   /**
@@ -211,7 +322,14 @@ public final class Session extends DirectoryThread implements Closeable
       }
     }
 
-    StaticUtils.close(plainSocket, secureSocket);
+    StaticUtils.close(plainChannel, plainSocket, secureSocket);
+    compression.end();
+
+    final SessionMultiplexer localMultiplexer = multiplexer;
+    if (localMultiplexer != null)
+    {
+      localMultiplexer.sessionClosed(this);
+    }
   }
 
 
@@ -308,6 +426,135 @@ public final class Session extends DirectoryThread implements Closeable
 
 
 
+  /**
+   * Returns the number of batches of messages sent by this session, where a
+   * batch is made of the messages written to the socket between two flushes.
+   *
+   * @return the number of batches of messages sent by this session
+   */
+  public long getSentBatches()
+  {
+    return nbSentBatches;
+  }
+
+
+
+  /**
+   * Returns the number of messages sent by this session.
+   *
+   * @return the number of messages sent by this session
+   */
+  public long getSentMessages()
+  {
+    return nbSentMessages;
+  }
+
+
+
+  /**
+   * Returns the number of bytes sent by this session, including the message
+   * length headers.
+   *
+   * @return the number of bytes sent by this session
+   */
+  public long getSentBytes()
+  {
+    return nbSentBytes;
+  }
+
+
+
+  /**
+   * Starts compressing the messages sent to the remote peer, if the protocol
+   * version negotiated with it supports compression. This must only be called
+   * once the start messages have been exchanged. Compressed messages received
+   * from the remote peer are always accepted.
+   *
+   * @return {@code true} if the messages sent are now compressed
+   */
+  public boolean enableCompression()
+  {
+    isCompressing = protocolVersion >= ProtocolVersion.REPLICATION_PROTOCOL_V9;
+    return isCompressing;
+  }
+
+
+
+  /**
+   * Returns the number of messages sent compressed by this session.
+   *
+   * @return the number of messages sent compressed
+   */
+  public long getCompressedMessages()
+  {
+    return compression.getCompressedMessages();
+  }
+
+
+
+  /**
+   * Returns the size of the messages sent compressed by this session, before
+   * compression.
+   *
+   * @return the number of bytes before compression
+   */
+  public long getUncompressedBytes()
+  {
+    return compression.getUncompressedBytes();
+  }
+
+
+
+  /**
+   * Returns the size of the messages sent compressed by this session, after
+   * compression.
+   *
+   * @return the number of bytes after compression
+   */
+  public long getCompressedBytes()
+  {
+    return compression.getCompressedBytes();
+  }
+
+
+
+  /**
+   * Returns the time spent compressing the messages sent by this session.
+   *
+   * @return the compression time in nanoseconds
+   */
+  public long getCompressionTimeNanos()
+  {
+    return compression.getCompressionTimeNanos();
+  }
+
+
+
+  /**
+   * Returns the number of compressed messages received by this session.
+   *
+   * @return the number of compressed messages received
+   */
+  public long getDecompressedMessages()
+  {
+    return compression.getDecompressedMessages();
+  }
+
+
+
+  /**
+   * Returns the time spent decompressing the messages received by this
+   * session.
+   *
+   * @return the decompression time in nanoseconds
+   */
+  public long getDecompressionTimeNanos()
+  {
+    return compression.getDecompressionTimeNanos();
+  }
+
+
+
   /**
    * Sends a replication message to the remote peer.
    *
@@ -326,26 +573,74 @@ public final class Session extends DirectoryThread implements Closeable
     }
     if (isRunning.get())
     {
-      while (!closeInitiated)
+      enqueue(buffer);
+    }
+    else if (multiplexer != null && !closeInitiated)
+    {
+      enqueue(buffer);
+      sendQueued();
+    }
+    else
+    {
+      send(buffer);
+    }
+  }
+
+  private void enqueue(final byte[] buffer) throws IOException
+  {
+    while (!closeInitiated)
+    {
+      try
       {
-        try
+        // Avoid blocking forever so that we can check for session closure.
+        if (sendQueue.offer(buffer, 100, TimeUnit.MILLISECONDS))
         {
-          // Avoid blocking forever so that we can check for session closure.
-          if (sendQueue.offer(buffer, 100, TimeUnit.MILLISECONDS))
-          {
-            return;
-          }
-        }
-        catch (final InterruptedException e)
-        {
-          setSessionError(e);
-          throw new IOException(e.getMessage());
+          return;
         }
       }
+      catch (final InterruptedException e)
+      {
+        setSessionError(e);
+        throw new IOException(e.getMessage());
+      }
     }
-    else
+  }
+
+  /**
+   * Sends the messages waiting in the send queue of a multiplexed session,
+   * which has no sending thread, unless another publishing thread is already
+   * sending them: the thread holding the publish lock sends the messages
+   * queued by the other threads in the same batch.
+   * <p>
+   * The session is closed when the peer stops reading it for longer than the
+   * write timeout, so that the threads of the multiplexer publishing on this
+   * session are not blocked any longer.
+   *
+   * @throws IOException if the messages could not be sent
+   */
+  private void sendQueued() throws IOException
+  {
+    // Check the queue again after releasing the lock, in case a message was
+    // queued while it was held, but after the holder emptied the queue.
+    while (!sendQueue.isEmpty() && publishLock.tryLock())
     {
-      send(buffer);
+      try
+      {
+        final byte[] buffer = sendQueue.poll();
+        if (buffer != null)
+        {
+          sendBatch(buffer);
+        }
+      }
+      catch (final SocketTimeoutException e)
+      {
+        close();
+        throw e;
+      }
+      finally
+      {
+        publishLock.unlock();
+      }
     }
   }
 
@@ -357,9 +652,6 @@ public final class Session extends DirectoryThread implements Closeable
    */
   private void send(final byte[] buffer) throws IOException
   {
-    final String str = String.format("%08x", buffer.length);
-    final byte[] sendLengthBuf = str.getBytes();
-
     publishLock.lock();
     try
     {
@@ -367,9 +659,7 @@ public final class Session extends DirectoryThread implements Closeable
        * The buffered output stream ensures that the message is usually sent as
        * a single TCP packet.
        */
-      output.write(sendLengthBuf);
-      output.write(buffer);
-      output.flush();
+      flush(1, write(buffer));
     } catch (final IOException e) {
       setSessionError(e);
       throw e;
@@ -378,7 +668,80 @@ public final class Session extends DirectoryThread implements Closeable
     {
       publishLock.unlock();
     }
+  }
 
+  /**
+   * Sends the provided encoded message, followed by the messages waiting in
+   * the send queue. Messages are coalesced in the output stream, which is only
+   * flushed once the send queue is empty or once {@link #FLUSH_THRESHOLD} bytes
+   * have been written. Heartbeat and window messages go through the send queue
+   * too, so they are never delayed by more than the messages queued before
+   * them.
+   *
+   * @param firstBuffer
+   *          the first encoded message to send
+   * @throws IOException if the messages could not be sent
+   */
+  private void sendBatch(final byte[] firstBuffer) throws IOException
+  {
+    publishLock.lock();
+    try
+    {
+      int nbMessages = 0;
+      int nbBytes = 0;
+      byte[] buffer = firstBuffer;
+      while (buffer != null)
+      {
+        nbBytes += write(buffer);
+        nbMessages++;
+        if (nbBytes >= FLUSH_THRESHOLD)
+        {
+          flush(nbMessages, nbBytes);
+          nbMessages = 0;
+          nbBytes = 0;
+        }
+        buffer = closeInitiated ? null : sendQueue.poll();
+      }
+      if (nbMessages > 0)
+      {
+        flush(nbMessages, nbBytes);
+      }
+    } catch (final IOException e) {
+      setSessionError(e);
+      throw e;
+    }
+    finally
+    {
+      publishLock.unlock();
+    }
+  }
+
+  /**
+   * Writes the length and content of an encoded message to the output stream,
+   * without flushing it. Must be called with publishLock held.
+   *
+   * @return the number of bytes written
+   */
+  private int write(final byte[] msgBuffer) throws IOException
+  {
+    final byte[] buffer = isCompressing ? compression.compress(msgBuffer) : msgBuffer;
+    final String str = String.format("%08x", buffer.length);
+    final byte[] sendLengthBuf = str.getBytes();
+    output.write(sendLengthBuf);
+    output.write(buffer);
+    return sendLengthBuf.length + buffer.length;
+  }
+
+  /**
+   * Flushes the output stream and accounts for the batch of messages written
+   * since the previous flush. Must be called with publishLock held.
+   */
+  private void flush(final int nbMessages, final int nbBytes) throws IOException
+  {
+    output.flush();
+    nbSentBatches++;
+    nbSentMessages += nbMessages;
+    nbSentBytes += nbBytes;
     lastPublishTime = System.currentTimeMillis();
   }
 
@@ -424,7 +787,7 @@ public final class Session extends DirectoryThread implements Closeable
          * processing a message even a time consuming one.
          */
         lastReceiveTime = 0;
-        return ReplicationMsg.generateMsg(buffer, protocolVersion);
+        return decode(buffer);
       }
       catch (final OutOfMemoryError e)
       {
@@ -439,8 +802,135 @@ public final class Session extends DirectoryThread implements Closeable
     }
   }
 
+  /**
+   * Decodes a message received on this session.
+   *
+   * @param buffer
+   *          the message received, without its length
+   * @return the decoded message, or null if it is not a known message
+   * @throws DataFormatException
+   *           if the message is not properly formatted
+   * @throws NotSupportedOldVersionPDUException
+   *           if the message is part of an old protocol version which is not
+   *           supported
+   */
+  ReplicationMsg decode(final byte[] buffer) throws DataFormatException,
+      NotSupportedOldVersionPDUException
+  {
+    try
+    {
+      final byte[] msgBuffer =
+          MessageCompression.isCompressed(buffer) ? compression.decompress(buffer) : buffer;
+      return ReplicationMsg.generateMsg(msgBuffer, protocolVersion);
+    }
+    catch (final DataFormatException | RuntimeException e)
+    {
+      setSessionError(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the next message received on a multiplexed session, when it has
+   * been received completely. This reads the data available on the channel,
+   * without blocking. Only called by the transport thread of the multiplexer.
+   *
+   * @return the next message received, not decoded yet and without its
+   *         length, or null if no complete message is available yet
+   * @throws IOException
+   *           if reading failed, or if the remote server closed the
+   *           connection
+   */
+  byte[] pollReceived() throws IOException
+  {
+    try
+    {
+      while (true)
+      {
+        if (readBuffer.remaining() >= rcvLengthBuf.length)
+        {
+          final int position = readBuffer.position();
+          readBuffer.get(rcvLengthBuf);
+          final int totalLength = Integer.parseInt(new String(rcvLengthBuf), 16);
+          if (readBuffer.remaining() >= totalLength)
+          {
+            final byte[] buffer = new byte[totalLength];
+            readBuffer.get(buffer);
+            lastReceiveTime = System.currentTimeMillis();
+            return buffer;
+          }
+          readBuffer.position(position);
+          ensureReadBufferCapacity(rcvLengthBuf.length + totalLength);
+        }
+
+        final int read = fillReadBuffer();
+        if (read == -1)
+        {
+          throw new IOException("no more data");
+        }
+        else if (read == 0)
+        {
+          return null;
+        }
+      }
+    }
+    catch (final IOException | RuntimeException e)
+    {
+      setSessionError(e);
+      throw e;
+    }
+  }
+
+  private void ensureReadBufferCapacity(final int capacity) throws IOException
+  {
+    if (readBuffer.capacity() < capacity)
+    {
+      try
+      {
+        final ByteBuffer newReadBuffer = ByteBuffer.allocate(capacity);
+        newReadBuffer.put(readBuffer);
+        newReadBuffer.flip();
+        readBuffer = newReadBuffer;
+      }
+      catch (final OutOfMemoryError e)
+      {
+        throw new IOException("Packet too large, can't allocate "
+            + capacity + " bytes.");
+      }
+    }
+  }
+
+  /**
+   * Reads data from the channel into the read buffer.
+   *
+   * @return the number of bytes read, -1 on end of stream
+   */
+  private int fillReadBuffer() throws IOException
+  {
+    if (!readBuffer.hasRemaining() && readBuffer.capacity() > READ_BUFFER_SIZE)
+    {
+      // Do not keep the memory used by a large message
+      readBuffer = newReadBuffer(READ_BUFFER_SIZE);
+    }
+    readBuffer.compact(); // Prepare for append.
+    try
+    {
+      return channel.read(readBuffer);
+    }
+    finally
+    {
+      readBuffer.flip(); // Restore for read.
+    }
+  }
+
   private void read(byte[] buffer) throws IOException
   {
+    if (plainChannel != null)
+    {
+      readFromChannel(buffer);
+      return;
+    }
+
     final int totalLength = buffer.length;
     int length = 0;
     while (length < totalLength)
@@ -455,6 +945,23 @@ public final class Session extends DirectoryThread implements Closeable
     }
   }
 
+  private void readFromChannel(byte[] buffer) throws IOException
+  {
+    int length = 0;
+    while (length < buffer.length)
+    {
+      // Reads block as long as the session is not multiplexed.
+      if (!readBuffer.hasRemaining() && fillReadBuffer() == -1)
+      {
+        lastReceiveTime = 0;
+        throw new IOException("no more data");
+      }
+      final int read = Math.min(readBuffer.remaining(), buffer.length - length);
+      readBuffer.get(buffer, length, read);
+      length += read;
+    }
+  }
+
   /**
    * This method is called at the establishment of the session and can
    * be used to record the version of the protocol that is currently used.
@@ -512,13 +1019,72 @@ public final class Session extends DirectoryThread implements Closeable
       StaticUtils.close(secureSocket);
     }
 
-    input = new BufferedInputStream(plainInput);
-    output = new BufferedOutputStream(plainOutput);
+    if (plainChannel != null)
+    {
+      channel = plainChannel;
+      output = new BufferedOutputStream(Channels.newOutputStream(plainChannel), FLUSH_THRESHOLD);
+    }
+    else
+    {
+      input = new BufferedInputStream(plainInput);
+      output = new BufferedOutputStream(plainOutput, FLUSH_THRESHOLD);
+    }
     isEncrypted = false;
   }
 
 
 
+  /**
+   * Indicates whether this session can be handed over to a
+   * {@link SessionMultiplexer}, which is the case of the sessions created on a
+   * socket channel.
+   *
+   * @return {@code true} if this session can be multiplexed
+   */
+  public boolean isMultiplexable()
+  {
+    return plainChannel != null;
+  }
+
+
+
+  /**
+   * Returns the socket channel of a session which can be multiplexed.
+   *
+   * @return the socket channel of this session
+   */
+  SocketChannel getSocketChannel()
+  {
+    return plainChannel.getSocketChannel();
+  }
+
+
+
+  /**
+   * Hands this session over to the provided multiplexer: from now on, reads
+   * do not block anymore, and messages are sent by the publishing threads.
+   *
+   * @param multiplexer
+   *          the multiplexer reading this session
+   * @param writeWaiter
+   *          waits for the session to be writable when the socket send buffer
+   *          is full
+   * @param writeTimeout
+   *          the time in milliseconds a write can wait for the peer to read
+   *          some data before the session is closed, 0 to wait forever
+   * @throws IOException
+   *           if the socket channel could not be switched to the non-blocking
+   *           mode
+   */
+  void setMultiplexer(final SessionMultiplexer multiplexer,
+      final SessionByteChannel.WriteWaiter writeWaiter, final long writeTimeout) throws IOException
+  {
+    plainChannel.setMultiplexed(writeWaiter, writeTimeout);
+    this.multiplexer = multiplexer;
+  }
+
+
+
   private void setSessionError(final Exception e)
   {
     synchronized (stateLock)
@@ -532,7 +1098,8 @@ public final class Session extends DirectoryThread implements Closeable
 
   /**
    * Run method for the Session.
-   * Loops waiting for buffers from the queue and sends them when available.
+   * Loops waiting for buffers from the queue and sends them in batches when
+   * available.
    */
   @Override
   public void run()
@@ -557,7 +1124,7 @@ public final class Session extends DirectoryThread implements Closeable
       }
       try
       {
-        send(buffer);
+        sendBatch(buffer);
       }
       catch (IOException e)
       {
@@ -0,0 +1,246 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opends.server.util.StaticUtils;
+
+/**
+ * Byte channel over the socket channel of a replication {@link Session} which
+ * can be multiplexed by a {@link SessionMultiplexer}.
+ * <p>
+ * Until the session is handed over to a multiplexer, the socket channel is in
+ * blocking mode: reads block until some data is available, honoring the socket
+ * timeout, and writes block until all the data has been written. From then on,
+ * the socket channel is in non-blocking mode: reads never block and are only
+ * performed once the multiplexer has reported the channel as readable, and
+ * writes wait for the multiplexer to report the channel as writable when the
+ * socket send buffer is full. They fail once the peer has not read any data
+ * for longer than the write timeout, if any.
+ * <p>
+ * The selectors of the multiplexer are the only ones used: no selector is
+ * opened per session.
+ */
+final class SessionByteChannel implements ByteChannel
+{
+  /**
+   * Waits for a multiplexed channel to be writable.
+   */
+  interface WriteWaiter
+  {
+    /**
+     * Waits until the channel is reported as writable, or until it is closed.
+     *
+     * @param timeout
+     *          the maximum time to wait in milliseconds, 0 to wait forever
+     * @throws InterruptedIOException
+     *           if the current thread is interrupted while waiting
+     */
+    void awaitWritable(long timeout) throws InterruptedIOException;
+  }
+
+  private final SocketChannel channel;
+  /** Reads the channel in blocking mode, honoring the socket timeout. */
+  private final InputStream blockingInput;
+
+  /** Set once the session is multiplexed. */
+  private volatile WriteWaiter writeWaiter;
+
+  /**
+   * Time in milliseconds a write can wait for the peer to read some data
+   * before failing, 0 to wait forever.
+   */
+  private volatile long writeTimeout;
+
+  /** Serializes concurrent writes. */
+  private final Lock writeLock = new ReentrantLock();
+
+  /**
+   * Creates a new byte channel over the provided socket channel, which is
+   * switched to the blocking mode until it is multiplexed.
+   *
+   * @param channel
+   *          the connected socket channel
+   * @throws IOException
+   *           if the socket channel could not be switched to the blocking mode
+   */
+  SessionByteChannel(final SocketChannel channel) throws IOException
+  {
+    this.channel = channel;
+    channel.configureBlocking(true);
+    // Contrary to the channel, the socket input stream honors the socket timeout
+    this.blockingInput = channel.socket().getInputStream();
+  }
+
+  /**
+   * Returns the underlying socket channel.
+   *
+   * @return the underlying socket channel
+   */
+  SocketChannel getSocketChannel()
+  {
+    return channel;
+  }
+
+  /**
+   * Switches the channel to the non-blocking mode, so that it can be
+   * registered with the selector of a multiplexer: from now on reads return
+   * immediately when no data is available, and writes wait on the provided
+   * waiter when the socket send buffer is full. No other thread must be
+   * reading the channel.
+   *
+   * @param waiter
+   *          waits for the channel to be writable
+   * @param timeout
+   *          the time in milliseconds a write can wait for the peer to read
+   *          some data before failing with a {@link SocketTimeoutException},
+   *          0 to wait forever
+   * @throws IOException
+   *           if the socket channel could not be switched to the non-blocking
+   *           mode
+   */
+  void setMultiplexed(final WriteWaiter waiter, final long timeout) throws IOException
+  {
+    writeLock.lock();
+    try
+    {
+      channel.configureBlocking(false);
+      writeTimeout = timeout;
+      writeWaiter = waiter;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int read(final ByteBuffer dst) throws IOException
+  {
+    if (writeWaiter != null || !dst.hasRemaining())
+    {
+      return channel.read(dst);
+    }
+
+    if (dst.hasArray())
+    {
+      final int read = blockingInput.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+      if (read > 0)
+      {
+        dst.position(dst.position() + read);
+      }
+      return read;
+    }
+    final byte[] bytes = new byte[dst.remaining()];
+    final int read = blockingInput.read(bytes);
+    if (read > 0)
+    {
+      dst.put(bytes, 0, read);
+    }
+    return read;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int write(final ByteBuffer src) throws IOException
+  {
+    writeLock.lock();
+    try
+    {
+      final int bytesToWrite = src.remaining();
+      channel.write(src);
+      final WriteWaiter waiter = writeWaiter;
+      if (waiter == null)
+      {
+        // Reading the socket input stream with a timeout may briefly switch
+        // the channel to the non-blocking mode
+        while (src.hasRemaining())
+        {
+          channel.write(src);
+        }
+        return bytesToWrite;
+      }
+      else if (!src.hasRemaining())
+      {
+        return bytesToWrite;
+      }
+
+      // The socket send buffer is full: wait until the peer reads some data,
+      // or until the channel is closed.
+      final long timeout = writeTimeout;
+      long stopTime = System.currentTimeMillis() + timeout;
+      while (src.hasRemaining())
+      {
+        long waitTime = 0;
+        if (timeout > 0)
+        {
+          waitTime = stopTime - System.currentTimeMillis();
+          if (waitTime <= 0)
+          {
+            throw new SocketTimeoutException("Write timed out");
+          }
+        }
+        waiter.awaitWritable(waitTime);
+        if (channel.write(src) > 0)
+        {
+          stopTime = System.currentTimeMillis() + timeout;
+        }
+      }
+      return bytesToWrite;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isOpen()
+  {
+    return channel.isOpen();
+  }
+
+  /**
+   * Closes the socket channel, which wakes up the threads blocked reading or
+   * writing it.
+   */
+  @Override
+  public void close()
+  {
+    StaticUtils.close(channel);
+  }
+}
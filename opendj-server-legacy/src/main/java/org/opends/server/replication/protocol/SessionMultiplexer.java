@@ -0,0 +1,732 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.util.StaticUtils;
+
+/**
+ * Multiplexes replication sessions over a small pool of threads, instead of
+ * dedicating a receiving thread and a sending thread to each session.
+ * <p>
+ * Each transport thread waits for incoming data on the channels of its
+ * sessions with a selector, and splits the data into messages using the usual
+ * message framing. Messages are then decoded and handed over to the
+ * {@link Listener} of their session by a pool of dispatcher threads: the
+ * messages of a session are processed one at a time, in the order they were
+ * received. A session is not read anymore while too many of its messages are
+ * waiting to be processed, which pushes back on the remote server like a busy
+ * receiving thread would.
+ * <p>
+ * Multiplexed sessions have no sending thread: messages are written by the
+ * publishing threads, see {@link Session#publish(ReplicationMsg)}, and
+ * heartbeats are published by the dispatcher threads. When the socket send
+ * buffer of a session is full, these threads wait for the transport thread to
+ * report the session as writable: the selector of the transport thread is the
+ * only one used for the session. A session whose peer stops reading is closed
+ * after a write timeout, so that it cannot hold up the dispatcher threads
+ * serving the other sessions.
+ * <p>
+ * Only the sessions created on a socket channel can be multiplexed, and only
+ * once the start messages have been exchanged with the remote server.
+ */
+public final class SessionMultiplexer
+{
+  /**
+   * Receives the messages of a multiplexed session.
+   */
+  public interface Listener
+  {
+    /**
+     * Processes a message received on the session. Messages are processed one
+     * at a time, in the order they were received.
+     *
+     * @param msg
+     *          the message received, or {@code null} if it could not be
+     *          recognized
+     * @return {@code false} if no more messages must be processed, because the
+     *         session is being closed
+     * @throws Exception
+     *           if the message could not be processed, in which case no more
+     *           messages are processed
+     */
+    boolean messageReceived(ReplicationMsg msg) throws Exception;
+
+    /**
+     * Notifies that no more messages will be received on the session. This
+     * is called once, after the last message has been processed.
+     *
+     * @param error
+     *          the error which ended the session, or {@code null} if it was
+     *          closed or stopped normally
+     */
+    void sessionClosed(Exception error);
+  }
+
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * Number of messages waiting to be processed for a session above which the
+   * session is not read anymore. Reading resumes when half of them have been
+   * processed.
+   */
+  private static final int MAX_PENDING_MESSAGES = 1000;
+
+  /**
+   * The maximum number of messages processed in a row for a session before
+   * giving a chance to the other sessions.
+   */
+  private static final int MAX_MESSAGES_PER_BATCH = 64;
+
+  /**
+   * Number of heartbeat intervals during which a write can make no progress
+   * before the session is closed. Writes of sessions without heartbeats use
+   * {@link #DEFAULT_WRITE_TIMEOUT_MS}.
+   */
+  private static final int WRITE_TIMEOUT_HEARTBEAT_INTERVALS = 3;
+
+  /** Write timeout of the sessions without heartbeats. */
+  private static final long DEFAULT_WRITE_TIMEOUT_MS = 30000;
+
+  /** How long the shutdown waits for the dispatcher threads to complete. */
+  private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+  private final TransportThread[] transportThreads;
+  private final AtomicInteger nextTransportThread = new AtomicInteger();
+  private final ScheduledExecutorService dispatcher;
+  private final Map<Session, Connection> connections = new ConcurrentHashMap<>();
+  private volatile boolean shutdownRequested;
+
+  /**
+   * Creates a new multiplexer. Processing messages may block on the changelog
+   * or on the lock of a replication domain, so twice as many dispatcher
+   * threads as transport threads are used.
+   *
+   * @param name
+   *          the name prefix of the threads of this multiplexer
+   * @param nbTransportThreads
+   *          the number of transport threads
+   * @throws IOException
+   *           if the selectors of the transport threads could not be opened
+   */
+  public SessionMultiplexer(final String name, final int nbTransportThreads) throws IOException
+  {
+    transportThreads = new TransportThread[nbTransportThreads];
+    try
+    {
+      for (int i = 0; i < nbTransportThreads; i++)
+      {
+        transportThreads[i] = new TransportThread(name + " transport thread " + i);
+      }
+    }
+    catch (IOException e)
+    {
+      for (TransportThread thread : transportThreads)
+      {
+        if (thread != null)
+        {
+          StaticUtils.close(thread.selector);
+        }
+      }
+      throw e;
+    }
+    dispatcher = Executors.newScheduledThreadPool(2 * nbTransportThreads,
+        new DirectoryThread.Factory(name + " dispatcher thread"));
+  }
+
+  /**
+   * Starts the transport threads.
+   */
+  public void start()
+  {
+    for (TransportThread thread : transportThreads)
+    {
+      thread.start();
+    }
+  }
+
+  /**
+   * Hands the provided session over to this multiplexer. The session must have
+   * been created on a socket channel, and must not be read anymore by the
+   * caller: from now on, the messages it receives are delivered to the
+   * provided listener.
+   *
+   * @param session
+   *          the session to multiplex
+   * @param listener
+   *          the listener receiving the messages of the session
+   * @param heartbeatInterval
+   *          the interval in milliseconds between the heartbeats to publish on
+   *          the session when no other messages are published, or 0 to not
+   *          publish heartbeats. Writes to the session time out after
+   *          {@value #WRITE_TIMEOUT_HEARTBEAT_INTERVALS} intervals without
+   *          progress.
+   */
+  public void register(final Session session, final Listener listener, final long heartbeatInterval)
+  {
+    final int index = (nextTransportThread.getAndIncrement() & Integer.MAX_VALUE) % transportThreads.length;
+    final Connection connection = new Connection(session, listener, transportThreads[index]);
+    if (heartbeatInterval > 0)
+    {
+      connection.startHeartbeats(heartbeatInterval);
+    }
+    connections.put(session, connection);
+    try
+    {
+      session.setMultiplexer(this, connection, heartbeatInterval > 0
+          ? WRITE_TIMEOUT_HEARTBEAT_INTERVALS * heartbeatInterval : DEFAULT_WRITE_TIMEOUT_MS);
+    }
+    catch (IOException e)
+    {
+      logger.traceException(e);
+      session.close();
+      connection.closed(e);
+      return;
+    }
+    connection.transportThread.register(connection);
+    if (session.closeInitiated() || shutdownRequested)
+    {
+      // The session may have been closed before it knew about this multiplexer
+      connection.closed(null);
+    }
+  }
+
+  /**
+   * Returns the number of sessions currently multiplexed.
+   *
+   * @return the number of sessions currently multiplexed
+   */
+  public int getNbSessions()
+  {
+    return connections.size();
+  }
+
+  /**
+   * Notifies that a multiplexed session has been closed.
+   *
+   * @param session
+   *          the closed session
+   */
+  void sessionClosed(final Session session)
+  {
+    final Connection connection = connections.get(session);
+    if (connection != null)
+    {
+      connection.closed(null);
+    }
+  }
+
+  /**
+   * Closes all the multiplexed sessions and stops the threads of this
+   * multiplexer.
+   */
+  public void shutdown()
+  {
+    shutdownRequested = true;
+    for (Session session : connections.keySet())
+    {
+      session.close();
+    }
+    for (TransportThread thread : transportThreads)
+    {
+      thread.selector.wakeup();
+    }
+    try
+    {
+      for (TransportThread thread : transportThreads)
+      {
+        thread.join(SHUTDOWN_TIMEOUT_MS);
+      }
+      // Let the listeners know their sessions are closed
+      dispatcher.shutdown();
+      dispatcher.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A session along with the messages received on it and not processed yet.
+   * The dispatcher processes these messages when this connection is run.
+   */
+  private final class Connection implements Runnable, SessionByteChannel.WriteWaiter
+  {
+    private final Session session;
+    private final Listener listener;
+    private final TransportThread transportThread;
+
+    /** The messages received and not processed yet, not decoded. */
+    private final Queue<byte[]> receivedMsgs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nbReceivedMsgs = new AtomicInteger();
+    /** Whether this connection has been submitted to the dispatcher. */
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+    private boolean isClosed;
+    private Exception closeError;
+    /** Only accessed by the dispatcher, one thread at a time. */
+    private boolean isCloseNotified;
+
+    /** Only accessed by the transport thread. */
+    private SelectionKey key;
+    /** Only updated by the transport thread. */
+    private volatile boolean isReadSuspended;
+
+    /**
+     * Whether the transport thread reported the channel as writable since a
+     * publishing thread started waiting for it, guarded by writeMonitor.
+     */
+    private boolean isWritable;
+    private final Object writeMonitor = new Object();
+
+    private volatile ScheduledFuture<?> heartbeats;
+
+    private Connection(final Session session, final Listener listener, final TransportThread transportThread)
+    {
+      this.session = session;
+      this.listener = listener;
+      this.transportThread = transportThread;
+    }
+
+    /** Called by the transport thread. */
+    private void register(final Selector selector)
+    {
+      try
+      {
+        key = session.getSocketChannel().register(selector, SelectionKey.OP_READ, this);
+        // Some messages may have been read before the session was multiplexed
+        processDataRead();
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        closed(session.closeInitiated() ? null : e);
+      }
+    }
+
+    /** Called by the transport thread when the channel is readable. */
+    private void processDataRead()
+    {
+      try
+      {
+        while (nbReceivedMsgs.get() < MAX_PENDING_MESSAGES)
+        {
+          final byte[] msg = session.pollReceived();
+          if (msg == null)
+          {
+            return;
+          }
+          receivedMsgs.add(msg);
+          nbReceivedMsgs.incrementAndGet();
+          schedule();
+        }
+        suspendRead();
+      }
+      catch (IOException | RuntimeException e)
+      {
+        logger.traceException(e);
+        key.cancel();
+        closed(session.closeInitiated() ? null : e);
+      }
+    }
+
+    /** Called by the transport thread. */
+    private void suspendRead()
+    {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      isReadSuspended = true;
+      if (nbReceivedMsgs.get() <= MAX_PENDING_MESSAGES / 2)
+      {
+        // The dispatcher caught up before noticing reading was suspended
+        resumeRead();
+      }
+    }
+
+    /** Called by the transport thread. */
+    private void resumeRead()
+    {
+      if (isReadSuspended && key.isValid())
+      {
+        isReadSuspended = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        // Complete messages may be left in the session read buffer
+        processDataRead();
+      }
+    }
+
+    /** Called by the publishing threads when the socket send buffer is full. */
+    @Override
+    public void awaitWritable(final long timeout) throws InterruptedIOException
+    {
+      synchronized (writeMonitor)
+      {
+        isWritable = false;
+      }
+      transportThread.watchWrite(this);
+      final long stopTime = System.currentTimeMillis() + timeout;
+      synchronized (writeMonitor)
+      {
+        try
+        {
+          while (!isWritable && !isClosed())
+          {
+            if (timeout > 0)
+            {
+              final long waitTime = stopTime - System.currentTimeMillis();
+              if (waitTime <= 0)
+              {
+                return;
+              }
+              writeMonitor.wait(waitTime);
+            }
+            else
+            {
+              writeMonitor.wait();
+            }
+          }
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+
+    /** Called by the transport thread, after a publishing thread started waiting for the channel to be writable. */
+    private void watchWrite()
+    {
+      if (key != null && key.isValid())
+      {
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      }
+      else
+      {
+        // Let the publishing thread find out the channel is closed
+        writable();
+      }
+    }
+
+    /** Called by the transport thread when the channel is writable. */
+    private void writable()
+    {
+      if (key != null && key.isValid())
+      {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      }
+      synchronized (writeMonitor)
+      {
+        isWritable = true;
+        writeMonitor.notifyAll();
+      }
+    }
+
+    private void startHeartbeats(final long heartbeatInterval)
+    {
+      final HeartbeatMsg heartbeatMsg = new HeartbeatMsg();
+      heartbeats = dispatcher.scheduleWithFixedDelay(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (System.currentTimeMillis() >= session.getLastPublishTime() + heartbeatInterval
+              && !HeartbeatThread.areHeartbeatsDisabled())
+          {
+            try
+            {
+              session.publish(heartbeatMsg);
+            }
+            catch (IOException e)
+            {
+              // The session is closed when reading it fails too.
+              logger.traceException(e);
+            }
+          }
+        }
+      }, heartbeatInterval, Math.max(1, heartbeatInterval / 4), TimeUnit.MILLISECONDS);
+    }
+
+    private void closed(final Exception error)
+    {
+      synchronized (this)
+      {
+        if (isClosed)
+        {
+          return;
+        }
+        isClosed = true;
+        closeError = error;
+      }
+      synchronized (writeMonitor)
+      {
+        writeMonitor.notifyAll();
+      }
+      schedule();
+    }
+
+    private void schedule()
+    {
+      if (isScheduled.compareAndSet(false, true))
+      {
+        try
+        {
+          dispatcher.execute(this);
+        }
+        catch (RejectedExecutionException e)
+        {
+          // Shutting down, the listener will not be notified.
+          logger.traceException(e);
+        }
+      }
+    }
+
+    /** Processes the messages received, then notifies the listener once the session is closed. */
+    @Override
+    public void run()
+    {
+      try
+      {
+        for (int i = 0; i < MAX_MESSAGES_PER_BATCH && !isCloseNotified; i++)
+        {
+          final byte[] msg = receivedMsgs.poll();
+          if (msg == null)
+          {
+            break;
+          }
+          msgProcessed();
+          process(msg);
+        }
+
+        final boolean closed;
+        final Exception error;
+        synchronized (this)
+        {
+          closed = isClosed;
+          error = closeError;
+        }
+        // When the remote server closed the session, process its last messages
+        // first. When this server closed it, they are useless.
+        if (closed && !isCloseNotified && (error == null || receivedMsgs.isEmpty()))
+        {
+          notifyClosed(error);
+        }
+      }
+      finally
+      {
+        isScheduled.set(false);
+        if (!isCloseNotified && (!receivedMsgs.isEmpty() || isClosed()))
+        {
+          schedule();
+        }
+      }
+    }
+
+    private synchronized boolean isClosed()
+    {
+      return isClosed;
+    }
+
+    private void msgProcessed()
+    {
+      if (nbReceivedMsgs.decrementAndGet() <= MAX_PENDING_MESSAGES / 2 && isReadSuspended)
+      {
+        transportThread.resumeRead(this);
+      }
+    }
+
+    private void process(final byte[] msgBuffer)
+    {
+      try
+      {
+        final ReplicationMsg msg;
+        try
+        {
+          msg = session.decode(msgBuffer);
+        }
+        catch (NotSupportedOldVersionPDUException e)
+        {
+          // Received an old PDU we do not need to support: just trash it.
+          logger.traceException(e);
+          return;
+        }
+        if (!listener.messageReceived(msg))
+        {
+          notifyClosed(null);
+        }
+      }
+      catch (Exception e)
+      {
+        notifyClosed(e);
+      }
+    }
+
+    private void notifyClosed(final Exception error)
+    {
+      isCloseNotified = true;
+      receivedMsgs.clear();
+      connections.remove(session);
+      if (heartbeats != null)
+      {
+        heartbeats.cancel(false);
+      }
+      try
+      {
+        listener.sessionClosed(error);
+      }
+      catch (RuntimeException e)
+      {
+        logger.traceException(e);
+      }
+    }
+  }
+
+  /**
+   * Thread reading the sessions registered with its selector.
+   */
+  private final class TransportThread extends DirectoryThread
+  {
+    private final Selector selector;
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingResumes = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingWriteWatches = new ConcurrentLinkedQueue<>();
+
+    private TransportThread(final String name) throws IOException
+    {
+      super(name);
+      this.selector = Selector.open();
+    }
+
+    private void register(final Connection connection)
+    {
+      pendingRegistrations.add(connection);
+      selector.wakeup();
+    }
+
+    private void resumeRead(final Connection connection)
+    {
+      pendingResumes.add(connection);
+      selector.wakeup();
+    }
+
+    private void watchWrite(final Connection connection)
+    {
+      pendingWriteWatches.add(connection);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run()
+    {
+      while (!shutdownRequested)
+      {
+        Connection connection;
+        while ((connection = pendingRegistrations.poll()) != null)
+        {
+          connection.register(selector);
+        }
+        while ((connection = pendingResumes.poll()) != null)
+        {
+          try
+          {
+            connection.resumeRead();
+          }
+          catch (CancelledKeyException e)
+          {
+            // The session has been closed meanwhile
+            logger.traceException(e);
+          }
+        }
+        while ((connection = pendingWriteWatches.poll()) != null)
+        {
+          try
+          {
+            connection.watchWrite();
+          }
+          catch (CancelledKeyException e)
+          {
+            // The session has been closed meanwhile
+            logger.traceException(e);
+            connection.writable();
+          }
+        }
+
+        try
+        {
+          selector.select();
+        }
+        catch (IOException e)
+        {
+          logger.traceException(e);
+        }
+
+        final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext())
+        {
+          final SelectionKey key = iterator.next();
+          iterator.remove();
+          try
+          {
+            final Connection selected = (Connection) key.attachment();
+            if (key.isWritable())
+            {
+              selected.writable();
+            }
+            if (key.isValid() && key.isReadable())
+            {
+              selected.processDataRead();
+            }
+          }
+          catch (CancelledKeyException e)
+          {
+            // The session has been closed between the selection and now
+            logger.traceException(e);
+          }
+        }
+      }
+      StaticUtils.close(selector);
+    }
+  }
+}
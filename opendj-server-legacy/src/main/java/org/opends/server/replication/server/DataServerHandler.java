@@ -423,6 +423,10 @@ public class DataServerHandler extends ServerHandler
         {
           session.stopEncryption();
         }
+        if (replicationServer.isMessageCompression())
+        {
+          session.enableCompression();
+        }
 
         // wait and process StartSessionMsg from remote RS
         StartSessionMsg inStartSessionMsg =
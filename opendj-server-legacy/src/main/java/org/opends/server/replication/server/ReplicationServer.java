@@ -32,10 +32,14 @@ import static org.opends.server.util.StaticUtils.*;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.net.ssl.SSLException;
+
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.config.server.ConfigChangeResult;
@@ -58,6 +62,7 @@ import org.opends.server.replication.protocol.ReplSessionSecurity;
 import org.opends.server.replication.protocol.ReplicationMsg;
 import org.opends.server.replication.protocol.ServerStartMsg;
 import org.opends.server.replication.protocol.Session;
+import org.opends.server.replication.protocol.SessionMultiplexer;
 import org.opends.server.replication.server.changelog.api.ChangeNumberIndexDB;
 import org.opends.server.replication.server.changelog.api.ChangeNumberIndexRecord;
 import org.opends.server.replication.server.changelog.api.ChangelogDB;
@@ -88,6 +93,12 @@ public class ReplicationServer
   private Thread listenThread;
   private Thread connectThread;
 
+  /**
+   * Reads the connections of this replication server with a few threads, or
+   * null if each connection is read by its own thread.
+   */
+  private SessionMultiplexer sessionMultiplexer;
+
   /** The current configuration of this replication server. */
   private ReplicationServerCfg config;
   private final DSRSShutdownSync dsrsShutdownSync;
@@ -231,8 +242,16 @@ public class ReplicationServer
           newSocket.setTcpNoDelay(true);
           newSocket.setKeepAlive(true);
           int timeoutMS = MultimasterReplication.getConnectionTimeoutMS();
-          session = replSessionSecurity.createServerSession(newSocket,
-              timeoutMS);
+          if (newSocket.getChannel() != null)
+          {
+            session = replSessionSecurity.createServerSession(
+                newSocket.getChannel(), timeoutMS);
+          }
+          else
+          {
+            session = replSessionSecurity.createServerSession(newSocket,
+                timeoutMS);
+          }
           if (session == null) // Error, go back to accept
           {
             continue;
@@ -249,7 +268,22 @@ public class ReplicationServer
           continue;
         }
 
-        ReplicationMsg msg = session.receive();
+        final ReplicationMsg msg;
+        try
+        {
+          msg = session.receive();
+        }
+        catch (SSLException e)
+        {
+          // The SSL handshake of sessions created on a socket channel happens
+          // here: this is probably a connection attempt from an unexpected
+          // client, log that to warn the administrator.
+          logger.debug(INFO_SSL_SERVER_CON_ATTEMPT_ERROR,
+              newSocket.getRemoteSocketAddress(),
+              newSocket.getLocalSocketAddress(), e.getLocalizedMessage());
+          session.close();
+          continue;
+        }
 
         final int queueSize = this.config.getQueueSize();
         final int rcvWindow = this.config.getWindowSize();
@@ -381,10 +415,11 @@ public class ReplicationServer
           + remoteServerAddress);
     }
 
-    Socket socket = new Socket();
+    Socket socket = null;
     Session session = null;
     try
     {
+      socket = sessionMultiplexer != null ? SocketChannel.open().socket() : new Socket();
       socket.setTcpNoDelay(true);
       if (config.getSourceAddress() != null)
       {
@@ -393,7 +428,14 @@ public class ReplicationServer
       }
       int timeoutMS = MultimasterReplication.getConnectionTimeoutMS();
       socket.connect(remoteServerAddress.toInetSocketAddress(), timeoutMS);
-      session = replSessionSecurity.createClientSession(socket, timeoutMS);
+      if (socket.getChannel() != null)
+      {
+        session = replSessionSecurity.createClientSession(socket.getChannel(), timeoutMS);
+      }
+      else
+      {
+        session = replSessionSecurity.createClientSession(socket, timeoutMS);
+      }
 
       ReplicationServerHandler rsHandler = new ReplicationServerHandler(
           session, config.getQueueSize(), this, config.getWindowSize());
@@ -417,7 +459,8 @@ public class ReplicationServer
       this.changelogDB.initializeDB();
 
       setServerURL();
-      listenSocket = new ServerSocket();
+      initializeSessionMultiplexer();
+      listenSocket = newListenSocket();
       listenSocket.bind(new InetSocketAddress(getReplicationPort()));
 
       // creates working threads: we must first connect, then start to listen.
@@ -449,6 +492,61 @@ public class ReplicationServer
     }
   }
 
+  /**
+   * Creates the multiplexer reading the connections of this replication
+   * server, if configured. Each connection is read by its own thread
+   * otherwise, or if the multiplexer could not be created.
+   */
+  private void initializeSessionMultiplexer()
+  {
+    if (!config.isMultiplexedTransport())
+    {
+      return;
+    }
+
+    final Integer numTransportThreads = config.getNumTransportThreads();
+    final int nbThreads = numTransportThreads != null
+        ? numTransportThreads
+        : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    try
+    {
+      sessionMultiplexer = new SessionMultiplexer(
+          "Replication server RS(" + getServerId() + ")", nbThreads);
+      sessionMultiplexer.start();
+    }
+    catch (IOException e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_COULD_NOT_START_SESSION_MULTIPLEXER, getServerId(),
+          stackTraceToSingleLineString(e));
+    }
+  }
+
+  /**
+   * Returns an unbound socket to listen for incoming connections. Its
+   * connections have a socket channel when they can be multiplexed.
+   */
+  private ServerSocket newListenSocket() throws IOException
+  {
+    if (sessionMultiplexer != null)
+    {
+      return ServerSocketChannel.open().socket();
+    }
+    return new ServerSocket();
+  }
+
+  /**
+   * Returns the multiplexer reading the connections of this replication
+   * server.
+   *
+   * @return the multiplexer reading the connections of this replication
+   *         server, or null if each connection is read by its own thread
+   */
+  SessionMultiplexer getSessionMultiplexer()
+  {
+    return sessionMultiplexer;
+  }
+
   /**
    * Enable the external changelog if it is not already enabled.
    * <p>
@@ -786,6 +884,11 @@ public class ReplicationServer
       domain.shutdown();
     }
 
+    if (sessionMultiplexer != null)
+    {
+      sessionMultiplexer.shutdown();
+    }
+
     shutdownExternalChangelog();
 
     try
@@ -890,7 +993,7 @@ public class ReplicationServer
         stopListen = false;
 
         setServerURL();
-        listenSocket = new ServerSocket();
+        listenSocket = newListenSocket();
         listenSocket.bind(new InetSocketAddress(getReplicationPort()));
 
         listenThread = new ReplicationServerListenThread(this);
@@ -1338,6 +1441,51 @@ public class ReplicationServer
     return config.isComputeChangeNumber();
   }
 
+  /**
+   * Returns whether the changelog files which are not written any more are
+   * read through read-only memory mappings.
+   *
+   * @return {@code true} if the rotated changelog files are memory mapped
+   */
+  public boolean isMemoryMappedChangelogReads()
+  {
+    return config.isMemoryMappedChangelogReads();
+  }
+
+  /**
+   * Returns the maximum time a change added to the changelog waits before being
+   * synchronized to disk, in milliseconds.
+   *
+   * @return the changelog sync latency in milliseconds, 0 when the changelog
+   *         does not run in group commit mode
+   */
+  public long getChangelogSyncLatency()
+  {
+    return config.getChangelogSyncLatency();
+  }
+
+  /**
+   * Returns the maximum number of changes synchronized to disk together when
+   * the changelog runs in group commit mode.
+   *
+   * @return the maximum number of changes synchronized together
+   */
+  public int getChangelogSyncMaxBatchSize()
+  {
+    return config.getChangelogSyncMaxBatchSize();
+  }
+
+  /**
+   * Returns whether the messages sent by this replication server are
+   * compressed, when the remote server supports it.
+   *
+   * @return {@code true} if the messages sent are compressed
+   */
+  public boolean isMessageCompression()
+  {
+    return config.isMessageCompression();
+  }
+
   /**
    * Returns whether the external change-log contains data from at least a domain.
    * @return whether the external change-log contains data from at least a domain
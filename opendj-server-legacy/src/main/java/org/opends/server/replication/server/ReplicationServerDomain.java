@@ -334,7 +334,12 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
      */
     final PreparedAssuredInfo preparedAssuredInfo = getPreparedAssuredInfo(updateMsg, sourceHandler);
 
-    if (!publishUpdateMsg(updateMsg))
+    final boolean published = publishUpdateMsg(updateMsg);
+    if (preparedAssuredInfo != null && preparedAssuredInfo.ackWhenPersisted)
+    {
+      sendAckWhenPersisted(updateMsg.getCSN(), sourceHandler);
+    }
+    if (!published)
     {
       return;
     }
@@ -544,6 +549,50 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
     }
   }
 
+  /**
+   * Sends a safe data ack to the source of an update once the update is
+   * persisted in the local changelog. When the changelog runs in group commit
+   * mode, this happens once the sync covering the update has completed.
+   * <p>
+   * The ack is sent by the assured timer thread of this domain: the thread
+   * persisting the changelog must not block on a source which stopped reading,
+   * since that would delay the group commit of all the domains.
+   */
+  void sendAckWhenPersisted(final CSN csn, final ServerHandler sourceHandler)
+  {
+    domainDB.runWhenPersisted(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          assuredTimeoutTimer.schedule(new TimerTask()
+          {
+            @Override
+            public void run()
+            {
+              try
+              {
+                sourceHandler.send(new AckMsg(csn));
+              }
+              catch (IOException e)
+              {
+                // the connection is closed, the source will not wait for this ack anymore
+                logger.traceException(e);
+              }
+            }
+          }, 0);
+        }
+        catch (IllegalStateException e)
+        {
+          // the domain is shutting down
+          logger.traceException(e);
+        }
+      }
+    });
+  }
+
   private void addUpdate(ServerHandler sHandler, UpdateMsg updateMsg,
       NotAssuredUpdateMsg notAssuredUpdateMsg, List<Integer> assuredServers)
   {
@@ -583,6 +632,12 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
        * received. Null if expectedServers is null.
        */
       public ExpectedAcksInfo expectedAcksInfo;
+
+      /**
+       * Whether the ack must be sent to the source of the update as soon as
+       * the update is persisted in the local changelog.
+       */
+      public boolean ackWhenPersisted;
   }
 
   /**
@@ -670,7 +725,8 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
 
   /**
    * Process a just received assured update message in Safe Data mode. If the
-   * ack can be sent immediately, it is done here. This will also determine to
+   * ack can be sent immediately, it is requested here, and is sent once the
+   * update is persisted in the local changelog. This will also determine to
    * which suitable servers an ack should be requested from, and which ones are
    * not eligible for an ack request.
    * This method is an helper method for the put method. Have a look at the put
@@ -688,6 +744,7 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
   {
     CSN csn = update.getCSN();
     boolean interestedInAcks = false;
+    boolean ackWhenPersisted = false;
     byte safeDataLevel = update.getSafeDataLevel();
     byte groupId = localReplicationServer.getGroupId();
     byte sourceGroupId = sourceHandler.getGroupId();
@@ -710,7 +767,7 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
              * mode with safe data level 1, coming from a DS. No need to wait
              * for more acks
              */
-            sourceHandler.send(new AckMsg(csn));
+            ackWhenPersisted = true;
           } else
           {
             /**
@@ -730,7 +787,7 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
            */
           if (safeDataLevel > (byte) 1)
           {
-            sourceHandler.send(new AckMsg(csn));
+            ackWhenPersisted = true;
           }
         }
     }
@@ -765,9 +822,10 @@ public class ReplicationServerDomain extends MonitorProvider<MonitorProviderCfg>
       {
         // level > 1 and source is a DS but no eligible servers found, send the
         // ack immediately
-        sourceHandler.send(new AckMsg(csn));
+        ackWhenPersisted = true;
       }
     }
+    preparedAssuredInfo.ackWhenPersisted = ackWhenPersisted;
 
     return preparedAssuredInfo;
   }
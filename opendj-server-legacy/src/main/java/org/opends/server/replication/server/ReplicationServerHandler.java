@@ -211,6 +211,11 @@ public class ReplicationServerHandler extends ServerHandler
         session.stopEncryption();
       }
 
+      if (replicationServer.isMessageCompression())
+      {
+        session.enableCompression();
+      }
+
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
       {
         /*
@@ -313,6 +318,11 @@ public class ReplicationServerHandler extends ServerHandler
         session.stopEncryption();
       }
 
+      if (replicationServer.isMessageCompression())
+      {
+        session.enableCompression();
+      }
+
       TopologyMsg inTopoMsg = null;
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
       {
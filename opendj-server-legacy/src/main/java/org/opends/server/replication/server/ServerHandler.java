@@ -289,32 +289,43 @@ public abstract class ServerHandler extends MessageHandler
           replicationServer.getDSRSShutdownSync());
       reader = new ServerReader(session, this);
 
-      session.setName("Replication server RS(" + getReplicationServerId()
-          + ") session thread to " + this + " at "
-          + session.getReadableRemoteAddress());
-      session.start();
-      try
+      final SessionMultiplexer multiplexer = replicationServer.getSessionMultiplexer();
+      if (multiplexer != null && session.isMultiplexable())
       {
-        session.waitForStartup();
+        // The multiplexer reads the session and publishes the heartbeats.
+        writer.start();
+        multiplexer.register(session, reader,
+            heartbeatInterval > 0 ? heartbeatInterval / 3 : 0);
       }
-      catch (InterruptedException e)
+      else
       {
-        final LocalizableMessage message =
-            ERR_SESSION_STARTUP_INTERRUPTED.get(session.getName());
-        throw new DirectoryException(ResultCode.OTHER, message, e);
-      }
-      reader.start();
-      writer.start();
+        session.setName("Replication server RS(" + getReplicationServerId()
+            + ") session thread to " + this + " at "
+            + session.getReadableRemoteAddress());
+        session.start();
+        try
+        {
+          session.waitForStartup();
+        }
+        catch (InterruptedException e)
+        {
+          final LocalizableMessage message =
+              ERR_SESSION_STARTUP_INTERRUPTED.get(session.getName());
+          throw new DirectoryException(ResultCode.OTHER, message, e);
+        }
+        reader.start();
+        writer.start();
 
-      // Create a thread to send heartbeat messages.
-      if (heartbeatInterval > 0)
-      {
-        String threadName = "Replication server RS(" + getReplicationServerId()
-            + ") heartbeat publisher to " + this + " at "
-            + session.getReadableRemoteAddress();
-        heartbeatThread = new HeartbeatThread(threadName, session,
-            heartbeatInterval / 3);
-        heartbeatThread.start();
+        // Create a thread to send heartbeat messages.
+        if (heartbeatInterval > 0)
+        {
+          String threadName = "Replication server RS(" + getReplicationServerId()
+              + ") heartbeat publisher to " + this + " at "
+              + session.getReadableRemoteAddress();
+          heartbeatThread = new HeartbeatThread(threadName, session,
+              heartbeatInterval / 3);
+          heartbeatThread.start();
+        }
       }
     }
 
@@ -532,6 +543,28 @@ public abstract class ServerHandler extends MessageHandler
     // Encryption
     attributes.add(Attributes.create("ssl-encryption", String.valueOf(session.isEncrypted())));
 
+    // Session batches: messages written to the socket between two flushes
+    final long sentBatches = session.getSentBatches();
+    attributes.add(Attributes.create("sent-batches", String.valueOf(sentBatches)));
+    attributes.add(Attributes.create("sent-messages", String.valueOf(session.getSentMessages())));
+    attributes.add(Attributes.create("sent-bytes", String.valueOf(session.getSentBytes())));
+    if (sentBatches > 0)
+    {
+      attributes.add(Attributes.create("average-sent-batch-size",
+          String.valueOf(session.getSentMessages() / sentBatches)));
+    }
+
+    // Compression
+    attributes.add(Attributes.create("compressed-sent-messages", String.valueOf(session.getCompressedMessages())));
+    attributes.add(Attributes.create("compressed-sent-bytes-before", String.valueOf(session.getUncompressedBytes())));
+    attributes.add(Attributes.create("compressed-sent-bytes-after", String.valueOf(session.getCompressedBytes())));
+    attributes.add(Attributes.create("compression-time",
+        String.valueOf(TimeUnit.NANOSECONDS.toMillis(session.getCompressionTimeNanos()))));
+    attributes.add(Attributes.create("compressed-received-messages",
+        String.valueOf(session.getDecompressedMessages())));
+    attributes.add(Attributes.create("decompression-time",
+        String.valueOf(TimeUnit.NANOSECONDS.toMillis(session.getDecompressionTimeNanos()))));
+
     // Data generation
     attributes.add(Attributes.create("generation-id", String.valueOf(generationId)));
 
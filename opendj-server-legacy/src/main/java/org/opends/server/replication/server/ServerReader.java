@@ -47,12 +47,18 @@ import static org.opends.server.util.StaticUtils.*;
  * It waits in a blocking mode on the connection from the LDAP server
  * and upon receiving an update puts in into the replicationServer cache
  * from where the other servers will grab it.
+ *
+ * When the replication server multiplexes its connections, this thread is not
+ * started: the session is read by the {@link SessionMultiplexer} instead, which
+ * hands the messages received over to this reader.
  */
-public class ServerReader extends DirectoryThread
+public class ServerReader extends DirectoryThread implements
+    SessionMultiplexer.Listener
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
   private final Session session;
   private final ServerHandler handler;
+  private LocalizableMessage errMessage;
 
   /**
    * Constructor for the LDAP server reader part of the replicationServer.
@@ -86,109 +92,15 @@ public class ServerReader extends DirectoryThread
      * grab all incoming messages and publish them to the
      * replicationServerDomain
      */
-    LocalizableMessage errMessage = null;
+    Exception error = null;
     try
     {
       while (true)
       {
         try
         {
-          final ReplicationMsg msg = session.receive();
-
-          if (logger.isTraceEnabled())
-          {
-            logger.trace("In " + getName() + " receives " + msg);
-          }
-
-          if (msg instanceof AckMsg)
-          {
-            handler.checkWindow();
-            handler.processAck((AckMsg) msg);
-          }
-          else if (msg instanceof UpdateMsg)
-          {
-            final UpdateMsg updateMsg = (UpdateMsg) msg;
-            if (!isUpdateMsgFiltered(updateMsg))
-            {
-              handler.put(updateMsg);
-            }
-          }
-          else if (msg instanceof WindowMsg)
-          {
-            handler.updateWindow((WindowMsg) msg);
-          }
-          else if (msg instanceof MonitorRequestMsg)
-          {
-            handler.processMonitorRequestMsg((MonitorRequestMsg) msg);
-          }
-          else if (msg instanceof MonitorMsg)
-          {
-            handler.processMonitorMsg((MonitorMsg) msg);
-          }
-          else if (msg instanceof RoutableMsg)
-          {
-            /*
-             * Note that we handle monitor messages separately since they in
-             * fact never need "routing" and are instead sent directly between
-             * connected peers. Doing so allows us to more clearly decouple
-             * write IO from the reader thread (see OPENDJ-1354).
-             */
-            handler.process((RoutableMsg) msg);
-          }
-          else if (msg instanceof ResetGenerationIdMsg)
-          {
-            handler.processResetGenId((ResetGenerationIdMsg) msg);
-          }
-          else if (msg instanceof WindowProbeMsg)
-          {
-            handler.replyToWindowProbe();
-          }
-          else if (msg instanceof TopologyMsg)
-          {
-            ReplicationServerHandler rsh = (ReplicationServerHandler) handler;
-            rsh.receiveTopoInfoFromRS((TopologyMsg) msg);
-          }
-          else if (msg instanceof ChangeStatusMsg)
-          {
-            ChangeStatusMsg csMsg = (ChangeStatusMsg) msg;
-            try
-            {
-              DataServerHandler dsh = (DataServerHandler) handler;
-              dsh.receiveNewStatus(csMsg);
-            }
-            catch (Exception e)
-            {
-              errMessage = ERR_RECEIVED_CHANGE_STATUS_NOT_FROM_DS.get(
-                  handler.getBaseDN(), handler.getServerId(), csMsg);
-              logger.error(errMessage);
-            }
-          }
-          else if (msg instanceof ChangeTimeHeartbeatMsg)
-          {
-            handler.process((ChangeTimeHeartbeatMsg) msg);
-          }
-          else if (msg instanceof StopMsg)
+          if (!messageReceived(session.receive()))
           {
-            /*
-             * Peer server is properly disconnecting: go out of here to properly
-             * close the server handler going to finally block.
-             */
-            if (logger.isTraceEnabled())
-            {
-              logger.trace(handler
-                  + " has properly disconnected from this replication server "
-                  + handler.getReplicationServerId());
-            }
-            return;
-          }
-          else if (msg == null)
-          {
-            /*
-             * The remote server has sent an unknown message, close the
-             * connection.
-             */
-            errMessage = NOTE_READER_NULL_MSG.get(handler);
-            logger.info(errMessage);
             return;
           }
         }
@@ -203,44 +115,159 @@ public class ServerReader extends DirectoryThread
         }
       }
     }
-    catch (SocketException e)
+    catch (Exception e)
+    {
+      error = e;
+    }
+    finally
+    {
+      sessionClosed(error);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean messageReceived(ReplicationMsg msg) throws Exception
+  {
+    if (logger.isTraceEnabled())
+    {
+      logger.trace("In " + getName() + " receives " + msg);
+    }
+
+    if (msg instanceof AckMsg)
+    {
+      handler.checkWindow();
+      handler.processAck((AckMsg) msg);
+    }
+    else if (msg instanceof UpdateMsg)
+    {
+      final UpdateMsg updateMsg = (UpdateMsg) msg;
+      if (!isUpdateMsgFiltered(updateMsg))
+      {
+        handler.put(updateMsg);
+      }
+    }
+    else if (msg instanceof WindowMsg)
+    {
+      handler.updateWindow((WindowMsg) msg);
+    }
+    else if (msg instanceof MonitorRequestMsg)
+    {
+      handler.processMonitorRequestMsg((MonitorRequestMsg) msg);
+    }
+    else if (msg instanceof MonitorMsg)
+    {
+      handler.processMonitorMsg((MonitorMsg) msg);
+    }
+    else if (msg instanceof RoutableMsg)
+    {
+      /*
+       * Note that we handle monitor messages separately since they in
+       * fact never need "routing" and are instead sent directly between
+       * connected peers. Doing so allows us to more clearly decouple
+       * write IO from the reader thread (see OPENDJ-1354).
+       */
+      handler.process((RoutableMsg) msg);
+    }
+    else if (msg instanceof ResetGenerationIdMsg)
+    {
+      handler.processResetGenId((ResetGenerationIdMsg) msg);
+    }
+    else if (msg instanceof WindowProbeMsg)
+    {
+      handler.replyToWindowProbe();
+    }
+    else if (msg instanceof TopologyMsg)
+    {
+      ReplicationServerHandler rsh = (ReplicationServerHandler) handler;
+      rsh.receiveTopoInfoFromRS((TopologyMsg) msg);
+    }
+    else if (msg instanceof ChangeStatusMsg)
+    {
+      ChangeStatusMsg csMsg = (ChangeStatusMsg) msg;
+      try
+      {
+        DataServerHandler dsh = (DataServerHandler) handler;
+        dsh.receiveNewStatus(csMsg);
+      }
+      catch (Exception e)
+      {
+        errMessage = ERR_RECEIVED_CHANGE_STATUS_NOT_FROM_DS.get(
+            handler.getBaseDN(), handler.getServerId(), csMsg);
+        logger.error(errMessage);
+      }
+    }
+    else if (msg instanceof ChangeTimeHeartbeatMsg)
+    {
+      handler.process((ChangeTimeHeartbeatMsg) msg);
+    }
+    else if (msg instanceof StopMsg)
+    {
+      /*
+       * Peer server is properly disconnecting: stop reading to properly
+       * close the server handler.
+       */
+      if (logger.isTraceEnabled())
+      {
+        logger.trace(handler
+            + " has properly disconnected from this replication server "
+            + handler.getReplicationServerId());
+      }
+      return false;
+    }
+    else if (msg == null)
+    {
+      /*
+       * The remote server has sent an unknown message, close the
+       * connection.
+       */
+      errMessage = NOTE_READER_NULL_MSG.get(handler);
+      logger.info(errMessage);
+      return false;
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void sessionClosed(Exception error)
+  {
+    if (error instanceof SocketException)
     {
       /*
        * The connection has been broken Log a message and exit from this loop So
        * that this handler is stopped.
        */
-      logException(e);
+      logException(error);
       if (!handler.shuttingDown())
       {
         errMessage = handler.getBadlyDisconnectedErrorMessage();
         logger.error(errMessage);
       }
     }
-    catch (Exception e)
+    else if (error != null)
     {
       /*
        * The remote server has sent an unknown message, close the connection.
        */
       errMessage = NOTE_READER_EXCEPTION.get(handler,
-          stackTraceToSingleLineString(e));
+          stackTraceToSingleLineString(error));
       logger.info(errMessage);
     }
-    finally
+
+    /*
+     * Reading only stops if some error condition happen.
+     * Attempt to close the socket and stop the server handler.
+     */
+    if (logger.isTraceEnabled())
     {
-      /*
-       * The thread only exits the loop above if some error condition happen.
-       * Attempt to close the socket and stop the server handler.
-       */
-      if (logger.isTraceEnabled())
-      {
-        logger.trace("In " + getName() + " closing the session");
-      }
-      session.close();
-      handler.doStop();
-      if (logger.isTraceEnabled())
-      {
-        logger.trace(getName() + " stopped: " + errMessage);
-      }
+      logger.trace("In " + getName() + " closing the session");
+    }
+    session.close();
+    handler.doStop();
+    if (logger.isTraceEnabled())
+    {
+      logger.trace(getName() + " stopped: " + errMessage);
     }
   }
 
@@ -208,6 +208,19 @@ public interface ReplicationDomainDB
   boolean publishUpdateMsg(DN baseDN, UpdateMsg updateMsg)
       throws ChangelogException;
 
+  /**
+   * Runs the provided task once all the changes published so far to the
+   * changelog DB are persisted to stable storage.
+   * <p>
+   * The task is run by the calling thread if these changes are already
+   * persisted. Otherwise, it is run by the thread persisting them, hence it
+   * must be short and must not block.
+   *
+   * @param task
+   *          the task to run
+   */
+  void runWhenPersisted(Runnable task);
+
   /**
    * Let the DB know this replica is alive.
    * <p>
@@ -27,7 +27,10 @@ package org.opends.server.replication.server.changelog.file;
 
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.api.DirectoryThread;
@@ -59,19 +62,33 @@ import static org.opends.server.util.StaticUtils.*;
  * CNIndexDB. As a consequence this class is also responsible for maintaining
  * the medium consistency point (indirectly through an
  * {@link ECLMultiDomainDBCursor}).
+ * <p>
+ * Change numbers are a total order across all the domains, so there is a single
+ * indexer thread. The threads publishing updates and heartbeats only compute
+ * the medium consistency point when this thread is actually waiting for it to
+ * move forward, and once the medium consistency point is known, all the changes
+ * older than it are inserted in one go.
  */
 public class ChangeNumberIndexer extends DirectoryThread
 {
   /** The tracer object for the debug logger. */
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * Maximum number of changes inserted in the CNIndexDB before recomputing the
+   * medium consistency point.
+   */
+  private static final int MAX_CHANGES_PER_BATCH = 1000;
+  /** Time in milliseconds between two checks that the thread is still alive while clearing a domain. */
+  private static final long CLEAR_CHECK_INTERVAL = 100;
+
   /**
    * If it contains nothing, then the run method executes normally.
    * Otherwise, the {@link #run()} method must clear its state
-   * for the supplied domain baseDNs. If a supplied domain is
-   * {@link DN#NULL_DN}, then all domains will be cleared.
+   * for the supplied domain baseDNs and release the associated latch.
+   * If a supplied domain is {@link DN#NULL_DN}, then all domains will be cleared.
    */
-  private final ConcurrentSkipListSet<DN> domainsToClear = new ConcurrentSkipListSet<>();
+  private final ConcurrentSkipListMap<DN, CountDownLatch> domainsToClear = new ConcurrentSkipListMap<>();
   private final ChangelogDB changelogDB;
   private final ChangelogStateProvider changelogStateProvider;
   private final ECLEnabledDomainPredicate predicate;
@@ -108,6 +125,43 @@ public class ChangeNumberIndexer extends DirectoryThread
   private ECLMultiDomainDBCursor nextChangeForInsertDBCursor;
   private MultiDomainServerState cookie = new MultiDomainServerState();
 
+  /**
+   * Whether the {@link #run()} method is waiting for the medium consistency
+   * point to move forward. Threads publishing updates only try to wake it up
+   * when this is true. Only written while holding this object's monitor.
+   */
+  private volatile boolean waitingForMediumConsistency;
+  /**
+   * The medium consistency point as last computed by the {@link #run()}
+   * method, or null if it must be recomputed.
+   * <p>
+   * Note: it is only accessed from the {@link #run()} method.
+   */
+  private CSN mediumConsistencyCSN;
+  /**
+   * Number of changes inserted in the CNIndexDB since
+   * {@link #mediumConsistencyCSN} was last computed.
+   * <p>
+   * Note: it is only accessed from the {@link #run()} method.
+   */
+  private int nbChangesInBatch;
+  /**
+   * Whether a replica joined, came back online or went offline since
+   * {@link #mediumConsistencyCSN} was last computed, which ends the current
+   * batch. Set by the publishing threads, cleared by the {@link #run()} method.
+   */
+  private volatile boolean replicasChangedInBatch;
+
+  /**
+   * Newest CSNs of each replica when this thread was initialized. Only the
+   * changes newer than these are accounted for in the indexing lag.
+   */
+  private volatile MultiDomainServerState lagReferenceCSNs;
+  private final AtomicLong nbChangesPublished = new AtomicLong();
+  private final AtomicLong nbChangesIndexed = new AtomicLong();
+  private final AtomicLong newestPublishedTime = new AtomicLong();
+  private volatile long lastIndexedTime;
+
   /**
    * Builds a ChangeNumberIndexer object.
    *  @param changelogDB
@@ -152,9 +206,7 @@ public class ChangeNumberIndexer extends DirectoryThread
       return;
     }
 
-    final CSN oldestCSNBefore = getOldestLastAliveCSN();
-    lastAliveCSNs.update(baseDN, heartbeatCSN);
-    tryNotify(oldestCSNBefore);
+    updateLastAliveCSN(baseDN, heartbeatCSN);
   }
 
   /**
@@ -190,9 +242,55 @@ public class ChangeNumberIndexer extends DirectoryThread
       return;
     }
 
-    final CSN oldestCSNBefore = getOldestLastAliveCSN();
-    lastAliveCSNs.update(baseDN, updateMsg.getCSN());
-    tryNotify(oldestCSNBefore);
+    final CSN csn = updateMsg.getCSN();
+    if (isAccountedInLag(baseDN, csn))
+    {
+      nbChangesPublished.incrementAndGet();
+      updateNewestPublishedTime(csn.getTime());
+    }
+    updateLastAliveCSN(baseDN, csn);
+  }
+
+  private void updateNewestPublishedTime(long time)
+  {
+    long newest;
+    do
+    {
+      newest = newestPublishedTime.get();
+    }
+    while (newest < time && !newestPublishedTime.compareAndSet(newest, time));
+  }
+
+  private boolean isAccountedInLag(DN baseDN, CSN csn)
+  {
+    final MultiDomainServerState referenceCSNs = lagReferenceCSNs;
+    return referenceCSNs != null && csn.isNewerThan(referenceCSNs.getCSN(baseDN, csn.getServerId()));
+  }
+
+  /**
+   * Updates the last alive CSN of a replica and wakes up the change number
+   * indexer thread if it is waiting for the medium consistency point to move
+   * forward and if this update moved it.
+   */
+  private void updateLastAliveCSN(DN baseDN, CSN csn)
+  {
+    final CSN previousCSN = lastAliveCSNs.getCSN(baseDN, csn.getServerId());
+    lastAliveCSNs.update(baseDN, csn);
+    // an offline replica does not take part in the medium consistency point
+    final boolean replicaOnline =
+        previousCSN != null && !previousCSN.equals(replicasOffline.getCSN(baseDN, csn.getServerId()));
+    if (!replicaOnline)
+    {
+      // the replica joins or comes back online: it can move the medium
+      // consistency point backward
+      replicasChangedInBatch = true;
+    }
+    if (waitingForMediumConsistency
+        && replicaOnline
+        && mightMoveForwardMediumConsistencyPoint(previousCSN))
+    {
+      notifyIndexer();
+    }
   }
 
   /**
@@ -213,7 +311,12 @@ public class ChangeNumberIndexer extends DirectoryThread
     replicasOffline.update(baseDN, offlineCSN);
     final CSN oldestCSNBefore = getOldestLastAliveCSN();
     lastAliveCSNs.update(baseDN, offlineCSN);
-    tryNotify(oldestCSNBefore);
+    replicasChangedInBatch = true;
+    if (oldestCSNBefore != null && oldestCSNBefore.isOlderThan(getOldestLastAliveCSN())
+        && allInitialReplicasAreOfflineOrAlive())
+    {
+      notifyIndexer();
+    }
   }
 
   private CSN getOldestLastAliveCSN()
@@ -221,34 +324,30 @@ public class ChangeNumberIndexer extends DirectoryThread
     return lastAliveCSNs.getOldestCSNExcluding(replicasOffline).getSecond();
   }
 
-  /**
-   * Notifies the Change number indexer thread if it will be able to do some
-   * work.
-   */
-  private void tryNotify(final CSN oldestCSNBefore)
+  /** Wakes up the change number indexer thread because it might have some work to do. */
+  private void notifyIndexer()
   {
-    if (mightMoveForwardMediumConsistencyPoint(oldestCSNBefore))
+    synchronized (this)
     {
-      synchronized (this)
-      {
-        notify();
-      }
+      notify();
     }
   }
 
   /**
    * Used for waking up the {@link ChangeNumberIndexer} thread because it might
    * have some work to do.
+   * <p>
+   * The oldest CSN can only have changed if the previous last alive CSN of the
+   * updated replica was older than the oldest CSN after the update, so there is
+   * no need to compute the oldest CSN before the update.
    */
-  private boolean mightMoveForwardMediumConsistencyPoint(CSN oldestCSNBefore)
+  private boolean mightMoveForwardMediumConsistencyPoint(CSN previousReplicaCSN)
   {
-    final CSN oldestCSNAfter = getOldestLastAliveCSN();
     // ensure that all initial replicas alive information have been updated
     // with CSNs that are acceptable for moving the medium consistency forward
     return allInitialReplicasAreOfflineOrAlive()
-        && oldestCSNBefore != null // then oldestCSNAfter cannot be null
         // has the oldest CSN changed?
-        && oldestCSNBefore.isOlderThan(oldestCSNAfter);
+        && previousReplicaCSN.isOlderThan(getOldestLastAliveCSN());
   }
 
   /**
@@ -264,6 +363,30 @@ public class ChangeNumberIndexer extends DirectoryThread
         && nextCSNToPersist.isOlderThanOrEqualTo(getOldestLastAliveCSN());
   }
 
+  /**
+   * Same as {@link #canMoveForwardMediumConsistencyPoint(CSN)}, but only
+   * recomputes the medium consistency point once the changes older than the
+   * last computed one have been persisted, once a batch is full, or once a
+   * replica joined, came back online or went offline.
+   * <p>
+   * The medium consistency point only moves backward when a replica joins or
+   * comes back online with an old CSN, which ends the current batch.
+   */
+  private boolean canMoveForwardMediumConsistencyPointInBatch(CSN nextCSNToPersist)
+  {
+    if (nbChangesInBatch < MAX_CHANGES_PER_BATCH
+        && !replicasChangedInBatch
+        && nextCSNToPersist.isOlderThanOrEqualTo(mediumConsistencyCSN))
+    {
+      return true;
+    }
+    // clear the flag first so that a replica change happening now is not missed
+    replicasChangedInBatch = false;
+    nbChangesInBatch = 0;
+    mediumConsistencyCSN = allInitialReplicasAreOfflineOrAlive() ? getOldestLastAliveCSN() : null;
+    return nextCSNToPersist.isOlderThanOrEqualTo(mediumConsistencyCSN);
+  }
+
   /**
    * Returns true only if the initial replicas known from the changelog state DB
    * are either:
@@ -302,6 +425,7 @@ public class ChangeNumberIndexer extends DirectoryThread
   private void initialize() throws ChangelogException
   {
     final ReplicationDomainDB domainDB = changelogDB.getReplicationDomainDB();
+    mediumConsistencyCSN = null;
 
     initializeLastAliveCSNs(domainDB);
     initializeNextChangeCursor(domainDB);
@@ -320,10 +444,15 @@ public class ChangeNumberIndexer extends DirectoryThread
 
     nextChangeForInsertDBCursor = new ECLMultiDomainDBCursor(predicate, cursorInitializedToMediumConsistencyPoint);
     ChangelogBackend.updateCookieToMediumConsistencyPoint(cookie, nextChangeForInsertDBCursor, newestRecord);
+    if (newestCsn != null && lastIndexedTime == 0)
+    {
+      lastIndexedTime = newestCsn.getTime();
+    }
   }
 
   private void initializeLastAliveCSNs(final ReplicationDomainDB domainDB)
   {
+    final MultiDomainServerState referenceCSNs = new MultiDomainServerState();
     for (Entry<DN, Set<Integer>> entry : changelogStateProvider.getChangelogState().getDomainToServerIds().entrySet())
     {
       final DN baseDN = entry.getKey();
@@ -340,8 +469,13 @@ public class ChangeNumberIndexer extends DirectoryThread
 
         final ServerState latestKnownState = domainDB.getDomainNewestCSNs(baseDN);
         lastAliveCSNs.update(baseDN, latestKnownState);
+        referenceCSNs.update(baseDN, latestKnownState);
       }
     }
+    if (lagReferenceCSNs == null)
+    {
+      lagReferenceCSNs = referenceCSNs;
+    }
   }
 
   private void initializeOfflineReplicas()
@@ -394,13 +528,15 @@ public class ChangeNumberIndexer extends DirectoryThread
       {
         try
         {
-          while (!domainsToClear.isEmpty())
+          Entry<DN, CountDownLatch> domainToClear;
+          while ((domainToClear = domainsToClear.firstEntry()) != null)
           {
-            final DN baseDNToClear = domainsToClear.first();
-            nextChangeForInsertDBCursor.removeDomain(baseDNToClear);
+            nextChangeForInsertDBCursor.removeDomain(domainToClear.getKey());
+            mediumConsistencyCSN = null;
             // Only release the waiting thread
             // once this domain's state has been cleared.
-            domainsToClear.remove(baseDNToClear);
+            domainsToClear.remove(domainToClear.getKey());
+            domainToClear.getValue().countDown();
           }
           if (nextChangeForInsertDBCursor.shouldReInitialize())
           {
@@ -415,11 +551,11 @@ public class ChangeNumberIndexer extends DirectoryThread
           {
             synchronized (this)
             {
-              if (isShutdownInitiated())
+              if (isShutdownInitiated() || !domainsToClear.isEmpty())
               {
                 continue;
               }
-              wait();
+              waitForMediumConsistencyPoint();
             }
             // check whether new changes have been added to the ReplicaDBs
             moveToNextChange();
@@ -435,23 +571,35 @@ public class ChangeNumberIndexer extends DirectoryThread
           final DN baseDN = nextChangeForInsertDBCursor.getData();
           // FIXME problem: what if the serverId is not part of the ServerState?
           // right now, change number will be blocked
-          if (!canMoveForwardMediumConsistencyPoint(csn))
+          if (!canMoveForwardMediumConsistencyPointInBatch(csn))
           {
             // the oldest record to insert is newer than the medium consistency
             // point. Let's wait for a change that can be published.
             synchronized (this)
             {
-              // double check to protect against a missed call to notify()
-              if (!canMoveForwardMediumConsistencyPoint(csn))
+              // publishing threads must see this flag before the double check
+              waitingForMediumConsistency = true;
+              try
               {
-                if (isShutdownInitiated())
+                // double check to protect against a missed call to notify()
+                if (!canMoveForwardMediumConsistencyPoint(csn))
                 {
-                  return;
+                  if (isShutdownInitiated())
+                  {
+                    return;
+                  }
+                  if (domainsToClear.isEmpty())
+                  {
+                    wait();
+                  }
+                  // loop to check if changes older than the medium consistency
+                  // point have been added to the ReplicaDBs
+                  continue;
                 }
-                wait();
-                // loop to check if changes older than the medium consistency
-                // point have been added to the ReplicaDBs
-                continue;
+              }
+              finally
+              {
+                waitingForMediumConsistency = false;
               }
             }
           }
@@ -466,6 +614,12 @@ public class ChangeNumberIndexer extends DirectoryThread
                 + ") would have updated the cookie=" + cookie + ", but it did not");
           }
           notifyEntryAddedToChangelog(baseDN, changeNumber, cookie, msg);
+          nbChangesInBatch++;
+          if (isAccountedInLag(baseDN, csn))
+          {
+            nbChangesIndexed.incrementAndGet();
+          }
+          lastIndexedTime = csn.getTime();
           moveForwardMediumConsistencyPoint(csn, baseDN);
         }
         catch (InterruptedException ignored)
@@ -494,6 +648,23 @@ public class ChangeNumberIndexer extends DirectoryThread
     }
   }
 
+  /**
+   * Waits until a thread publishing to the changelog wakes this thread up.
+   * Must be called while holding this object's monitor.
+   */
+  private void waitForMediumConsistencyPoint() throws InterruptedException
+  {
+    waitingForMediumConsistency = true;
+    try
+    {
+      wait();
+    }
+    finally
+    {
+      waitingForMediumConsistency = false;
+    }
+  }
+
   private void moveToNextChange() throws ChangelogException
   {
     try
@@ -593,18 +764,53 @@ public class ChangeNumberIndexer extends DirectoryThread
   {
     // Use DN.NULL_DN to say "clear all domains"
     final DN baseDNToClear = baseDN != null ? baseDN : DN.NULL_DN;
-    domainsToClear.add(baseDNToClear);
-    while (domainsToClear.contains(baseDNToClear)
-        && !State.TERMINATED.equals(getState()))
+    final CountDownLatch newLatch = new CountDownLatch(1);
+    final CountDownLatch existingLatch = domainsToClear.putIfAbsent(baseDNToClear, newLatch);
+    final CountDownLatch latch = existingLatch != null ? existingLatch : newLatch;
+    notifyIndexer();
+    try
     {
-      // wait until clear() has been done by thread, always waking it up
-      synchronized (this)
+      // wait until clear() has been done by thread
+      while (!latch.await(CLEAR_CHECK_INTERVAL, TimeUnit.MILLISECONDS)
+          && !State.TERMINATED.equals(getState()))
       {
-        notify();
+        // ensure the thread did not miss the notification
+        notifyIndexer();
       }
-      // ensures thread wait that this thread's state is cleaned up
-      Thread.yield();
     }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of changes published to the changelog since this thread
+   * was initialized that have not been inserted in the CNIndexDB yet.
+   *
+   * @return the number of changes waiting to be inserted in the CNIndexDB
+   */
+  public long getIndexingLagCount()
+  {
+    return Math.max(0, nbChangesPublished.get() - nbChangesIndexed.get());
+  }
+
+  /**
+   * Returns the time difference in milliseconds between the newest change
+   * published to the changelog and the last change inserted in the CNIndexDB.
+   *
+   * @return the time the CNIndexDB is lagging behind the changelog,
+   *         in milliseconds
+   */
+  public long getIndexingLagTime()
+  {
+    final long lastIndexed = lastIndexedTime;
+    final long newestPublished = newestPublishedTime.get();
+    if (lastIndexed == 0 || newestPublished == 0)
+    {
+      return 0;
+    }
+    return Math.max(0, newestPublished - lastIndexed);
   }
 
 }
@@ -0,0 +1,281 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.replication.server.ReplicationServer;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+
+import static org.opends.messages.ReplicationMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+/**
+ * Thread synchronizing the replica DBs to disk when the changelog runs in
+ * group commit mode.
+ * <p>
+ * In group commit mode, the changes added to the replica DBs are not
+ * synchronized to disk one by one. Instead, this thread synchronizes at once
+ * all the replica DBs modified since its previous pass, at most
+ * {@link ReplicationServer#getChangelogSyncLatency()} milliseconds after the
+ * oldest of these changes was added, or earlier if
+ * {@link ReplicationServer#getChangelogSyncMaxBatchSize()} changes are waiting.
+ * The tasks waiting for these changes to be persisted, like safe data assured
+ * acks, are run once the covering sync has completed.
+ */
+class ChangelogSyncer extends DirectoryThread
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The changes of a replica DB waiting to be synchronized. */
+  private static final class PendingChanges
+  {
+    private int nbChanges;
+    /** The time the oldest of these changes was added, in nanoseconds. */
+    private final long firstChangeNanos;
+
+    private PendingChanges(long firstChangeNanos)
+    {
+      this.firstChangeNanos = firstChangeNanos;
+    }
+  }
+
+  private final ReplicationServer replicationServer;
+  private final Object lock = new Object();
+  /** @GuardedBy("lock") */
+  private Map<FileReplicaDB, PendingChanges> pendingChanges = new LinkedHashMap<>();
+  /** @GuardedBy("lock") */
+  private List<Runnable> pendingTasks = new ArrayList<>();
+  /** @GuardedBy("lock") */
+  private int nbPendingChanges;
+  /** The time the oldest pending change was added, in nanoseconds. @GuardedBy("lock") */
+  private long oldestPendingChangeNanos;
+  /** Whether a batch of changes is being synchronized. @GuardedBy("lock") */
+  private boolean syncInProgress;
+
+  /**
+   * Creates a new syncer.
+   *
+   * @param replicationServer
+   *          the replication server providing the group commit parameters
+   */
+  ChangelogSyncer(ReplicationServer replicationServer)
+  {
+    super("Changelog DB syncer");
+    this.replicationServer = replicationServer;
+  }
+
+  /**
+   * Returns whether the changelog runs in group commit mode.
+   *
+   * @return {@code true} if the changes added to the replica DBs must be
+   *         notified to this syncer
+   */
+  boolean isGroupCommitEnabled()
+  {
+    return replicationServer.getChangelogSyncLatency() > 0 && !isShutdownInitiated();
+  }
+
+  /**
+   * Notifies this syncer that a change has been added to the provided replica
+   * DB and must be synchronized to disk.
+   *
+   * @param replicaDB
+   *          the replica DB where the change was added
+   */
+  void notifyChangeAdded(FileReplicaDB replicaDB)
+  {
+    synchronized (lock)
+    {
+      final long now = System.nanoTime();
+      PendingChanges changes = pendingChanges.get(replicaDB);
+      if (changes == null)
+      {
+        changes = new PendingChanges(now);
+        pendingChanges.put(replicaDB, changes);
+      }
+      changes.nbChanges++;
+      if (nbPendingChanges++ == 0)
+      {
+        oldestPendingChangeNanos = now;
+        lock.notify();
+      }
+      else if (nbPendingChanges >= replicationServer.getChangelogSyncMaxBatchSize())
+      {
+        lock.notify();
+      }
+    }
+  }
+
+  /**
+   * Runs the provided task once all the changes notified so far are
+   * synchronized to disk. The task is run by the calling thread if there is
+   * nothing left to synchronize.
+   *
+   * @param task
+   *          the task to run
+   */
+  void runWhenPersisted(Runnable task)
+  {
+    synchronized (lock)
+    {
+      if (nbPendingChanges > 0 || syncInProgress)
+      {
+        // when a sync is in progress, the next pass runs the task after it completes
+        pendingTasks.add(task);
+        lock.notify();
+        return;
+      }
+    }
+    runTask(task);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void initiateShutdown()
+  {
+    super.initiateShutdown();
+    synchronized (lock)
+    {
+      lock.notify();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void run()
+  {
+    try
+    {
+      while (!isShutdownInitiated())
+      {
+        try
+        {
+          syncPendingChanges(false);
+        }
+        catch (InterruptedException e)
+        {
+          // shutdown initiated?
+        }
+      }
+      // nothing is added anymore, flush what is left
+      syncPendingChanges(true);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (ChangelogException e)
+    {
+      // the waiting tasks are not run: the changes they wait for may not have been persisted
+      logger.error(ERR_CHANGELOG_SHUTDOWN_DATABASE_ERROR, stackTraceToSingleLineString(e));
+      replicationServer.shutdown();
+    }
+  }
+
+  /**
+   * Waits for the next batch of changes to be complete, then synchronizes it
+   * and runs the tasks which were waiting for it.
+   */
+  private void syncPendingChanges(boolean isFinalPass) throws InterruptedException, ChangelogException
+  {
+    final Map<FileReplicaDB, PendingChanges> changesToSync;
+    final List<Runnable> tasksToRun;
+    synchronized (lock)
+    {
+      if (!isFinalPass)
+      {
+        waitForBatch();
+      }
+      changesToSync = pendingChanges;
+      tasksToRun = pendingTasks;
+      pendingChanges = new LinkedHashMap<>();
+      pendingTasks = new ArrayList<>();
+      nbPendingChanges = 0;
+      syncInProgress = true;
+    }
+
+    try
+    {
+      for (Map.Entry<FileReplicaDB, PendingChanges> entry : changesToSync.entrySet())
+      {
+        final FileReplicaDB replicaDB = entry.getKey();
+        final PendingChanges changes = entry.getValue();
+        replicaDB.syncToFileSystem();
+        replicaDB.syncCompleted(changes.nbChanges, System.nanoTime() - changes.firstChangeNanos);
+      }
+    }
+    finally
+    {
+      synchronized (lock)
+      {
+        syncInProgress = false;
+      }
+    }
+
+    for (Runnable task : tasksToRun)
+    {
+      runTask(task);
+    }
+  }
+
+  /** @GuardedBy("lock") */
+  private void waitForBatch() throws InterruptedException
+  {
+    while (!isShutdownInitiated() && nbPendingChanges == 0 && pendingTasks.isEmpty())
+    {
+      lock.wait();
+    }
+    while (!isShutdownInitiated() && nbPendingChanges < replicationServer.getChangelogSyncMaxBatchSize())
+    {
+      final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestPendingChangeNanos);
+      final long remainingMillis = replicationServer.getChangelogSyncLatency() - elapsedMillis;
+      if (nbPendingChanges == 0 || remainingMillis <= 0)
+      {
+        return;
+      }
+      lock.wait(remainingMillis);
+    }
+  }
+
+  private void runTask(Runnable task)
+  {
+    try
+    {
+      task.run();
+    }
+    catch (RuntimeException e)
+    {
+      logger.traceException(e);
+    }
+  }
+}
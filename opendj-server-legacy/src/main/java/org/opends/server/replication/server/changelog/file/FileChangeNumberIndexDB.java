@@ -308,6 +308,12 @@ class FileChangeNumberIndexDB implements ChangeNumberIndexDB
       attributes.add(toAttribute(ChangeNumberType.FIRST, firstCN));
       attributes.add(toAttribute(ChangeNumberType.LAST, lastCN));
       attributes.add(Attributes.create("count", Long.toString(numberOfChanges)));
+      final ChangeNumberIndexer indexer = changelogDB.getChangeNumberIndexer();
+      if (indexer != null)
+      {
+        attributes.add(Attributes.create("indexing-lag-count", Long.toString(indexer.getIndexingLagCount())));
+        attributes.add(Attributes.create("indexing-lag-time", Long.toString(indexer.getIndexingLagTime())));
+      }
       return attributes;
     }
 
@@ -116,6 +116,8 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
    */
   private volatile long purgeDelayInMillis;
   private final AtomicReference<ChangelogDBPurger> cnPurger = new AtomicReference<>();
+  /** Synchronizes the replica DBs to disk in group commit mode. */
+  private ChangelogSyncer syncer;
 
   /** The local replication server. */
   private final ReplicationServer replicationServer;
@@ -289,6 +291,8 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
       replicationEnv = new ReplicationEnvironment(dbDirectory.getAbsolutePath(), replicationServer, TimeService.SYSTEM);
       final ChangelogState changelogState = replicationEnv.getChangelogState();
       initializeToChangelogState(changelogState);
+      syncer = new ChangelogSyncer(replicationServer);
+      syncer.start();
       if (replicationServer.isChangeNumberEnabled())
       {
         startIndexer();
@@ -338,6 +342,10 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
 
     shutdownCNIndexerAndPurger();
+    if (syncer != null)
+    {
+      syncer.initiateShutdown();
+    }
 
     // Remember the first exception because :
     // - we want to try to remove everything we want to remove
@@ -619,6 +627,17 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
   }
 
+  /**
+   * Returns the thread inserting changes in the change number index DB.
+   *
+   * @return the change number indexer, or {@code null} if change numbers are
+   *         not computed
+   */
+  ChangeNumberIndexer getChangeNumberIndexer()
+  {
+    return cnIndexer.get();
+  }
+
   void resetChangeNumberIndex(long newFirstCN, DN baseDN, CSN newFirstCSN) throws ChangelogException
   {
     if (!replicationServer.isChangeNumberEnabled())
@@ -813,6 +832,10 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
         csn.getServerId(), replicationServer);
     final FileReplicaDB replicaDB = pair.getFirst();
     replicaDB.add(updateMsg);
+    if (syncer != null && syncer.isGroupCommitEnabled())
+    {
+      syncer.notifyChangeAdded(replicaDB);
+    }
 
     ChangelogBackend.getInstance().notifyCookieEntryAdded(baseDN, updateMsg);
 
@@ -825,6 +848,19 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     return pair.getSecond(); // replica DB was created
   }
 
+  @Override
+  public void runWhenPersisted(final Runnable task)
+  {
+    if (syncer != null)
+    {
+      syncer.runWhenPersisted(task);
+    }
+    else
+    {
+      task.run();
+    }
+  }
+
   @Override
   public void replicaHeartbeat(final DN baseDN, final CSN heartbeatCSN) throws ChangelogException
   {
@@ -28,6 +28,7 @@ package org.opends.server.replication.server.changelog.file;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.forgerock.opendj.config.server.ConfigException;
@@ -104,6 +105,15 @@ class FileReplicaDB
   private final ReplicationServer replicationServer;
   private final ReplicationEnvironment replicationEnv;
 
+  /*
+   * Group commit statistics, only updated by the ChangelogSyncer thread.
+   */
+  private volatile long nbSyncs;
+  private volatile long nbSyncedChanges;
+  private volatile long totalSyncLatencyInNanos;
+  private volatile int lastSyncBatchSize;
+  private volatile long lastSyncLatencyInNanos;
+
   /**
    * Creates a new ReplicaDB associated to a given LDAP server.
    *
@@ -181,6 +191,35 @@ class FileReplicaDB
     }
   }
 
+  /**
+   * Synchronizes the changes added to this replica DB to the file system.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  void syncToFileSystem() throws ChangelogException
+  {
+    log.syncToFileSystem();
+  }
+
+  /**
+   * Records the statistics of a group commit covering this replica DB.
+   *
+   * @param batchSize
+   *          the number of changes of this replica DB covered by the sync
+   * @param latencyInNanos
+   *          the time elapsed between the addition of the oldest of these
+   *          changes and the completion of the sync
+   */
+  void syncCompleted(final int batchSize, final long latencyInNanos)
+  {
+    nbSyncs++;
+    nbSyncedChanges += batchSize;
+    totalSyncLatencyInNanos += latencyInNanos;
+    lastSyncBatchSize = batchSize;
+    lastSyncLatencyInNanos = latencyInNanos;
+  }
+
   /**
    * Get the oldest CSN that has not been purged yet.
    *
@@ -278,6 +317,15 @@ class FileReplicaDB
       {
         create(attributes, "last-change", encode(limits.newestCSN));
       }
+      final long syncs = nbSyncs;
+      if (syncs > 0)
+      {
+        create(attributes, "sync-count", String.valueOf(syncs));
+        create(attributes, "sync-average-batch-size", String.valueOf(nbSyncedChanges / syncs));
+        create(attributes, "sync-last-batch-size", String.valueOf(lastSyncBatchSize));
+        create(attributes, "sync-average-latency", String.valueOf(toMillis(totalSyncLatencyInNanos / syncs)));
+        create(attributes, "sync-last-latency", String.valueOf(toMillis(lastSyncLatencyInNanos)));
+      }
       return attributes;
     }
 
@@ -286,6 +334,11 @@ class FileReplicaDB
       attributes.add(Attributes.create(name, value));
     }
 
+    private long toMillis(final long nanos)
+    {
+      return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     private String encode(final CSN csn)
     {
       return csn + " " + new Date(csn.getTime());
@@ -188,11 +188,11 @@ final class Log<K extends Comparable<K>, V> implements Closeable
 
   /**
    * The exclusive lock used for log rotation and lifecycle operations on this log:
-   * initialize, clear, sync and close.
+   * initialize, clear and close.
    */
   private final Lock exclusiveLock;
 
-  /** The shared lock used for write operations and accessing {@link #logFiles} map. */
+  /** The shared lock used for write and sync operations and accessing {@link #logFiles} map. */
   private final Lock sharedLock;
 
   /**
@@ -535,14 +535,18 @@ final class Log<K extends Comparable<K>, V> implements Closeable
    */
   public void syncToFileSystem() throws ChangelogException
   {
-    exclusiveLock.lock();
+    // Records appended to rotated log files have been synced when these files were closed
+    sharedLock.lock();
     try
     {
-      getHeadLogFile().syncToFileSystem();
+      if (!isClosed)
+      {
+        getHeadLogFile().syncToFileSystem();
+      }
     }
     finally
     {
-      exclusiveLock.unlock();
+      sharedLock.unlock();
     }
   }
 
@@ -1130,7 +1134,8 @@ final class Log<K extends Comparable<K>, V> implements Closeable
 
   private void openReadOnlyLogFile(final File logFilePath) throws ChangelogException
   {
-    final LogFile<K, V> logFile = LogFile.newReadOnlyLogFile(logFilePath, recordParser);
+    final LogFile<K, V> logFile =
+        LogFile.newReadOnlyLogFile(logFilePath, recordParser, replicationEnv.isMemoryMappedReadEnabled());
     final Pair<K, K> bounds = getKeyBounds(logFile);
     logFiles.put(bounds.getSecond(), logFile);
   }
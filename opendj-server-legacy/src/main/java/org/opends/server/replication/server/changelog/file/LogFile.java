@@ -99,11 +99,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
    * @param isWriteEnabled
    *          {@code true} if this changelog is write-enabled, {@code false}
    *          otherwise.
+   * @param isMemoryMapped
+   *          {@code true} if this read-only log file must be read through a
+   *          memory mapping, {@code false} otherwise.
    * @throws ChangelogException
    *            If a problem occurs during initialization.
    */
-  private LogFile(final File logFilePath, final RecordParser<K, V> parser, boolean isWriteEnabled)
-      throws ChangelogException
+  private LogFile(final File logFilePath, final RecordParser<K, V> parser, boolean isWriteEnabled,
+      boolean isMemoryMapped) throws ChangelogException
   {
     Reject.ifNull(logFilePath, parser);
     this.logfile = logFilePath;
@@ -119,7 +122,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     {
       writer = null;
     }
-    readerPool = new LogReaderPool<>(logfile, parser);
+    readerPool = new LogReaderPool<>(logfile, parser, isMemoryMapped && !isWriteEnabled);
 
     final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     exclusiveLock = rwLock.writeLock();
@@ -137,14 +140,18 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
    *          Path of the log file.
    * @param parser
    *          Parser of records.
+   * @param isMemoryMapped
+   *          {@code true} if the log file must be read through a read-only
+   *          memory mapping, {@code false} if it must be read through file
+   *          handles.
    * @return a read-only log file
    * @throws ChangelogException
    *            If a problem occurs during initialization.
    */
   static <K extends Comparable<K>, V> LogFile<K, V> newReadOnlyLogFile(final File logFilePath,
-      final RecordParser<K, V> parser) throws ChangelogException
+      final RecordParser<K, V> parser, final boolean isMemoryMapped) throws ChangelogException
   {
-    return new LogFile<>(logFilePath, parser, false);
+    return new LogFile<>(logFilePath, parser, false, isMemoryMapped);
   }
 
   /**
@@ -166,7 +173,7 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   static <K extends Comparable<K>, V> LogFile<K, V> newAppendableLogFile(final File logFilePath,
       final RecordParser<K, V> parser) throws ChangelogException
   {
-    return new LogFile<>(logFilePath, parser, true);
+    return new LogFile<>(logFilePath, parser, true, false);
   }
 
   /**
@@ -377,21 +384,16 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   {
     if (newestRecord == null)
     {
-      try (BlockLogReader<K, V> reader = getReader())
+      final BlockLogReader<K, V> reader = getReader();
+      sharedLock.lock();
+      try
       {
-        sharedLock.lock();
-        try
-        {
-          newestRecord = reader.getNewestRecord();
-        }
-        finally
-        {
-          sharedLock.unlock();
-        }
+        newestRecord = reader.getNewestRecord();
       }
-      catch (IOException ioe)
+      finally
       {
-        throw new ChangelogException(ERR_CHANGELOG_CANNOT_READ_NEWEST_RECORD.get(logfile.getAbsolutePath()), ioe);
+        sharedLock.unlock();
+        releaseReader(reader);
       }
     }
     return newestRecord;
@@ -0,0 +1,265 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * Random access to the content of a log file, either through a file handle or
+ * through a read-only memory mapping of the file.
+ * <p>
+ * An input is not thread-safe: it must be used by a single reader at a time.
+ */
+abstract class LogFileInput implements Closeable
+{
+  /**
+   * Returns an input reading the provided file handle.
+   *
+   * @param file
+   *          The file handle, which is closed when the input is closed.
+   * @return a new input
+   */
+  static LogFileInput newFileInput(final RandomAccessFile file)
+  {
+    return new FileInput(file);
+  }
+
+  /**
+   * Returns an input reading the provided memory mapping of a log file.
+   *
+   * @param mappedFile
+   *          The mapping of the whole log file. The input reads a duplicate of
+   *          this buffer, so the same mapping can be shared by several inputs.
+   * @return a new input
+   */
+  static LogFileInput newMappedInput(final ByteBuffer mappedFile)
+  {
+    return new MappedInput(mappedFile.duplicate());
+  }
+
+  /**
+   * Sets the position at which the next read occurs.
+   *
+   * @param position
+   *          offset from the beginning of the file, in bytes.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract void seek(long position) throws IOException;
+
+  /**
+   * Returns the position at which the next read occurs.
+   *
+   * @return offset from the beginning of the file, in bytes
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract long getFilePointer() throws IOException;
+
+  /**
+   * Returns the length of the file.
+   *
+   * @return the length of the file, in bytes
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract long length() throws IOException;
+
+  /**
+   * Reads exactly {@code bytes.length} bytes.
+   *
+   * @param bytes
+   *          The buffer to fill.
+   * @throws EOFException
+   *           If the end of file is reached before reading all the bytes.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract void readFully(byte[] bytes) throws IOException;
+
+  /**
+   * Reads exactly {@code length} bytes and appends them to the provided builder.
+   *
+   * @param builder
+   *          The builder to append to.
+   * @param length
+   *          The number of bytes to read.
+   * @throws EOFException
+   *           If the end of file is reached before reading all the bytes.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract void readFully(ByteStringBuilder builder, int length) throws IOException;
+
+  /**
+   * Skips over {@code length} bytes, or less if the end of file is reached.
+   *
+   * @param length
+   *          The number of bytes to skip.
+   * @throws IOException
+   *           If an error occurs.
+   */
+  abstract void skipBytes(int length) throws IOException;
+
+  /** Input reading a file handle. */
+  private static final class FileInput extends LogFileInput
+  {
+    private final RandomAccessFile file;
+
+    private FileInput(final RandomAccessFile file)
+    {
+      this.file = file;
+    }
+
+    @Override
+    void seek(final long position) throws IOException
+    {
+      file.seek(position);
+    }
+
+    @Override
+    long getFilePointer() throws IOException
+    {
+      return file.getFilePointer();
+    }
+
+    @Override
+    long length() throws IOException
+    {
+      return file.length();
+    }
+
+    @Override
+    void readFully(final byte[] bytes) throws IOException
+    {
+      file.readFully(bytes);
+    }
+
+    @Override
+    void readFully(final ByteStringBuilder builder, final int length) throws IOException
+    {
+      builder.appendBytes(file, length);
+    }
+
+    @Override
+    void skipBytes(final int length) throws IOException
+    {
+      file.skipBytes(length);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      file.close();
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.valueOf(file);
+    }
+  }
+
+  /**
+   * Input reading a memory mapping. The mapping is released by the garbage
+   * collector once no input references it any more.
+   */
+  private static final class MappedInput extends LogFileInput
+  {
+    private final ByteBuffer buffer;
+
+    private MappedInput(final ByteBuffer buffer)
+    {
+      this.buffer = buffer;
+    }
+
+    @Override
+    void seek(final long position)
+    {
+      // Like a file handle, seeking past the end of file is allowed, the next read hits the end of file
+      buffer.position((int) Math.min(position, buffer.limit()));
+    }
+
+    @Override
+    long getFilePointer()
+    {
+      return buffer.position();
+    }
+
+    @Override
+    long length()
+    {
+      return buffer.limit();
+    }
+
+    @Override
+    void readFully(final byte[] bytes) throws IOException
+    {
+      ensureRemaining(bytes.length);
+      buffer.get(bytes);
+    }
+
+    @Override
+    void readFully(final ByteStringBuilder builder, final int length) throws IOException
+    {
+      ensureRemaining(length);
+      builder.appendBytes(buffer, length);
+    }
+
+    private void ensureRemaining(final int length) throws EOFException
+    {
+      if (buffer.remaining() < length)
+      {
+        buffer.position(buffer.limit());
+        throw new EOFException();
+      }
+    }
+
+    @Override
+    void skipBytes(final int length)
+    {
+      buffer.position(buffer.position() + Math.min(length, buffer.remaining()));
+    }
+
+    @Override
+    public void close()
+    {
+      // Nothing to do, the mapping is shared
+    }
+
+    @Override
+    public String toString()
+    {
+      return "MappedInput(" + buffer + ")";
+    }
+  }
+}
@@ -21,35 +21,66 @@
  * CDDL HEADER END
  *
  *
- *      Copyright 2014 ForgeRock AS.
+ *      Copyright 2014-2015 ForgeRock AS.
  */
 package org.opends.server.replication.server.changelog.file;
 
+import static org.opends.messages.ReplicationMessages.*;
+
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.util.StaticUtils;
 
-import static org.opends.messages.ReplicationMessages.*;
-
 /**
- * A Pool of readers to a log file.
-
+ * A bounded pool of readers to a log file.
+ * <p>
+ * Released readers are kept opened, up to {@link #MAX_IDLE_READERS}, and
+ * handed out again by the next calls to {@code get()}, so that the cursors on
+ * the log do not pay for opening and closing the file each time. Readers
+ * released while the pool is full are closed.
+ * <p>
+ * When the log file is not written any more, the pool can optionally read it
+ * through a single read-only memory mapping shared by all its readers. Reading
+ * a record or positioning a cursor with a binary search then only accesses
+ * memory, and readers do not hold any file handle. The mapping is not unmapped
+ * explicitly, which would crash the JVM if a reader still used it, but by the
+ * garbage collector once the pool and all its readers are unreachable: until
+ * then, the file cannot be deleted on platforms like Windows.
  *
  * @param <K>
  *          Type of the key of a record, which must be comparable.
  * @param <V>
  *          Type of the value of a record.
  */
-// TODO : implement a real pool - reusing readers instead of opening-closing them each time
 class LogReaderPool<K extends Comparable<K>, V>
 {
+  /** Maximum number of released readers kept opened for reuse. */
+  static final int MAX_IDLE_READERS = 8;
+
   /** The file to read. */
   private final File file;
 
   private final RecordParser<K, V> parser;
 
+  /** Indicates whether the file is read through a memory mapping. */
+  private final boolean isMemoryMapped;
+
+  /** The released readers, available for reuse. */
+  private final BlockingQueue<BlockLogReader<K, V>> idleReaders = new ArrayBlockingQueue<>(MAX_IDLE_READERS);
+
+  /** The memory mapping of the file, lazily created. */
+  private MappedByteBuffer mappedFile;
+
+  private volatile boolean isShutdown;
+
   /**
    * Creates a pool of readers for provided file.
    *
@@ -57,15 +88,21 @@ class LogReaderPool<K extends Comparable<K>, V>
    *          The file to read.
    * @param parser
    *          The parser to decode the records read.
+   * @param isMemoryMapped
+   *          Indicates whether the file must be read through a read-only
+   *          memory mapping. The file must not be written any more in this
+   *          case.
    */
-  LogReaderPool(File file, RecordParser<K, V> parser)
+  LogReaderPool(File file, RecordParser<K, V> parser, boolean isMemoryMapped)
   {
     this.file = file;
     this.parser = parser;
+    this.isMemoryMapped = isMemoryMapped;
   }
 
   /**
-   * Returns a random access reader on the provided file.
+   * Returns a random access reader on the provided file, positioned at the
+   * beginning of the file.
    * <p>
    * The acquired reader must be released with the {@code release()}
    * method.
@@ -76,6 +113,20 @@ class LogReaderPool<K extends Comparable<K>, V>
    */
   BlockLogReader<K, V> get() throws ChangelogException
   {
+    final BlockLogReader<K, V> reader = idleReaders.poll();
+    if (reader != null)
+    {
+      try
+      {
+        reader.seekToPosition(0);
+        return reader;
+      }
+      catch (ChangelogException e)
+      {
+        StaticUtils.close(reader);
+        throw e;
+      }
+    }
     return getReader(file);
   }
 
@@ -90,7 +141,15 @@ class LogReaderPool<K extends Comparable<K>, V>
    */
   void release(BlockLogReader<K, V> reader)
   {
-    StaticUtils.close(reader);
+    if (isShutdown || !idleReaders.offer(reader))
+    {
+      StaticUtils.close(reader);
+    }
+    else if (isShutdown && idleReaders.remove(reader))
+    {
+      // the pool has been shutdown concurrently
+      StaticUtils.close(reader);
+    }
   }
 
   /** Returns a random access file to read this log. */
@@ -98,7 +157,11 @@ class LogReaderPool<K extends Comparable<K>, V>
   {
     try
     {
-      return BlockLogReader.newReader(file, new RandomAccessFile(file, "r"), parser) ;
+      if (isMemoryMapped)
+      {
+        return BlockLogReader.newMappedReader(file, getMappedFile(), parser);
+      }
+      return BlockLogReader.newReader(file, new RandomAccessFile(file, "r"), parser);
     }
     catch (Exception e)
     {
@@ -106,13 +169,38 @@ class LogReaderPool<K extends Comparable<K>, V>
     }
   }
 
+  /** Returns the memory mapping of the whole file, creating it if needed. */
+  private synchronized MappedByteBuffer getMappedFile() throws IOException
+  {
+    if (mappedFile == null)
+    {
+      // The mapping remains valid once the file handle is closed
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+          FileChannel channel = randomAccessFile.getChannel())
+      {
+        mappedFile = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      }
+    }
+    return mappedFile;
+  }
+
   /**
    * Shutdown this pool, releasing all files handles opened
    * on the file.
+   * <p>
+   * Readers still in use are closed when they are released.
    */
   void shutdown()
   {
-    // Nothing to do yet as no file handle is kept opened.
+    isShutdown = true;
+    for (BlockLogReader<K, V> reader = idleReaders.poll(); reader != null; reader = idleReaders.poll())
+    {
+      StaticUtils.close(reader);
+    }
+    synchronized (this)
+    {
+      // the mapping is unmapped once the readers still in use are garbage collected
+      mappedFile = null;
+    }
   }
-
 }
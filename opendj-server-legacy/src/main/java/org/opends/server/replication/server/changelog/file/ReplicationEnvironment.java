@@ -65,6 +65,8 @@ import org.opends.server.types.DN;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.util.StaticUtils;
 
+import com.forgerock.opendj.util.OperatingSystem;
+
 import static org.opends.messages.ReplicationMessages.*;
 
 /**
@@ -296,6 +298,22 @@ class ReplicationEnvironment implements ChangelogStateProvider
     }
   }
 
+  /**
+   * Indicates whether the log files which are not written any more must be
+   * read through read-only memory mappings.
+   * <p>
+   * Memory mappings are never used on Windows: they are only released by the
+   * garbage collector, and a memory mapped file cannot be deleted on Windows,
+   * which would prevent purging the log.
+   *
+   * @return {@code true} if rotated log files must be memory mapped
+   */
+  boolean isMemoryMappedReadEnabled()
+  {
+    return replicationServer != null && replicationServer.isMemoryMappedChangelogReads()
+        && !OperatingSystem.isWindows();
+  }
+
   /**
    * Returns the state of the replication changelog.
    *
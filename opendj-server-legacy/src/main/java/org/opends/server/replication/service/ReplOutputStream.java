@@ -26,8 +26,10 @@
  */
 package org.opends.server.replication.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class creates an output stream that can be used to export entries
@@ -41,6 +43,19 @@ class ReplOutputStream extends OutputStream
   /** The current number of entries exported. */
   private final long numExportedEntries = 0;
 
+  /**
+   * First LDIF line of the entry after which the export resumes, null when
+   * the bytes written are to be exported.
+   */
+  private String resumeAfter;
+  /** First LDIF line of the entry being skipped. */
+  private final ByteArrayOutputStream skippedFirstLine =
+      new ByteArrayOutputStream();
+  /** Whether the first line of the entry being skipped is still read. */
+  private boolean inFirstLine = true;
+  /** Last byte skipped. */
+  private int previousByte = -1;
+
   /**
    * Creates a new ReplLDIFOutputStream related to a replication
    * domain.
@@ -48,8 +63,23 @@ class ReplOutputStream extends OutputStream
    * @param domain The replication domain
    */
   ReplOutputStream(ReplicationDomain domain)
+  {
+    this(domain, null);
+  }
+
+  /**
+   * Creates a new ReplLDIFOutputStream related to a replication domain,
+   * resuming an interrupted export: the LDIF written is skipped up to and
+   * including the entry whose first line is the provided one.
+   *
+   * @param domain The replication domain
+   * @param resumeAfter The first LDIF line of the last entry already
+   *                    exported, or null to export all the entries
+   */
+  ReplOutputStream(ReplicationDomain domain, String resumeAfter)
   {
     this.domain = domain;
+    this.resumeAfter = resumeAfter;
   }
 
   /** {@inheritDoc} */
@@ -63,7 +93,80 @@ class ReplOutputStream extends OutputStream
   @Override
   public void write(byte b[], int off, int len) throws IOException
   {
-    domain.exportLDIFEntry(b, off, len);
+    if (resumeAfter == null)
+    {
+      domain.exportLDIFEntry(b, off, len);
+      return;
+    }
+
+    final int end = off + len;
+    for (int i = off; i < end; i++)
+    {
+      final byte c = b[i];
+      if (c == '\r')
+      {
+        // Lines end with "\r\n" when the LDIF is written on Windows
+        continue;
+      }
+      if (c == '\n' && previousByte == '\n')
+      {
+        // End of the entry being skipped
+        if (resumeAfter.equals(getSkippedFirstLine()))
+        {
+          resumeAfter = null;
+          if (i + 1 < end)
+          {
+            domain.exportLDIFEntry(b, i + 1, end - i - 1);
+          }
+          return;
+        }
+        skippedFirstLine.reset();
+        inFirstLine = true;
+        previousByte = -1;
+        continue;
+      }
+
+      if (inFirstLine)
+      {
+        if (c == '\n' && skippedFirstLine.size() == 0)
+        {
+          // Blank line before the entry
+          continue;
+        }
+        // A line starting with a space continues the previous line
+        if (previousByte == '\n' && c != ' ')
+        {
+          inFirstLine = false;
+        }
+        else
+        {
+          skippedFirstLine.write(c);
+        }
+      }
+      previousByte = c;
+    }
+  }
+
+  private String getSkippedFirstLine()
+  {
+    final byte[] bytes = skippedFirstLine.toByteArray();
+    int length = bytes.length;
+    while (length > 0 && bytes[length - 1] == '\n')
+    {
+      length--;
+    }
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns whether the entry after which this export resumes has not been
+   * found in the LDIF written so far.
+   *
+   * @return true if the LDIF written so far has been entirely skipped.
+   */
+  boolean isResumePointMissing()
+  {
+    return resumeAfter != null;
   }
 
   /**
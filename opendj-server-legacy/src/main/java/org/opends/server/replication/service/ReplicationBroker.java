@@ -1122,6 +1122,10 @@ public class ReplicationBroker
       {
         newSession.stopEncryption();
       }
+      if (config.isMessageCompression())
+      {
+        newSession.enableCompression();
+      }
 
       hasConnected = true;
 
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
@@ -210,6 +211,18 @@ public abstract class ReplicationDomain
   private ServerStatus status = ServerStatus.NOT_CONNECTED_STATUS;
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * Maximum number of times a total update interrupted by a connection failure
+   * is resumed where it stopped, before falling back to a new attempt.
+   */
+  private static final int MAX_INIT_RESUME_ATTEMPTS = 5;
+  /**
+   * Time in milliseconds to wait for a request to resume an interrupted total
+   * update (exporter side) or for the start of the resumed export (importer
+   * side).
+   */
+  private static final long INIT_RESUME_TIMEOUT = 30000;
+
   /** The configuration of the replication domain. */
   protected volatile ReplicationDomainCfg config;
   /**
@@ -769,6 +782,14 @@ public abstract class ReplicationDomain
           // Another server is exporting its entries to us
           InitializeTargetMsg initTargetMsg = (InitializeTargetMsg) msg;
 
+          if (initTargetMsg.getResumedEntryCount() > 0)
+          {
+            // The resumed import has been abandoned meanwhile
+            broker.publish(new ErrorMsg(initTargetMsg.getSenderID(),
+                ERR_INIT_RESUMED_IMPORT_NOT_RUNNING.get(getServerId(), getBaseDN())));
+            continue;
+          }
+
           /*
           This must be done while we are still holding the broker lock
           because we are now going to receive a bunch of entries from the
@@ -859,11 +880,12 @@ public abstract class ReplicationDomain
       replay thread when they call this method and therefore the
       broker.receive() method.
       */
-      if (initReqMsg != null)
+      if (initReqMsg != null && !resumeExport(initReqMsg))
       {
         // Do this work in a thread to allow replay thread continue working
         ExportThread exportThread = new ExportThread(
-            initReqMsg.getSenderID(), initReqMsg.getInitWindow());
+            initReqMsg.getSenderID(), initReqMsg.getInitWindow(),
+            initReqMsg.isResumeRequest() ? initReqMsg : null);
         exportThread.start();
       }
     }
@@ -1027,6 +1049,8 @@ public abstract class ReplicationDomain
     /** Id of server that will be initialized. */
     private final int serverIdToInitialize;
     private final int initWindow;
+    /** Request to resume an interrupted export, null for a new export. */
+    private final InitializeRequestMsg resumeRequest;
 
 
 
@@ -1038,13 +1062,18 @@ public abstract class ReplicationDomain
      * @param initWindow
      *          The value of the initialization window for flow control between
      *          the importer and the exporter.
+     * @param resumeRequest
+     *          The request to resume an interrupted export, or null to export
+     *          all the entries.
      */
-    public ExportThread(int serverIdToInitialize, int initWindow)
+    public ExportThread(int serverIdToInitialize, int initWindow,
+        InitializeRequestMsg resumeRequest)
     {
       super("Export thread from serverId=" + getServerId() + " to serverId="
           + serverIdToInitialize);
       this.serverIdToInitialize = serverIdToInitialize;
       this.initWindow = initWindow;
+      this.resumeRequest = resumeRequest;
     }
 
 
@@ -1062,7 +1091,7 @@ public abstract class ReplicationDomain
       try
       {
         initializeRemote(serverIdToInitialize, serverIdToInitialize, null,
-            initWindow);
+            initWindow, resumeRequest);
       } catch (DirectoryException de)
       {
         /*
@@ -1148,6 +1177,78 @@ public abstract class ReplicationDomain
     /** Number of attempt already done for this initialization. */
     private short attemptCnt;
 
+    /** Number of times this initialization has been resumed. */
+    private int resumeCnt;
+
+    /**
+     * Whether the importer can resume this export after a connection failure
+     * (export only).
+     */
+    private boolean resumable;
+
+    /**
+     * Request from the importer to resume this export after a connection
+     * failure, until it is processed (export only). Set by the listener
+     * thread, guarded by this context.
+     */
+    private InitializeRequestMsg resumeRequest;
+
+    /**
+     * Received bytes of an entry which is not complete yet, in the first
+     * partialEntryLength bytes of this growable buffer. They are passed to the
+     * import with the rest of the entry, so that the import can be resumed
+     * after the last complete entry (import only).
+     */
+    private byte[] partialEntryBytes;
+    /** Number of bytes held in partialEntryBytes (import only). */
+    private int partialEntryLength;
+
+    /** Whether the end of the entries has been received (import only). */
+    private boolean doneReceived;
+
+    /**
+     * First LDIF line of the last complete entry passed to the import (import
+     * only).
+     */
+    private String lastEntryFirstLine;
+
+    /** Number of complete entries passed to the import (import only). */
+    private long entriesReceived;
+
+    /**
+     * Appends the provided bytes to the bytes of the entry which is not
+     * complete yet.
+     */
+    private void appendPartialEntryBytes(byte[] bytes, int offset, int length)
+    {
+      final int newLength = partialEntryLength + length;
+      if (partialEntryBytes == null)
+      {
+        partialEntryBytes = new byte[Math.max(newLength, 8192)];
+      }
+      else if (newLength > partialEntryBytes.length)
+      {
+        partialEntryBytes = Arrays.copyOf(partialEntryBytes,
+            Math.max(newLength, partialEntryBytes.length * 2));
+      }
+      System.arraycopy(bytes, offset, partialEntryBytes, partialEntryLength, length);
+      partialEntryLength = newLength;
+    }
+
+    /**
+     * Returns and forgets the bytes of the entry which is not complete yet.
+     *
+     * @return the bytes of the entry which is not complete yet, null if none
+     */
+    private byte[] takePartialEntryBytes()
+    {
+      final byte[] bytes = partialEntryLength > 0
+          ? Arrays.copyOf(partialEntryBytes, partialEntryLength) : null;
+      partialEntryBytes = null;
+      partialEntryLength = 0;
+      return bytes;
+    }
+
     /**
      * Creates a new IEContext.
      *
@@ -1231,7 +1332,7 @@ public abstract class ReplicationDomain
      *
      * @throws DirectoryException if an error occurred.
      */
-    private void updateCounters(int entriesDone) throws DirectoryException
+    private void updateCounters(long entriesDone) throws DirectoryException
     {
       entryLeftCount -= entriesDone;
 
@@ -1300,7 +1401,7 @@ public abstract class ReplicationDomain
      */
     public void setExceptionIfNoneSet(DirectoryException exception)
     {
-      if (exception == null)
+      if (this.exception == null)
       {
         this.exception = exception;
       }
@@ -1430,6 +1531,31 @@ public abstract class ReplicationDomain
   protected void initializeRemote(int serverToInitialize,
       int serverRunningTheTask, Task initTask, int initWindow)
   throws DirectoryException
+  {
+    initializeRemote(serverToInitialize, serverRunningTheTask, initTask,
+        initWindow, null);
+  }
+
+  /**
+   * Process the initialization of some other server or servers in the
+   * topology, possibly resuming an initialization interrupted by a connection
+   * failure.
+   *
+   * @param serverToInitialize The target server that should be initialized.
+   * @param serverRunningTheTask The server that initiated the export.
+   * @param initTask The task in this server that triggers this initialization,
+   * null when the export is done following a request from a remote server.
+   * @param initWindow The value of the initialization window for flow control
+   * between the importer and the exporter.
+   * @param resumeRequest The request of the target server to resume an
+   * interrupted initialization, or null to export all the entries.
+   *
+   * @exception DirectoryException When an error occurs. No exception raised
+   * means success.
+   */
+  private void initializeRemote(int serverToInitialize,
+      int serverRunningTheTask, Task initTask, int initWindow,
+      InitializeRequestMsg resumeRequest) throws DirectoryException
   {
     final ImportExportContext ieCtx = acquireIEContext(false);
 
@@ -1471,6 +1597,13 @@ public abstract class ReplicationDomain
         {
           ieCtx.setAckVal(dsi.getDsId(), 0);
         }
+        if (dsi.getDsId() == serverToInitialize &&
+            dsi.getProtocolVersion()>= ProtocolVersion.REPLICATION_PROTOCOL_V9)
+        {
+          // The importer keeps its import running and asks to resume an
+          // export interrupted by a connection failure
+          ieCtx.resumable = true;
+        }
       }
     }
 
@@ -1479,8 +1612,13 @@ public abstract class ReplicationDomain
     // loop for the case where the exporter is the initiator
     int attempt = 0;
     boolean done = false;
-    while (!done && ++attempt < 2) // attempt loop
+    boolean resuming = resumeRequest != null;
+    while (!done && (resuming || ++attempt < 2)) // attempt loop
     {
+      final InitializeRequestMsg resumeFrom = resuming ? resumeRequest : null;
+      resuming = false;
+      final ReplOutputStream output = new ReplOutputStream(this,
+          resumeFrom != null ? resumeFrom.getResumeAfter() : null);
       try
       {
         ieCtx.exportTarget = serverToInitialize;
@@ -1494,9 +1632,22 @@ public abstract class ReplicationDomain
         ieCtx.initWindow = initWindow;
 
         // Send start message to the peer
-        InitializeTargetMsg initTargetMsg = new InitializeTargetMsg(
-            getBaseDN(), getServerId(), serverToInitialize,
-            serverRunningTheTask, ieCtx.entryCount, initWindow);
+        final InitializeTargetMsg initTargetMsg;
+        if (resumeFrom != null)
+        {
+          // Only send the entries following the last one imported
+          ieCtx.updateCounters(resumeFrom.getResumeEntryCount());
+          initTargetMsg = new InitializeTargetMsg(
+              getBaseDN(), getServerId(), serverToInitialize,
+              serverRunningTheTask, ieCtx.entryCount, initWindow,
+              resumeFrom.getResumeEntryCount());
+        }
+        else
+        {
+          initTargetMsg = new InitializeTargetMsg(
+              getBaseDN(), getServerId(), serverToInitialize,
+              serverRunningTheTask, ieCtx.entryCount, initWindow);
+        }
 
         broker.publish(initTargetMsg);
 
@@ -1512,7 +1663,13 @@ public abstract class ReplicationDomain
               ERR_INIT_NO_SUCCESS_START_FROM_SERVERS.get(getBaseDN(), ieCtx.failureList));
         }
 
-        exportBackend(new BufferedOutputStream(new ReplOutputStream(this)));
+        exportBackend(new BufferedOutputStream(output));
+
+        if (output.isResumePointMissing())
+        {
+          throw new DirectoryException(ResultCode.OTHER,
+              ERR_INIT_RESUME_POINT_NOT_FOUND.get(serverToInitialize, getBaseDN()));
+        }
 
         // Notify the peer of the success
         broker.publish(
@@ -1563,6 +1720,23 @@ public abstract class ReplicationDomain
             }
           }
 
+          resumeRequest = waitForResumeRequest(ieCtx);
+          if (resumeRequest != null)
+          {
+            /*
+            Resume case : the importer kept its import running and asks us to
+            send the entries following the last one it imported.
+            */
+            logger.info(NOTE_RESUMING_INIT_TARGET, serverToInitialize,
+                getBaseDN(), resumeRequest.getResumeEntryCount(),
+                exportRootException.getLocalizedMessage());
+            ieCtx.exception = null;
+            ieCtx.setAckVal(serverToInitialize, 0);
+            exportRootException = null;
+            resuming = true;
+            continue;
+          }
+
           if (initTask != null
               && broker.isConnected()
               && serverToInitialize != RoutableMsg.ALL_SERVERS)
@@ -1594,7 +1768,7 @@ public abstract class ReplicationDomain
       }
 
       // We are always done for this export ...
-      // ... except in the NewAttempt case (see above)
+      // ... except in the Resume and NewAttempt cases (see above)
       done = true;
 
     } // attempt loop
@@ -1633,6 +1807,74 @@ public abstract class ReplicationDomain
     }
   }
 
+  /**
+   * Waits for the importer of an interrupted export to ask for resuming it.
+   *
+   * @return the request to resume the export, or null if the export cannot be
+   *         resumed or if the importer did not ask for it in time.
+   */
+  private InitializeRequestMsg waitForResumeRequest(ImportExportContext ieCtx)
+  {
+    if (!ieCtx.resumable || ieCtx.resumeCnt >= MAX_INIT_RESUME_ATTEMPTS)
+    {
+      return null;
+    }
+
+    final long deadline = System.currentTimeMillis() + INIT_RESUME_TIMEOUT;
+    synchronized (ieCtx)
+    {
+      try
+      {
+        long waitTime;
+        while (ieCtx.resumeRequest == null
+            && !broker.shuttingDown()
+            && (waitTime = deadline - System.currentTimeMillis()) > 0)
+        {
+          // Woken up by resumeExport() or disableService()
+          ieCtx.wait(waitTime);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+
+      final InitializeRequestMsg resumeRequest = ieCtx.resumeRequest;
+      ieCtx.resumeRequest = null;
+      if (resumeRequest != null)
+      {
+        ieCtx.resumeCnt++;
+      }
+      return resumeRequest;
+    }
+  }
+
+  /**
+   * Hands a request to resume an interrupted export over to the export in
+   * progress towards the requesting server, if any.
+   *
+   * @param initReqMsg the initialization request received
+   * @return true if the request was handed over, false if a new export must be
+   *         started to process it
+   */
+  private boolean resumeExport(InitializeRequestMsg initReqMsg)
+  {
+    final ImportExportContext ieCtx = importExportContext.get();
+    if (!initReqMsg.isResumeRequest()
+        || ieCtx == null
+        || ieCtx.importInProgress()
+        || ieCtx.exportTarget != initReqMsg.getSenderID())
+    {
+      return false;
+    }
+    synchronized (ieCtx)
+    {
+      ieCtx.resumeRequest = initReqMsg;
+      ieCtx.notifyAll();
+    }
+    return true;
+  }
+
   /**
    * For all remote servers in the start list:
    * - wait it has finished the import and present the expected generationID,
@@ -1832,6 +2074,8 @@ public abstract class ReplicationDomain
       // The ErrorMsg is received while we have started an initialization
       ieCtx.setExceptionIfNoneSet(new DirectoryException(
           ResultCode.OTHER, errorMsg.getDetails()));
+      // The remote server gave up, it will not ask to resume the export
+      ieCtx.resumable = false;
 
       /*
        * This can happen :
@@ -1863,6 +2107,10 @@ public abstract class ReplicationDomain
     while (true)
     {
       ImportExportContext ieCtx = importExportContext.get();
+      if (ieCtx.doneReceived)
+      {
+        return null;
+      }
       try
       {
         // In the context of the total update, we don't want any automatic
@@ -1889,9 +2137,14 @@ public abstract class ReplicationDomain
           else
           {
             // Handle connection issues
-            ieCtx.setExceptionIfNoneSet(new DirectoryException(
+            final DirectoryException de = new DirectoryException(
                 ResultCode.OTHER, ERR_INIT_RS_DISCONNECTION_DURING_IMPORT
-                    .get(broker.getReplicationServer())));
+                    .get(broker.getReplicationServer()));
+            if (resumeImport(ieCtx, de, true))
+            {
+              continue;
+            }
+            ieCtx.setExceptionIfNoneSet(de);
             return null;
           }
         }
@@ -1928,15 +2181,24 @@ public abstract class ReplicationDomain
               }
             }
           }
-          return entryBytes;
+
+          final byte[] completeEntriesBytes =
+              takeCompleteEntries(ieCtx, entryBytes);
+          if (completeEntriesBytes != null)
+          {
+            return completeEntriesBytes;
+          }
+          // else wait for the end of the entry
         }
         else if (msg instanceof DoneMsg)
         {
           /*
           This is the normal termination of the import
-          No error is stored and the import is ended by returning null
+          No error is stored and the import is ended by returning null,
+          once the bytes of the last entry have been returned
           */
-          return null;
+          ieCtx.doneReceived = true;
+          return ieCtx.takePartialEntryBytes();
         }
         else if (msg instanceof ErrorMsg)
         {
@@ -1964,7 +2226,13 @@ public abstract class ReplicationDomain
           {
             LocalizableMessage errMsg = ERR_INIT_EXPORTER_DISCONNECTION.get(
                 getBaseDN(), getServerId(), ieCtx.importSource);
-            ieCtx.setExceptionIfNoneSet(new DirectoryException(ResultCode.OTHER, errMsg));
+            final DirectoryException de =
+                new DirectoryException(ResultCode.OTHER, errMsg);
+            if (resumeImport(ieCtx, de, false))
+            {
+              continue;
+            }
+            ieCtx.setExceptionIfNoneSet(de);
             return null;
           }
         }
@@ -1981,7 +2249,7 @@ public abstract class ReplicationDomain
   /**
    * Count the number of entries in the provided byte[].
    * This is based on the hypothesis that the entries are separated
-   * by a "\n\n" String.
+   * by an empty line.
    *
    * @param   entryBytes the set of bytes containing one or more entries.
    * @return  The number of entries in the provided byte[].
@@ -1994,7 +2262,7 @@ public abstract class ReplicationDomain
   /**
    * Count the number of entries in the provided byte[].
    * This is based on the hypothesis that the entries are separated
-   * by a "\n\n" String.
+   * by an empty line.
    *
    * @param   entryBytes the set of bytes containing one or more entries.
    * @return  The number of entries in the provided byte[].
@@ -2002,19 +2270,238 @@ public abstract class ReplicationDomain
   private int countEntryLimits(byte[] entryBytes, int pos, int length)
   {
     int entryCount = 0;
-    int count = 0;
-    while (count<=length-2)
+    for (int i = pos; i < pos + length; i++)
     {
-      if (entryBytes[pos+count] == '\n' && entryBytes[pos+count+1] == '\n')
+      if (isEntryEnd(entryBytes, pos, i))
       {
         entryCount++;
-        count++;
+        i++;
       }
-      count++;
     }
     return entryCount;
   }
 
+  /**
+   * Returns whether the byte at the provided position is the end of an empty
+   * line, which separates LDIF entries. Lines end with "\n" or "\r\n",
+   * depending on the platform of the exporter.
+   *
+   * @param bytes the LDIF bytes
+   * @param start the position of the first byte that can be looked at
+   * @param pos the position of the byte
+   * @return true if the byte ends an empty line
+   */
+  private static boolean isEntryEnd(byte[] bytes, int start, int pos)
+  {
+    if (bytes[pos] != '\n')
+    {
+      return false;
+    }
+    int previous = pos - 1;
+    if (previous >= start && bytes[previous] == '\r')
+    {
+      previous--;
+    }
+    return previous >= start && bytes[previous] == '\n';
+  }
+
+  /**
+   * Returns the bytes of the complete entries received so far. The bytes
+   * received for an entry which is not complete yet are kept in the context
+   * until the rest of the entry is received, so that an interrupted import
+   * can be resumed right after the last entry returned.
+   *
+   * @param ieCtx the context of the import
+   * @param entryBytes the bytes received from the exporter
+   * @return the bytes of the complete entries, null if no entry is complete
+   */
+  private byte[] takeCompleteEntries(ImportExportContext ieCtx,
+      byte[] entryBytes)
+  {
+    final byte[] bytes;
+    final int length;
+    final int scanFrom;
+    if (ieCtx.partialEntryLength == 0)
+    {
+      bytes = entryBytes;
+      length = entryBytes.length;
+      scanFrom = 0;
+    }
+    else
+    {
+      // The bytes received before have already been scanned
+      scanFrom = ieCtx.partialEntryLength;
+      ieCtx.appendPartialEntryBytes(entryBytes, 0, entryBytes.length);
+      bytes = ieCtx.partialEntryBytes;
+      length = ieCtx.partialEntryLength;
+    }
+
+    final int end = getEntryEnd(bytes, scanFrom, length);
+    if (end == 0)
+    {
+      if (bytes == entryBytes)
+      {
+        ieCtx.appendPartialEntryBytes(entryBytes, 0, entryBytes.length);
+      }
+      return null;
+    }
+
+    final String firstLine =
+        getEntryFirstLine(bytes, getEntryEnd(bytes, 0, end - 1), end);
+    if (firstLine != null)
+    {
+      ieCtx.lastEntryFirstLine = firstLine;
+    }
+    ieCtx.entriesReceived += countEntryLimits(bytes, 0, end);
+
+    if (bytes == entryBytes)
+    {
+      if (end == length)
+      {
+        return entryBytes;
+      }
+      ieCtx.appendPartialEntryBytes(entryBytes, end, length - end);
+      return Arrays.copyOf(entryBytes, end);
+    }
+    final byte[] completeEntriesBytes = Arrays.copyOf(bytes, end);
+    System.arraycopy(bytes, end, bytes, 0, length - end);
+    ieCtx.partialEntryLength = length - end;
+    return completeEntriesBytes;
+  }
+
+  /**
+   * Returns the position following the last entry separator ending at or
+   * after the provided position, 0 if none.
+   */
+  private static int getEntryEnd(byte[] bytes, int from, int to)
+  {
+    for (int i = to - 1; i >= from; i--)
+    {
+      if (isEntryEnd(bytes, 0, i))
+      {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the first line of the LDIF entry starting at the provided
+   * position, including its continuation lines. This is how the importer
+   * designates to the exporter the entry after which to resume. The carriage
+   * returns are left out, so that it does not depend on the line separator
+   * used by the exporter.
+   *
+   * @param bytes the LDIF bytes
+   * @param start the position of the entry
+   * @param end the position following the entry
+   * @return the first line of the entry, or null for an empty entry
+   */
+  static String getEntryFirstLine(byte[] bytes, int start, int end)
+  {
+    int from = start;
+    while (from < end && (bytes[from] == '\n' || bytes[from] == '\r'))
+    {
+      from++;
+    }
+    final byte[] line = new byte[end - from];
+    int length = 0;
+    for (int i = from; i < end; i++)
+    {
+      final byte b = bytes[i];
+      if (b == '\n' && (i + 1 >= end || bytes[i + 1] != ' '))
+      {
+        break;
+      }
+      if (b != '\r')
+      {
+        line[length++] = b;
+      }
+    }
+    return length > 0 ? new String(line, 0, length, StandardCharsets.UTF_8) : null;
+  }
+
+  /**
+   * Tries to resume an import interrupted by a connection failure. Once this
+   * server and the exporter are connected again, the exporter is asked to send
+   * the entries following the last complete entry imported. The import keeps
+   * running meanwhile.
+   *
+   * @param ieCtx the context of the import
+   * @param cause the error which interrupted the import
+   * @param reconnect whether the connection to the replication server was lost
+   * @return true if the exporter resumed the export, false if the import
+   *         cannot be resumed
+   */
+  private boolean resumeImport(ImportExportContext ieCtx,
+      DirectoryException cause, boolean reconnect)
+  {
+    if (ieCtx.lastEntryFirstLine == null
+        || ieCtx.exporterProtocolVersion < ProtocolVersion.REPLICATION_PROTOCOL_V9
+        || ieCtx.resumeCnt >= MAX_INIT_RESUME_ATTEMPTS
+        || broker.shuttingDown())
+    {
+      return false;
+    }
+    ieCtx.resumeCnt++;
+
+    if (reconnect)
+    {
+      broker.reStart(false);
+      if (!broker.isConnected())
+      {
+        return false;
+      }
+      // The new session started with a status computed from our state
+      setNewStatus(StatusMachineEvent.TO_FULL_UPDATE_STATUS_EVENT);
+    }
+
+    final long deadline = System.currentTimeMillis() + INIT_RESUME_TIMEOUT;
+    boolean requested = false;
+    try
+    {
+      while (System.currentTimeMillis() < deadline)
+      {
+        if (!requested && getConnectedRemoteDS(ieCtx.importSource) != null)
+        {
+          logger.info(NOTE_RESUMING_INIT_FROM_REMOTE, ieCtx.importSource,
+              getBaseDN(), ieCtx.entriesReceived, cause.getLocalizedMessage());
+          broker.publish(new InitializeRequestMsg(getBaseDN(), getServerId(),
+              ieCtx.importSource, getInitWindow(), ieCtx.entriesReceived,
+              ieCtx.lastEntryFirstLine));
+          requested = true;
+        }
+
+        final ReplicationMsg msg = broker.receive(false, false, true);
+        if (msg == null)
+        {
+          return false;
+        }
+        if (msg instanceof InitializeTargetMsg
+            && ((InitializeTargetMsg) msg).getSenderID() == ieCtx.importSource)
+        {
+          final InitializeTargetMsg initTargetMsg = (InitializeTargetMsg) msg;
+          if (initTargetMsg.getResumedEntryCount() != ieCtx.entriesReceived)
+          {
+            // The exporter restarted the export from the beginning
+            return false;
+          }
+          ieCtx.initWindow = initTargetMsg.getInitWindow();
+          ieCtx.msgCnt = 0;
+          ieCtx.takePartialEntryBytes();
+          return true;
+        }
+        // Other messages, including the entries and errors
+        // of the interrupted export, are trashed
+      }
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+    return false;
+  }
+
   /**
    * Exports an entry in LDIF format.
    *
@@ -2051,6 +2538,14 @@ public abstract class ReplicationDomain
         throw new IOException(ieCtx.getException().getMessage());
       }
 
+      if (ieCtx.resumeRequest != null)
+      {
+        // The importer lost the export and already asks to resume it
+        ieCtx.setException(new DirectoryException(ResultCode.OTHER,
+            ERR_INIT_HEARTBEAT_LOST_DURING_EXPORT.get(ieCtx.getExportTarget())));
+        throw new IOException(ieCtx.getException().getMessage());
+      }
+
       int slowestServerId = ieCtx.getSlowestServer();
       if (getConnectedRemoteDS(slowestServerId) == null)
       {
@@ -3016,6 +3511,16 @@ public abstract class ReplicationDomain
         broker.stop();
       }
 
+      // Wake up an export waiting for its importer to resume it
+      final ImportExportContext ieCtx = importExportContext.get();
+      if (ieCtx != null)
+      {
+        synchronized (ieCtx)
+        {
+          ieCtx.notifyAll();
+        }
+      }
+
       // Stop the listener thread
       if (listenerThread != null)
       {
@@ -0,0 +1,276 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.tools;
+
+import static com.forgerock.opendj.cli.ArgumentConstants.*;
+import static com.forgerock.opendj.cli.Utils.*;
+
+import static org.opends.messages.ToolMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.GeneralizedTime;
+import org.opends.server.core.DirectoryServer.DirectoryServerVersionHandler;
+import org.opends.server.loggers.BinaryAccessLogReader;
+import org.opends.server.loggers.BinaryAccessLogRecord;
+import org.opends.server.loggers.JDKLogging;
+
+import com.forgerock.opendj.cli.*;
+
+/**
+ * This class provides a program that may be used to search the files written
+ * by a binary file access log publisher and to print the matching records as
+ * text.
+ */
+public class QueryAccessLog
+{
+  /** The fully-qualified name of this class. */
+  private static final String CLASS_NAME = "org.opends.server.tools.QueryAccessLog";
+
+  /**
+   * Provides the command line arguments to the <CODE>mainQuery</CODE> method
+   * so that they can be processed.
+   *
+   * @param  args  The command line arguments provided to this program.
+   */
+  public static void main(String[] args)
+  {
+    int exitCode = mainQuery(args, System.out, System.err);
+    if (exitCode != 0)
+    {
+      System.exit(filterExitCode(exitCode));
+    }
+  }
+
+  /**
+   * Parses the provided command line arguments and prints the matching
+   * records of the provided binary access log files.
+   *
+   * @param  args       The command line arguments provided to this program.
+   * @param  outStream  The output stream to use for standard output, or
+   *                    {@code null} if standard output is not needed.
+   * @param  errStream  The output stream to use for standard error, or
+   *                    {@code null} if standard error is not needed.
+   *
+   * @return  The return code for this operation.  A value of zero indicates
+   *          that all processing completed successfully.  A nonzero value
+   *          indicates that some problem occurred during processing.
+   */
+  public static int mainQuery(String[] args, OutputStream outStream, OutputStream errStream)
+  {
+    PrintStream out = NullOutputStream.wrapOrNullStream(outStream);
+    PrintStream err = NullOutputStream.wrapOrNullStream(errStream);
+    JDKLogging.disableLogging();
+
+    StringArgument  logFile;
+    StringArgument  startTime;
+    StringArgument  endTime;
+    StringArgument  connectionID;
+    StringArgument  baseDN;
+    IntegerArgument minEtime;
+    IntegerArgument resultCode;
+    BooleanArgument showUsage;
+
+    LocalizableMessage toolDescription = INFO_QUERY_ACCESS_LOG_TOOL_DESCRIPTION.get();
+    ArgumentParser argParser = new ArgumentParser(CLASS_NAME, toolDescription, false);
+    argParser.setShortToolDescription(REF_SHORT_DESC_QUERY_ACCESS_LOG.get());
+    argParser.setVersionHandler(new DirectoryServerVersionHandler());
+
+    try
+    {
+      logFile = new StringArgument(
+              "logfile", 'f', "logFile", true, true,
+              true, INFO_FILE_PLACEHOLDER.get(), null, null,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_LOG_FILE.get());
+      argParser.addArgument(logFile);
+
+      startTime = new StringArgument(
+              "starttime", 'S', "startTime", false, false,
+              true, INFO_TIME_PLACEHOLDER.get(), null, null,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_START_TIME.get());
+      argParser.addArgument(startTime);
+
+      endTime = new StringArgument(
+              "endtime", 'E', "endTime", false, false,
+              true, INFO_TIME_PLACEHOLDER.get(), null, null,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_END_TIME.get());
+      argParser.addArgument(endTime);
+
+      // connection IDs are longs, which integer arguments cannot hold
+      connectionID = new StringArgument(
+              "connectionid", 'c', "connectionID", false, false,
+              true, INFO_CONNECTION_ID_PLACEHOLDER.get(), null, null,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_CONNECTION_ID.get());
+      argParser.addArgument(connectionID);
+
+      baseDN = new StringArgument(
+              "basedn", OPTION_SHORT_BASEDN, OPTION_LONG_BASEDN, false, false,
+              true, INFO_BASEDN_PLACEHOLDER.get(), null, null,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_BASEDN.get());
+      argParser.addArgument(baseDN);
+
+      minEtime = new IntegerArgument(
+              "minetime", 'e', "minEtime", false,
+              false, true, INFO_ETIME_PLACEHOLDER.get(), 0, null,
+              true, 0, false, 0,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_MIN_ETIME.get());
+      argParser.addArgument(minEtime);
+
+      resultCode = new IntegerArgument(
+              "resultcode", 'r', "resultCode", false,
+              false, true, INFO_RESULT_CODE_PLACEHOLDER.get(), 0, null,
+              true, 0, false, 0,
+              INFO_QUERY_ACCESS_LOG_DESCRIPTION_RESULT_CODE.get());
+      argParser.addArgument(resultCode);
+
+      showUsage = CommonArguments.getShowUsage();
+      argParser.addArgument(showUsage);
+      argParser.setUsageArgument(showUsage);
+    }
+    catch (ArgumentException ae)
+    {
+      printWrappedText(err, ERR_CANNOT_INITIALIZE_ARGS.get(ae.getMessage()));
+      return 1;
+    }
+
+    // Parse the command-line arguments provided to the program.
+    try
+    {
+      argParser.parseArguments(args);
+    }
+    catch (ArgumentException ae)
+    {
+      argParser.displayMessageAndUsageReference(err, ERR_ERROR_PARSING_ARGS.get(ae.getMessage()));
+      return 1;
+    }
+
+    // If we should just display usage or version information,
+    // then print it and exit.
+    if (argParser.usageOrVersionDisplayed())
+    {
+      return 0;
+    }
+
+    long start = Long.MIN_VALUE;
+    long end = Long.MAX_VALUE;
+    long connID = -1;
+    try
+    {
+      if (connectionID.isPresent())
+      {
+        connID = parseConnectionID(connectionID.getValue());
+      }
+      if (startTime.isPresent())
+      {
+        start = parseTime(startTime.getValue());
+      }
+      if (endTime.isPresent())
+      {
+        end = parseTime(endTime.getValue());
+      }
+    }
+    catch (IllegalArgumentException e)
+    {
+      printWrappedText(err, e.getMessage());
+      return 1;
+    }
+
+    final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z");
+    final StringBuilder buffer = new StringBuilder();
+    for (String fileName : logFile.getValues())
+    {
+      try (BinaryAccessLogReader reader = new BinaryAccessLogReader(new File(fileName)))
+      {
+        reader.setTimeRange(start, end);
+        if (connID >= 0)
+        {
+          reader.setConnectionID(connID);
+        }
+        if (baseDN.isPresent())
+        {
+          reader.setBaseDN(baseDN.getValue());
+        }
+        if (minEtime.isPresent())
+        {
+          reader.setMinEtime(minEtime.getIntValue());
+        }
+        if (resultCode.isPresent())
+        {
+          reader.setResultCode(resultCode.getIntValue());
+        }
+
+        BinaryAccessLogRecord record;
+        while ((record = reader.next()) != null)
+        {
+          buffer.setLength(0);
+          record.toString(buffer, dateFormat);
+          out.println(buffer);
+        }
+      }
+      catch (IOException | ArgumentException e)
+      {
+        printWrappedText(err, ERR_QUERY_ACCESS_LOG_CANNOT_READ_FILE.get(fileName, getExceptionMessage(e)));
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  private static long parseConnectionID(String value)
+  {
+    try
+    {
+      final long connID = Long.parseLong(value);
+      if (connID >= 0)
+      {
+        return connID;
+      }
+    }
+    catch (NumberFormatException e)
+    {
+      // reported below
+    }
+    throw new IllegalArgumentException(ERR_QUERY_ACCESS_LOG_INVALID_CONNECTION_ID.get(value).toString());
+  }
+
+  private static long parseTime(String value)
+  {
+    try
+    {
+      return GeneralizedTime.valueOf(value).getTimeInMillis();
+    }
+    catch (Exception e)
+    {
+      throw new IllegalArgumentException(ERR_QUERY_ACCESS_LOG_INVALID_TIME.get(value, e.getMessage()).toString(), e);
+    }
+  }
+}
@@ -25,11 +25,10 @@
  */
 package org.opends.server.types;
 
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.forgerock.util.Reject;
@@ -78,14 +77,15 @@ import org.forgerock.util.Reject;
  * The lock table itself is not represented using a {@code ConcurrentHashMap} because the JDK6/7
  * APIs do not provide the ability to atomically add-and-lock or unlock-and-remove locks (this
  * capability is provided in JDK8). Instead, we provide our own implementation comprising of a fixed
- * number of buckets, a bucket being a {@code LinkedList} of {@code DNLock}s. In addition, it is
- * important to be able to efficiently iterate up and down a chain of hierarchically related locks,
- * so each lock maintains a reference to its parent lock. Modern directories tend to have a flat
- * structure so it is also important to avoid contention on "hot" parent DNs. Typically, a lock
- * attempt against a DN will involve a cache miss for the target DN and a cache hit for the parent,
- * but the parent will be the same parent for all lock requests, resulting in a lot of contention on
- * the same lock bucket. To avoid this the lock manager maintains a small-thread local cache of
- * locks, so that parent locks can be acquired using a lock-free algorithm.
+ * number of buckets, a bucket being a chain of {@code DNLockHolder}s linked through their
+ * {@code next} field, so that adding or removing a lock does not allocate any list node. In
+ * addition, it is important to be able to efficiently iterate up and down a chain of hierarchically
+ * related locks, so each lock maintains a reference to its parent lock. Modern directories tend to
+ * have a flat structure so it is also important to avoid contention on "hot" parent DNs. Typically,
+ * a lock attempt against a DN will involve a cache miss for the target DN and a cache hit for the
+ * parent, but the parent will be the same parent for all lock requests, resulting in a lot of
+ * contention on the same lock bucket. To avoid this the lock manager maintains a small-thread local
+ * cache of locks, so that parent locks can be acquired using a lock-free algorithm.
  * <p>
  * Since the thread local cache may reference locks which are not actively locked by anyone, a
  * reference counting mechanism is used in order to prevent cached locks from being removed from the
@@ -107,6 +107,15 @@ import org.forgerock.util.Reject;
  * Locks are dereferenced when they are unlocked, when they are evicted from a thread local cache,
  * and when a child lock's reference count reaches zero. A lock is completely removed from the lock
  * table once its reference count reaches zero.
+ * <p>
+ * Buckets are only locked in order to add or remove locks. Fetching a lock which is already in the
+ * lock table is lock-free: the bucket chain is traversed without locking, and the reference count
+ * of the lock found is only incremented if it is still positive, i.e. if the lock is not being
+ * removed. A lock whose reference count has dropped to zero can only be resurrected while holding
+ * its bucket lock. Removed locks are kept in a small per-bucket pool and are reused for the next
+ * locks added to the same bucket, so lock-free readers always check that the lock they referenced
+ * is still the one they were looking for. Each bucket counts how many times it was locked and how
+ * many of these times another thread was already holding it: see {@link #getBucketContentions()}.
  */
 @org.opends.server.types.PublicAPI(stability = org.opends.server.types.StabilityLevel.UNCOMMITTED,
     mayInstantiate = false, mayExtend = false, mayInvoke = true)
@@ -162,22 +171,26 @@ public final class LockManager
   }
 
   /**
-   * Lock implementation
+   * Lock implementation. Holders are pooled by their bucket, so the DN, hash code and parent of a
+   * holder change when it is reused. They are only written while the holder is not referenced.
    */
   private final class DNLockHolder
   {
     private final AtomicInteger refCount = new AtomicInteger();
-    private final DNLockHolder parent;
-    private final DN dn;
-    private final int dnHashCode;
+    private final Bucket bucket;
     private final ReentrantReadWriteLock subtreeLock = new ReentrantReadWriteLock();
     private final ReentrantReadWriteLock entryLock = new ReentrantReadWriteLock();
-
-    DNLockHolder(final DNLockHolder parent, final DN dn, final int dnHashCode)
+    private DNLockHolder parent;
+    private volatile DN dn;
+    private int dnHashCode;
+    /** Next lock in the bucket chain, read without holding the bucket lock. */
+    private volatile DNLockHolder next;
+    /** Next lock in the bucket pool, guarded by the bucket lock. */
+    private DNLockHolder nextPooled;
+
+    DNLockHolder(final Bucket bucket)
     {
-      this.parent = parent;
-      this.dn = dn;
-      this.dnHashCode = dnHashCode;
+      this.bucket = bucket;
     }
 
     @Override
@@ -186,6 +199,30 @@ public final class LockManager
       return "\"" + dn + "\" : " + refCount;
     }
 
+    boolean isLockFor(final DN dn, final int dnHashCode)
+    {
+      return this.dnHashCode == dnHashCode && dn.equals(this.dn);
+    }
+
+    /**
+     * Increments the reference count of this lock, unless it is being removed from the lock table.
+     */
+    boolean tryReference()
+    {
+      for (;;)
+      {
+        final int current = refCount.get();
+        if (current <= 0)
+        {
+          return false;
+        }
+        if (refCount.compareAndSet(current, current + 1))
+        {
+          return true;
+        }
+      }
+    }
+
     /**
      * Unlocks the subtree read lock from the parent of this lock up to the root.
      */
@@ -235,7 +272,7 @@ public final class LockManager
       }
 
       // Failed to grab the parent lock within the timeout, so roll-back the other locks.
-      releaseParentSubtreeReadLock();
+      parent.releaseParentSubtreeReadLock();
       return false;
     }
 
@@ -273,18 +310,208 @@ public final class LockManager
     }
   }
 
+  /**
+   * A bucket of the lock table. The chain of locks can be read at any time, but is only modified
+   * while holding the bucket lock.
+   */
+  private final class Bucket
+  {
+    private final ReentrantLock mutex = new ReentrantLock();
+    private volatile DNLockHolder head;
+    /** Pool of removed locks, guarded by the bucket lock. */
+    private DNLockHolder pool;
+    private int poolSize;
+    /** Number of times this bucket was locked, written while holding the bucket lock. */
+    private volatile long acquisitions;
+    /** Number of times this bucket was already locked by another thread. */
+    private volatile long contentions;
+
+    void lock()
+    {
+      if (!mutex.tryLock())
+      {
+        mutex.lock();
+        contentions++;
+      }
+      acquisitions++;
+    }
+
+    void unlock()
+    {
+      mutex.unlock();
+    }
+
+    /** Lock-free lookup: returns the referenced lock, or {@code null} if it must be looked up with the bucket locked. */
+    DNLockHolder tryReferenceLock(final DN dn, final int dnHashCode)
+    {
+      for (DNLockHolder lock = head; lock != null; lock = lock.next)
+      {
+        if (lock.isLockFor(dn, dnHashCode))
+        {
+          if (lock.tryReference())
+          {
+            // The lock may have been removed and reused for another DN before being referenced.
+            if (lock.isLockFor(dn, dnHashCode))
+            {
+              return lock;
+            }
+            dereference(lock);
+          }
+          return null;
+        }
+      }
+      return null;
+    }
+
+    /** Must be called while holding the bucket lock. */
+    DNLockHolder findLock(final DN dn, final int dnHashCode)
+    {
+      for (DNLockHolder lock = head; lock != null; lock = lock.next)
+      {
+        if (lock.isLockFor(dn, dnHashCode))
+        {
+          return lock;
+        }
+      }
+      return null;
+    }
+
+    /** Must be called while holding the bucket lock. */
+    DNLockHolder addLock(final DNLockHolder parent, final DN dn, final int dnHashCode)
+    {
+      DNLockHolder lock = pool;
+      if (lock != null)
+      {
+        pool = lock.nextPooled;
+        lock.nextPooled = null;
+        poolSize--;
+      }
+      else
+      {
+        lock = new DNLockHolder(this);
+      }
+      lock.parent = parent;
+      lock.dnHashCode = dnHashCode;
+      lock.dn = dn;
+      lock.next = head;
+      lock.refCount.incrementAndGet();
+      head = lock;
+      return lock;
+    }
+
+    /**
+     * Must be called while holding the bucket lock. Returns whether the lock was found: it may have
+     * already been removed by another thread.
+     */
+    boolean removeLock(final DNLockHolder lock)
+    {
+      DNLockHolder previous = null;
+      for (DNLockHolder current = head; current != null; current = current.next)
+      {
+        if (current == lock)
+        {
+          // Keep lock.next as is so that lock-free readers positioned on the lock can proceed.
+          if (previous == null)
+          {
+            head = lock.next;
+          }
+          else
+          {
+            previous.next = lock.next;
+          }
+          return true;
+        }
+        previous = current;
+      }
+      return false;
+    }
+
+    /** Must be called while holding the bucket lock, after the lock has been removed. */
+    void releaseLock(final DNLockHolder lock)
+    {
+      lock.parent = null;
+      lock.dn = null;
+      if (poolSize < MAXIMUM_POOLED_LOCKS_PER_BUCKET)
+      {
+        lock.nextPooled = pool;
+        pool = lock;
+        poolSize++;
+      }
+    }
+
+    int size()
+    {
+      int size = 0;
+      for (DNLockHolder lock = head; lock != null; lock = lock.next)
+      {
+        size++;
+      }
+      return size;
+    }
+  }
+
+  /** Small most-recently-used first cache of locks, confined to a thread. */
+  private static final class LockCache
+  {
+    private final DNLockHolder[] locks = new DNLockHolder[THREAD_LOCAL_CACHE_SIZE];
+    private int size;
+
+    /** Removes and returns the lock for the provided DN, or returns {@code null} if it is not cached. */
+    DNLockHolder remove(final DN dn, final int dnHashCode)
+    {
+      for (int i = 0; i < size; i++)
+      {
+        final DNLockHolder lock = locks[i];
+        if (lock.isLockFor(dn, dnHashCode))
+        {
+          System.arraycopy(locks, i + 1, locks, i, size - i - 1);
+          locks[--size] = null;
+          return lock;
+        }
+      }
+      return null;
+    }
+
+    /** Adds the provided lock first and returns the evicted lock, if any. */
+    DNLockHolder addFirst(final DNLockHolder lock)
+    {
+      DNLockHolder evicted = null;
+      if (size == locks.length)
+      {
+        evicted = locks[--size];
+      }
+      System.arraycopy(locks, 0, locks, 1, size);
+      locks[0] = lock;
+      size++;
+      return evicted;
+    }
+
+    DNLockHolder get(final DN dn, final int dnHashCode)
+    {
+      for (int i = 0; i < size; i++)
+      {
+        if (locks[i].isLockFor(dn, dnHashCode))
+        {
+          return locks[i];
+        }
+      }
+      return null;
+    }
+  }
+
   private static final long DEFAULT_LOCK_TIMEOUT = 9;
   private static final TimeUnit DEFAULT_LOCK_TIMEOUT_UNITS = TimeUnit.SECONDS;
   private static final int MINIMUM_NUMBER_OF_BUCKETS = 64;
   private static final int THREAD_LOCAL_CACHE_SIZE = 8;
+  private static final int MAXIMUM_POOLED_LOCKS_PER_BUCKET = 4;
 
   private final int numberOfBuckets;
-  private final LinkedList<DNLockHolder>[] lockTable;
+  private final Bucket[] lockTable;
   private final long lockTimeout;
   private final TimeUnit lockTimeoutUnits;
 
   // Avoid sub-classing in order to workaround class leaks in app servers.
-  private final ThreadLocal<LinkedList<DNLockHolder>> threadLocalCache = new ThreadLocal<>();
+  private final ThreadLocal<LockCache> threadLocalCache = new ThreadLocal<>();
 
   /**
    * Creates a new lock manager with a lock timeout of 9 seconds and an automatically chosen number
@@ -319,7 +546,6 @@ public final class LockManager
    * @param numberOfBuckets
    *          The number of buckets to use in the lock table. The minimum number of buckets is 64.
    */
-  @SuppressWarnings("unchecked")
   public LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit, final int numberOfBuckets)
   {
     Reject.ifFalse(lockTimeout >= 0, "lockTimeout must be a non-negative integer");
@@ -329,10 +555,10 @@ public final class LockManager
     this.lockTimeout = lockTimeout;
     this.lockTimeoutUnits = lockTimeoutUnit;
     this.numberOfBuckets = getNumberOfBuckets(numberOfBuckets);
-    this.lockTable = new LinkedList[this.numberOfBuckets];
+    this.lockTable = new Bucket[this.numberOfBuckets];
     for (int i = 0; i < this.numberOfBuckets; i++)
     {
-      this.lockTable[i] = new LinkedList<>();
+      this.lockTable[i] = new Bucket();
     }
   }
 
@@ -340,17 +566,21 @@ public final class LockManager
   public String toString()
   {
     final StringBuilder builder = new StringBuilder();
-    for (int i = 0; i < numberOfBuckets; i++)
+    for (final Bucket bucket : lockTable)
     {
-      final LinkedList<DNLockHolder> bucket = lockTable[i];
-      synchronized (bucket)
+      bucket.lock();
+      try
       {
-        for (final DNLockHolder lock : bucket)
+        for (DNLockHolder lock = bucket.head; lock != null; lock = lock.next)
         {
           builder.append(lock);
           builder.append('\n');
         }
       }
+      finally
+      {
+        bucket.unlock();
+      }
     }
     return builder.toString();
   }
@@ -395,100 +625,160 @@ public final class LockManager
     return acquireLockFromCache(subtree).tryWriteLockSubtree();
   }
 
+  /**
+   * Returns the number of buckets of the lock table.
+   *
+   * @return The number of buckets of the lock table.
+   */
+  public int getNumberOfBuckets()
+  {
+    return numberOfBuckets;
+  }
+
+  /**
+   * Returns the number of locks currently held in the lock table, whether they are locked or only
+   * referenced by a thread local cache.
+   *
+   * @return The number of locks currently held in the lock table.
+   */
+  public int getLockTableSize()
+  {
+    int size = 0;
+    for (final Bucket bucket : lockTable)
+    {
+      size += bucket.size();
+    }
+    return size;
+  }
+
+  /**
+   * Returns, for each bucket of the lock table, the number of times it was locked in order to add or
+   * remove a lock.
+   *
+   * @return The number of times each bucket of the lock table was locked.
+   */
+  public long[] getBucketAcquisitions()
+  {
+    final long[] acquisitions = new long[numberOfBuckets];
+    for (int i = 0; i < numberOfBuckets; i++)
+    {
+      acquisitions[i] = lockTable[i].acquisitions;
+    }
+    return acquisitions;
+  }
+
+  /**
+   * Returns, for each bucket of the lock table, the number of times a thread had to wait for another
+   * thread to release it.
+   *
+   * @return The number of times each bucket of the lock table was contended.
+   */
+  public long[] getBucketContentions()
+  {
+    final long[] contentions = new long[numberOfBuckets];
+    for (int i = 0; i < numberOfBuckets; i++)
+    {
+      contentions[i] = lockTable[i].contentions;
+    }
+    return contentions;
+  }
+
   // For unit testing.
   int getLockTableRefCountFor(final DN dn)
   {
     final int dnHashCode = dn.hashCode();
-    final LinkedList<DNLockHolder> bucket = getBucket(dnHashCode);
-    synchronized (bucket)
+    final Bucket bucket = getBucket(dnHashCode);
+    bucket.lock();
+    try
     {
-      for (final DNLockHolder lock : bucket)
-      {
-        if (lock.dnHashCode == dnHashCode && lock.dn.equals(dn))
-        {
-          return lock.refCount.get();
-        }
-      }
-      return -1;
+      final DNLockHolder lock = bucket.findLock(dn, dnHashCode);
+      return lock != null ? lock.refCount.get() : -1;
+    }
+    finally
+    {
+      bucket.unlock();
     }
   }
 
   //For unit testing.
   int getThreadLocalCacheRefCountFor(final DN dn)
   {
-    final LinkedList<DNLockHolder> cache = threadLocalCache.get();
+    final LockCache cache = threadLocalCache.get();
     if (cache == null)
     {
       return -1;
     }
-    final int dnHashCode = dn.hashCode();
-    for (final DNLockHolder lock : cache)
-    {
-      if (lock.dnHashCode == dnHashCode && lock.dn.equals(dn))
-      {
-        return lock.refCount.get();
-      }
-    }
-    return -1;
+    final DNLockHolder lock = cache.get(dn, dn.hashCode());
+    return lock != null ? lock.refCount.get() : -1;
   }
 
   private DNLockHolder acquireLockFromCache(final DN dn)
   {
-    LinkedList<DNLockHolder> cache = threadLocalCache.get();
+    LockCache cache = threadLocalCache.get();
     if (cache == null)
     {
-      cache = new LinkedList<>();
+      cache = new LockCache();
       threadLocalCache.set(cache);
     }
     return acquireLockFromCache0(dn, cache);
   }
 
-  private DNLockHolder acquireLockFromCache0(final DN dn, final LinkedList<DNLockHolder> cache)
+  private DNLockHolder acquireLockFromCache0(final DN dn, final LockCache cache)
   {
     final int dnHashCode = dn.hashCode();
-    DNLockHolder lock = removeLock(cache, dn, dnHashCode);
+    DNLockHolder lock = cache.remove(dn, dnHashCode);
     if (lock == null)
     {
       lock = acquireLockFromLockTable(dn, dnHashCode, cache);
-      if (cache.size() >= THREAD_LOCAL_CACHE_SIZE)
-      {
-        // Cache too big: evict oldest entry.
-        dereference(cache.removeLast());
-      }
     }
-    cache.addFirst(lock); // optimize for LRU
+    final DNLockHolder evicted = cache.addFirst(lock); // optimize for LRU
     lock.refCount.incrementAndGet();
+    if (evicted != null)
+    {
+      dereference(evicted);
+    }
     return lock;
   }
 
-  private DNLockHolder acquireLockFromLockTable(final DN dn, final int dnHashCode, final LinkedList<DNLockHolder> cache)
+  private DNLockHolder acquireLockFromLockTable(final DN dn, final int dnHashCode, final LockCache cache)
   {
+    final Bucket bucket = getBucket(dnHashCode);
+    DNLockHolder lock = bucket.tryReferenceLock(dn, dnHashCode);
+    if (lock != null)
+    {
+      return lock;
+    }
+
     /*
      * The lock doesn't exist yet so we'll have to create a new one referencing its parent lock. The
      * parent lock may not yet exist in the lock table either so acquire it before locking the
-     * bucket in order to avoid deadlocks resulting from reentrant bucket locks. Note that we
-     * pre-emptively fetch the parent lock because experiments show that the requested child lock is
-     * almost never in the lock-table. Specifically, this method is only called if we are already on
-     * the slow path due to a cache miss in the thread-local cache.
+     * bucket in order to avoid deadlocks resulting from reentrant bucket locks.
      */
     final DN parentDN = dn.parent();
     final DNLockHolder parentLock = parentDN != null ? acquireLockFromCache0(parentDN, cache) : null;
     boolean parentLockWasUsed = false;
     try
     {
-      final LinkedList<DNLockHolder> bucket = getBucket(dnHashCode);
-      synchronized (bucket)
+      bucket.lock();
+      try
       {
-        DNLockHolder lock = removeLock(bucket, dn, dnHashCode);
-        if (lock == null)
+        lock = bucket.findLock(dn, dnHashCode);
+        if (lock != null)
         {
-          lock = new DNLockHolder(parentLock, dn, dnHashCode);
+          // The lock may be about to be removed: resurrect it, the remover will notice.
+          lock.refCount.incrementAndGet();
+        }
+        else
+        {
+          lock = bucket.addLock(parentLock, dn, dnHashCode);
           parentLockWasUsed = true;
         }
-        bucket.addFirst(lock); // optimize for LRU
-        lock.refCount.incrementAndGet();
         return lock;
       }
+      finally
+      {
+        bucket.unlock();
+      }
     }
     finally
     {
@@ -503,30 +793,35 @@ public final class LockManager
   {
     if (lock.refCount.decrementAndGet() <= 0)
     {
-      final LinkedList<DNLockHolder> bucket = getBucket(lock.dnHashCode);
-      boolean lockWasRemoved = false;
-      synchronized (bucket)
+      final Bucket bucket = lock.bucket;
+      DNLockHolder parent = null;
+      bucket.lock();
+      try
       {
         // Double check: another thread could have acquired the lock since we decremented it to zero.
-        if (lock.refCount.get() <= 0)
+        if (lock.refCount.get() <= 0 && bucket.removeLock(lock))
         {
-          removeLock(bucket, lock.dn, lock.dnHashCode);
-          lockWasRemoved = true;
+          parent = lock.parent;
+          bucket.releaseLock(lock);
         }
       }
+      finally
+      {
+        bucket.unlock();
+      }
 
       /*
        * Dereference the parent outside of the bucket lock to avoid potential deadlocks due to
        * reentrant bucket locks.
        */
-      if (lockWasRemoved && lock.parent != null)
+      if (parent != null)
       {
-        dereference(lock.parent);
+        dereference(parent);
       }
     }
   }
 
-  private LinkedList<DNLockHolder> getBucket(final int dnHashCode)
+  private Bucket getBucket(final int dnHashCode)
   {
     return lockTable[dnHashCode & numberOfBuckets - 1];
   }
@@ -537,7 +832,7 @@ public final class LockManager
    */
   private int getNumberOfBuckets(final int buckets)
   {
-    final int roundedNumberOfBuckets = Math.min(buckets, MINIMUM_NUMBER_OF_BUCKETS);
+    final int roundedNumberOfBuckets = Math.max(buckets, MINIMUM_NUMBER_OF_BUCKETS);
     int powerOf2 = 1;
     while (powerOf2 < roundedNumberOfBuckets)
     {
@@ -545,20 +840,4 @@ public final class LockManager
     }
     return powerOf2;
   }
-
-  private DNLockHolder removeLock(final LinkedList<DNLockHolder> lockList, final DN dn, final int dnHashCode)
-  {
-    final Iterator<DNLockHolder> iterator = lockList.iterator();
-    while (iterator.hasNext())
-    {
-      final DNLockHolder lock = iterator.next();
-      if (lock.dnHashCode == dnHashCode && lock.dn.equals(dn))
-      {
-        // Found: remove the lock because it will be moved to the front of the list.
-        iterator.remove();
-        return lock;
-      }
-    }
-    return null;
-  }
 }
@@ -0,0 +1,178 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.authorization.dseecompat;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.ClientConnection;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.AuthenticationInfo;
+import org.opends.server.types.DN;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class AciDecisionCacheTest extends DirectoryServerTestCase
+{
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  private AciEvalContext newEvalContext() throws Exception
+  {
+    return newEvalContext(newClientKey(mock(ClientConnection.class), new AuthenticationInfo(), 0));
+  }
+
+  private AciDecisionCache.ClientKey newClientKey(ClientConnection connection, AuthenticationInfo authInfo, int ssf)
+  {
+    return new AciDecisionCache.ClientKey(connection, authInfo, ssf);
+  }
+
+  private AciEvalContext newEvalContext(AciDecisionCache.ClientKey clientKey) throws Exception
+  {
+    final AciEvalContext evalCtx = mock(AciEvalContext.class);
+    when(evalCtx.getDecisionCacheClientKey()).thenReturn(clientKey);
+    when(evalCtx.getRemoteAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+    when(evalCtx.getClientDN()).thenReturn(DN.valueOf("uid=user.0,dc=example,dc=com"));
+    when(evalCtx.getResourceDN()).thenReturn(DN.valueOf("uid=user.0,dc=example,dc=com"));
+    return evalCtx;
+  }
+
+  @Test
+  public void clientScopedBindRules() throws Exception
+  {
+    assertThat(BindRule.decode("ip=\"127.0.0.1\"").isClientScoped()).isTrue();
+    assertThat(BindRule.decode("userdn=\"ldap:///anyone\" and ssf>=\"128\"").isClientScoped()).isTrue();
+    assertThat(BindRule.decode("groupdn=\"ldap:///cn=group,dc=example,dc=com\"").isClientScoped()).isTrue();
+    assertThat(BindRule.decode("userdn=\"ldap:///self\"").isClientScoped()).isFalse();
+    assertThat(BindRule.decode("ip=\"127.0.0.1\" and dayofweek=\"mon\"").isClientScoped()).isFalse();
+  }
+
+  @Test
+  public void resultsAreCachedPerClient() throws Exception
+  {
+    final AciDecisionCache cache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    final BindRule bindRule = BindRule.decode("ip=\"127.0.0.1\"");
+    final AciEvalContext evalCtx = newEvalContext();
+
+    assertThat(cache.evaluate(bindRule, evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    assertThat(cache.evaluate(bindRule, evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    verify(evalCtx, times(1)).getRemoteAddress();
+    assertThat(cache.getHits()).isEqualTo(1);
+    assertThat(cache.getMisses()).isEqualTo(1);
+
+    // another client
+    final AciEvalContext otherCtx = newEvalContext();
+    assertThat(cache.evaluate(bindRule, otherCtx)).isEqualTo(EnumEvalResult.TRUE);
+    verify(otherCtx, times(1)).getRemoteAddress();
+    assertThat(cache.getMisses()).isEqualTo(2);
+
+    // ACI change
+    cache.clear();
+    assertThat(cache.evaluate(bindRule, evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    verify(evalCtx, times(2)).getRemoteAddress();
+  }
+
+  @Test
+  public void authenticationOrSecurityChangesOnTheSameConnectionMissTheCache() throws Exception
+  {
+    final AciDecisionCache cache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    final BindRule bindRule = BindRule.decode("ip=\"127.0.0.1\"");
+    final ClientConnection connection = mock(ClientConnection.class);
+    final AuthenticationInfo authInfo = new AuthenticationInfo();
+
+    final AciEvalContext evalCtx = newEvalContext(newClientKey(connection, authInfo, 0));
+    cache.evaluate(bindRule, evalCtx);
+    assertThat(cache.getMisses()).isEqualTo(1);
+
+    // same client, same state
+    final AciEvalContext sameCtx = newEvalContext(newClientKey(connection, authInfo, 0));
+    cache.evaluate(bindRule, sameCtx);
+    verify(sameCtx, never()).getRemoteAddress();
+    assertThat(cache.getHits()).isEqualTo(1);
+
+    // StartTLS or SASL security layer
+    final AciEvalContext ssfCtx = newEvalContext(newClientKey(connection, authInfo, 128));
+    cache.evaluate(bindRule, ssfCtx);
+    verify(ssfCtx, times(1)).getRemoteAddress();
+    assertThat(cache.getMisses()).isEqualTo(2);
+
+    // new bind
+    final AciEvalContext rebindCtx = newEvalContext(newClientKey(connection, new AuthenticationInfo(), 0));
+    cache.evaluate(bindRule, rebindCtx);
+    verify(rebindCtx, times(1)).getRemoteAddress();
+    assertThat(cache.getMisses()).isEqualTo(3);
+    assertThat(cache.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void resultsAreNotCachedWithoutClientKey() throws Exception
+  {
+    final AciDecisionCache cache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    final BindRule bindRule = BindRule.decode("ip=\"127.0.0.1\"");
+    final AciEvalContext evalCtx = newEvalContext();
+    when(evalCtx.getDecisionCacheClientKey()).thenReturn(null);
+
+    cache.evaluate(bindRule, evalCtx);
+    cache.evaluate(bindRule, evalCtx);
+    verify(evalCtx, times(2)).getRemoteAddress();
+    assertThat(cache.getHits()).isEqualTo(0);
+  }
+
+  @Test
+  public void resultsDependingOnTheEntryAreNotCached() throws Exception
+  {
+    final AciDecisionCache cache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    final BindRule bindRule = BindRule.decode("userdn=\"ldap:///self\"");
+    final AciEvalContext evalCtx = newEvalContext();
+
+    assertThat(cache.evaluate(bindRule, evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    assertThat(cache.evaluate(bindRule, evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    verify(evalCtx, never()).getDecisionCacheClientKey();
+    assertThat(cache.getHits() + cache.getMisses()).isEqualTo(0);
+  }
+
+  @Test
+  public void groupMembershipChangesInvalidateResults() throws Exception
+  {
+    final AciDecisionCache cache = new AciDecisionCache(AciDecisionCache.DEFAULT_MAX_SIZE);
+    final BindRule bindRule = BindRule.decode("ip=\"127.0.0.1\"");
+    final AciEvalContext evalCtx = newEvalContext();
+
+    cache.evaluate(bindRule, evalCtx);
+    DirectoryServer.getGroupManager().memberListChanged();
+    cache.evaluate(bindRule, evalCtx);
+    verify(evalCtx, times(2)).getRemoteAddress();
+    assertThat(cache.getHits()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.authorization.dseecompat;
+
+import java.util.List;
+import java.util.TreeSet;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SuppressWarnings("javadoc")
+public class AciListTest extends DirectoryServerTestCase
+{
+  private static final String ACI =
+      "(targetattr=\"*\")(version 3.0; acl \"%s\"; allow(read) userdn=\"ldap:///anyone\";)";
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startFakeServer();
+  }
+
+  @AfterClass
+  public void tearDown()
+  {
+    TestCaseUtils.shutdownFakeServer();
+  }
+
+  private Aci addAci(AciList aciList, String dn, String name) throws Exception
+  {
+    final DN entryDN = DN.valueOf(dn);
+    final Aci aci = Aci.decode(ByteString.valueOfUtf8(String.format(ACI, name)), entryDN);
+    final TreeSet<Aci> acis = new TreeSet<>();
+    acis.add(aci);
+    aciList.addAci(entryDN, acis);
+    return aci;
+  }
+
+  @Test
+  public void candidateAcisAreInheritedClosestFirst() throws Exception
+  {
+    final AciList aciList = new AciList(DN.valueOf("cn=config"));
+    final Aci suffixAci = addAci(aciList, "dc=example,dc=com", "suffix");
+    final Aci peopleAci = addAci(aciList, "ou=people,dc=example,dc=com", "people");
+    addAci(aciList, "ou=groups,dc=example,dc=com", "groups");
+
+    assertThat(aciList.getCandidateAcis(DN.valueOf("uid=user.0,ou=people,dc=example,dc=com")))
+        .containsExactly(peopleAci, suffixAci);
+    assertThat(aciList.getCandidateAcis(DN.valueOf("ou=people,dc=example,dc=com")))
+        .containsExactly(peopleAci, suffixAci);
+    assertThat(aciList.getCandidateAcis(DN.valueOf("ou=other,dc=example,dc=com")))
+        .containsExactly(suffixAci);
+    assertThat(aciList.getCandidateAcis(DN.valueOf("dc=example,dc=org"))).isEmpty();
+    assertThat(aciList.getCandidateAcis(null)).isEmpty();
+  }
+
+  @Test
+  public void candidateAcisReflectChanges() throws Exception
+  {
+    final AciList aciList = new AciList(DN.valueOf("cn=config"));
+    final Aci suffixAci = addAci(aciList, "dc=example,dc=com", "suffix");
+    final DN userDN = DN.valueOf("uid=user.0,ou=people,dc=example,dc=com");
+    final List<Aci> before = aciList.getCandidateAcis(userDN);
+
+    final Aci peopleAci = addAci(aciList, "ou=people,dc=example,dc=com", "people");
+    assertThat(aciList.getCandidateAcis(userDN)).containsExactly(peopleAci, suffixAci);
+    // previously returned lists are snapshots and are not affected by changes
+    assertThat(before).containsExactly(suffixAci);
+
+    assertThat(aciList.renameAci(DN.valueOf("ou=people,dc=example,dc=com"),
+        DN.valueOf("ou=staff,dc=example,dc=com"))).isTrue();
+    assertThat(aciList.getCandidateAcis(userDN)).containsExactly(suffixAci);
+    assertThat(aciList.getCandidateAcis(DN.valueOf("uid=user.0,ou=staff,dc=example,dc=com"))).hasSize(2);
+  }
+
+  @Test
+  public void indexIsKeptWhenNoAciIsRemovedOrRenamed() throws Exception
+  {
+    final AciList aciList = new AciList(DN.valueOf("cn=config"));
+    final Aci suffixAci = addAci(aciList, "dc=example,dc=com", "suffix");
+    final DN userDN = DN.valueOf("uid=user.0,ou=people,dc=example,dc=com");
+    final List<Aci> before = aciList.getCandidateAcis(userDN);
+
+    final Entry otherEntry = new Entry(DN.valueOf("ou=other,dc=example,dc=com"), null, null, null);
+    assertThat(aciList.removeAci(otherEntry, false, false)).isFalse();
+    assertThat(aciList.renameAci(DN.valueOf("ou=other,dc=example,dc=com"),
+        DN.valueOf("ou=renamed,dc=example,dc=com"))).isFalse();
+    assertThat(aciList.getCandidateAcis(userDN)).isSameAs(before);
+
+    final Entry suffixEntry = new Entry(DN.valueOf("dc=example,dc=com"), null, null, null);
+    assertThat(aciList.removeAci(suffixEntry, true, false)).isTrue();
+    assertThat(before).containsExactly(suffixAci);
+    assertThat(aciList.getCandidateAcis(userDN)).isEmpty();
+  }
+}
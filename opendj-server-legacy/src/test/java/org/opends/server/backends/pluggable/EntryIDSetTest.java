@@ -316,9 +316,138 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertIdsEquals(retained, 1, 3, 5, 7, 9);
   }
 
+  @Test
+  public void testBitmapAddRemoveContain()
+  {
+    final EntryIDSet set = newBitmapSet(6, 8, 10, 12, 70000);
+
+    assertThat(set.add(id(4))).isTrue();
+    assertThat(set.add(id(10))).isFalse();
+    assertThat(set.remove(id(8))).isTrue();
+    assertThat(set.remove(id(9))).isFalse();
+    assertThat(set.contains(id(70000))).isTrue();
+    assertThat(set.contains(id(8))).isFalse();
+    assertThat(set.size()).isEqualTo(5);
+    assertThat(set.toLongArray()).containsExactly(4, 6, 10, 12, 70000);
+  }
+
+  @Test
+  public void testBitmapDenseContainers()
+  {
+    final long[] ids = range(100000, 2);
+    final EntryIDSet set = newBitmapSet(ids);
+    assertThat(set.size()).isEqualTo(ids.length);
+    assertThat(set.toLongArray()).isEqualTo(ids);
+
+    for (long id : ids)
+    {
+      if (id % 4 == 0)
+      {
+        set.remove(id(id));
+      }
+    }
+    assertThat(set.size()).isEqualTo(ids.length / 2);
+    assertThat(set.contains(id(4))).isFalse();
+    assertThat(set.contains(id(6))).isTrue();
+  }
+
+  @Test
+  public void testBitmapSetOperations()
+  {
+    final EntryIDSet evens = newBitmapSet(range(200000, 2));
+    final EntryIDSet multiplesOfThree = newBitmapSet(range(200000, 3));
+
+    final EntryIDSet retained = newBitmapSet(range(200000, 2));
+    retained.retainAll(multiplesOfThree);
+    assertThat(retained.toLongArray()).isEqualTo(range(200000, 6));
+
+    final EntryIDSet removed = newBitmapSet(range(200000, 2));
+    removed.removeAll(multiplesOfThree);
+    assertThat(removed.size()).isEqualTo(evens.size() - retained.size());
+    assertThat(removed.contains(id(6))).isFalse();
+    assertThat(removed.contains(id(4))).isTrue();
+
+    final EntryIDSet union = newBitmapSet(range(200000, 2));
+    union.addAll(multiplesOfThree);
+    assertThat(union.size()).isEqualTo(evens.size() + multiplesOfThree.size() - retained.size());
+  }
+
+  @Test
+  public void testBitmapMixedWithArray()
+  {
+    EntryIDSet retained = newDefinedSet(2, 4, 6, 8);
+    retained.retainAll(newBitmapSet(1, 2, 3, 5, 6, 7, 8));
+    assertThat(retained.toLongArray()).containsExactly(2, 6, 8);
+
+    retained = newBitmapSet(2, 4, 6, 8);
+    retained.retainAll(newDefinedSet(1, 2, 3, 5, 6, 7, 8));
+    assertThat(retained.toLongArray()).containsExactly(2, 6, 8);
+
+    retained = newUndefinedSet();
+    retained.retainAll(newBitmapSet(1, 3, 5));
+    assertThat(retained.toLongArray()).containsExactly(1, 3, 5);
+
+    final EntryIDSet union =
+        newSetFromUnion(Arrays.asList(newDefinedSet(1, 2, 3), newBitmapSet(4, 5, 6), newDefinedSet(3, 4)));
+    assertThat(union.toLongArray()).containsExactly(1, 2, 3, 4, 5, 6);
+  }
+
+  @Test
+  public void testBitmapIteratorWithBegin()
+  {
+    final EntryIDSet set = newBitmapSet(4, 6, 8, 70000, 140000);
+    assertThat(set.iterator(id(8))).containsExactly(id(8), id(70000), id(140000));
+    assertThat(set.iterator(id(140000))).containsExactly(id(140000));
+    assertThat(set.iterator(id(13))).containsExactly(id(4), id(6), id(8), id(70000), id(140000));
+  }
+
+  @Test
+  public void testCodecV3EncodesLargeSetsAsBitmap()
+  {
+    final long[] ids = range(100000, 3);
+    final ByteString bitmap = CODEC_V3.encode(newDefinedSet(ids));
+    assertThat(bitmap.length()).isLessThan(CODEC_V2.encode(newDefinedSet(ids)).length());
+    assertThat(CODEC_V3.decode(KEY, bitmap).toLongArray()).isEqualTo(ids);
+
+    // V3 is able to read V2 encoded values
+    assertThat(CODEC_V3.decode(KEY, CODEC_V2.encode(newDefinedSet(4, 6, 8))).toLongArray()).containsExactly(4, 6, 8);
+  }
+
+  @Test
+  public void testBitmapEncodedSizeDoesNotDependOnImplementation()
+  {
+    final long[] ids = new long[10000];
+    for (int i = 0; i < ids.length; i++)
+    {
+      // A dense chunk, then sparse chunks
+      ids[i] = i < 5000 ? i : 65536L * (i - 4999) + i;
+    }
+    assertThat(newDefinedSet(ids).getBitmapEncodedSize()).isEqualTo(newBitmapSet(ids).getBitmapEncodedSize());
+    assertThat(newDefinedSet().getBitmapEncodedSize()).isEqualTo(newBitmapSet().getBitmapEncodedSize());
+    assertThat(newUndefinedSet().getBitmapEncodedSize()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test(dataProvider = "codecs")
+  public void testCodecsDecodeSize(EntryIDSetCodec codec)
+  {
+    assertThat(codec.decodeSize(codec.encode(newDefinedSet(4, 6, 8, 10, 12)))).isEqualTo(5);
+    assertThat(codec.decodeSize(codec.encode(newDefinedSet(range(10000, 1))))).isEqualTo(10000);
+    assertThat(codec.decodeSize(codec.encode(newUndefinedSet()))).isEqualTo(Long.MAX_VALUE);
+  }
+
+  private static long[] range(int max, int step)
+  {
+    final long[] ids = new long[(max + step - 1) / step];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = (long) i * step;
+    }
+    return ids;
+  }
+
   @DataProvider(name = "codecs")
   public static Object[][] codecs() {
-     return new Object[][] { { CODEC_V1 }, { CODEC_V2 } };
+     return new Object[][] { { CODEC_V1 }, { CODEC_V2 }, { CODEC_V3 } };
   }
 
 }
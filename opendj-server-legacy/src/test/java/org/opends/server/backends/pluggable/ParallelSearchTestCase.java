@@ -0,0 +1,240 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.opends.server.ConfigurationMock.legacyMockCfg;
+import static org.opends.server.TestCaseUtils.makeEntry;
+import static org.opends.server.protocols.internal.InternalClientConnection.getRootConnection;
+import static org.opends.server.protocols.internal.Requests.newSearchRequest;
+import static org.opends.server.util.CollectionUtils.*;
+import static org.opends.server.util.ServerConstants.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SearchScope;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.std.meta.BackendIndexCfgDefn.IndexType;
+import org.opends.server.admin.std.server.BackendIndexCfg;
+import org.opends.server.admin.std.server.PDBBackendCfg;
+import org.opends.server.backends.pdb.PDBBackend;
+import org.opends.server.controls.PagedResultsControl;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.protocols.internal.SearchRequest;
+import org.opends.server.protocols.ldap.LDAPControl;
+import org.opends.server.types.Control;
+import org.opends.server.types.DN;
+import org.opends.server.types.Entry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the parallel evaluation of unindexed searches and of indexed searches having many candidate entries.
+ */
+@SuppressWarnings("javadoc")
+public class ParallelSearchTestCase extends DirectoryServerTestCase
+{
+  private static final String BACKEND_BASE_DN = "dc=parallel-search,dc=com";
+  private static final String BACKEND_NAME = "parallelSearch";
+  /** Several partitions, the last one being incomplete. */
+  private static final int NB_USERS = 5 * ParallelSearchEvaluator.PARTITION_SIZE + 17;
+
+  private static final String UNINDEXED_FILTER = "(description=even)";
+  private static final String INDEXED_FILTER = "(&(sn=*)(description=even))";
+
+  private PDBBackendCfg backendCfg;
+  private PDBBackend backend;
+
+  @BeforeClass
+  public void beforeClass() throws Exception
+  {
+    TestCaseUtils.startServer();
+
+    final DN baseDN = DN.valueOf(BACKEND_BASE_DN);
+
+    backendCfg = legacyMockCfg(PDBBackendCfg.class);
+    when(backendCfg.dn()).thenReturn(baseDN);
+    when(backendCfg.getBackendId()).thenReturn(BACKEND_NAME);
+    when(backendCfg.getBaseDN()).thenReturn(newTreeSet(baseDN));
+    when(backendCfg.listBackendIndexes()).thenReturn(new String[] { "sn" });
+    when(backendCfg.listBackendVLVIndexes()).thenReturn(new String[0]);
+    when(backendCfg.getParallelSearchThreads()).thenReturn(4);
+    when(backendCfg.getParallelSearchThreshold()).thenReturn(1);
+
+    when(backendCfg.getDBDirectory()).thenReturn(BACKEND_NAME);
+    when(backendCfg.getDBDirectoryPermissions()).thenReturn("755");
+    when(backendCfg.getDBCacheSize()).thenReturn(0L);
+    when(backendCfg.getDBCachePercent()).thenReturn(20);
+
+    final BackendIndexCfg indexCfg = legacyMockCfg(BackendIndexCfg.class);
+    when(indexCfg.getIndexType()).thenReturn(newTreeSet(IndexType.PRESENCE));
+    when(indexCfg.getAttribute()).thenReturn(DirectoryServer.getAttributeTypeOrNull("sn"));
+    when(backendCfg.getBackendIndex("sn")).thenReturn(indexCfg);
+
+    backend = new PDBBackend();
+    backend.setBackendID(backendCfg.getBackendId());
+    backend.configureBackend(backendCfg, DirectoryServer.getInstance().getServerContext());
+    backend.openBackend();
+
+    backend.addEntry(makeEntry("dn: " + BACKEND_BASE_DN, "objectclass: top", "objectclass: domain"), null);
+    for (int i = 0; i < NB_USERS; i++)
+    {
+      backend.addEntry(makeEntry(
+          "dn: " + userDN(i),
+          "objectClass: top",
+          "objectClass: person",
+          "cn: user " + i,
+          "sn: " + i,
+          "description: " + (i % 2 == 0 ? "even" : "odd")), null);
+    }
+  }
+
+  @AfterClass
+  public void afterClass() throws Exception
+  {
+    backend.finalizeBackend();
+    backend = null;
+  }
+
+  private static DN userDN(int i) throws Exception
+  {
+    return DN.valueOf("cn=user " + i + "," + BACKEND_BASE_DN);
+  }
+
+  @DataProvider
+  private Object[][] filters()
+  {
+    return new Object[][] { { UNINDEXED_FILTER }, { INDEXED_FILTER } };
+  }
+
+  @Test(dataProvider = "filters")
+  public void parallelSearchShouldReturnSameEntriesInSameOrderAsSequentialSearch(String filter) throws Exception
+  {
+    final List<DN> parallelResults = search(newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, filter));
+
+    setParallelSearchThreads(0);
+    try
+    {
+      final List<DN> sequentialResults =
+          search(newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, filter));
+      assertThat(parallelResults).hasSize((NB_USERS + 1) / 2);
+      assertThat(parallelResults).isEqualTo(sequentialResults);
+    }
+    finally
+    {
+      setParallelSearchThreads(4);
+    }
+  }
+
+  @Test
+  public void parallelIndexedSearchShouldReturnEntriesInEntryIDOrder() throws Exception
+  {
+    final List<DN> expected = new ArrayList<>();
+    for (int i = 0; i < NB_USERS; i += 2)
+    {
+      expected.add(userDN(i));
+    }
+    assertThat(search(newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, INDEXED_FILTER)))
+        .isEqualTo(expected);
+  }
+
+  @Test(dataProvider = "filters")
+  public void pagedParallelSearchShouldReturnEveryEntryOnce(String filter) throws Exception
+  {
+    final List<DN> expected = search(newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, filter));
+
+    final List<DN> results = new ArrayList<>();
+    ByteString cookie = ByteString.empty();
+    do
+    {
+      final SearchRequest request = newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, filter)
+          .addControl(new PagedResultsControl(true, 100, cookie));
+      final InternalSearchOperation searchOperation = getRootConnection().processSearch(request);
+      assertThat(searchOperation.getResultCode()).isEqualTo(ResultCode.SUCCESS);
+      assertThat(searchOperation.getSearchEntries().size()).isLessThanOrEqualTo(100);
+      for (Entry entry : searchOperation.getSearchEntries())
+      {
+        results.add(entry.getName());
+      }
+      cookie = getPagedResultsControl(searchOperation.getResponseControls()).getCookie();
+    }
+    while (cookie.length() != 0);
+
+    assertThat(results).isEqualTo(expected);
+  }
+
+  @Test(dataProvider = "filters")
+  public void parallelSearchShouldStopAtSizeLimit(String filter) throws Exception
+  {
+    final SearchRequest request =
+        newSearchRequest(BACKEND_BASE_DN, SearchScope.WHOLE_SUBTREE, filter).setSizeLimit(10);
+    final InternalSearchOperation searchOperation = getRootConnection().processSearch(request);
+    assertThat(searchOperation.getResultCode()).isEqualTo(ResultCode.SIZE_LIMIT_EXCEEDED);
+    assertThat(searchOperation.getSearchEntries()).hasSize(10);
+  }
+
+  private List<DN> search(SearchRequest request) throws Exception
+  {
+    final InternalSearchOperation searchOperation = getRootConnection().processSearch(request);
+    assertThat(searchOperation.getResultCode()).isEqualTo(ResultCode.SUCCESS);
+    final List<DN> results = new ArrayList<>();
+    for (Entry entry : searchOperation.getSearchEntries())
+    {
+      results.add(entry.getName());
+    }
+    return results;
+  }
+
+  private void setParallelSearchThreads(int nbThreads)
+  {
+    when(backendCfg.getParallelSearchThreads()).thenReturn(nbThreads);
+    backend.getRootContainer().applyConfigurationChange(backendCfg);
+  }
+
+  private PagedResultsControl getPagedResultsControl(List<Control> responseControls) throws Exception
+  {
+    for (Control c : responseControls)
+    {
+      if (c.getOID().equals(OID_PAGED_RESULTS_CONTROL))
+      {
+        if (c instanceof LDAPControl)
+        {
+          return PagedResultsControl.DECODER.decode(c.isCritical(), ((LDAPControl) c).getValue());
+        }
+        return (PagedResultsControl) c;
+      }
+    }
+    throw new AssertionError("Expected to find PagedResultsControl");
+  }
+}
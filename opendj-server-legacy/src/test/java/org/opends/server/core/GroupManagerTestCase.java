@@ -26,6 +26,7 @@
  */
 package org.opends.server.core;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -2458,6 +2459,305 @@ public class GroupManagerTestCase
       "userPassword: password");
   }
 
+  /**
+   * Verifies that modifications of the member list of a static group entry are
+   * applied in place to the registered group instance, and that other changes
+   * still recreate the group instance.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testStaticGroupMemberListModifiedInPlace() throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+    DN user2DN = DN.valueOf("uid=user.2,ou=People,o=test");
+    StaticGroup group1Instance = (StaticGroup) groupManager.getGroupInstance(group1DN);
+    assertNotNull(group1Instance);
+    assertFalse(group1Instance.isMember(user1DN));
+    long refreshToken = groupManager.refreshToken();
+    long version = group1Instance.getMembershipVersion();
+
+    InternalClientConnection conn = getRootConnection();
+    LinkedList<Modification> mods = new LinkedList<>();
+    mods.add(new Modification(ModificationType.ADD,
+        Attributes.create("member", user1DN.toString(), user2DN.toString(), group2DN.toString())));
+    assertEquals(conn.processModify(group1DN, mods).getResultCode(), ResultCode.SUCCESS);
+
+    assertSame(groupManager.getGroupInstance(group1DN), group1Instance);
+    assertEquals(groupManager.refreshToken(), refreshToken);
+    assertTrue(group1Instance.getMembershipVersion() > version);
+    assertTrue(group1Instance.isMember(user1DN));
+    assertTrue(group1Instance.isMember(user2DN));
+    assertTrue(group1Instance.getNestedGroupDNs().contains(group2DN));
+
+    mods.clear();
+    mods.add(new Modification(ModificationType.DELETE,
+        Attributes.create("member", user2DN.toString(), group2DN.toString())));
+    assertEquals(conn.processModify(group1DN, mods).getResultCode(), ResultCode.SUCCESS);
+
+    assertSame(groupManager.getGroupInstance(group1DN), group1Instance);
+    assertTrue(group1Instance.isMember(user1DN));
+    assertFalse(group1Instance.isMember(user2DN));
+    assertFalse(group1Instance.getNestedGroupDNs().contains(group2DN));
+
+    // Replacing the member list recreates the group instance
+    mods.clear();
+    mods.add(new Modification(ModificationType.REPLACE, Attributes.create("member", user2DN.toString())));
+    assertEquals(conn.processModify(group1DN, mods).getResultCode(), ResultCode.SUCCESS);
+
+    Group<?> newGroup1Instance = groupManager.getGroupInstance(group1DN);
+    assertNotSame(newGroup1Instance, group1Instance);
+    assertFalse(newGroup1Instance.isMember(user1DN));
+    assertTrue(newGroup1Instance.isMember(user2DN));
+  }
+
+
+
+  /**
+   * Verifies that the groups of an entry include the groups it belongs to
+   * through nested groups, and follow the changes to the member lists.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testGetGroupsWithNestedGroups() throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN group3DN = DN.valueOf("cn=group 3,ou=Groups,o=test");
+    DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+    Entry user1Entry = DirectoryServer.getEntry(user1DN);
+    Group<?> group1Instance = groupManager.getGroupInstance(group1DN);
+    Group<?> group2Instance = groupManager.getGroupInstance(group2DN);
+    Group<?> group3Instance = groupManager.getGroupInstance(group3DN);
+    assertTrue(groupManager.getGroups(user1Entry).isEmpty());
+
+    group1Instance.addMember(user1Entry);
+    group2Instance.addNestedGroup(group1DN);
+    group3Instance.addNestedGroup(group2DN);
+    assertEquals(groupManager.getGroups(user1Entry), newSet(group1Instance, group2Instance, group3Instance));
+
+    group2Instance.removeNestedGroup(group1DN);
+    assertEquals(groupManager.getGroups(user1Entry), newSet(group1Instance));
+
+    InternalClientConnection conn = getRootConnection();
+    LinkedList<Modification> mods = new LinkedList<>();
+    mods.add(new Modification(ModificationType.ADD, Attributes.create("member", user1DN.toString())));
+    assertEquals(conn.processModify(group3DN, mods).getResultCode(), ResultCode.SUCCESS);
+    assertEquals(groupManager.getGroups(user1Entry), newSet(group1Instance, group3Instance));
+
+    assertEquals(conn.processDelete(group1DN).getResultCode(), ResultCode.SUCCESS);
+    assertEquals(groupManager.getGroups(user1Entry), newSet(group3Instance));
+  }
+
+  private Set<Group<?>> newSet(Group<?>... groups)
+  {
+    Set<Group<?>> set = new LinkedHashSet<>();
+    Collections.addAll(set, groups);
+    return set;
+  }
+
+
+
+  /**
+   * Verifies that the members of a materialized dynamic group follow the
+   * changes made to the entries matching its member URL.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testMaterializedDynamicGroup() throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+
+    setDynamicGroupMaterialized(true);
+    try
+    {
+      TestCaseUtils.addEntries(
+        "dn: ou=People,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: People",
+        "",
+        "dn: ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: Groups",
+        "",
+        "dn: uid=user.1,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "givenName: User",
+        "sn: 1",
+        "cn: User 1",
+        "userPassword: password",
+        "",
+        "dn: cn=Test Materialized,ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: groupOfURLs",
+        "cn: Test Materialized",
+        "memberURL: ldap:///ou=People,o=test??sub?(sn=1)");
+
+      DN groupDN = DN.valueOf("cn=Test Materialized,ou=Groups,o=test");
+      DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+      DN user2DN = DN.valueOf("uid=user.2,ou=People,o=test");
+      DN renamedDN = DN.valueOf("uid=renamed,ou=People,o=test");
+
+      DynamicGroup groupInstance = (DynamicGroup) groupManager.getGroupInstance(groupDN);
+      assertNotNull(groupInstance);
+      assertTrue(groupInstance.isMaterialized());
+      assertTrue(groupInstance.isMember(user1DN));
+      assertFalse(groupInstance.isMember(user2DN));
+
+      TestCaseUtils.addEntry(
+        "dn: uid=user.2,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.2",
+        "givenName: User",
+        "sn: 1",
+        "cn: User 2",
+        "userPassword: password");
+      assertTrue(groupInstance.isMember(user2DN));
+
+      InternalClientConnection conn = getRootConnection();
+      LinkedList<Modification> mods = new LinkedList<>();
+      mods.add(new Modification(ModificationType.REPLACE, Attributes.create("sn", "2")));
+      assertEquals(conn.processModify(user2DN, mods).getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(user2DN));
+
+      ModifyDNOperation modifyDNOperation =
+           conn.processModifyDN(user1DN, RDN.decode("uid=renamed"), true);
+      assertEquals(modifyDNOperation.getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(user1DN));
+      assertTrue(groupInstance.isMember(renamedDN));
+
+      assertEquals(conn.processDelete(renamedDN).getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(renamedDN));
+
+      MemberList memberList = groupInstance.getMembers();
+      assertFalse(memberList.hasMoreMembers());
+      memberList.close();
+    }
+    finally
+    {
+      groupManager.deregisterAllGroups();
+      setDynamicGroupMaterialized(false);
+    }
+  }
+
+  /**
+   * Verifies that the members of a materialized dynamic group whose member URL
+   * uses the isMemberOf virtual attribute follow the changes made to the
+   * member list of the referenced static group.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testMaterializedDynamicGroupWithVirtualAttribute() throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+
+    setDynamicGroupMaterialized(true);
+    try
+    {
+      TestCaseUtils.addEntries(
+        "dn: ou=People,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: People",
+        "",
+        "dn: ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: Groups",
+        "",
+        "dn: uid=user.1,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "givenName: User",
+        "sn: 1",
+        "cn: User 1",
+        "userPassword: password",
+        "",
+        "dn: cn=Test Static,ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: groupOfNames",
+        "cn: Test Static",
+        "",
+        "dn: cn=Test Materialized,ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: groupOfURLs",
+        "cn: Test Materialized",
+        "memberURL: ldap:///ou=People,o=test??sub?(isMemberOf=cn=Test Static,ou=Groups,o=test)");
+
+      DN staticGroupDN = DN.valueOf("cn=Test Static,ou=Groups,o=test");
+      DN groupDN = DN.valueOf("cn=Test Materialized,ou=Groups,o=test");
+      DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+
+      DynamicGroup groupInstance = (DynamicGroup) groupManager.getGroupInstance(groupDN);
+      assertNotNull(groupInstance);
+      assertTrue(groupInstance.isMaterialized());
+      assertFalse(groupInstance.isMember(user1DN));
+
+      InternalClientConnection conn = getRootConnection();
+      LinkedList<Modification> mods = new LinkedList<>();
+      mods.add(new Modification(ModificationType.ADD, Attributes.create("member", user1DN.toString())));
+      assertEquals(conn.processModify(staticGroupDN, mods).getResultCode(), ResultCode.SUCCESS);
+      assertTrue(groupInstance.isMember(user1DN));
+
+      mods.clear();
+      mods.add(new Modification(ModificationType.DELETE, Attributes.create("member", user1DN.toString())));
+      assertEquals(conn.processModify(staticGroupDN, mods).getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(user1DN));
+    }
+    finally
+    {
+      groupManager.deregisterAllGroups();
+      setDynamicGroupMaterialized(false);
+    }
+  }
+
+  private void setDynamicGroupMaterialized(boolean materialized)
+  {
+    // Materialization is only taken into account when the implementation starts
+    TestCaseUtils.dsconfig(
+      "set-group-implementation-prop",
+      "--implementation-name", "Dynamic",
+      "--set", "enabled:false");
+    TestCaseUtils.dsconfig(
+      "set-group-implementation-prop",
+      "--implementation-name", "Dynamic",
+      "--set", "materialize-members:" + materialized,
+      "--set", "enabled:true");
+  }
+
+
+
   /**
    * Adds entries for subtree operations tests.
    *
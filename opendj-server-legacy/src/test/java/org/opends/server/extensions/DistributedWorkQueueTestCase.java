@@ -0,0 +1,238 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.extensions;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.admin.server.AdminTestCaseUtils;
+import org.opends.server.admin.std.meta.DistributedWorkQueueCfgDefn;
+import org.opends.server.admin.std.server.DistributedWorkQueueCfg;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Operation;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * A set of test cases for the distributed work queue.
+ */
+public class DistributedWorkQueueTestCase extends ExtensionsTestCase
+{
+  /** The monitor of the server work queue, replaced by the monitor of the tested work queues. */
+  private MonitorProvider<?> serverWorkQueueMonitor;
+
+  /**
+   * Ensures that the Directory Server is running.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+    serverWorkQueueMonitor = DirectoryServer.getMonitorProviders().get("work queue");
+  }
+
+  /** Restores the monitor of the server work queue. */
+  @AfterMethod
+  public void restoreServerWorkQueueMonitor()
+  {
+    if (serverWorkQueueMonitor != null)
+    {
+      DirectoryServer.registerMonitorProvider(serverWorkQueueMonitor);
+    }
+  }
+
+  private DistributedWorkQueue newWorkQueue(int numWorkerThreads, int maxCapacity) throws Exception
+  {
+    Entry entry = TestCaseUtils.makeEntry(
+        "dn: cn=Work Queue,cn=config",
+        "objectClass: top",
+        "objectClass: ds-cfg-work-queue",
+        "objectClass: ds-cfg-distributed-work-queue",
+        "cn: Work Queue",
+        "ds-cfg-java-class: org.opends.server.extensions.DistributedWorkQueue",
+        "ds-cfg-num-worker-threads: " + numWorkerThreads,
+        "ds-cfg-max-work-queue-capacity: " + maxCapacity);
+    DistributedWorkQueueCfg configuration =
+        AdminTestCaseUtils.getConfiguration(DistributedWorkQueueCfgDefn.getInstance(), entry);
+    DistributedWorkQueue workQueue = new DistributedWorkQueue();
+    workQueue.initializeWorkQueue(configuration);
+    return workQueue;
+  }
+
+  /** Returns an operation of the connection 0, counting its runs and waiting for the latch. */
+  private Operation newBlockingOperation(final AtomicInteger started, final CountDownLatch latch)
+  {
+    Operation operation = mock(Operation.class);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        started.incrementAndGet();
+        latch.await(10, TimeUnit.SECONDS);
+        return null;
+      }
+    }).when(operation).run();
+    return operation;
+  }
+
+  private void waitFor(AtomicInteger counter, int expected) throws Exception
+  {
+    long timeout = System.currentTimeMillis() + 10000;
+    while (counter.get() < expected && System.currentTimeMillis() < timeout)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(counter.get(), expected);
+  }
+
+  /**
+   * Ensures that operations of a single client connection, which all go to the
+   * same queue, are stolen by the idle worker threads.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testIdleWorkersStealOperations() throws Exception
+  {
+    DistributedWorkQueue workQueue = newWorkQueue(4, 16);
+    try
+    {
+      AtomicInteger started = new AtomicInteger();
+      CountDownLatch latch = new CountDownLatch(1);
+      for (int i = 0; i < 4; i++)
+      {
+        workQueue.submitOperation(newBlockingOperation(started, latch));
+      }
+
+      // All the worker threads are busy with the operations of the same queue
+      waitFor(started, 4);
+      assertEquals(workQueue.getOpsStolen(), 3);
+      assertFalse(workQueue.isIdle());
+
+      latch.countDown();
+      assertTrue(workQueue.waitUntilIdle(10000));
+      assertEquals(workQueue.getOpsSubmitted(), 4);
+      long nbPickedUp = 0;
+      for (long count : workQueue.getWaitTimeHistogram())
+      {
+        nbPickedUp += count;
+      }
+      assertEquals(nbPickedUp, 4);
+    }
+    finally
+    {
+      workQueue.finalizeWorkQueue(LocalizableMessage.raw("test"));
+    }
+  }
+
+  /**
+   * Ensures that operations are rejected when the queue is full and the caller
+   * does not want to wait.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testTrySubmitOperationWhenFull() throws Exception
+  {
+    DistributedWorkQueue workQueue = newWorkQueue(1, 16);
+    try
+    {
+      AtomicInteger started = new AtomicInteger();
+      CountDownLatch latch = new CountDownLatch(1);
+      workQueue.submitOperation(newBlockingOperation(started, latch));
+      waitFor(started, 1);
+
+      for (int i = 0; i < 16; i++)
+      {
+        assertTrue(workQueue.trySubmitOperation(newBlockingOperation(started, latch)));
+      }
+      assertEquals(workQueue.size(), 16);
+      assertFalse(workQueue.trySubmitOperation(newBlockingOperation(started, latch)));
+      assertEquals(workQueue.getOpsRejectedDueToQueueFull(), 1);
+
+      latch.countDown();
+      assertTrue(workQueue.waitUntilIdle(10000));
+      assertEquals(started.get(), 17);
+    }
+    finally
+    {
+      workQueue.finalizeWorkQueue(LocalizableMessage.raw("test"));
+    }
+  }
+
+  /**
+   * Ensures that operations are rejected once the work queue has been shut
+   * down.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testSubmitOperationAfterShutdown() throws Exception
+  {
+    DistributedWorkQueue workQueue = newWorkQueue(2, 16);
+    workQueue.finalizeWorkQueue(LocalizableMessage.raw("test"));
+    try
+    {
+      workQueue.submitOperation(mock(Operation.class));
+      fail("Expected a DirectoryException");
+    }
+    catch (DirectoryException e)
+    {
+      assertEquals(e.getResultCode(), ResultCode.UNAVAILABLE);
+    }
+  }
+
+  /**
+   * Ensures that the capacity of the queue of each worker thread is a power of
+   * two holding its share of the maximum capacity, even for maximum capacities
+   * close to the largest int.
+   */
+  @Test
+  public void testQueueCapacity()
+  {
+    assertEquals(DistributedWorkQueue.getQueueCapacity(0, 4), 16);
+    assertEquals(DistributedWorkQueue.getQueueCapacity(1000, 4), 256);
+    assertEquals(DistributedWorkQueue.getQueueCapacity(1025, 1), 2048);
+    assertEquals(DistributedWorkQueue.getQueueCapacity(Integer.MAX_VALUE, 2), 1 << 30);
+    assertEquals(DistributedWorkQueue.getQueueCapacity(Integer.MAX_VALUE - 1, 7), 1 << 29);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class AsynchronousTextWriterTest extends DirectoryServerTestCase
+{
+  /** Records the written records, optionally blocking until released. */
+  private static final class RecordingTextWriter implements TextWriter
+  {
+    private final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch released;
+
+    private RecordingTextWriter(CountDownLatch released)
+    {
+      this.released = released;
+    }
+
+    @Override
+    public void writeRecord(String record)
+    {
+      try
+      {
+        released.await();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      records.add(record);
+    }
+
+    @Override
+    public void flush()
+    {
+      // nothing to do
+    }
+
+    @Override
+    public void shutdown()
+    {
+      // nothing to do
+    }
+
+    @Override
+    public long getBytesWritten()
+    {
+      return 0;
+    }
+  }
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @Test
+  public void concurrentWritersDoNotLoseRecords() throws Exception
+  {
+    final int nbThreads = 4;
+    final int nbRecordsPerThread = 1000;
+    final RecordingTextWriter wrapped = new RecordingTextWriter(new CountDownLatch(0));
+    final AsynchronousTextWriter writer = new AsynchronousTextWriter("test writer", 16, false, wrapped);
+
+    final Thread[] threads = new Thread[nbThreads];
+    for (int i = 0; i < nbThreads; i++)
+    {
+      final int threadNb = i;
+      threads[i] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < nbRecordsPerThread; j++)
+          {
+            writer.writeRecord(threadNb + ":" + j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    writer.shutdown();
+
+    assertThat(wrapped.records).hasSize(nbThreads * nbRecordsPerThread);
+    // records of each thread are written in order
+    final Map<String, Integer> lastRecords = new HashMap<>();
+    for (String record : wrapped.records)
+    {
+      final String[] parts = record.split(":");
+      final Integer previous = lastRecords.put(parts[0], Integer.valueOf(parts[1]));
+      assertThat(Integer.valueOf(parts[1])).isEqualTo(previous != null ? previous + 1 : 0);
+    }
+  }
+
+  @Test
+  public void fullQueueDropsRecords() throws Exception
+  {
+    final CountDownLatch released = new CountDownLatch(1);
+    final RecordingTextWriter wrapped = new RecordingTextWriter(released);
+    final AsynchronousTextWriter writer = new AsynchronousTextWriter("test writer", 4, false, true, wrapped);
+
+    for (int i = 0; i < 100; i++)
+    {
+      // does not block while the wrapped writer is blocked
+      writer.writeRecord(Integer.toString(i));
+    }
+    released.countDown();
+    writer.shutdown();
+
+    assertThat(wrapped.records).containsExactly("0", "1", "2", "3");
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.loggers;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.DN;
+import org.opends.server.types.FilePermission;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class BinaryAccessLogTest extends DirectoryServerTestCase
+{
+  private static final int BLOCK_SIZE = 10;
+  private static final int NB_RECORDS = 35;
+
+  private File logFile;
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  /**
+   * Writes records 0 to 34, each with time 1000 + i, connection i / 10, etime i
+   * and DN "uid=user.i,ou=people,dc=example,dc=com" or
+   * "cn=group.i,ou=groups,dc=example,dc=com" for odd records.
+   */
+  @BeforeMethod
+  public void writeLog() throws Exception
+  {
+    logFile = File.createTempFile("binary-access", ".log");
+    logFile.delete();
+
+    final BinaryAccessLogWriter writer = new BinaryAccessLogWriter("test binary writer", 60000,
+        new TimeStampNaming(logFile), FilePermission.decodeUNIXMode("640"),
+        new LogPublisherErrorHandler(DN.rootDN()), BLOCK_SIZE);
+    for (int i = 0; i < NB_RECORDS; i++)
+    {
+      final String dn = i % 2 == 0 ? "uid=user." + i + ",ou=people,dc=example,dc=com"
+                                   : "cn=group." + i + ",ou=Groups,dc=example,dc=com";
+      final int resultCode = i == 22 ? 32 : 0;
+      writer.writeRecord(new BinaryAccessLogRecord(1000 + i, i / 10, i, i + 1, "SEARCH", dn, resultCode, i,
+          false, "nentries=1"));
+    }
+    writer.shutdown();
+  }
+
+  @AfterMethod
+  public void deleteLog()
+  {
+    logFile.delete();
+  }
+
+  @Test
+  public void readAllRecords() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      final List<BinaryAccessLogRecord> records = readAll(reader);
+      assertThat(records).hasSize(NB_RECORDS);
+      final BinaryAccessLogRecord record = records.get(7);
+      assertThat(record.getTime()).isEqualTo(1007);
+      assertThat(record.getConnectionID()).isEqualTo(0);
+      assertThat(record.getOperationID()).isEqualTo(7);
+      assertThat(record.getMessageID()).isEqualTo(8);
+      assertThat(record.getType()).isEqualTo("SEARCH");
+      assertThat(record.getDN()).isEqualTo("cn=group.7,ou=Groups,dc=example,dc=com");
+      assertThat(record.getEtime()).isEqualTo(7);
+      assertThat(record.getDetails()).isEqualTo("nentries=1");
+      assertThat(reader.getBlocksRead()).isEqualTo(4);
+      assertThat(reader.getBlocksSkipped()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void filterByTimeRangeSkipsBlocks() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setTimeRange(1012, 1014);
+      assertThat(operationIDs(readAll(reader))).containsExactly(12L, 13L, 14L);
+      assertThat(reader.getBlocksRead()).isEqualTo(1);
+      assertThat(reader.getBlocksSkipped()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void filterByConnectionID() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setConnectionID(3);
+      assertThat(operationIDs(readAll(reader))).containsExactly(30L, 31L, 32L, 33L, 34L);
+      assertThat(reader.getBlocksSkipped()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void filterByMinEtime() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setMinEtime(29);
+      assertThat(operationIDs(readAll(reader))).containsExactly(29L, 30L, 31L, 32L, 33L, 34L);
+      assertThat(reader.getBlocksSkipped()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void filterByResultCode() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setResultCode(32);
+      assertThat(operationIDs(readAll(reader))).containsExactly(22L);
+      assertThat(reader.getBlocksSkipped()).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void filterByBaseDN() throws Exception
+  {
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setBaseDN("OU=groups,dc=example,dc=com").setTimeRange(1000, 1005);
+      assertThat(operationIDs(readAll(reader))).containsExactly(1L, 3L, 5L);
+    }
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setBaseDN("roups,dc=example,dc=com");
+      assertThat(readAll(reader)).isEmpty();
+    }
+  }
+
+  @Test
+  public void appendToExistingFile() throws Exception
+  {
+    final BinaryAccessLogWriter writer = new BinaryAccessLogWriter("test binary writer", 60000,
+        new TimeStampNaming(logFile), FilePermission.decodeUNIXMode("640"),
+        new LogPublisherErrorHandler(DN.rootDN()), BLOCK_SIZE);
+    writer.writeRecord(new BinaryAccessLogRecord(2000, 4, -1, -1, "CONNECT", null, -1, -1, false, "protocol=LDAP"));
+    writer.shutdown();
+
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      final List<BinaryAccessLogRecord> records = readAll(reader);
+      assertThat(records).hasSize(NB_RECORDS + 1);
+      final BinaryAccessLogRecord record = records.get(NB_RECORDS);
+      assertThat(record.isConnectionRecord()).isTrue();
+      assertThat(record.toString()).contains("CONNECT conn=4 protocol=LDAP");
+    }
+  }
+
+  @Test
+  public void etimeUnitIsRecordedPerBlock() throws Exception
+  {
+    final BinaryAccessLogWriter writer = new BinaryAccessLogWriter("test binary writer", 60000,
+        new TimeStampNaming(logFile), FilePermission.decodeUNIXMode("640"),
+        new LogPublisherErrorHandler(DN.rootDN()), BLOCK_SIZE);
+    writer.writeRecord(new BinaryAccessLogRecord(2000, 4, 0, 1, "BIND", null, 0, 30000000, true, null));
+    writer.writeRecord(new BinaryAccessLogRecord(2001, 4, 1, 2, "SEARCH", null, 0, 3000000, true, null));
+    writer.shutdown();
+
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      reader.setMinEtime(25);
+      final List<BinaryAccessLogRecord> records = readAll(reader);
+      assertThat(operationIDs(records)).containsExactly(29L, 30L, 31L, 32L, 33L, 34L, 0L);
+      final BinaryAccessLogRecord record = records.get(6);
+      assertThat(record.isEtimeNanos()).isTrue();
+      assertThat(record.getEtime()).isEqualTo(30000000);
+      assertThat(record.getEtimeMillis()).isEqualTo(30);
+      assertThat(records.get(0).isEtimeNanos()).isFalse();
+    }
+  }
+
+  @Test
+  public void tornBlockIsTruncatedBeforeAppending() throws Exception
+  {
+    final long length = logFile.length();
+    try (FileOutputStream out = new FileOutputStream(logFile, true))
+    {
+      // the marker and part of the summary of a block being written on crash
+      out.write(new byte[] { 0x42, 0x4C, 0x4B, 0x31, 0, 0, 0 });
+    }
+
+    final BinaryAccessLogWriter writer = new BinaryAccessLogWriter("test binary writer", 60000,
+        new TimeStampNaming(logFile), FilePermission.decodeUNIXMode("640"),
+        new LogPublisherErrorHandler(DN.rootDN()), BLOCK_SIZE);
+    assertThat(logFile.length()).isEqualTo(length);
+    writer.writeRecord(new BinaryAccessLogRecord(2000, 4, -1, -1, "CONNECT", null, -1, -1, false, "protocol=LDAP"));
+    writer.shutdown();
+
+    try (BinaryAccessLogReader reader = new BinaryAccessLogReader(logFile))
+    {
+      final List<BinaryAccessLogRecord> records = readAll(reader);
+      assertThat(records).hasSize(NB_RECORDS + 1);
+      assertThat(records.get(NB_RECORDS).getType()).isEqualTo("CONNECT");
+    }
+  }
+
+  private List<BinaryAccessLogRecord> readAll(BinaryAccessLogReader reader) throws Exception
+  {
+    final List<BinaryAccessLogRecord> records = new ArrayList<>();
+    BinaryAccessLogRecord record;
+    while ((record = reader.next()) != null)
+    {
+      records.add(record);
+    }
+    return records;
+  }
+
+  private List<Long> operationIDs(List<BinaryAccessLogRecord> records)
+  {
+    final List<Long> ids = new ArrayList<>();
+    for (BinaryAccessLogRecord record : records)
+    {
+      ids.add(record.getOperationID());
+    }
+    return ids;
+  }
+}
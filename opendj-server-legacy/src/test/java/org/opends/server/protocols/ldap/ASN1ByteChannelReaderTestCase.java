@@ -26,14 +26,22 @@
  */
 package org.opends.server.protocols.ldap;
 
+import org.forgerock.opendj.io.ASN1;
 import org.forgerock.opendj.io.ASN1Reader;
+import org.forgerock.opendj.io.ASN1Writer;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
 import org.opends.server.protocols.ldap.ASN1ByteChannelReader;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+
+import static org.testng.Assert.*;
 
 /**
  * Test class for ASN1ByteChannelReader.
@@ -301,4 +309,158 @@ public class ASN1ByteChannelReaderTestCase extends ASN1ReaderTestCase
   {
     super.testSkipElementIncompleteRead();
   }
+
+  /**
+   * Tests reading elements received in small chunks, including an element
+   * larger than the read buffer, and checks that the read buffer is given back
+   * to the pool once all the data has been consumed.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testReadElementsSplitAcrossReads() throws Exception
+  {
+    final String largeValue = "a value which does not fit in the read buffer";
+    ByteStringBuilder builder = new ByteStringBuilder();
+    ASN1Writer writer = ASN1.getWriter(builder);
+    writer.writeOctetString("abc");
+    writer.writeOctetString(largeValue);
+    writer.writeInteger(42);
+    writer.writeOctetString("def");
+
+    final ReadableByteChannel fullChannel =
+        Channels.newChannel(new ByteArrayInputStream(builder.toByteArray()));
+    ReadableByteChannel chunkedChannel = new ReadableByteChannel()
+    {
+      @Override
+      public boolean isOpen()
+      {
+        return fullChannel.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+        fullChannel.close();
+      }
+
+      @Override
+      public int read(ByteBuffer dst) throws IOException
+      {
+        // Only deliver a few bytes at a time
+        ByteBuffer chunk = dst.duplicate();
+        chunk.limit(Math.min(dst.limit(), dst.position() + 5));
+        int read = fullChannel.read(chunk);
+        if (read > 0)
+        {
+          dst.position(dst.position() + read);
+        }
+        return read;
+      }
+    };
+
+    ReadBufferPool pool = new ReadBufferPool(8, 1);
+    ASN1ByteChannelReader reader =
+        new ASN1ByteChannelReader(chunkedChannel, 8, 0);
+    reader.setReadBufferPool(pool);
+
+    waitForElement(reader);
+    assertEquals(reader.readOctetStringAsString(), "abc");
+    waitForElement(reader);
+    assertEquals(reader.readOctetStringAsString(), largeValue);
+    waitForElement(reader);
+    assertEquals(reader.readInteger(), 42);
+    waitForElement(reader);
+    assertEquals(reader.readOctetStringAsString(), "def");
+
+    assertEquals(reader.processChannelData(), -1);
+    assertFalse(reader.hasRemainingData());
+    assertEquals(pool.getNumberOfPooledBuffers(), 1);
+  }
+
+  /**
+   * Tests that a partially read element is kept when the read buffer is
+   * released before the rest of the element is received.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testReleaseReadBufferKeepsPartialElement() throws Exception
+  {
+    ByteStringBuilder builder = new ByteStringBuilder();
+    ASN1Writer writer = ASN1.getWriter(builder);
+    writer.writeOctetString("abcdef");
+    byte[] bytes = builder.toByteArray();
+
+    Pipe pipe = Pipe.open();
+    try
+    {
+      pipe.source().configureBlocking(false);
+      ReadBufferPool pool = new ReadBufferPool(bytes.length, 1);
+      ASN1ByteChannelReader reader =
+          new ASN1ByteChannelReader(pipe.source(), bytes.length, 0);
+      reader.setReadBufferPool(pool);
+
+      pipe.sink().write(ByteBuffer.wrap(bytes, 0, 4));
+      assertEquals(reader.processChannelData(), 4);
+      assertFalse(reader.elementAvailable());
+      reader.releaseReadBuffer();
+      assertEquals(pool.getNumberOfPooledBuffers(), 1);
+      assertTrue(reader.hasRemainingData());
+
+      pipe.sink().write(ByteBuffer.wrap(bytes, 4, bytes.length - 4));
+      waitForElement(reader);
+      assertEquals(reader.readOctetStringAsString(), "abcdef");
+      assertFalse(reader.hasRemainingData());
+    }
+    finally
+    {
+      pipe.sink().close();
+      pipe.source().close();
+    }
+  }
+
+  /**
+   * Tests that the read buffer held by a reader closed with a partial element
+   * is given back to the pool by the thread owning the pool.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testCloseReleasesReadBuffer() throws Exception
+  {
+    Pipe pipe = Pipe.open();
+    try
+    {
+      pipe.source().configureBlocking(false);
+      ReadBufferPool pool = new ReadBufferPool(16, 1);
+      ASN1ByteChannelReader reader =
+          new ASN1ByteChannelReader(pipe.source(), 16, 0);
+      reader.setReadBufferPool(pool);
+
+      // The beginning of an octet string
+      pipe.sink().write(ByteBuffer.wrap(new byte[] { 0x04, 0x06, 'a', 'b' }));
+      assertEquals(reader.processChannelData(), 4);
+      assertFalse(reader.elementAvailable());
+      assertEquals(pool.getNumberOfPooledBuffers(), 0);
+
+      reader.close();
+      assertEquals(pool.getNumberOfPooledBuffers(), 0);
+      pool.releaseClosedReaders();
+      assertEquals(pool.getNumberOfPooledBuffers(), 1);
+    }
+    finally
+    {
+      pipe.sink().close();
+      pipe.source().close();
+    }
+  }
+
+  private void waitForElement(ASN1ByteChannelReader reader) throws Exception
+  {
+    while (!reader.elementAvailable())
+    {
+      assertTrue(reader.processChannelData() > 0);
+    }
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.protocols.ldap;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ScheduledFuture;
+
+import org.forgerock.opendj.io.ASN1;
+import org.forgerock.opendj.io.ASN1Reader;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.types.DN;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test class for SearchResultBatch.
+ */
+public class SearchResultBatchTestCase extends LdapTestCase
+{
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  private LDAPMessage entryMessage(int i) throws Exception
+  {
+    return new LDAPMessage(1, new SearchResultEntryProtocolOp(
+        DN.valueOf("uid=user." + i + ",dc=example,dc=com")));
+  }
+
+  @Test
+  public void testMessagesAreBatchedUntilDone() throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    SearchResultBatch batch = new SearchResultBatch();
+
+    assertTrue(batch.write(entryMessage(0), false, channel),
+        "The first pending message must schedule a flush");
+    for (int i = 1; i < 10; i++)
+    {
+      assertFalse(batch.write(entryMessage(i), false, channel));
+    }
+    assertEquals(out.size(), 0);
+    assertTrue(batch.getPendingSize() > 0);
+
+    LDAPMessage done = new LDAPMessage(1, new SearchResultDoneProtocolOp(
+        ResultCode.SUCCESS.intValue()));
+    assertFalse(batch.write(done, true, channel));
+    assertEquals(batch.getPendingSize(), 0);
+
+    // All the messages are written in order
+    ASN1Reader reader = ASN1.getReader(ByteString.wrap(out.toByteArray()));
+    for (int i = 0; i < 10; i++)
+    {
+      LDAPMessage message = LDAPReader.readMessage(reader);
+      assertEquals(message.getSearchResultEntryProtocolOp().getDN(),
+          DN.valueOf("uid=user." + i + ",dc=example,dc=com"));
+    }
+    assertEquals(LDAPReader.readMessage(reader).getProtocolOpType(),
+        LDAPConstants.OP_TYPE_SEARCH_RESULT_DONE);
+    assertFalse(reader.hasNextElement());
+  }
+
+  @Test
+  public void testSizeThreshold() throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    SearchResultBatch batch = new SearchResultBatch();
+
+    int i = 0;
+    while (out.size() == 0)
+    {
+      assertTrue(i * 30 < 2 * SearchResultBatch.MAX_BATCH_SIZE);
+      batch.write(entryMessage(i++), false, channel);
+    }
+    assertTrue(out.size() >= SearchResultBatch.MAX_BATCH_SIZE);
+    assertEquals(batch.getPendingSize(), 0);
+  }
+
+  @Test
+  public void testScheduledFlush() throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    SearchResultBatch batch = new SearchResultBatch();
+
+    assertTrue(batch.write(entryMessage(0), false, channel));
+    batch.scheduledFlush(channel);
+    int size = out.size();
+    assertTrue(size > 0);
+
+    // Once the scheduled flush has run, a new one must be scheduled
+    assertTrue(batch.write(entryMessage(1), false, channel));
+    assertEquals(out.size(), size);
+  }
+
+  @Test
+  public void testDoneCancelsScheduledFlush() throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    SearchResultBatch batch = new SearchResultBatch();
+    ScheduledFuture<?> future = mock(ScheduledFuture.class);
+
+    assertTrue(batch.write(entryMessage(0), false, channel));
+    batch.setScheduledFlush(future);
+    LDAPMessage done = new LDAPMessage(1, new SearchResultDoneProtocolOp(
+        ResultCode.SUCCESS.intValue()));
+    assertFalse(batch.write(done, true, channel));
+
+    verify(future).cancel(false);
+    assertTrue(out.size() > 0);
+  }
+
+  @Test
+  public void testDiscard() throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel channel = Channels.newChannel(out);
+    SearchResultBatch batch = new SearchResultBatch();
+    ScheduledFuture<?> future = mock(ScheduledFuture.class);
+
+    assertTrue(batch.write(entryMessage(0), false, channel));
+    batch.setScheduledFlush(future);
+    batch.discard();
+
+    verify(future).cancel(false);
+    assertEquals(batch.getPendingSize(), 0);
+    batch.scheduledFlush(channel);
+    assertEquals(out.size(), 0);
+  }
+}
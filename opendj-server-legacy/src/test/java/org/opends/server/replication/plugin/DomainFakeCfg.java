@@ -340,6 +340,12 @@ public class DomainFakeCfg implements ReplicationDomainCfg
     return 1440;
   }
 
+  @Override
+  public boolean isMessageCompression()
+  {
+    return false;
+  }
+
   @Override
   public String toString()
   {
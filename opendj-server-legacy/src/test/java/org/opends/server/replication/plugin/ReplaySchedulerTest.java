@@ -0,0 +1,299 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSNGenerator;
+import org.opends.server.replication.plugin.ReplayScheduler.ScheduledUpdate;
+import org.opends.server.replication.protocol.AddMsg;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.opends.server.replication.protocol.ModifyDNMsg;
+import org.opends.server.replication.protocol.ModifyMsg;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DN;
+import org.opends.server.types.Modification;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.TestCaseUtils.*;
+
+/** Tests the ordering of the updates handed over to the replay threads. */
+@SuppressWarnings("javadoc")
+public class ReplaySchedulerTest extends ReplicationTestCase
+{
+  private DN baseDN;
+  private LDAPReplicationDomain domain;
+  private CSNGenerator gen;
+  private BlockingQueue<UpdateToReplay> queue;
+  private ReplayScheduler scheduler;
+
+  @BeforeMethod
+  public void setUpLocal() throws Exception
+  {
+    baseDN = DN.valueOf(TEST_ROOT_DN_STRING);
+    TestCaseUtils.initializeTestBackend(true);
+
+    final DomainFakeCfg conf = new DomainFakeCfg(baseDN, 1, new TreeSet<String>());
+    domain = MultimasterReplication.createNewDomain(conf, new TestSynchronousReplayQueue());
+    gen = new CSNGenerator(201, 0);
+    queue = new LinkedBlockingQueue<>();
+    scheduler = new ReplayScheduler(queue);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception
+  {
+    MultimasterReplication.deleteDomain(baseDN);
+  }
+
+  @Test
+  public void independentUpdatesAreReplayedConcurrently() throws Exception
+  {
+    receive(modify("ou=a"));
+    receive(modify("ou=b"));
+
+    assertThat(nextDN()).isEqualTo(dn("ou=a"));
+    assertThat(nextDN()).isEqualTo(dn("ou=b"));
+    assertThat(scheduler.getNbScheduledUpdates()).isEqualTo(2);
+  }
+
+  @Test
+  public void updatesOfAnEntryAreReplayedInOrder() throws Exception
+  {
+    receive(modify("ou=a"));
+    receive(delete("ou=a"));
+    receive(modify("ou=b"));
+
+    final ScheduledUpdate first = scheduler.next(0, TimeUnit.MILLISECONDS);
+    assertThat(first.getUpdateToReplay().getUpdateMessage()).isInstanceOf(ModifyMsg.class);
+    assertThat(nextDN()).isEqualTo(dn("ou=b"));
+    assertThat(scheduler.next(0, TimeUnit.MILLISECONDS)).isNull();
+    assertThat(scheduler.getMaxPartitionSize(domain)).isEqualTo(2);
+
+    scheduler.replayed(first);
+    final ScheduledUpdate second = scheduler.next(0, TimeUnit.MILLISECONDS);
+    assertThat(second.getUpdateToReplay().getUpdateMessage()).isInstanceOf(DeleteMsg.class);
+  }
+
+  @Test
+  public void addOfAChildWaitsForAddOfItsParent() throws Exception
+  {
+    receive(add("ou=parent"));
+    receive(add("ou=child,ou=parent"));
+    receive(modify("ou=other"));
+
+    final ScheduledUpdate parent = scheduler.next(0, TimeUnit.MILLISECONDS);
+    assertThat(dnOf(parent)).isEqualTo(dn("ou=parent"));
+    assertThat(nextDN()).isEqualTo(dn("ou=other"));
+    assertThat(scheduler.next(0, TimeUnit.MILLISECONDS)).isNull();
+
+    scheduler.replayed(parent);
+    assertThat(nextDN()).isEqualTo(dn("ou=child,ou=parent"));
+  }
+
+  @Test
+  public void modifyOfAChildDoesNotWaitForModifyOfItsParent() throws Exception
+  {
+    receive(modify("ou=parent"));
+    receive(modify("ou=child,ou=parent"));
+
+    assertThat(nextDN()).isEqualTo(dn("ou=parent"));
+    assertThat(nextDN()).isEqualTo(dn("ou=child,ou=parent"));
+  }
+
+  @Test
+  public void deleteWaitsForOlderUpdatesBelow() throws Exception
+  {
+    receive(delete("ou=child,ou=parent"));
+    receive(delete("ou=parent"));
+
+    final ScheduledUpdate child = scheduler.next(0, TimeUnit.MILLISECONDS);
+    assertThat(dnOf(child)).isEqualTo(dn("ou=child,ou=parent"));
+    assertThat(scheduler.next(0, TimeUnit.MILLISECONDS)).isNull();
+
+    scheduler.replayed(child);
+    assertThat(nextDN()).isEqualTo(dn("ou=parent"));
+    assertThat(scheduler.getNbPartitions(domain)).isEqualTo(1);
+  }
+
+  @Test
+  public void updatesOfTheNewDNWaitForModifyDN() throws Exception
+  {
+    receive(new ModifyDNMsg(dn("ou=old"), gen.newCSN(), "uuid", null, true, null, "ou=new"));
+    receive(modify("ou=new"));
+    receive(add("ou=child,ou=new"));
+
+    final ScheduledUpdate modDN = scheduler.next(0, TimeUnit.MILLISECONDS);
+    assertThat(dnOf(modDN)).isEqualTo(dn("ou=old"));
+    assertThat(scheduler.next(0, TimeUnit.MILLISECONDS)).isNull();
+
+    scheduler.replayed(modDN);
+    assertThat(nextDN()).isEqualTo(dn("ou=new"));
+    assertThat(nextDN()).isEqualTo(dn("ou=child,ou=new"));
+    assertThat(scheduler.getNbScheduledUpdates()).isEqualTo(2);
+  }
+
+  @Test
+  public void replayThreadWaitsForReceivedUpdates() throws Exception
+  {
+    final Thread receiver = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          Thread.sleep(100);
+          receive(modify("ou=a"));
+        }
+        catch (Exception e)
+        {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    receiver.start();
+
+    assertThat(nextDN(5000)).isEqualTo(dn("ou=a"));
+    receiver.join();
+  }
+
+  @Test
+  public void waitingReplayThreadsAreWokenUpForEachReadyUpdate() throws Exception
+  {
+    final int nbThreads = 4;
+    final CountDownLatch allReplaying = new CountDownLatch(nbThreads);
+    final CountDownLatch replayDone = new CountDownLatch(1);
+    final List<Thread> replayThreads = new ArrayList<>();
+    for (int i = 0; i < nbThreads; i++)
+    {
+      final Thread replayThread = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            final ScheduledUpdate update = scheduler.next(10, TimeUnit.SECONDS);
+            if (update != null)
+            {
+              // replay the update until all the threads are replaying one
+              allReplaying.countDown();
+              replayDone.await();
+              scheduler.replayed(update);
+            }
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      replayThread.start();
+      replayThreads.add(replayThread);
+    }
+
+    // let the replay threads wait for updates before receiving them together
+    Thread.sleep(100);
+    final List<UpdateToReplay> updates = new ArrayList<>();
+    for (int i = 0; i < nbThreads; i++)
+    {
+      updates.add(new UpdateToReplay(modify("ou=" + i), domain));
+    }
+    queue.addAll(updates);
+
+    try
+    {
+      assertThat(allReplaying.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+    finally
+    {
+      replayDone.countDown();
+      for (Thread replayThread : replayThreads)
+      {
+        replayThread.join();
+      }
+    }
+    assertThat(scheduler.getNbScheduledUpdates()).isEqualTo(0);
+  }
+
+  private void receive(LDAPUpdateMsg msg) throws Exception
+  {
+    queue.put(new UpdateToReplay(msg, domain));
+  }
+
+  private DN nextDN() throws Exception
+  {
+    return nextDN(0);
+  }
+
+  private DN nextDN(long timeoutMs) throws Exception
+  {
+    final ScheduledUpdate update = scheduler.next(timeoutMs, TimeUnit.MILLISECONDS);
+    assertThat(update).isNotNull();
+    return dnOf(update);
+  }
+
+  private DN dnOf(ScheduledUpdate update)
+  {
+    return update.getUpdateToReplay().getUpdateMessage().getDN();
+  }
+
+  private DN dn(String rdns) throws Exception
+  {
+    return DN.valueOf(rdns + "," + TEST_ROOT_DN_STRING);
+  }
+
+  private ModifyMsg modify(String rdns) throws Exception
+  {
+    return new ModifyMsg(gen.newCSN(), dn(rdns), new ArrayList<Modification>(), "uuid");
+  }
+
+  private DeleteMsg delete(String rdns) throws Exception
+  {
+    return new DeleteMsg(dn(rdns), gen.newCSN(), "uuid");
+  }
+
+  private AddMsg add(String rdns) throws Exception
+  {
+    return new AddMsg(gen.newCSN(), dn(rdns), "uuid", "parentUuid",
+        Attributes.create("objectClass", "organizationalUnit"),
+        new ArrayList<Attribute>(), new ArrayList<Attribute>());
+  }
+}
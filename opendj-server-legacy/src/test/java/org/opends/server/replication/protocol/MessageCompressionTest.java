@@ -0,0 +1,128 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.util.StaticUtils.*;
+
+/**
+ * Test for {@link MessageCompression}.
+ */
+@SuppressWarnings("javadoc")
+public class MessageCompressionTest extends DirectoryServerTestCase
+{
+  private static final byte[] ENTRY_LIKE_MESSAGE = getBytes(
+      "objectClasstopobjectClasspersonobjectClassorganizationalPersonobjectClassinetOrgPerson"
+      + "uiduser.1cnAaren Atp.snAtp.givenNameAarenmailuser.1@example.comtelephoneNumber+1 685 622 6202"
+      + "descriptionThis is the description for Aaren Atp.entryUUID2b8c1f0c-8d5b-3d2b-9c8b-5b6a3c2e4d1f"
+      + "ds-sync-histdescription:000001234567abcd0001:repl:This is the description for Aaren Atp.");
+
+  @Test
+  public void compressedMessageRoundTrip() throws Exception
+  {
+    final MessageCompression sender = new MessageCompression();
+    final MessageCompression receiver = new MessageCompression();
+
+    final byte[] compressed = sender.compress(ENTRY_LIKE_MESSAGE);
+    assertThat(MessageCompression.isCompressed(compressed)).isTrue();
+    assertThat(compressed.length).isLessThan(ENTRY_LIKE_MESSAGE.length);
+    assertThat(receiver.decompress(compressed)).isEqualTo(ENTRY_LIKE_MESSAGE);
+
+    assertThat(sender.getCompressedMessages()).isEqualTo(1);
+    assertThat(sender.getUncompressedBytes()).isEqualTo(ENTRY_LIKE_MESSAGE.length);
+    assertThat(sender.getCompressedBytes()).isEqualTo(compressed.length);
+    assertThat(receiver.getDecompressedMessages()).isEqualTo(1);
+  }
+
+  @Test
+  public void compressorsAreReusable() throws Exception
+  {
+    final MessageCompression sender = new MessageCompression();
+    final MessageCompression receiver = new MessageCompression();
+    for (int i = 0; i < 10; i++)
+    {
+      final byte[] msg = Arrays.copyOf(ENTRY_LIKE_MESSAGE, ENTRY_LIKE_MESSAGE.length - i);
+      assertThat(receiver.decompress(sender.compress(msg))).isEqualTo(msg);
+    }
+  }
+
+  @Test
+  public void smallMessagesAreNotCompressed() throws Exception
+  {
+    final byte[] msg = new WindowMsg(42).getBytes(ProtocolVersion.getCurrentVersion());
+    final MessageCompression compression = new MessageCompression();
+
+    assertThat(compression.compress(msg)).isSameAs(msg);
+    assertThat(MessageCompression.isCompressed(msg)).isFalse();
+    assertThat(compression.getCompressedMessages()).isEqualTo(0);
+  }
+
+  @Test
+  public void incompressibleMessagesAreNotCompressed() throws Exception
+  {
+    final byte[] msg = new byte[1024];
+    new Random(0).nextBytes(msg);
+    msg[0] = ReplicationMsg.MSG_TYPE_GENERIC_UPDATE;
+    final MessageCompression compression = new MessageCompression();
+
+    assertThat(compression.compress(msg)).isSameAs(msg);
+    assertThat(compression.getCompressedMessages()).isEqualTo(0);
+  }
+
+  @Test(expectedExceptions = DataFormatException.class)
+  public void truncatedMessageIsRejected() throws Exception
+  {
+    final byte[] compressed = new MessageCompression().compress(ENTRY_LIKE_MESSAGE);
+    new MessageCompression().decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+
+  @Test(expectedExceptions = DataFormatException.class)
+  public void oversizedLengthIsRejected() throws Exception
+  {
+    final byte[] compressed = new MessageCompression().compress(ENTRY_LIKE_MESSAGE);
+    // Claim a length which cannot be reached by inflating the received bytes
+    compressed[1] = 0x7F;
+    new MessageCompression().decompress(compressed);
+  }
+
+  @Test
+  public void endedCompressionSendsUncompressedMessages() throws Exception
+  {
+    final MessageCompression compression = new MessageCompression();
+    final byte[] compressed = compression.compress(ENTRY_LIKE_MESSAGE);
+    assertThat(MessageCompression.isCompressed(compressed)).isTrue();
+
+    compression.end();
+    assertThat(compression.compress(ENTRY_LIKE_MESSAGE)).isSameAs(ENTRY_LIKE_MESSAGE);
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test for {@link SessionMultiplexer}. Sessions are opened on a loopback
+ * connection with encryption stopped, unless stated otherwise, the receiving
+ * one being multiplexed.
+ */
+@SuppressWarnings("javadoc")
+public class SessionMultiplexerTest extends DirectoryServerTestCase
+{
+  private static final int NB_MESSAGES = 5000;
+  private static final long TIMEOUT_MS = 10000;
+
+  private SessionMultiplexer multiplexer;
+  private Session sender;
+  private Session receiver;
+  private RecordingListener listener;
+
+  /** Records the messages received and the closure of the session. */
+  private static final class RecordingListener implements SessionMultiplexer.Listener
+  {
+    private final BlockingQueue<ReplicationMsg> receivedMsgs = new LinkedBlockingQueue<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile Exception closeError;
+
+    @Override
+    public boolean messageReceived(ReplicationMsg msg)
+    {
+      receivedMsgs.add(msg);
+      return !(msg instanceof StopMsg);
+    }
+
+    @Override
+    public void sessionClosed(Exception error)
+    {
+      closeError = error;
+      closed.countDown();
+    }
+
+    private ReplicationMsg nextMsg() throws InterruptedException
+    {
+      return receivedMsgs.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean awaitClosed() throws InterruptedException
+    {
+      return closed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void openSessions() throws Exception
+  {
+    multiplexer = new SessionMultiplexer("Test multiplexer", 2);
+    multiplexer.start();
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open())
+    {
+      serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      final SocketChannel senderChannel = SocketChannel.open(serverChannel.getLocalAddress());
+      final SocketChannel receiverChannel = serverChannel.accept();
+      sender = newUnencryptedSession(senderChannel, true);
+      receiver = newUnencryptedSession(receiverChannel, false);
+    }
+    listener = new RecordingListener();
+  }
+
+  /** Replaces the unencrypted sessions with sessions secured like the replication sessions. */
+  private void openEncryptedSessions() throws Exception
+  {
+    sender.close();
+    receiver.close();
+    final ReplSessionSecurity security = new ReplSessionSecurity(null, null, null, true);
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open())
+    {
+      serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      final SocketChannel senderChannel = SocketChannel.open(serverChannel.getLocalAddress());
+      final SocketChannel receiverChannel = serverChannel.accept();
+      sender = security.createClientSession(senderChannel, (int) TIMEOUT_MS);
+      receiver = security.createServerSession(receiverChannel, (int) TIMEOUT_MS);
+    }
+  }
+
+  /** Publishes the provided messages from another thread, to not block on a peer being read by the caller. */
+  private Thread publishInBackground(final Session session, final ReplicationMsg... msgs)
+  {
+    final Thread publisher = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          for (ReplicationMsg msg : msgs)
+          {
+            session.publish(msg);
+          }
+        }
+        catch (IOException e)
+        {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    publisher.start();
+    return publisher;
+  }
+
+  private Session newUnencryptedSession(SocketChannel channel, boolean clientMode) throws Exception
+  {
+    final SSLEngine sslEngine = SSLContext.getDefault().createSSLEngine();
+    sslEngine.setUseClientMode(clientMode);
+    final Session session = new Session(channel, sslEngine);
+    // The TLS handshake has not started yet, so it never happens
+    session.stopEncryption();
+    return session;
+  }
+
+  @AfterMethod
+  public void closeSessions()
+  {
+    sender.close();
+    receiver.close();
+    multiplexer.shutdown();
+  }
+
+  @Test
+  public void messagesAreReceivedInOrder() throws Exception
+  {
+    multiplexer.register(receiver, listener, 0);
+    assertThat(multiplexer.getNbSessions()).isEqualTo(1);
+
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      sender.publish(new WindowMsg(i));
+    }
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      final ReplicationMsg msg = listener.nextMsg();
+      assertThat(msg).isInstanceOf(WindowMsg.class);
+      assertThat(((WindowMsg) msg).getNumAck()).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void messagesReceivedBeforeRegistrationAreNotLost() throws Exception
+  {
+    sender.publish(new WindowMsg(1));
+    sender.publish(new WindowMsg(2));
+    assertThat(((WindowMsg) receiver.receive()).getNumAck()).isEqualTo(1);
+
+    multiplexer.register(receiver, listener, 0);
+    assertThat(((WindowMsg) listener.nextMsg()).getNumAck()).isEqualTo(2);
+  }
+
+  @Test
+  public void multiplexedSessionPublishes() throws Exception
+  {
+    multiplexer.register(receiver, listener, 0);
+
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      receiver.publish(new WindowMsg(i));
+    }
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      final ReplicationMsg msg = sender.receive();
+      assertThat(((WindowMsg) msg).getNumAck()).isEqualTo(i);
+    }
+    assertThat(receiver.getSentMessages()).isEqualTo(NB_MESSAGES);
+  }
+
+  @Test
+  public void multiplexedSessionPublishesHeartbeats() throws Exception
+  {
+    multiplexer.register(receiver, listener, 100);
+
+    assertThat(sender.receive()).isInstanceOf(HeartbeatMsg.class);
+  }
+
+  @Test
+  public void sessionIsClosedWhenPeerStopsReading() throws Exception
+  {
+    multiplexer.register(receiver, listener, 100);
+
+    // The sender never reads: writes stall once the socket buffers are full
+    final byte[] entryBytes = new byte[8 * 1024];
+    try
+    {
+      for (int i = 0; i < 100000; i++)
+      {
+        receiver.publish(new EntryMsg(1, 2, entryBytes, i));
+      }
+      fail("Publishing to a peer which does not read should time out");
+    }
+    catch (IOException expected)
+    {
+      // expected
+    }
+
+    assertThat(listener.awaitClosed()).isTrue();
+    assertThat(receiver.closeInitiated()).isTrue();
+    assertThat(multiplexer.getNbSessions()).isEqualTo(0);
+  }
+
+  @Test
+  public void encryptedSessionIsMultiplexedAfterTheHandshake() throws Exception
+  {
+    openEncryptedSessions();
+
+    // The TLS handshake happens with the first message, before multiplexing
+    final Thread handshake = publishInBackground(sender, new WindowMsg(-1));
+    assertThat(((WindowMsg) receiver.receive()).getNumAck()).isEqualTo(-1);
+    handshake.join(TIMEOUT_MS);
+    assertThat(receiver.isEncrypted()).isTrue();
+    assertThat(sender.isEncrypted()).isTrue();
+
+    multiplexer.register(receiver, listener, 0);
+
+    // Receiving, then publishing large messages which fill the socket buffers
+    final byte[] entryBytes = new byte[8 * 1024];
+    final EntryMsg[] msgs = new EntryMsg[500];
+    for (int i = 0; i < msgs.length; i++)
+    {
+      msgs[i] = new EntryMsg(1, 2, entryBytes, i);
+    }
+    final Thread publisher = publishInBackground(sender, msgs);
+    for (int i = 0; i < msgs.length; i++)
+    {
+      final ReplicationMsg msg = listener.nextMsg();
+      assertThat(msg).isInstanceOf(EntryMsg.class);
+      assertThat(((EntryMsg) msg).getMsgId()).isEqualTo(i);
+    }
+    publisher.join(TIMEOUT_MS);
+
+    final Thread multiplexedPublisher = publishInBackground(receiver, msgs);
+    for (int i = 0; i < msgs.length; i++)
+    {
+      final ReplicationMsg msg = sender.receive();
+      assertThat(((EntryMsg) msg).getMsgId()).isEqualTo(i);
+    }
+    multiplexedPublisher.join(TIMEOUT_MS);
+    assertThat(receiver.getSentMessages()).isEqualTo(msgs.length);
+  }
+
+  @Test
+  public void listenerIsNotifiedWhenPeerCloses() throws Exception
+  {
+    multiplexer.register(receiver, listener, 0);
+    sender.publish(new WindowMsg(1));
+    sender.close();
+
+    assertThat(listener.nextMsg()).isInstanceOf(WindowMsg.class);
+    assertThat(listener.nextMsg()).isInstanceOf(StopMsg.class);
+    assertThat(listener.awaitClosed()).isTrue();
+    assertThat(listener.closeError).isNull();
+    assertThat(multiplexer.getNbSessions()).isEqualTo(0);
+  }
+
+  @Test
+  public void listenerIsNotifiedWhenPeerConnectionIsBroken() throws Exception
+  {
+    multiplexer.register(receiver, listener, 0);
+    sender.getSocketChannel().close();
+
+    assertThat(listener.awaitClosed()).isTrue();
+    assertThat(listener.closeError).isNotNull();
+    assertThat(multiplexer.getNbSessions()).isEqualTo(0);
+  }
+
+  @Test
+  public void listenerIsNotifiedWhenSessionIsClosed() throws Exception
+  {
+    multiplexer.register(receiver, listener, 0);
+    receiver.close();
+
+    assertThat(listener.awaitClosed()).isTrue();
+    assertThat(listener.closeError).isNull();
+    assertThat(sender.receive()).isInstanceOf(StopMsg.class);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.protocol;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.util.TimeThread;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test for the batched publish pipeline of {@link Session}. Sessions are
+ * opened on a loopback connection with encryption stopped.
+ */
+@SuppressWarnings("javadoc")
+public class SessionTest extends DirectoryServerTestCase
+{
+  private static final int NB_MESSAGES = 2000;
+
+  private Session sender;
+  private Session receiver;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void openSessions() throws Exception
+  {
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+    {
+      final Socket senderSocket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+      final Socket receiverSocket = serverSocket.accept();
+      sender = newUnencryptedSession(senderSocket);
+      receiver = newUnencryptedSession(receiverSocket);
+    }
+  }
+
+  private Session newUnencryptedSession(Socket socket) throws Exception
+  {
+    final SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+    final SSLSocket secureSocket = (SSLSocket) factory.createSocket(
+        socket, socket.getInetAddress().getHostName(), socket.getPort(), false);
+    final Session session = new Session(socket, secureSocket);
+    session.stopEncryption();
+    return session;
+  }
+
+  @AfterMethod
+  public void closeSessions()
+  {
+    sender.close();
+    receiver.close();
+  }
+
+  @Test
+  public void publishWithoutSendingThread() throws Exception
+  {
+    final WindowMsg msg = new WindowMsg(42);
+    sender.publish(msg);
+
+    assertThat(receiver.receive()).isInstanceOf(WindowMsg.class);
+    assertThat(sender.getSentMessages()).isEqualTo(1);
+    assertThat(sender.getSentBatches()).isEqualTo(1);
+    assertThat(sender.getSentBytes()).isEqualTo(8 + msg.getBytes(sender.getProtocolVersion()).length);
+  }
+
+  @Test
+  public void compressedMessagesAreDecompressedOnReception() throws Exception
+  {
+    assertThat(sender.enableCompression()).isTrue();
+    final byte[] payload = new byte[4096];
+    Arrays.fill(payload, (byte) 'a');
+    final CSN csn = new CSN(TimeThread.getTime(), 1, 1);
+    sender.publish(new UpdateMsg(csn, payload));
+
+    final ReplicationMsg msg = receiver.receive();
+    assertThat(msg).isInstanceOf(UpdateMsg.class);
+    assertThat(((UpdateMsg) msg).getCSN()).isEqualTo(csn);
+    assertThat(((UpdateMsg) msg).getPayload()).isEqualTo(payload);
+    assertThat(sender.getCompressedMessages()).isEqualTo(1);
+    assertThat(sender.getSentBytes()).isLessThan(payload.length);
+    assertThat(receiver.getDecompressedMessages()).isEqualTo(1);
+  }
+
+  @Test
+  public void compressionIsNotEnabledWithOldProtocolVersions() throws Exception
+  {
+    sender.setProtocolVersion(ProtocolVersion.REPLICATION_PROTOCOL_V8);
+    assertThat(sender.enableCompression()).isFalse();
+  }
+
+  @Test
+  public void publishedMessagesAreSentInOrderInBatches() throws Exception
+  {
+    sender.start();
+    sender.waitForStartup();
+
+    long expectedBytes = 0;
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      final WindowMsg msg = new WindowMsg(i);
+      expectedBytes += 8 + msg.getBytes(sender.getProtocolVersion()).length;
+      sender.publish(msg);
+    }
+    for (int i = 0; i < NB_MESSAGES; i++)
+    {
+      final ReplicationMsg msg = receiver.receive();
+      assertThat(msg).isInstanceOf(WindowMsg.class);
+      assertThat(((WindowMsg) msg).getNumAck()).isEqualTo(i);
+    }
+
+    // statistics are updated right after the last flush returns
+    for (int i = 0; i < 100 && sender.getSentMessages() < NB_MESSAGES; i++)
+    {
+      Thread.sleep(50);
+    }
+    assertThat(sender.getSentMessages()).isEqualTo(NB_MESSAGES);
+    assertThat(sender.getSentBatches()).isBetween(1L, (long) NB_MESSAGES);
+    assertThat(sender.getSentBytes()).isEqualTo(expectedBytes);
+  }
+}
@@ -1094,6 +1094,31 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(msg.getSenderID(), newMsg.getSenderID());
     assertEquals(msg.getDestination(), newMsg.getDestination());
     assertEquals(msg.getBaseDN(), newMsg.getBaseDN());
+    assertFalse(newMsg.isResumeRequest());
+  }
+
+  /**
+   * Test that InitializeRequestMsg resuming an initialization encoding and
+   * decoding works.
+   */
+  @Test
+  public void initializeRequestMsgResumeTest() throws Exception
+  {
+    String resumeAfter = "dn: cn=long name folded on\n two lines," + TEST_ROOT_DN;
+    InitializeRequestMsg msg = new InitializeRequestMsg(
+        TEST_ROOT_DN, 1, 56789, 100, 1234567890123L, resumeAfter);
+    InitializeRequestMsg newMsg = new InitializeRequestMsg(msg.getBytes(getCurrentVersion()),getCurrentVersion());
+    assertEquals(newMsg.getSenderID(), 1);
+    assertEquals(newMsg.getDestination(), 56789);
+    assertEquals(newMsg.getInitWindow(), 100);
+    assertTrue(newMsg.isResumeRequest());
+    assertEquals(newMsg.getResumeEntryCount(), 1234567890123L);
+    assertEquals(newMsg.getResumeAfter(), resumeAfter);
+
+    // Peers not supporting the resumption see a request for a new initialization
+    InitializeRequestMsg v8Msg = new InitializeRequestMsg(
+        msg.getBytes(REPLICATION_PROTOCOL_V8), REPLICATION_PROTOCOL_V8);
+    assertFalse(v8Msg.isResumeRequest());
   }
 
   /**
@@ -1122,6 +1147,13 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(requestorID, newMsg.getInitiatorID());
     assertEquals(entryCount, newMsg.getEntryCount());
     assertEquals(TEST_ROOT_DN, newMsg.getBaseDN());
+    assertEquals(newMsg.getResumedEntryCount(), 0);
+
+    msg = new InitializeTargetMsg(
+        TEST_ROOT_DN, senderID, targetID, requestorID, entryCount, initWindow, 3);
+    newMsg = new InitializeTargetMsg(msg.getBytes(getCurrentVersion()),getCurrentVersion());
+    assertEquals(newMsg.getEntryCount(), entryCount);
+    assertEquals(newMsg.getResumedEntryCount(), 3);
   }
 
   /**
@@ -256,4 +256,40 @@ public class ReplServerFakeConfiguration implements ReplicationServerCfg
   {
     this.computeChangenumber = computeChangenumber;
   }
+
+  @Override
+  public boolean isMemoryMappedChangelogReads()
+  {
+    return false;
+  }
+
+  @Override
+  public long getChangelogSyncLatency()
+  {
+    return 0;
+  }
+
+  @Override
+  public int getChangelogSyncMaxBatchSize()
+  {
+    return 1000;
+  }
+
+  @Override
+  public boolean isMessageCompression()
+  {
+    return false;
+  }
+
+  @Override
+  public boolean isMultiplexedTransport()
+  {
+    return false;
+  }
+
+  @Override
+  public Integer getNumTransportThreads()
+  {
+    return null;
+  }
 }
@@ -0,0 +1,126 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.protocol.AckMsg;
+import org.opends.server.replication.server.changelog.api.ChangelogDB;
+import org.opends.server.replication.server.changelog.api.ReplicationDomainDB;
+import org.opends.server.types.DN;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("javadoc")
+public class ReplicationServerDomainTest extends DirectoryServerTestCase
+{
+  @Mock
+  private ReplicationServer replicationServer;
+  @Mock
+  private ChangelogDB changelogDB;
+  @Mock
+  private ReplicationDomainDB domainDB;
+  @Mock
+  private ServerHandler sourceHandler;
+
+  private ReplicationServerDomain domain;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setup() throws Exception
+  {
+    MockitoAnnotations.initMocks(this);
+    when(replicationServer.getServerId()).thenReturn(1);
+    when(replicationServer.getServerURL()).thenReturn("localhost:8989");
+    when(replicationServer.getChangelogDB()).thenReturn(changelogDB);
+    when(changelogDB.getReplicationDomainDB()).thenReturn(domainDB);
+    // runs the tasks in place of the changelog sync thread
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        ((Runnable) invocation.getArguments()[0]).run();
+        return null;
+      }
+    }).when(domainDB).runWhenPersisted(any(Runnable.class));
+    domain = new ReplicationServerDomain(DN.valueOf("dc=example,dc=com"), replicationServer);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception
+  {
+    domain.shutdown();
+  }
+
+  @Test
+  public void safeDataAckDoesNotBlockTheChangelogSyncThread() throws Exception
+  {
+    final CountDownLatch sendStarted = new CountDownLatch(1);
+    final CountDownLatch peerReading = new CountDownLatch(1);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        // the source stopped reading
+        sendStarted.countDown();
+        peerReading.await();
+        return null;
+      }
+    }).when(sourceHandler).send(any(AckMsg.class));
+
+    final CSN csn1 = new CSN(1, 1, 2);
+    final CSN csn2 = new CSN(2, 1, 2);
+    final long start = System.nanoTime();
+    domain.sendAckWhenPersisted(csn1, sourceHandler);
+    assertThat(sendStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    domain.sendAckWhenPersisted(csn2, sourceHandler);
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+
+    peerReading.countDown();
+    verify(sourceHandler, timeout(10000).times(2)).send(any(AckMsg.class));
+  }
+}
@@ -27,10 +27,12 @@
 package org.opends.server.replication.server.changelog.file;
 
 import java.lang.Thread.State;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -143,6 +145,9 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
   private Map<DN, ServerState> domainNewestCSNs;
   private ECLEnabledDomainPredicate predicate;
   private ChangeNumberIndexer cnIndexer;
+  /** When not null, the change number indexer waits for it after indexing each change. */
+  private CountDownLatch indexingAllowed;
+  private CountDownLatch indexingResumed;
 
   @BeforeClass
   public static void classSetup() throws Exception
@@ -164,6 +169,8 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
     replicaDBCursors = new HashMap<>();
     domainDBCursors = new HashMap<>();
     domainNewestCSNs = new HashMap<>();
+    indexingAllowed = null;
+    indexingResumed = new CountDownLatch(1);
 
     when(changelogDB.getChangeNumberIndexDB()).thenReturn(cnIndexDB);
     when(changelogDB.getReplicationDomainDB()).thenReturn(domainDB);
@@ -173,6 +180,10 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
   @AfterMethod
   public void tearDown() throws Exception
   {
+    if (indexingAllowed != null)
+    {
+      indexingAllowed.countDown();
+    }
     stopCNIndexer();
   }
 
@@ -218,6 +229,30 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
     assertExternalChangelogContent(msg1);
   }
 
+  @Test(dependsOnMethods = { NO_DS })
+  public void twoDSsIndexingLag() throws Exception
+  {
+    eclEnabledDomains = Arrays.asList(BASE_DN1);
+    addReplica(BASE_DN1, serverId1);
+    addReplica(BASE_DN1, serverId2);
+    startCNIndexer();
+    assertExternalChangelogContent();
+
+    final ReplicatedUpdateMsg msg1 = msg(BASE_DN1, serverId1, 1);
+    final ReplicatedUpdateMsg msg2 = msg(BASE_DN1, serverId2, 2);
+    final ReplicatedUpdateMsg msg3 = msg(BASE_DN1, serverId1, 3);
+    publishUpdateMsg(msg1, msg3);
+    // MCP cannot move forward: no news yet from serverId2
+    assertExternalChangelogContent();
+    assertThat(cnIndexer.getIndexingLagCount()).isEqualTo(2);
+    assertThat(cnIndexer.getIndexingLagTime()).isEqualTo(0);
+
+    publishUpdateMsg(msg2);
+    assertExternalChangelogContent(msg1, msg2);
+    assertThat(cnIndexer.getIndexingLagCount()).isEqualTo(1);
+    assertThat(cnIndexer.getIndexingLagTime()).isEqualTo(1);
+  }
+
   @Test(dependsOnMethods = { NO_DS })
   public void twoDSsDifferentDomains() throws Exception
   {
@@ -544,6 +579,71 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
     assertExternalChangelogContent(msg1);
   }
 
+  @Test(dependsOnMethods = { NO_DS })
+  public void twoDSsManyChangesIndexedInBatches() throws Exception
+  {
+    eclEnabledDomains = Arrays.asList(BASE_DN1);
+    addReplica(BASE_DN1, serverId1);
+    addReplica(BASE_DN1, serverId2);
+    startCNIndexer();
+    assertExternalChangelogContent();
+
+    // more changes than fit in one batch
+    final int nbChanges = 2500;
+    final List<ReplicatedUpdateMsg> msgs = new ArrayList<>();
+    for (int i = 1; i <= nbChanges; i++)
+    {
+      msgs.add(msg(BASE_DN1, serverId1, i));
+    }
+    publishUpdateMsg(msgs.toArray(new ReplicatedUpdateMsg[nbChanges]));
+    // MCP cannot move forward: no news yet from serverId2
+    assertExternalChangelogContent();
+
+    // MCP stops in the middle of the second batch
+    sendHeartbeat(BASE_DN1, serverId2, 1500);
+    final List<ReplicatedUpdateMsg> indexed = msgs.subList(0, 1500);
+    assertExternalChangelogContent(indexed.toArray(new ReplicatedUpdateMsg[indexed.size()]));
+
+    sendHeartbeat(BASE_DN1, serverId2, nbChanges + 1);
+    assertExternalChangelogContent(msgs.toArray(new ReplicatedUpdateMsg[nbChanges]));
+  }
+
+  /**
+   * A replica coming back online while a batch is being indexed moves the
+   * medium consistency point backward: the rest of the batch must wait for it.
+   */
+  @Test(dependsOnMethods = { NO_DS })
+  public void twoDSsOneComingBackOnlineDuringBatch() throws Exception
+  {
+    eclEnabledDomains = Arrays.asList(BASE_DN1);
+    addReplica(BASE_DN1, serverId1);
+    addReplica(BASE_DN1, serverId2);
+    initialState.addOfflineReplica(BASE_DN1, new CSN(1, 0, serverId2));
+    final ReplicatedUpdateMsg msg10 = msg(BASE_DN1, serverId1, 10);
+    final ReplicatedUpdateMsg msg50 = msg(BASE_DN1, serverId1, 50);
+    publishUpdateMsg(msg10, msg50);
+    // hold the indexer after it indexed msg10 in a batch which includes msg50
+    indexingAllowed = new CountDownLatch(1);
+    startCNIndexer();
+    assertExternalChangelogContent(msg10);
+
+    // serverId2 comes back online, before msg50
+    sendHeartbeat(BASE_DN1, serverId2, 20);
+    resumeIndexing();
+    // MCP moved backward: msg50 waits for serverId2
+    assertExternalChangelogContent(msg10);
+
+    sendHeartbeat(BASE_DN1, serverId2, 60);
+    assertExternalChangelogContent(msg10, msg50);
+  }
+
+  private void resumeIndexing() throws Exception
+  {
+    indexingAllowed.countDown();
+    indexingResumed.await();
+    waitForWaitingState(cnIndexer);
+  }
+
   private void addReplica(DN baseDN, int serverId) throws Exception
   {
     final SequentialDBCursor replicaDBCursor = new SequentialDBCursor();
@@ -600,6 +700,18 @@ public class ChangeNumberIndexerTest extends DirectoryServerTestCase
           MultiDomainServerState previousCookie, UpdateMsg msg) throws ChangelogException
       {
         // avoid problems with ChangelogBackend initialization
+        if (indexingAllowed != null)
+        {
+          try
+          {
+            indexingAllowed.await();
+            indexingResumed.countDown();
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
       }
     };
     cnIndexer.start();
@@ -0,0 +1,165 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.replication.server.ReplicationServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("javadoc")
+public class ChangelogSyncerTest extends DirectoryServerTestCase
+{
+  @Mock
+  private ReplicationServer replicationServer;
+  @Mock
+  private FileReplicaDB replicaDB1;
+  @Mock
+  private FileReplicaDB replicaDB2;
+
+  private ChangelogSyncer syncer;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setup() throws Exception
+  {
+    MockitoAnnotations.initMocks(this);
+    syncer = new ChangelogSyncer(replicationServer);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception
+  {
+    syncer.initiateShutdown();
+    syncer.join(TimeUnit.SECONDS.toMillis(10));
+  }
+
+  @Test
+  public void groupCommitIsDisabledWithZeroLatency() throws Exception
+  {
+    when(replicationServer.getChangelogSyncLatency()).thenReturn(0L);
+    assertThat(syncer.isGroupCommitEnabled()).isFalse();
+  }
+
+  @Test
+  public void taskIsRunImmediatelyWhenNothingIsPending() throws Exception
+  {
+    final CountDownLatch taskRun = new CountDownLatch(1);
+    syncer.runWhenPersisted(countDown(taskRun));
+
+    assertThat(taskRun.getCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void changesAreSyncedTogether() throws Exception
+  {
+    setGroupCommitParameters(100, 1000);
+    assertThat(syncer.isGroupCommitEnabled()).isTrue();
+
+    // add the changes before starting the syncer to ensure they belong to the same batch
+    syncer.notifyChangeAdded(replicaDB1);
+    syncer.notifyChangeAdded(replicaDB2);
+    syncer.notifyChangeAdded(replicaDB1);
+    syncer.notifyChangeAdded(replicaDB1);
+    final CountDownLatch taskRun = new CountDownLatch(1);
+    syncer.runWhenPersisted(countDown(taskRun));
+    assertThat(taskRun.getCount()).isEqualTo(1);
+
+    syncer.start();
+    assertThat(taskRun.await(10, TimeUnit.SECONDS)).isTrue();
+
+    verify(replicaDB1, times(1)).syncToFileSystem();
+    verify(replicaDB1).syncCompleted(eq(3), anyLong());
+    verify(replicaDB2, times(1)).syncToFileSystem();
+    verify(replicaDB2).syncCompleted(eq(1), anyLong());
+  }
+
+  @Test
+  public void fullBatchIsSyncedWithoutWaitingForTheLatency() throws Exception
+  {
+    setGroupCommitParameters(TimeUnit.HOURS.toMillis(1), 2);
+    syncer.start();
+
+    syncer.notifyChangeAdded(replicaDB1);
+    syncer.notifyChangeAdded(replicaDB1);
+    final CountDownLatch taskRun = new CountDownLatch(1);
+    syncer.runWhenPersisted(countDown(taskRun));
+
+    assertThat(taskRun.await(10, TimeUnit.SECONDS)).isTrue();
+    verify(replicaDB1, atLeastOnce()).syncToFileSystem();
+  }
+
+  @Test
+  public void pendingChangesAreSyncedOnShutdown() throws Exception
+  {
+    setGroupCommitParameters(TimeUnit.HOURS.toMillis(1), 1000);
+    syncer.start();
+
+    syncer.notifyChangeAdded(replicaDB1);
+    final CountDownLatch taskRun = new CountDownLatch(1);
+    syncer.runWhenPersisted(countDown(taskRun));
+    syncer.initiateShutdown();
+
+    assertThat(taskRun.await(10, TimeUnit.SECONDS)).isTrue();
+    verify(replicaDB1).syncToFileSystem();
+    assertThat(syncer.isGroupCommitEnabled()).isFalse();
+  }
+
+  private void setGroupCommitParameters(long latencyInMillis, int maxBatchSize)
+  {
+    when(replicationServer.getChangelogSyncLatency()).thenReturn(latencyInMillis);
+    when(replicationServer.getChangelogSyncMaxBatchSize()).thenReturn(maxBatchSize);
+  }
+
+  private Runnable countDown(final CountDownLatch latch)
+  {
+    return new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        latch.countDown();
+      }
+    };
+  }
+}
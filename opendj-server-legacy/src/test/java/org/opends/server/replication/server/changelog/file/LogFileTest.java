@@ -27,6 +27,8 @@ package org.opends.server.replication.server.changelog.file;
 
 import java.io.File;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.ldap.ByteSequenceReader;
@@ -198,6 +200,114 @@ public class LogFileTest extends DirectoryServerTestCase
     }
   }
 
+  @Test(dataProvider="cursorPositionTo")
+  public void testCursorPositionToOnMemoryMappedLogFile(String key, KeyMatchingStrategy matchingStrategy,
+      PositionStrategy positionStrategy, boolean positionShouldBeFound, int cursorShouldStartAt,
+      int cursorShouldEndAt) throws Exception
+  {
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, RECORD_PARSER, true);
+        LogFileCursor<String, String> cursor = changelog.getCursor())
+    {
+      boolean success = cursor.positionTo(key, matchingStrategy, positionStrategy);
+
+      assertThat(success).isEqualTo(positionShouldBeFound);
+      if (cursorShouldStartAt >= 0)
+      {
+        assertThatCursorCanBeFullyRead(cursor, cursorShouldStartAt, cursorShouldEndAt);
+      }
+      else
+      {
+        assertThatCursorIsExhausted(cursor);
+      }
+    }
+  }
+
+  @Test
+  public void testCursorOnMemoryMappedLogFile() throws Exception
+  {
+    try (LogFile<String, String> changelog = LogFile.newReadOnlyLogFile(TEST_LOG_FILE, RECORD_PARSER, true))
+    {
+      try (DBCursor<Record<String, String>> cursor = changelog.getCursor())
+      {
+        assertThatCursorCanBeFullyRead(cursor, 1, 10);
+      }
+      // the reader released by the first cursor is reused, and must start from the beginning again
+      try (DBCursor<Record<String, String>> cursor = changelog.getCursor())
+      {
+        assertThatCursorCanBeFullyRead(cursor, 1, 10);
+      }
+      assertThat(changelog.getNewestRecord()).isEqualTo(Record.from("key10", "value10"));
+    }
+  }
+
+  @DataProvider
+  Object[][] memoryMapped()
+  {
+    return new Object[][] { { false }, { true } };
+  }
+
+  @Test(dataProvider="memoryMapped")
+  public void testReaderPoolReusesReleasedReaders(boolean isMemoryMapped) throws Exception
+  {
+    final LogReaderPool<String, String> pool = new LogReaderPool<>(TEST_LOG_FILE, RECORD_PARSER, isMemoryMapped);
+    try
+    {
+      final BlockLogReader<String, String> reader = pool.get();
+      assertThat(reader.readRecord()).isEqualTo(Record.from("key01", "value1"));
+      pool.release(reader);
+
+      final BlockLogReader<String, String> reusedReader = pool.get();
+      assertThat(reusedReader).isSameAs(reader);
+      assertThat(reusedReader.getFilePosition()).isEqualTo(0);
+      final BlockLogReader<String, String> otherReader = pool.get();
+      assertThat(otherReader).isNotSameAs(reader);
+      pool.release(otherReader);
+      pool.release(reusedReader);
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testReaderPoolIsBounded() throws Exception
+  {
+    final LogReaderPool<String, String> pool = new LogReaderPool<>(TEST_LOG_FILE, RECORD_PARSER, false);
+    try
+    {
+      final List<BlockLogReader<String, String>> readers = new ArrayList<>();
+      for (int i = 0; i <= LogReaderPool.MAX_IDLE_READERS; i++)
+      {
+        readers.add(pool.get());
+      }
+      for (BlockLogReader<String, String> reader : readers)
+      {
+        pool.release(reader);
+      }
+
+      // the last released reader did not fit in the pool and has been closed
+      final BlockLogReader<String, String> closedReader = readers.get(LogReaderPool.MAX_IDLE_READERS);
+      try
+      {
+        closedReader.getFilePosition();
+        fail("Expected the reader to be closed");
+      }
+      catch (ChangelogException expected)
+      {
+        // the file handle has been closed
+      }
+      for (int i = 0; i < LogReaderPool.MAX_IDLE_READERS; i++)
+      {
+        assertThat(pool.get()).isIn(readers.subList(0, LogReaderPool.MAX_IDLE_READERS));
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
   @Test
   public void testGetOldestRecord() throws Exception
   {
@@ -0,0 +1,148 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License, Version 1.0 only
+ * (the "License").  You may not use this file except in compliance
+ * with the License.
+ *
+ * You can obtain a copy of the license at legal-notices/CDDLv1_0.txt
+ * or http://forgerock.org/license/CDDLv1.0.html.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at legal-notices/CDDLv1_0.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information:
+ *      Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ *
+ *      Copyright 2015 ForgeRock AS
+ */
+package org.opends.server.replication.service;
+
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.replication.ReplicationTestCase;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test the resumption of an export by the {@link ReplOutputStream}.
+ */
+@SuppressWarnings("javadoc")
+public class ReplOutputStreamTest extends ReplicationTestCase
+{
+  private static final String ENTRY1 =
+      "dn: dc=example,dc=com\nobjectClass: domain\ndc: example\n\n";
+  private static final String ENTRY2 =
+      "dn: cn=a very long common name which does not fit on a single line of\n"
+      + " LDIF,dc=example,dc=com\nobjectClass: device\n\n";
+  private static final String ENTRY3 =
+      "dn: cn=a very long common name which does not fit on a single line of\n"
+      + " LDIF either,dc=example,dc=com\nobjectClass: device\n\n";
+  private static final String LDIF = ENTRY1 + ENTRY2 + ENTRY3;
+
+  @DataProvider
+  public Object[][] chunkSizes()
+  {
+    return new Object[][] { { 1 }, { 2 }, { 7 }, { 64 }, { LDIF.length() } };
+  }
+
+  @Test(dataProvider = "chunkSizes")
+  public void exportResumesAfterLastImportedEntry(int chunkSize) throws Exception
+  {
+    // What the importer designates as the last entry it imported
+    final byte[] imported = (ENTRY1 + ENTRY2).getBytes(StandardCharsets.UTF_8);
+    final String resumeAfter =
+        ReplicationDomain.getEntryFirstLine(imported, ENTRY1.length(), imported.length);
+    assertEquals(resumeAfter,
+        "dn: cn=a very long common name which does not fit on a single line of\n"
+        + " LDIF,dc=example,dc=com");
+
+    final ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    final ReplOutputStream output = new ReplOutputStream(newDomain(exported), resumeAfter);
+    write(output, LDIF, chunkSize);
+
+    assertFalse(output.isResumePointMissing());
+    assertEquals(exported.toString("UTF-8"), ENTRY3);
+  }
+
+  @Test(dataProvider = "chunkSizes")
+  public void exportResumesAfterLastImportedEntryWithWindowsLineSeparators(int chunkSize)
+      throws Exception
+  {
+    final String ldif = LDIF.replace("\n", "\r\n");
+    final byte[] imported = (ENTRY1 + ENTRY2).replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8);
+    final String resumeAfter = ReplicationDomain.getEntryFirstLine(
+        imported, ENTRY1.replace("\n", "\r\n").length(), imported.length);
+    assertEquals(resumeAfter,
+        "dn: cn=a very long common name which does not fit on a single line of\n"
+        + " LDIF,dc=example,dc=com");
+
+    final ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    final ReplOutputStream output = new ReplOutputStream(newDomain(exported), resumeAfter);
+    write(output, ldif, chunkSize);
+
+    assertFalse(output.isResumePointMissing());
+    assertEquals(exported.toString("UTF-8"), ENTRY3.replace("\n", "\r\n"));
+  }
+
+  @Test(dataProvider = "chunkSizes")
+  public void exportWithoutResumePoint(int chunkSize) throws Exception
+  {
+    final ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    final ReplOutputStream output = new ReplOutputStream(newDomain(exported));
+    write(output, LDIF, chunkSize);
+
+    assertFalse(output.isResumePointMissing());
+    assertEquals(exported.toString("UTF-8"), LDIF);
+  }
+
+  @Test
+  public void exportWithMissingResumePoint() throws Exception
+  {
+    final ByteArrayOutputStream exported = new ByteArrayOutputStream();
+    final ReplOutputStream output = new ReplOutputStream(
+        newDomain(exported), "dn: cn=deleted meanwhile,dc=example,dc=com");
+    write(output, LDIF, 16);
+
+    assertTrue(output.isResumePointMissing());
+    assertEquals(exported.size(), 0);
+  }
+
+  private void write(ReplOutputStream output, String ldif, int chunkSize) throws Exception
+  {
+    final byte[] bytes = ldif.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < bytes.length; i += chunkSize)
+    {
+      output.write(bytes, i, Math.min(chunkSize, bytes.length - i));
+    }
+  }
+
+  private ReplicationDomain newDomain(final ByteArrayOutputStream exported) throws Exception
+  {
+    final ReplicationDomain domain = mock(ReplicationDomain.class);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        final Object[] args = invocation.getArguments();
+        exported.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+        return null;
+      }
+    }).when(domain).exportLDIFEntry(any(byte[].class), anyInt(), anyInt());
+    return domain;
+  }
+}
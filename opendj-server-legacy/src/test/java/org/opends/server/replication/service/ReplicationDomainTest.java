@@ -45,6 +45,10 @@ import org.opends.server.replication.common.DSInfo;
 import org.opends.server.replication.common.RSInfo;
 import org.opends.server.replication.common.ServerState;
 import org.opends.server.replication.common.ServerStatus;
+import org.opends.server.replication.protocol.DoneMsg;
+import org.opends.server.replication.protocol.EntryMsg;
+import org.opends.server.replication.protocol.InitializeRequestMsg;
+import org.opends.server.replication.protocol.InitializeTargetMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
 import org.opends.server.replication.server.ReplServerFakeConfiguration;
 import org.opends.server.replication.server.ReplicationServer;
@@ -439,6 +443,115 @@ public class ReplicationDomainTest extends ReplicationTestCase
     }
   }
 
+  /**
+   * Test that an import interrupted by the disconnection of the exporter is
+   * resumed after the last complete entry received, the bytes of the entry
+   * received partially being dropped.
+   */
+  @Test
+  public void importResumesAfterLastCompleteEntry() throws Exception
+  {
+    final DN testService = DN.valueOf("o=test");
+    final int exporterID = 1;
+    final int importerID = 2;
+    ReplicationServer replServer = null;
+    ReplicationBroker exporter = null;
+    FakeReplicationDomain importer = null;
+
+    try
+    {
+      final int replServerPort = TestCaseUtils.findFreePort();
+      replServer = createReplicationServer(11, replServerPort, "importResumesAfterLastCompleteEntry", 100);
+
+      final StringBuilder importedData = new StringBuilder();
+      importer = new FakeReplicationDomain(
+          testService, importerID, newTreeSet("localhost:" + replServerPort), 0, null, importedData, 0);
+      exporter = openReplicationSession(testService, exporterID, 100, replServerPort, 5000, 1);
+
+      importer.initializeFromRemote(exporterID, NO_INIT_TASK);
+      waitForSpecificMsg(exporter, InitializeRequestMsg.class);
+      exporter.publish(new InitializeTargetMsg(testService, exporterID, importerID, importerID, 2, 100));
+      exporter.publish(new EntryMsg(exporterID, importerID, "key : value0\n\nkey : val".getBytes(), 1));
+      waitForImportedData(importedData, "key : value0\n\n");
+
+      // The exporter gets disconnected, then asked to resume the export
+      exporter.stop();
+      exporter = openReplicationSession(testService, exporterID, 100, replServerPort, 5000, 1);
+      final InitializeRequestMsg resumeRequest = waitForSpecificMsg(exporter, InitializeRequestMsg.class);
+      assertTrue(resumeRequest.isResumeRequest());
+      assertEquals(resumeRequest.getResumeEntryCount(), 1);
+      assertEquals(resumeRequest.getResumeAfter(), "key : value0");
+
+      exporter.publish(new InitializeTargetMsg(testService, exporterID, importerID, importerID, 2, 100, 1));
+      exporter.publish(new EntryMsg(exporterID, importerID, "key : value1\n\n".getBytes(), 1));
+      exporter.publish(new DoneMsg(exporterID, importerID));
+      waitForImportedData(importedData, "key : value0\n\nkey : value1\n\n");
+      assertEquals(importedData.toString(), "key : value0\n\nkey : value1\n\n");
+    }
+    finally
+    {
+      stop(exporter);
+      disable(importer);
+      remove(replServer);
+    }
+  }
+
+  /**
+   * Test that the entries split across messages are imported once complete,
+   * and that the bytes of the last entry are imported when the end of the
+   * import is received, even without an entry separator.
+   */
+  @Test
+  public void importFlushesLastEntryOnDone() throws Exception
+  {
+    final DN testService = DN.valueOf("o=test");
+    final int exporterID = 1;
+    final int importerID = 2;
+    ReplicationServer replServer = null;
+    ReplicationBroker exporter = null;
+    FakeReplicationDomain importer = null;
+
+    try
+    {
+      final int replServerPort = TestCaseUtils.findFreePort();
+      replServer = createReplicationServer(11, replServerPort, "importFlushesLastEntryOnDone", 100);
+
+      final StringBuilder importedData = new StringBuilder();
+      importer = new FakeReplicationDomain(
+          testService, importerID, newTreeSet("localhost:" + replServerPort), 0, null, importedData, 0);
+      exporter = openReplicationSession(testService, exporterID, 100, replServerPort, 5000, 1);
+
+      importer.initializeFromRemote(exporterID, NO_INIT_TASK);
+      waitForSpecificMsg(exporter, InitializeRequestMsg.class);
+      exporter.publish(new InitializeTargetMsg(testService, exporterID, importerID, importerID, 3, 100));
+      exporter.publish(new EntryMsg(exporterID, importerID, "key : va".getBytes(), 1));
+      exporter.publish(new EntryMsg(exporterID, importerID, "lue0\r\n".getBytes(), 2));
+      exporter.publish(new EntryMsg(exporterID, importerID, "\r\nkey : value1\n\nkey : value2".getBytes(), 3));
+      exporter.publish(new DoneMsg(exporterID, importerID));
+
+      final String expected = "key : value0\r\n\r\nkey : value1\n\nkey : value2";
+      waitForImportedData(importedData, expected);
+      assertEquals(importedData.toString(), expected);
+    }
+    finally
+    {
+      stop(exporter);
+      disable(importer);
+      remove(replServer);
+    }
+  }
+
+  private void waitForImportedData(StringBuilder importedData, String expected) throws Exception
+  {
+    int count = 0;
+    while (importedData.length() < expected.length() && count < 100)
+    {
+      count++;
+      Thread.sleep(100);
+    }
+    assertEquals(importedData.toString(), expected);
+  }
+
   private String buildExportedData(final int ENTRYCOUNT)
   {
     final StringBuilder sb = new StringBuilder();
@@ -275,6 +275,79 @@ public class LockManagerTest extends TypesTestCase
     assertThat(lockManager.getLockTableRefCountFor(dn(99))).isGreaterThan(0);
   }
 
+  @Test
+  public void testMinimumNumberOfBuckets() throws Exception
+  {
+    final LockManager lockManager = new LockManager(100, TimeUnit.MILLISECONDS, 1);
+    assertThat(lockManager.getNumberOfBuckets()).isEqualTo(64);
+    assertThat(lockManager.getBucketAcquisitions()).hasSize(64);
+    assertThat(lockManager.getBucketContentions()).hasSize(64);
+  }
+
+  @Test
+  public void testLocksAreRemovedAndReused() throws Exception
+  {
+    final LockManager lockManager = new LockManager();
+
+    // Hold each lock while acquiring the next one so that the thread local cache evicts them.
+    DNLock previous = null;
+    for (int i = 0; i < 1000; i++)
+    {
+      final DNLock lock = lockManager.tryWriteLockEntry(dn(i));
+      assertThat(lock).isNotNull();
+      if (previous != null)
+      {
+        previous.unlock();
+      }
+      previous = lock;
+    }
+    previous.unlock();
+
+    // Only the locks referenced by the thread local cache are still in the lock table.
+    assertThat(lockManager.getLockTableSize()).isLessThanOrEqualTo(10);
+    assertThat(lockManager.getLockTableRefCountFor(dn(0))).isLessThan(0);
+    assertThat(lockManager.getLockTableRefCountFor(dn(999))).isGreaterThan(0);
+
+    // Reused locks must not be confused with the locks they were before.
+    final DNLock lock0 = lockManager.tryWriteLockEntry(dn(0));
+    assertThat(lock0.toString()).contains(dn(0).toString());
+    final DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dn(1)).get();
+    assertThat(lock1).isNotNull();
+    unlockUsingThread(thread1, lock1);
+    lock0.unlock();
+  }
+
+  @Test
+  public void testBucketStatistics() throws Exception
+  {
+    final LockManager lockManager = new LockManager();
+    long acquisitions = sum(lockManager.getBucketAcquisitions());
+    assertThat(acquisitions).isEqualTo(0);
+    assertThat(lockManager.getLockTableSize()).isEqualTo(0);
+
+    final DNLock lock = lockManager.tryReadLockEntry(dnABC);
+    // One lock for each RDN of dnABC.
+    assertThat(lockManager.getLockTableSize()).isEqualTo(3);
+    assertThat(sum(lockManager.getBucketAcquisitions())).isGreaterThanOrEqualTo(3);
+    lock.unlock();
+
+    // Cached locks are fetched without locking their bucket.
+    acquisitions = sum(lockManager.getBucketAcquisitions());
+    lockManager.tryReadLockEntry(dnABC).unlock();
+    assertThat(sum(lockManager.getBucketAcquisitions())).isEqualTo(acquisitions);
+    assertThat(sum(lockManager.getBucketContentions())).isEqualTo(0);
+  }
+
+  private long sum(final long[] values)
+  {
+    long sum = 0;
+    for (final long value : values)
+    {
+      sum += value;
+    }
+    return sum;
+  }
+
   @Test(description = "OPENDJ-1984")
   public void stressTestForDeadlocks() throws Exception
   {